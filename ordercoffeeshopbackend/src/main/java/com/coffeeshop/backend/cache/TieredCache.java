@@ -0,0 +1,195 @@
+package com.coffeeshop.backend.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * A cache read from an in-process copy (L1) first and from the shared cache (L2) on a miss.
+ * <p>
+ * Values found in L2 are copied into L1, so a hot entry costs one Redis round trip and one deserialization per
+ * node until it expires or is evicted. Evictions go to both tiers and are announced so the other nodes drop
+ * their copies too.
+ */
+public class TieredCache implements Cache {
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> local;
+    private final Cache remote;
+    // Called with the evicted key, or null when the whole cache was cleared
+    private final BiConsumer<String, String> invalidations;
+    // Bumped on every local eviction, so a value read from L2 before it is not copied into L1 after it
+    private final AtomicLong generation = new AtomicLong();
+    private final Counter localHits;
+    private final Counter localMisses;
+    private final Counter remoteHits;
+    private final Counter remoteMisses;
+
+    public TieredCache(String name, com.github.benmanes.caffeine.cache.Cache<String, Object> local, Cache remote,
+            BiConsumer<String, String> invalidations, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.local = local;
+        this.remote = remote;
+        this.invalidations = invalidations;
+        this.localHits = meterRegistry.counter("cache.tiered.gets", "cache", name, "tier", "l1", "result", "hit");
+        this.localMisses = meterRegistry.counter("cache.tiered.gets", "cache", name, "tier", "l1", "result", "miss");
+        this.remoteHits = meterRegistry.counter("cache.tiered.gets", "cache", name, "tier", "l2", "result", "hit");
+        this.remoteMisses = meterRegistry.counter("cache.tiered.gets", "cache", name, "tier", "l2", "result", "miss");
+        Gauge.builder("cache.tiered.hit.ratio", this, cache -> ratio(cache.localHits, cache.localMisses))
+                .tags("cache", name, "tier", "l1")
+                .register(meterRegistry);
+        Gauge.builder("cache.tiered.hit.ratio", this, cache -> ratio(cache.remoteHits, cache.remoteMisses))
+                .tags("cache", name, "tier", "l2")
+                .register(meterRegistry);
+        Gauge.builder("cache.tiered.size", local, com.github.benmanes.caffeine.cache.Cache::estimatedSize)
+                .tags("cache", name, "tier", "l1")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return local;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = localKey(key);
+        Object value = local.getIfPresent(localKey);
+        if (value != null) {
+            localHits.increment();
+            return new SimpleValueWrapper(value);
+        }
+        localMisses.increment();
+        long seen = generation.get();
+        ValueWrapper found = remote.get(key);
+        if (found == null || found.get() == null) {
+            remoteMisses.increment();
+            return found;
+        }
+        remoteHits.increment();
+        copy(localKey, found.get(), seen);
+        return found;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper found = get(key);
+        Object value = found != null ? found.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper found = get(key);
+        if (found != null) {
+            return (T) found.get();
+        }
+        T value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        put(key, value);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        long seen = generation.get();
+        remote.put(key, value);
+        if (value != null) {
+            copy(localKey(key), value, seen);
+        }
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        long seen = generation.get();
+        ValueWrapper existing = remote.putIfAbsent(key, value);
+        Object stored = existing != null ? existing.get() : value;
+        if (stored != null) {
+            copy(localKey(key), stored, seen);
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(key);
+        String localKey = localKey(key);
+        evictLocal(localKey);
+        invalidations.accept(name, localKey);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean present = remote.evictIfPresent(key);
+        String localKey = localKey(key);
+        evictLocal(localKey);
+        invalidations.accept(name, localKey);
+        return present;
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        clearLocal();
+        invalidations.accept(name, null);
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean present = remote.invalidate();
+        clearLocal();
+        invalidations.accept(name, null);
+        return present;
+    }
+
+    void evictLocal(String localKey) {
+        generation.incrementAndGet();
+        local.invalidate(localKey);
+    }
+
+    void clearLocal() {
+        generation.incrementAndGet();
+        local.invalidateAll();
+    }
+
+    // Keys are compared as the strings Redis stores them under, so evictions can name them to other nodes
+    static String localKey(Object key) {
+        return key instanceof String ? (String) key : String.valueOf(key);
+    }
+
+    private void copy(String localKey, Object value, long seen) {
+        if (generation.get() != seen) {
+            return;
+        }
+        local.put(localKey, value);
+        // An eviction may have slipped in between the check and the put
+        if (generation.get() != seen) {
+            local.invalidate(localKey);
+        }
+    }
+
+    private static double ratio(Counter hits, Counter misses) {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+}
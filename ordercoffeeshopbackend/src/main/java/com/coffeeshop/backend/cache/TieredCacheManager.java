@@ -0,0 +1,90 @@
+package com.coffeeshop.backend.cache;
+
+import com.coffeeshop.backend.service.ClusterMessagingService;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Puts an in-process {@link TieredCache} in front of every cache of the shared cache manager.
+ * <p>
+ * Evictions are published on {@value #CHANNEL}, and every node drops the named entry, or the whole cache,
+ * from its own copy. With websocket.cluster.mode=local there are no other nodes to tell; with redis the
+ * message goes over Redis pub/sub. A node that misses one keeps a stale copy for at most the L1 TTL.
+ */
+public class TieredCacheManager implements CacheManager {
+
+    public static final String CHANNEL = "cache-invalidation";
+
+    private final CacheManager remote;
+    private final ClusterMessagingService clusterMessagingService;
+    private final MeterRegistry meterRegistry;
+    private final long maxEntries;
+    private final Duration ttl;
+    private final Map<String, TieredCache> caches = new ConcurrentHashMap<>();
+
+    public TieredCacheManager(CacheManager remote, ClusterMessagingService clusterMessagingService,
+            MeterRegistry meterRegistry, long maxEntries, Duration ttl) {
+        this.remote = remote;
+        this.clusterMessagingService = clusterMessagingService;
+        this.meterRegistry = meterRegistry;
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        clusterMessagingService.subscribe(CHANNEL, Invalidation.class, this::receive);
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::create);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return remote.getCacheNames();
+    }
+
+    private TieredCache create(String name) {
+        Cache shared = remote.getCache(name);
+        if (shared == null) {
+            return null;
+        }
+        return new TieredCache(name, Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .build(), shared, this::announce, meterRegistry);
+    }
+
+    private void announce(String cache, String key) {
+        clusterMessagingService.publish(CHANNEL, new Invalidation(cache, key));
+    }
+
+    private void receive(Invalidation invalidation) {
+        TieredCache cache = caches.get(invalidation.getCache());
+        if (cache == null) {
+            return;
+        }
+        if (invalidation.getKey() == null) {
+            cache.clearLocal();
+        } else {
+            cache.evictLocal(invalidation.getKey());
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Invalidation {
+        private String cache;
+        // Null when the whole cache was cleared
+        private String key;
+    }
+}
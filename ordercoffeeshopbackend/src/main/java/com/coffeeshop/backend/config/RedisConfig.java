@@ -1,13 +1,20 @@
 package com.coffeeshop.backend.config;
 
+import com.coffeeshop.backend.cache.TieredCacheManager;
+import com.coffeeshop.backend.service.ClusterMessagingService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
 import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 
@@ -17,6 +24,8 @@ import java.time.Duration;
 @EnableCaching
 public class RedisConfig {
 
+    public static final Duration ENTRY_TTL = Duration.ofMinutes(60);
+
     @Bean
     public RedisCacheConfiguration cacheConfiguration() {
         PolymorphicTypeValidator ptv = BasicPolymorphicTypeValidator
@@ -30,8 +39,22 @@ public class RedisConfig {
         objectMapper.activateDefaultTyping(ptv, ObjectMapper.DefaultTyping.NON_FINAL);
 
         return RedisCacheConfiguration.defaultCacheConfig()
-                .entryTtl(Duration.ofMinutes(60)) // Set a default TTL for cache entries
+                .entryTtl(ENTRY_TTL) // Set a default TTL for cache entries
                 .disableCachingNullValues() // Don't cache null values
                 .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(new GenericJackson2JsonRedisSerializer(objectMapper)));
     }
+
+    // Redis stays the shared cache (L2); each node keeps a small in-process copy of the hottest entries (L1)
+    @Bean
+    public CacheManager cacheManager(RedisConnectionFactory connectionFactory, RedisCacheConfiguration cacheConfiguration,
+            ClusterMessagingService clusterMessagingService, MeterRegistry meterRegistry,
+            @Value("${cache.local.max-entries:1000}") long maxEntries,
+            @Value("${cache.local.ttl-seconds:60}") long ttlSeconds) {
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(connectionFactory)
+                .cacheDefaults(cacheConfiguration)
+                .build();
+        redisCacheManager.afterPropertiesSet();
+        return new TieredCacheManager(redisCacheManager, clusterMessagingService, meterRegistry, maxEntries,
+                Duration.ofSeconds(ttlSeconds));
+    }
 }
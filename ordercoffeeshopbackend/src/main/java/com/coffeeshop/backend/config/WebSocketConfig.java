@@ -1,26 +1,81 @@
 package com.coffeeshop.backend.config;
 
+import com.coffeeshop.backend.security.StompAuthorizationInterceptor;
+import com.coffeeshop.backend.websocket.OutboundBackpressure;
+import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
 import org.springframework.lang.NonNull;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
 
 @Configuration
 @EnableWebSocketMessageBroker
+@RequiredArgsConstructor
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final StompAuthorizationInterceptor stompAuthorizationInterceptor;
+    private final OutboundBackpressure outboundBackpressure;
+
     @Override
     public void configureMessageBroker(@NonNull MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic");
+        // /topic for store boards and checkout results, /queue for per-user destinations under /user
+        config.enableSimpleBroker("/topic", "/queue");
         config.setApplicationDestinationPrefixes("/app");
+        config.setUserDestinationPrefix("/user");
+        // Keep the sequence order of store events per session; the outbound channel is a thread pool
+        config.setPreservePublishOrder(true);
+    }
+
+    @Override
+    public void configureClientInboundChannel(@NonNull ChannelRegistration registration) {
+        registration.interceptors(stompAuthorizationInterceptor);
+    }
+
+    @Override
+    public void configureWebSocketTransport(@NonNull WebSocketTransportRegistration registration) {
+        // Frames queue per session with their own limits, so a slow client is evicted instead of
+        // backing up the outbound channel for everyone. Spring wraps every session in a decorator with
+        // these limits too; sends to ours return at once, so that one never has to buffer.
+        registration.setSendTimeLimit((int) outboundBackpressure.getSendTimeLimitMs());
+        registration.setSendBufferSizeLimit(outboundBackpressure.getSendBufferSizeLimit());
+        registration.addDecoratorFactory(outboundBackpressure::decorate);
     }
 
     @Override
     public void registerStompEndpoints(@NonNull StompEndpointRegistry registry) {
+        // A board's SUBSCRIBE to its store topic is registered before its snapshot is taken
+        registry.setPreserveReceiveOrder(true);
         registry.addEndpoint("/ws")
                 // .setAllowedOrigins("https://order-coffee-shop-1.onrender.com")
                 .withSockJS();
+        // Plain WebSocket without the SockJS framing, and the only one that can carry binary frames
+        registry.addEndpoint("/ws-native")
+                .addInterceptors(new NativeTransportInterceptor());
+    }
+
+    // Marks sessions of the native endpoint, see StompAuthorizationInterceptor
+    static final class NativeTransportInterceptor implements HandshakeInterceptor {
+
+        @Override
+        public boolean beforeHandshake(@NonNull ServerHttpRequest request, @NonNull ServerHttpResponse response,
+                @NonNull WebSocketHandler wsHandler, @NonNull Map<String, Object> attributes) {
+            attributes.put(StompAuthorizationInterceptor.NATIVE_TRANSPORT_ATTRIBUTE, Boolean.TRUE);
+            return true;
+        }
+
+        @Override
+        public void afterHandshake(@NonNull ServerHttpRequest request, @NonNull ServerHttpResponse response,
+                @NonNull WebSocketHandler wsHandler, Exception exception) {
+        }
     }
-}
\ No newline at end of file
+}
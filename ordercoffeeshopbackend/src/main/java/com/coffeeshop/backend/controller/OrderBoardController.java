@@ -0,0 +1,27 @@
+package com.coffeeshop.backend.controller;
+
+import com.coffeeshop.backend.dto.order.OrderBoardSnapshot;
+import com.coffeeshop.backend.service.OrderBoardService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
+import org.springframework.stereotype.Controller;
+
+/**
+ * STOMP only. A board subscribes to its store topic first and then to
+ * {@code /app/stores/{storeId}/board}, which answers once with the snapshot. Inbound frames of a
+ * session are handled in order, so no event can fall between the two: the board applies the events
+ * after the snapshot's {@code seq} and drops the others.
+ * Access is checked by {@link com.coffeeshop.backend.security.StompAuthorizationInterceptor}.
+ */
+@Controller
+@RequiredArgsConstructor
+public class OrderBoardController {
+
+    private final OrderBoardService orderBoardService;
+
+    @SubscribeMapping("/stores/{storeId}/board")
+    public OrderBoardSnapshot board(@DestinationVariable Long storeId) {
+        return orderBoardService.snapshot(storeId);
+    }
+}
@@ -2,9 +2,17 @@ package com.coffeeshop.backend.controller;
 
 import com.coffeeshop.backend.dto.order.UpdateStatusRequest;
 import com.coffeeshop.backend.enums.OrderStatus;
+import com.coffeeshop.backend.dto.order.CheckoutStatusResponse;
 import com.coffeeshop.backend.dto.order.CreateOrderRequest;
+import com.coffeeshop.backend.dto.order.OrderAcceptedResponse;
+import com.coffeeshop.backend.dto.order.OrderFeedResponse;
 import com.coffeeshop.backend.dto.order.OrderResponse;
+import com.coffeeshop.backend.dto.order.OrderStreamResponse;
+import com.coffeeshop.backend.service.AsyncCheckoutService;
+import com.coffeeshop.backend.service.IdempotencyService;
+import com.coffeeshop.backend.service.OrderIngestionService;
 import com.coffeeshop.backend.service.OrderService;
+import com.coffeeshop.backend.service.OrderViewService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -13,6 +21,7 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import java.util.List;
+import java.util.Map;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import com.coffeeshop.backend.dto.voucher.VoucherValidationRequest;
@@ -31,22 +40,49 @@ import org.springframework.data.web.PageableDefault;
 public class OrderController {
 
     private final OrderService orderService;
+    private final OrderIngestionService orderIngestionService;
+    private final IdempotencyService idempotencyService;
+    private final AsyncCheckoutService asyncCheckoutService;
+    private final OrderViewService orderViewService;
 
     @PostMapping
     @PreAuthorize("hasAnyRole('CUSTOMER')")
     @RateLimiter(name = "defaultRateLimiter", fallbackMethod = "rateLimiterFallback")
     public ResponseEntity<OrderResponse> createOrder(@RequestBody CreateOrderRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @AuthenticationPrincipal UserDetails userDetails) {
-        OrderResponse response = orderService.createOrder(request, userDetails.getUsername());
+        OrderResponse response = idempotencyService.execute("orders:" + userDetails.getUsername(), idempotencyKey,
+                request, OrderResponse.class, () -> orderIngestionService.placeOrder(request, userDetails.getUsername()));
         log.info("Order created successfully");
         return new ResponseEntity<>(response, HttpStatus.CREATED);
     }
 
-    public ResponseEntity<String> rateLimiterFallback(CreateOrderRequest request, UserDetails userDetails, Throwable t) {
+    public ResponseEntity<String> rateLimiterFallback(CreateOrderRequest request, String idempotencyKey,
+            UserDetails userDetails, Throwable t) {
         log.warn("Rate limit exceeded for user {}: {}", userDetails.getUsername(), t.getMessage());
         return new ResponseEntity<>("Too many requests - please try again later", HttpStatus.TOO_MANY_REQUESTS);
     }
 
+    @PostMapping("/async")
+    @PreAuthorize("hasAnyRole('CUSTOMER')")
+    @RateLimiter(name = "defaultRateLimiter", fallbackMethod = "rateLimiterFallback")
+    public ResponseEntity<OrderAcceptedResponse> createOrderAsync(@RequestBody CreateOrderRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        OrderAcceptedResponse response = idempotencyService.execute("orders-async:" + userDetails.getUsername(),
+                idempotencyKey, request, OrderAcceptedResponse.class,
+                () -> asyncCheckoutService.accept(request, userDetails.getUsername()));
+        log.info("Order accepted with token {}", response.getToken());
+        return new ResponseEntity<>(response, HttpStatus.ACCEPTED);
+    }
+
+    @GetMapping("/async/{token}")
+    @PreAuthorize("hasAnyRole('CUSTOMER')")
+    public ResponseEntity<CheckoutStatusResponse> getCheckoutStatus(@PathVariable String token,
+            @AuthenticationPrincipal UserDetails userDetails) {
+        return ResponseEntity.ok(asyncCheckoutService.getStatus(token, userDetails.getUsername()));
+    }
+
     @PostMapping("/validate-voucher")
     public ResponseEntity<VoucherValidationResponse> validateVoucher(@RequestBody VoucherValidationRequest request) {
         VoucherValidationResponse response = orderService.validateVoucher(request);
@@ -72,6 +108,36 @@ public class OrderController {
         return ResponseEntity.ok(orders);
     }
 
+    // Cursor-paged version of /all for long order histories: no count, constant cost per slice
+    @GetMapping("/all/feed")
+    @PreAuthorize("hasAnyRole('ADMIN', 'STAFF')")
+    public ResponseEntity<OrderFeedResponse> getOrderFeed(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(orderService.getOrderFeed(userDetails, cursor, size));
+    }
+
+    // Backfills the order_view read model, e.g. after deploying it on a database that already has orders
+    @PostMapping("/views/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Integer>> rebuildOrderViews() {
+        int rebuilt = orderViewService.rebuild();
+        log.info("Order views rebuilt for {} orders", rebuilt);
+        return ResponseEntity.ok(Map.of("rebuilt", rebuilt));
+    }
+
+    // Called by a board after its STOMP connection drops, with the epoch and last seq it received
+    @GetMapping("/stream")
+    @PreAuthorize("hasAnyRole('ADMIN', 'STAFF')")
+    public ResponseEntity<OrderStreamResponse> getOrderStream(
+            @AuthenticationPrincipal UserDetails userDetails,
+            @RequestParam Long storeId,
+            @RequestParam(required = false) String epoch,
+            @RequestParam(defaultValue = "0") long after) {
+        return ResponseEntity.ok(orderService.getOrderStream(userDetails, storeId, epoch, after));
+    }
+
     @PutMapping("/{orderId}/status")
     @PreAuthorize("hasAnyRole('ADMIN', 'STAFF')")
     public ResponseEntity<OrderResponse> updateOrderStatus(
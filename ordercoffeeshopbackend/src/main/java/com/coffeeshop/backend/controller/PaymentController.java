@@ -1,6 +1,7 @@
 package com.coffeeshop.backend.controller;
 
 import com.coffeeshop.backend.dto.payment.PaymentInitiationRequest;
+import com.coffeeshop.backend.service.IdempotencyService;
 import com.coffeeshop.backend.service.VnpayService;
 import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
@@ -8,6 +9,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
 import com.coffeeshop.backend.service.OrderService;
 import org.springframework.web.bind.annotation.*;
 
@@ -25,6 +28,9 @@ public class PaymentController {
     @Autowired
     private OrderService orderService;
 
+    @Autowired
+    private IdempotencyService idempotencyService;
+
     @PostMapping("/mock-payment-success")
     public ResponseEntity<?> mockPaymentSuccess(@RequestBody Map<String, Long> body) {
         Long orderId = body.get("orderId");
@@ -35,12 +41,18 @@ public class PaymentController {
 
     @PostMapping("/create-payment")
     public ResponseEntity<String> createPayment(@RequestBody PaymentInitiationRequest initiationRequest,
-            HttpServletRequest request) {
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @AuthenticationPrincipal UserDetails userDetails, HttpServletRequest request) {
         String clientIp = getClientIp(request);
         logger.info("Creating VNPAY payment request for Order ID: {} with Amount: {}", initiationRequest.getOrderId(),
                 initiationRequest.getAmount());
         // The service call now handles the creation and logging of the URL
-        return vnpayService.createVnpayPaymentUrl(initiationRequest, clientIp);
+        // The endpoint is open to guests, whose keys are kept apart by their address instead
+        String caller = userDetails != null ? userDetails.getUsername() : "guest:" + clientIp;
+        String paymentUrl = idempotencyService.execute("payments:" + caller + ":" + initiationRequest.getOrderId(),
+                idempotencyKey, initiationRequest, String.class,
+                () -> vnpayService.createVnpayPaymentUrl(initiationRequest, clientIp).getBody());
+        return ResponseEntity.ok(paymentUrl);
     }
 
     private String getClientIp(HttpServletRequest request) {
@@ -11,6 +11,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import com.coffeeshop.backend.dto.product.StockShardingRequest;
 import com.coffeeshop.backend.dto.product.UpdateStockRequest;
 import org.springframework.web.bind.annotation.*;
 
@@ -43,6 +44,20 @@ public class ProductController {
         return ResponseEntity.ok(stocks);
     }
 
+    @PutMapping("/{productVariantId}/stocks/sharding")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<ProductStockDTO>> updateStockSharding(@PathVariable Long productVariantId, @RequestBody StockShardingRequest request) {
+        productStockService.updateSharding(productVariantId, request.getShards());
+        return ResponseEntity.ok(productStockService.getStockByProductVariantId(productVariantId));
+    }
+
+    @PostMapping("/{productVariantId}/stocks/rebalance")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<ProductStockDTO>> rebalanceStockShards(@PathVariable Long productVariantId) {
+        productStockService.rebalanceShards(productVariantId);
+        return ResponseEntity.ok(productStockService.getStockByProductVariantId(productVariantId));
+    }
+
     @GetMapping("/all")
     public ResponseEntity<List<ProductDTO>> getAllProductsList() {
         log.info("Calling getAllProductsList");
@@ -75,6 +90,16 @@ public class ProductController {
         return ResponseEntity.ok(product);
     }
 
+    @GetMapping("/best-selling")
+    public ResponseEntity<Page<ProductDTO>> getBestSellingProducts(@RequestParam(required = false) Long storeId,
+                                                                   @RequestParam(required = false) Integer days,
+                                                                   @RequestParam(defaultValue = "0") int page,
+                                                                   @RequestParam(defaultValue = "12") int size) {
+        Pageable pageable = PageRequest.of(page, size);
+        Page<ProductDTO> products = productService.getBestSellingProducts(storeId, days, pageable);
+        return ResponseEntity.ok(products);
+    }
+
     @GetMapping("/category/{categoryName}")
     public ResponseEntity<Page<ProductDTO>> getProductsByCategory(@PathVariable String categoryName, 
                                                                   @RequestParam(required = false) String search,
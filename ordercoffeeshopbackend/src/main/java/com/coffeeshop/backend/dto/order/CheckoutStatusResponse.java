@@ -0,0 +1,14 @@
+package com.coffeeshop.backend.dto.order;
+
+import com.coffeeshop.backend.enums.CheckoutStatus;
+import lombok.Data;
+
+@Data
+public class CheckoutStatusResponse {
+    private String token;
+    private CheckoutStatus status;
+    private OrderResponse order;
+    // Set when status is FAILED or UNKNOWN: the HTTP status and message a synchronous checkout would have returned
+    private Integer errorStatus;
+    private String errorMessage;
+}
@@ -0,0 +1,16 @@
+package com.coffeeshop.backend.dto.order;
+
+import com.coffeeshop.backend.enums.CheckoutStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderAcceptedResponse {
+    private String token;
+    private CheckoutStatus status;
+    // STOMP destination the final CheckoutStatusResponse is sent to
+    private String destination;
+}
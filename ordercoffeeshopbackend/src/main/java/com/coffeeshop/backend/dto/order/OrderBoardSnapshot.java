@@ -0,0 +1,22 @@
+package com.coffeeshop.backend.dto.order;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * The active orders of a store as of {@code seq} in its stream, newest first. Events of that store
+ * with a higher seq apply on top; those up to {@code seq} are already reflected.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderBoardSnapshot {
+    private String epoch;
+    private long seq;
+    // More orders are active than the board holds; the oldest ones are only in the order feed
+    private boolean truncated;
+    private List<OrderResponse> orders;
+}
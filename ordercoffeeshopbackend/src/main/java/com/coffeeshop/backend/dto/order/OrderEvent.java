@@ -0,0 +1,23 @@
+package com.coffeeshop.backend.dto.order;
+
+import com.coffeeshop.backend.enums.OrderStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// What changed on an order, as pushed over STOMP; clients fetch the full order only if they need it
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderEvent {
+    // Position in the stream of the order's store, one higher than the previous event of that store.
+    // A slow connection may skip numbers: events superseded by a later event of the same order are not sent.
+    private long seq;
+    private Long orderId;
+    private Long storeId;
+    private OrderStatus status;
+    // Order version after the change; an event with a lower version than one already applied is stale
+    private Long version;
+    // Epoch milliseconds of the change
+    private long timestamp;
+}
@@ -0,0 +1,14 @@
+package com.coffeeshop.backend.dto.order;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// A numbered order event as relayed between nodes, with the customer whose queue it also goes to
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderEventMessage {
+    private OrderEvent event;
+    private String userEmail;
+}
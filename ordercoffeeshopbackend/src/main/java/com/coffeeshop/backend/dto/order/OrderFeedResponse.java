@@ -0,0 +1,18 @@
+package com.coffeeshop.backend.dto.order;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Slice of an order feed; there is no total count, pass nextCursor back to get the following orders
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderFeedResponse {
+    private List<OrderResponse> content;
+    private int size;
+    private boolean hasNext;
+    private String nextCursor;
+}
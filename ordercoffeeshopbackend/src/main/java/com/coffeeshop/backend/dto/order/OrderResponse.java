@@ -17,4 +17,6 @@ public class OrderResponse {
     private List<OrderItemResponse> items;
     private String deliveryMethod;
     private UserSummary user;
+    // Same as OrderEvent.version; an event with a version up to this one is already reflected here
+    private Long version;
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package com.coffeeshop.backend.dto.order;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * What a reconnecting client missed on a store stream. Either {@code events} holds every event after
+ * the sequence it sent, or, when those are no longer buffered, {@code snapshot} holds the latest orders
+ * of the store instead. Either way the client continues from {@code seq} within {@code epoch}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderStreamResponse {
+    // Changes whenever the server restarts and its sequences start over
+    private String epoch;
+    private long seq;
+    private List<OrderEvent> events;
+    private List<OrderResponse> snapshot;
+}
@@ -0,0 +1,17 @@
+package com.coffeeshop.backend.dto.product;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Page;
+
+/**
+ * A menu page as it is cached, with the time it was read so it can be refreshed before it expires.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CachedProductPage {
+    private Page<ProductDTO> page;
+    private long loadedAt;
+}
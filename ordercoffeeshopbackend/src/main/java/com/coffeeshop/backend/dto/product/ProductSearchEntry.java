@@ -0,0 +1,19 @@
+package com.coffeeshop.backend.dto.product;
+
+import lombok.Getter;
+
+/**
+ * What the in-memory product search index keeps of an active product.
+ */
+@Getter
+public class ProductSearchEntry {
+    private final long id;
+    private final String name;
+    private final String categoryName;
+
+    public ProductSearchEntry(Long id, String name, String categoryName) {
+        this.id = id;
+        this.name = name == null ? "" : name;
+        this.categoryName = categoryName;
+    }
+}
@@ -0,0 +1,8 @@
+package com.coffeeshop.backend.dto.product;
+
+import lombok.Data;
+
+@Data
+public class StockShardingRequest {
+    private int shards; // 0 turns sharding off
+}
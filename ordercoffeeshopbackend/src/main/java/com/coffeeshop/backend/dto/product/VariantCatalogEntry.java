@@ -0,0 +1,28 @@
+package com.coffeeshop.backend.dto.product;
+
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+/**
+ * Immutable checkout view of a product variant, held by the in-memory variant catalog.
+ */
+@Getter
+public class VariantCatalogEntry {
+    private final long id;
+    private final BigDecimal price;
+    private final String size;
+    private final String productName;
+    private final boolean active;
+    private final int stockShards;
+
+    public VariantCatalogEntry(Long id, BigDecimal price, String size, String productName,
+            Boolean variantActive, Boolean productActive, Integer stockShards) {
+        this.id = id;
+        this.price = price;
+        this.size = size;
+        this.productName = productName;
+        this.active = Boolean.TRUE.equals(variantActive) && Boolean.TRUE.equals(productActive);
+        this.stockShards = stockShards == null ? 0 : stockShards;
+    }
+}
@@ -25,6 +25,14 @@ public class Order extends BaseEntity {
     @Column(name = "status", nullable = false)
     private OrderStatus status = OrderStatus.PENDING;
 
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    // Unpaid orders are cancelled and their stock released after this time
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
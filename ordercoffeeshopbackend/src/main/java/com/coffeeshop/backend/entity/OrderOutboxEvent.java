@@ -0,0 +1,42 @@
+package com.coffeeshop.backend.entity;
+
+import com.coffeeshop.backend.enums.OrderStatus;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * An order change waiting to be pushed to clients; see OrderOutboxService.
+ */
+@Entity
+@Table(name = "order_outbox")
+@Getter
+@Setter
+public class OrderOutboxEvent {
+    // Identity rather than the pooled sequences of BaseEntity, whose per-node id blocks would not follow insertion order
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "order_id", nullable = false)
+    private Long orderId;
+
+    @Column(name = "store_id", nullable = false)
+    private Long storeId;
+
+    // Addressee of the customer's /user/queue/orders
+    @Column(name = "user_email", nullable = false)
+    private String userEmail;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private OrderStatus status;
+
+    @Column(name = "order_version", nullable = false)
+    private Long orderVersion;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,76 @@
+package com.coffeeshop.backend.entity;
+
+import com.coffeeshop.backend.enums.OrderStatus;
+import com.coffeeshop.backend.enums.PaymentStatus;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+import org.springframework.data.domain.Persistable;
+
+import java.time.LocalDateTime;
+
+/**
+ * Denormalized copy of an order for the read side, kept up to date by OrderViewService.
+ * The columns are what listings filter and sort on; the rest of the order is in {@link #document}.
+ */
+@Entity
+@Table(name = "order_view")
+@Getter
+@Setter
+public class OrderView implements Persistable<Long> {
+    // Same id as the order, so it is assigned rather than generated
+    @Id
+    @Column(name = "order_id")
+    private Long orderId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "store_id", nullable = false)
+    private Long storeId;
+
+    @Column(name = "order_date", nullable = false)
+    private LocalDateTime orderDate;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private OrderStatus status;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "payment_status")
+    private PaymentStatus paymentStatus;
+
+    // Version of the order this row was built from
+    @Column(name = "order_version", nullable = false)
+    private Long orderVersion;
+
+    // The OrderResponse served for this order, as JSON
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "document", nullable = false)
+    private String document;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // Lets save() insert new rows directly instead of merging, which would select them first
+    @Transient
+    private boolean isNew = true;
+
+    @Override
+    public Long getId() {
+        return orderId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+}
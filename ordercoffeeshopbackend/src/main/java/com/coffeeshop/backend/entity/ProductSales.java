@@ -0,0 +1,37 @@
+package com.coffeeshop.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.domain.Persistable;
+
+/**
+ * Items of a product sold by a store on one day, less those of cancelled orders; see ProductSalesService.
+ */
+@Entity
+@Table(name = "product_sales")
+@Getter
+@Setter
+public class ProductSales implements Persistable<ProductSalesId> {
+
+    @EmbeddedId
+    private ProductSalesId id;
+
+    @Column(name = "quantity", nullable = false)
+    private long quantity;
+
+    // Lets save() insert new rows directly instead of merging, which would select them first
+    @Transient
+    private boolean isNew = true;
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+}
@@ -0,0 +1,33 @@
+package com.coffeeshop.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDate;
+
+/**
+ * Items sold (or, negative, taken back by a cancellation) waiting to be added to {@link ProductSales}.
+ */
+@Entity
+@Table(name = "product_sales_changes")
+@Getter
+@Setter
+public class ProductSalesChange {
+    // Rows are only written by the INSERT ... SELECT of ProductSalesChangeRepository, so the bigserial column fills the id
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(name = "store_id", nullable = false)
+    private Long storeId;
+
+    @Column(name = "sales_date", nullable = false)
+    private LocalDate salesDate;
+
+    @Column(name = "quantity", nullable = false)
+    private long quantity;
+}
@@ -0,0 +1,32 @@
+package com.coffeeshop.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+@Entity
+@Table(name = "product_stock_shards", uniqueConstraints = {
+    @UniqueConstraint(columnNames = {"product_variant_id", "store_id", "shard_index"})
+})
+@Getter
+@Setter
+public class ProductStockShard {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "product_variant_id", nullable = false)
+    private ProductVariant productVariant;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "store_id", nullable = false)
+    private Store store;
+
+    @Column(name = "shard_index", nullable = false)
+    private int shardIndex;
+
+    @Column(name = "quantity", nullable = false)
+    private int quantity = 0;
+}
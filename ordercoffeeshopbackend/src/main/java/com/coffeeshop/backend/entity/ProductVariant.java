@@ -31,4 +31,8 @@ public class ProductVariant extends BaseEntity {
 
     @Column(name = "is_active", nullable = false)
     private Boolean isActive;
+
+    // Number of sub-buckets the stock of this variant is split into at every store, 0 = not sharded
+    @Column(name = "stock_shards", nullable = false)
+    private int stockShards = 0;
 }
@@ -0,0 +1,9 @@
+package com.coffeeshop.backend.enums;
+
+public enum CheckoutStatus {
+    PENDING,
+    COMPLETED,
+    FAILED,
+    // Stopped waiting while the order was being written: it may exist, the customer's orders tell
+    UNKNOWN
+}
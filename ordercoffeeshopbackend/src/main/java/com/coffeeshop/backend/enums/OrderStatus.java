@@ -1,5 +1,11 @@
 package com.coffeeshop.backend.enums;
 
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
 public enum OrderStatus {
     PENDING,
     PAID,
@@ -7,5 +13,32 @@ public enum OrderStatus {
     FINISHED_PREPARING,
     DELIVERING,
     DELIVERED,
-    CANCELLED
+    CANCELLED;
+
+    // Allowed moves; DELIVERED and CANCELLED are final. FINISHED_PREPARING may go straight
+    // to DELIVERED for pickup orders.
+    private static final Map<OrderStatus, Set<OrderStatus>> TRANSITIONS = new EnumMap<>(OrderStatus.class);
+    private static final Map<OrderStatus, Set<OrderStatus>> SOURCES = new EnumMap<>(OrderStatus.class);
+
+    static {
+        TRANSITIONS.put(PENDING, EnumSet.of(PAID, CANCELLED));
+        TRANSITIONS.put(PAID, EnumSet.of(PREPARING, CANCELLED));
+        TRANSITIONS.put(PREPARING, EnumSet.of(FINISHED_PREPARING, CANCELLED));
+        TRANSITIONS.put(FINISHED_PREPARING, EnumSet.of(DELIVERING, DELIVERED));
+        TRANSITIONS.put(DELIVERING, EnumSet.of(DELIVERED));
+        TRANSITIONS.put(DELIVERED, EnumSet.noneOf(OrderStatus.class));
+        TRANSITIONS.put(CANCELLED, EnumSet.noneOf(OrderStatus.class));
+
+        for (OrderStatus target : values()) {
+            SOURCES.put(target, EnumSet.noneOf(OrderStatus.class));
+        }
+        TRANSITIONS.forEach((source, targets) -> targets.forEach(target -> SOURCES.get(target).add(source)));
+    }
+
+    /**
+     * The statuses an order may be in to move to {@code target}.
+     */
+    public static Set<OrderStatus> sourcesOf(OrderStatus target) {
+        return Collections.unmodifiableSet(SOURCES.get(target));
+    }
 }
@@ -4,4 +4,6 @@ public enum PaymentStatus {
     PENDING,
     SUCCESS,
     FAILED,
+    // Charged after the order was cancelled or expired; the money has to go back to the customer
+    REFUND_REQUIRED,
 }
@@ -0,0 +1,14 @@
+package com.coffeeshop.backend.event;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Published inside the transaction that created or changed the given orders.
+ */
+public record OrderChangedEvent(Collection<Long> orderIds) {
+
+    public static OrderChangedEvent of(Long orderId) {
+        return new OrderChangedEvent(List.of(orderId));
+    }
+}
@@ -0,0 +1,14 @@
+package com.coffeeshop.backend.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * The request stopped waiting while what it started may still commit, so neither success nor failure can be reported.
+ */
+@ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+public class OutcomeUnknownException extends RuntimeException {
+    public OutcomeUnknownException(String message) {
+        super(message);
+    }
+}
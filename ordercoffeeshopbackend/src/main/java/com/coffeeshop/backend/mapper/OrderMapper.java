@@ -34,4 +34,11 @@ public interface OrderMapper {
     @Mapping(source = "orderDetails", target = "items")
     @Mapping(source = "totalPrice", target = "totalAmount")
     OrderResponse toOrderDTO(Order order);
+
+    // Everything but the items, for callers that fill the items from another source. Orders do not
+    // store their delivery method, so like toOrderResponse this leaves it unset
+    @Mapping(target = "items", ignore = true)
+    @Mapping(target = "deliveryMethod", ignore = true)
+    @Mapping(source = "totalPrice", target = "totalAmount")
+    OrderResponse toOrderSummary(Order order);
 }
@@ -1,9 +1,12 @@
 package com.coffeeshop.backend.mapper;
 
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 
 import com.coffeeshop.backend.dto.product.ProductDTO;
+import com.coffeeshop.backend.dto.product.ProductVariantDTO;
 import com.coffeeshop.backend.entity.Product;
+import com.coffeeshop.backend.entity.ProductVariant;
 
 
 @Mapper(componentModel = "spring", uses = {CategoryMapper.class})
@@ -13,4 +16,8 @@ public interface ProductMapper {
 
     Product toProduct(ProductDTO productDTO);
 
+    // The variants of toProduct; sharding is changed through the stock endpoints only
+    @Mapping(target = "stockShards", ignore = true)
+    ProductVariant toProductVariant(ProductVariantDTO productVariantDTO);
+
 }
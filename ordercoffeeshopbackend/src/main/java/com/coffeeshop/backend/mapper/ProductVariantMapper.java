@@ -3,10 +3,13 @@ package com.coffeeshop.backend.mapper;
 import com.coffeeshop.backend.dto.product.ProductVariantDTO;
 import com.coffeeshop.backend.entity.ProductVariant;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 
 @Mapper(componentModel = "spring")
 public interface ProductVariantMapper {
     ProductVariantDTO toProductVariantDTO(ProductVariant productVariant);
 
+    // Sharding is changed through the stock endpoints only
+    @Mapping(target = "stockShards", ignore = true)
     ProductVariant toProductVariant(ProductVariantDTO productVariantDTO);
 }
@@ -2,8 +2,18 @@ package com.coffeeshop.backend.repository;
 
 import com.coffeeshop.backend.entity.OrderDetail;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface OrderDetailRepository extends JpaRepository<OrderDetail, Long> {
+
+    // Rows of [storeId, productVariantId, total quantity], sorted so stock rows are locked in a fixed order
+    @Query("SELECT d.order.store.id, d.productVariant.id, SUM(d.quantity) FROM OrderDetail d " +
+            "WHERE d.order.id IN :orderIds GROUP BY d.order.store.id, d.productVariant.id " +
+            "ORDER BY d.order.store.id, d.productVariant.id")
+    List<Object[]> sumQuantitiesByStoreAndVariant(Collection<Long> orderIds);
 }
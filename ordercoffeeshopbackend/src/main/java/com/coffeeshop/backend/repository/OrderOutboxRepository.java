@@ -0,0 +1,20 @@
+package com.coffeeshop.backend.repository;
+
+import com.coffeeshop.backend.entity.OrderOutboxEvent;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OrderOutboxRepository extends JpaRepository<OrderOutboxEvent, Long> {
+    // Oldest first. A plain lock, not SKIP LOCKED: a relay on another node waits for this batch
+    // instead of sending the next one alongside it, which keeps each store's events in order
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e FROM OrderOutboxEvent e ORDER BY e.id")
+    List<OrderOutboxEvent> findAndLockOldest(Pageable limit);
+}
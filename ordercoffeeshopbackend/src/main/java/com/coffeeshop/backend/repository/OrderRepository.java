@@ -1,10 +1,20 @@
 package com.coffeeshop.backend.repository;
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import com.coffeeshop.backend.entity.Order;
+import com.coffeeshop.backend.enums.OrderStatus;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 import java.time.LocalDateTime;
 
@@ -15,8 +25,96 @@ import org.springframework.data.domain.Pageable;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
-    Page<Order> findAllByUserId(Long userId, Pageable pageable);
-    Page<Order> findByStoreId(Long storeId, Pageable pageable);
+    // Order listings read a page of ids first, then load just those orders with findAllWithItemsByIdIn.
+    // Paging a fetch join would make Hibernate page in memory, and paging entities lazily costs several queries per order.
+    @Query(value = "SELECT o.id FROM Order o WHERE o.user.id = :userId",
+            countQuery = "SELECT COUNT(o) FROM Order o WHERE o.user.id = :userId")
+    Page<Long> findIdsByUserId(Long userId, Pageable pageable);
+
+    @Query(value = "SELECT o.id FROM Order o WHERE o.store.id = :storeId",
+            countQuery = "SELECT COUNT(o) FROM Order o WHERE o.store.id = :storeId")
+    Page<Long> findIdsByStoreId(Long storeId, Pageable pageable);
+
+    @Query(value = "SELECT o.id FROM Order o", countQuery = "SELECT COUNT(o) FROM Order o")
+    Page<Long> findAllIds(Pageable pageable);
+
+    // Keyset feeds, newest first: no OFFSET and no count, so every page costs the same however deep it is.
+    // The row-value comparison matches the (order_date DESC, id DESC) indexes from V10.
+    @Query("SELECT o.id, o.orderDate FROM Order o ORDER BY o.orderDate DESC, o.id DESC")
+    List<Object[]> findFeedStart(Pageable limit);
+
+    @Query("SELECT o.id, o.orderDate FROM Order o WHERE (o.orderDate, o.id) < (:orderDate, :id) " +
+            "ORDER BY o.orderDate DESC, o.id DESC")
+    List<Object[]> findFeedAfter(LocalDateTime orderDate, Long id, Pageable limit);
+
+    @Query("SELECT o.id, o.orderDate FROM Order o WHERE o.store.id = :storeId ORDER BY o.orderDate DESC, o.id DESC")
+    List<Object[]> findStoreFeedStart(Long storeId, Pageable limit);
+
+    @Query("SELECT o.id, o.orderDate FROM Order o WHERE o.store.id = :storeId AND (o.orderDate, o.id) < (:orderDate, :id) " +
+            "ORDER BY o.orderDate DESC, o.id DESC")
+    List<Object[]> findStoreFeedAfter(Long storeId, LocalDateTime orderDate, Long id, Pageable limit);
+
+    @Query("SELECT o.id FROM Order o WHERE o.store.id = :storeId AND o.status IN :statuses " +
+            "ORDER BY o.orderDate DESC, o.id DESC")
+    List<Long> findIdsByStoreIdAndStatusIn(Long storeId, Collection<OrderStatus> statuses, Pageable limit);
+
+    // Everything OrderMapper.toOrderResponse touches, in one query. Payment is included because
+    // the inverse one-to-one would otherwise be loaded with a query per order.
+    @EntityGraph(attributePaths = {"user", "payment", "orderDetails", "orderDetails.productVariant",
+            "orderDetails.productVariant.product"})
+    @Query("SELECT DISTINCT o FROM Order o WHERE o.id IN :ids")
+    List<Order> findAllWithItemsByIdIn(Collection<Long> ids);
+
+    @EntityGraph(attributePaths = {"user", "payment", "orderDetails", "orderDetails.productVariant",
+            "orderDetails.productVariant.product"})
+    @Query("SELECT o FROM Order o WHERE o.id = :id")
+    Optional<Order> findWithItemsById(Long id);
+
+    // Enough for a status change: the outbox event needs the customer, the summary everything but the items.
+    // Payment is joined because the inverse one-to-one would otherwise cost a query of its own
+    @EntityGraph(attributePaths = {"user", "payment"})
+    @Query("SELECT o FROM Order o WHERE o.id = :id")
+    Optional<Order> findWithUserById(Long id);
+
+    // Keyset walk over every order for the read model rebuild; waits for, and then holds off,
+    // status changes to the batch until it is projected
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM Order o WHERE o.id > :afterId ORDER BY o.id")
+    List<Order> findAndLockAfter(Long afterId, Pageable limit);
+
     List<Order> findAllByOrderDateBetween(LocalDateTime startDate, LocalDateTime endDate);
     List<Order> findAllByOrderDateBetweenAndStoreId(LocalDateTime startDate, LocalDateTime endDate, Long storeId);
+
+    @Query("SELECT o.status FROM Order o WHERE o.id = :id")
+    Optional<OrderStatus> findStatusById(Long id);
+
+    // Compare-and-set on the status: one statement, no entity load, and 0 rows when another
+    // request changed the order first. Clears the persistence context so later reads see the new status.
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Order o SET o.status = :target, o.version = o.version + 1, o.updatedAt = :now " +
+            "WHERE o.id = :id AND o.status IN :sources")
+    int updateStatusIfIn(Long id, OrderStatus target, Collection<OrderStatus> sources, LocalDateTime now);
+
+    /**
+     * Moves the order to {@code target} if the transition table allows it from its current status.
+     *
+     * @return false if the order does not exist or its current status does not allow the move
+     */
+    default boolean transitionStatus(Long id, OrderStatus target) {
+        return updateStatusIfIn(id, target, OrderStatus.sourcesOf(target), LocalDateTime.now()) == 1;
+    }
+
+    // Lock timeout -2 is SKIP LOCKED: several nodes can sweep at once and never wait on each other
+    // or on a payment callback that holds the order row
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT o FROM Order o WHERE o.status = com.coffeeshop.backend.enums.OrderStatus.PENDING " +
+            "AND o.expiresAt <= :now ORDER BY o.expiresAt")
+    List<Order> findAndLockExpired(LocalDateTime now, Pageable pageable);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT o FROM Order o WHERE o.id IN :ids AND o.status = com.coffeeshop.backend.enums.OrderStatus.PENDING " +
+            "AND o.expiresAt <= :now")
+    List<Order> findAndLockExpiredByIds(Collection<Long> ids, LocalDateTime now);
 }
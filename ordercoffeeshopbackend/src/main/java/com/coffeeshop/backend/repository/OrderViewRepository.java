@@ -0,0 +1,41 @@
+package com.coffeeshop.backend.repository;
+
+import com.coffeeshop.backend.entity.OrderView;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OrderViewRepository extends JpaRepository<OrderView, Long> {
+    // Listings are single-table reads on the V11 indexes; the page content comes with the rows
+    Page<OrderView> findByUserId(Long userId, Pageable pageable);
+
+    Page<OrderView> findByStoreId(Long storeId, Pageable pageable);
+
+    @Query("SELECT v FROM OrderView v ORDER BY v.orderDate DESC, v.orderId DESC")
+    List<OrderView> findFeedStart(Pageable limit);
+
+    @Query("SELECT v FROM OrderView v WHERE (v.orderDate, v.orderId) < (:orderDate, :id) " +
+            "ORDER BY v.orderDate DESC, v.orderId DESC")
+    List<OrderView> findFeedAfter(LocalDateTime orderDate, Long id, Pageable limit);
+
+    @Query("SELECT v FROM OrderView v WHERE v.storeId = :storeId ORDER BY v.orderDate DESC, v.orderId DESC")
+    List<OrderView> findStoreFeedStart(Long storeId, Pageable limit);
+
+    @Query("SELECT v FROM OrderView v WHERE v.storeId = :storeId AND (v.orderDate, v.orderId) < (:orderDate, :id) " +
+            "ORDER BY v.orderDate DESC, v.orderId DESC")
+    List<OrderView> findStoreFeedAfter(Long storeId, LocalDateTime orderDate, Long id, Pageable limit);
+
+    // Serializes refreshes of the same orders, so each one reads the orders after the previous one wrote
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT v FROM OrderView v WHERE v.orderId IN :ids")
+    List<OrderView> findAndLockAllById(Collection<Long> ids);
+}
@@ -1,12 +1,27 @@
 package com.coffeeshop.backend.repository;
 
 import com.coffeeshop.backend.entity.Payment;
+import com.coffeeshop.backend.enums.PaymentStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+
 @Repository
 public interface PaymentRepository extends JpaRepository<Payment, Long> {
 
-    
-    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Payment p SET p.status = :status, p.paymentDate = :paymentDate, p.updatedAt = :paymentDate " +
+            "WHERE p.order.id = :orderId")
+    int updateStatusByOrderId(Long orderId, PaymentStatus status, LocalDateTime paymentDate);
+
+    // Only from one of the sources, so a repeated callback changes nothing the second time
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Payment p SET p.status = :status, p.paymentDate = :paymentDate, p.updatedAt = :paymentDate " +
+            "WHERE p.order.id = :orderId AND p.status IN :sources")
+    int updateStatusByOrderIdIfIn(Long orderId, PaymentStatus status, Collection<PaymentStatus> sources,
+            LocalDateTime paymentDate);
 }
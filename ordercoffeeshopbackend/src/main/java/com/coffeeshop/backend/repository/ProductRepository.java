@@ -1,9 +1,11 @@
 package com.coffeeshop.backend.repository;
 
+import com.coffeeshop.backend.dto.product.ProductSearchEntry;
 import com.coffeeshop.backend.entity.Product;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -15,15 +17,15 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
 
     List<Product> findByIsActive(boolean isActive);
 
-    Page<Product> findByNameContainingIgnoreCaseAndIsActive(String name, boolean isActive, Pageable pageable);
-
     List<Product> findByCategory_Name(String categoryName);
 
     Page<Product> findByCategory_NameAndIsActive(String categoryName, boolean isActive, Pageable pageable);
 
     List<Product> findByCategory_NameAndNameContainingIgnoreCaseAndIsActive(String categoryName, String name, boolean isActive);
 
-    Page<Product> findByCategory_NameAndNameContainingIgnoreCaseAndIsActive(String categoryName, String name, boolean isActive, Pageable pageable);
-
     List<Product> findByIsActiveAndNameContainingIgnoreCase(boolean isActive, String name);
+
+    @Query("SELECT new com.coffeeshop.backend.dto.product.ProductSearchEntry(p.id, p.name, c.name) " +
+            "FROM Product p LEFT JOIN p.category c WHERE p.isActive = true")
+    List<ProductSearchEntry> findAllSearchEntries();
 }
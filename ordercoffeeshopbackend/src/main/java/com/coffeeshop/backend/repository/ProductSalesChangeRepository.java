@@ -0,0 +1,38 @@
+package com.coffeeshop.backend.repository;
+
+import com.coffeeshop.backend.entity.ProductSalesChange;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ProductSalesChangeRepository extends JpaRepository<ProductSalesChange, Long> {
+
+    /**
+     * Appends one change per (product, store, order day) of the orders, {@code sign} times their quantity,
+     * in a single statement.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO product_sales_changes (product_id, store_id, sales_date, quantity) " +
+            "SELECT v.product_id, o.store_id, CAST(o.order_date AS date), SUM(d.quantity) * :sign " +
+            "FROM order_details d " +
+            "JOIN orders o ON o.id = d.order_id " +
+            "JOIN product_variants v ON v.id = d.product_variant_id " +
+            "WHERE o.id IN (:orderIds) " +
+            "GROUP BY v.product_id, o.store_id, CAST(o.order_date AS date)", nativeQuery = true)
+    int appendForOrders(Collection<Long> orderIds, long sign);
+
+    // Oldest first, so a backlog drains in the order it built up. A plain lock, not SKIP LOCKED: the rollup
+    // reads and rewrites the product_sales totals without locking them, so a job on another node has to wait
+    // for this batch rather than sum the next rows at the same time and overwrite what this one adds
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM ProductSalesChange c ORDER BY c.id")
+    List<ProductSalesChange> findAndLockOldest(Pageable limit);
+}
@@ -0,0 +1,28 @@
+package com.coffeeshop.backend.repository;
+
+import com.coffeeshop.backend.entity.ProductSales;
+import com.coffeeshop.backend.entity.ProductSalesId;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+
+@Repository
+public interface ProductSalesRepository extends JpaRepository<ProductSales, ProductSalesId> {
+
+    /**
+     * Ids of the active products that sold most, in the store if given and from the day if given.
+     * Ties go to the lower id so pages never overlap; the pageable must not carry a sort of its own.
+     */
+    @Query(value = "SELECT s.id.productId FROM ProductSales s, Product p " +
+            "WHERE p.id = s.id.productId AND p.isActive = true " +
+            "AND (:storeId IS NULL OR s.id.storeId = :storeId) AND (:from IS NULL OR s.id.salesDate >= :from) " +
+            "GROUP BY s.id.productId ORDER BY SUM(s.quantity) DESC, s.id.productId",
+            countQuery = "SELECT COUNT(DISTINCT s.id.productId) FROM ProductSales s, Product p " +
+                    "WHERE p.id = s.id.productId AND p.isActive = true " +
+                    "AND (:storeId IS NULL OR s.id.storeId = :storeId) AND (:from IS NULL OR s.id.salesDate >= :from)")
+    Page<Long> findBestSellingProductIds(Long storeId, LocalDate from, Pageable pageable);
+}
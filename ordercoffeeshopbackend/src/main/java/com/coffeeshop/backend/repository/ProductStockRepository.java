@@ -4,9 +4,12 @@ import com.coffeeshop.backend.entity.ProductStock;
 import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,4 +22,24 @@ public interface ProductStockRepository extends JpaRepository<ProductStock, Long
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("SELECT ps FROM ProductStock ps WHERE ps.productVariant.id = :productVariantId AND ps.store.id = :storeId")
     Optional<ProductStock> findAndLockByProductVariantIdAndStoreId(Long productVariantId, Long storeId);
+
+    // Locks all rows of a cart in one round trip. The fixed ORDER BY makes every transaction
+    // acquire the row locks in the same order, so two carts can never wait on each other in a cycle.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT ps FROM ProductStock ps WHERE ps.store.id = :storeId AND ps.productVariant.id IN :productVariantIds ORDER BY ps.productVariant.id")
+    List<ProductStock> findAndLockAllByStoreIdAndProductVariantIds(Long storeId, Collection<Long> productVariantIds);
+
+    // Guarded decrement: returns 0 instead of going negative, so no prior SELECT ... FOR UPDATE is needed
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ProductStock ps SET ps.quantity = ps.quantity - :quantity, ps.lastUpdated = :now " +
+            "WHERE ps.store.id = :storeId AND ps.productVariant.id = :productVariantId AND ps.quantity >= :quantity")
+    int decrementIfAvailable(Long storeId, Long productVariantId, int quantity, LocalDateTime now);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ProductStock ps SET ps.quantity = ps.quantity + :quantity, ps.lastUpdated = :now " +
+            "WHERE ps.store.id = :storeId AND ps.productVariant.id = :productVariantId")
+    int increment(Long storeId, Long productVariantId, int quantity, LocalDateTime now);
+
+    @Query("SELECT ps FROM ProductStock ps WHERE ps.store.id = :storeId AND ps.productVariant.id IN :productVariantIds")
+    List<ProductStock> findAllByStoreIdAndProductVariantIds(Long storeId, Collection<Long> productVariantIds);
 }
@@ -0,0 +1,41 @@
+package com.coffeeshop.backend.repository;
+
+import com.coffeeshop.backend.entity.ProductStockShard;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ProductStockShardRepository extends JpaRepository<ProductStockShard, Long> {
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ProductStockShard s SET s.quantity = s.quantity - :quantity " +
+            "WHERE s.store.id = :storeId AND s.productVariant.id = :productVariantId AND s.shardIndex = :shardIndex AND s.quantity >= :quantity")
+    int decrementIfAvailable(Long storeId, Long productVariantId, int shardIndex, int quantity);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE ProductStockShard s SET s.quantity = s.quantity + :quantity " +
+            "WHERE s.store.id = :storeId AND s.productVariant.id = :productVariantId AND s.shardIndex = :shardIndex")
+    int increment(Long storeId, Long productVariantId, int shardIndex, int quantity);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM ProductStockShard s WHERE s.store.id = :storeId AND s.productVariant.id = :productVariantId ORDER BY s.shardIndex")
+    List<ProductStockShard> findAndLockAllByStoreIdAndProductVariantId(Long storeId, Long productVariantId);
+
+    @Query("SELECT s.productVariant.id, SUM(s.quantity) FROM ProductStockShard s " +
+            "WHERE s.store.id = :storeId AND s.productVariant.id IN :productVariantIds GROUP BY s.productVariant.id")
+    List<Object[]> sumByStoreIdAndProductVariantIds(Long storeId, Collection<Long> productVariantIds);
+
+    @Query("SELECT s.store.id, SUM(s.quantity) FROM ProductStockShard s WHERE s.productVariant.id = :productVariantId GROUP BY s.store.id")
+    List<Object[]> sumByStoreForProductVariantId(Long productVariantId);
+
+    @Modifying
+    @Query("DELETE FROM ProductStockShard s WHERE s.store.id = :storeId AND s.productVariant.id = :productVariantId")
+    void deleteAllByStoreIdAndProductVariantId(Long storeId, Long productVariantId);
+}
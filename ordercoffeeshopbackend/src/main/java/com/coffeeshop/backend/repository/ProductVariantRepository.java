@@ -1,13 +1,26 @@
 package com.coffeeshop.backend.repository;
 
+import com.coffeeshop.backend.dto.product.VariantCatalogEntry;
 import com.coffeeshop.backend.entity.ProductVariant;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface ProductVariantRepository extends JpaRepository<ProductVariant, Long> {
     @Modifying
     @Query("DELETE FROM ProductVariant pv WHERE pv.product.id = :productId")
     void deleteByProductId(Long productId);
-}
\ No newline at end of file
+
+    @Query("SELECT new com.coffeeshop.backend.dto.product.VariantCatalogEntry(v.id, v.price, v.size, p.name, v.isActive, p.isActive, v.stockShards) " +
+            "FROM ProductVariant v JOIN v.product p")
+    List<VariantCatalogEntry> findAllCatalogEntries();
+
+    // Variants that were deleted or taken off sale have no row
+    @Query("SELECT v.id, v.price FROM ProductVariant v JOIN v.product p " +
+            "WHERE v.id IN :ids AND v.isActive = true AND p.isActive = true")
+    List<Object[]> findActivePricesByIds(Collection<Long> ids);
+}
@@ -0,0 +1,166 @@
+package com.coffeeshop.backend.security;
+
+import com.coffeeshop.backend.entity.User;
+import com.coffeeshop.backend.enums.UserRole;
+import com.coffeeshop.backend.repository.UserRepository;
+import com.coffeeshop.backend.service.OrderBoardService;
+import com.coffeeshop.backend.service.OrderNotificationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.Map;
+
+/**
+ * Authorizes STOMP frames from clients. The session user is the one authenticated by the JWT
+ * cookie on the /ws or /ws-native handshake.
+ * <ul>
+ *   <li>SUBSCRIBE to a store topic or board: admins, or staff of that store</li>
+ *   <li>SUBSCRIBE to the all-stores topic: admins only</li>
+ *   <li>SUBSCRIBE to /user/queue/** and /topic/checkout/**: any authenticated user, both are private to them</li>
+ *   <li>SEND: only to /app/**, so clients cannot publish into the broker topics themselves</li>
+ * </ul>
+ * A client of the native endpoint that sends {@value #EVENT_FORMAT_HEADER}{@code :cbor} on CONNECT has its
+ * order event subscriptions moved to the CBOR variant of the destination. SockJS only carries text, so its
+ * sessions cannot subscribe to CBOR destinations.
+ */
+@Component
+public class StompAuthorizationInterceptor implements ChannelInterceptor {
+    private static final Logger logger = LoggerFactory.getLogger(StompAuthorizationInterceptor.class);
+
+    public static final String EVENT_FORMAT_HEADER = "event-format";
+    // Session attribute set by the handshake of the native endpoint
+    public static final String NATIVE_TRANSPORT_ATTRIBUTE = "nativeTransport";
+    private static final String CBOR_EVENTS_ATTRIBUTE = "cborEvents";
+
+    private final UserRepository userRepository;
+
+    public StompAuthorizationInterceptor(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    @Override
+    public Message<?> preSend(@NonNull Message<?> message, @NonNull MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+        String destination = accessor.getDestination();
+        if (accessor.getCommand() == StompCommand.CONNECT) {
+            negotiateEventFormat(accessor);
+        } else if (accessor.getCommand() == StompCommand.SUBSCRIBE) {
+            boolean cbor = destination != null && destination.endsWith(OrderNotificationService.CBOR_SUFFIX);
+            if (cbor && !isNative(accessor)) {
+                throw new AccessDeniedException("CBOR destinations need the native WebSocket endpoint");
+            }
+            authorizeSubscribe(accessor.getUser(), cbor
+                    ? destination.substring(0, destination.length() - OrderNotificationService.CBOR_SUFFIX.length())
+                    : destination);
+            if (!cbor && Boolean.TRUE.equals(attribute(accessor, CBOR_EVENTS_ATTRIBUTE))
+                    && isOrderEventDestination(destination)) {
+                StompHeaderAccessor rewritten = StompHeaderAccessor.wrap(message);
+                rewritten.setDestination(destination + OrderNotificationService.CBOR_SUFFIX);
+                return MessageBuilder.createMessage(message.getPayload(), rewritten.getMessageHeaders());
+            }
+        } else if (accessor.getCommand() == StompCommand.SEND
+                && (destination == null || !destination.startsWith("/app/"))) {
+            throw new AccessDeniedException("Clients may not send to " + destination);
+        }
+        return message;
+    }
+
+    private void authorizeSubscribe(Principal principal, String destination) {
+        if (principal == null) {
+            throw new AccessDeniedException("Subscriptions require an authenticated session");
+        }
+        if (destination == null) {
+            throw new AccessDeniedException("Subscription without a destination");
+        }
+        if (destination.startsWith("/user/queue/") || destination.startsWith("/topic/checkout/")) {
+            return;
+        }
+        if (destination.equals(OrderNotificationService.ALL_STORES_TOPIC)) {
+            if (role(principal) != UserRole.ADMIN) {
+                deny(principal, destination);
+            }
+            return;
+        }
+        Long storeId = storeIdOf(destination);
+        if (storeId == null) {
+            storeId = storeIdOf(destination, OrderBoardService.BOARD_DESTINATION_PREFIX,
+                    OrderBoardService.BOARD_DESTINATION_SUFFIX);
+        }
+        if (storeId != null) {
+            User user = userRepository.findByEmail(principal.getName()).orElse(null);
+            boolean allowed = user != null && (user.getRole() == UserRole.ADMIN
+                    || (user.getRole() == UserRole.STAFF && user.getStore() != null
+                            && storeId.equals(user.getStore().getId())));
+            if (!allowed) {
+                deny(principal, destination);
+            }
+            return;
+        }
+        deny(principal, destination);
+    }
+
+    private void negotiateEventFormat(StompHeaderAccessor accessor) {
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if ("cbor".equalsIgnoreCase(accessor.getFirstNativeHeader(EVENT_FORMAT_HEADER)) && isNative(accessor)
+                && attributes != null) {
+            attributes.put(CBOR_EVENTS_ATTRIBUTE, Boolean.TRUE);
+        }
+    }
+
+    private static boolean isNative(StompHeaderAccessor accessor) {
+        return Boolean.TRUE.equals(attribute(accessor, NATIVE_TRANSPORT_ATTRIBUTE));
+    }
+
+    private static Object attribute(StompHeaderAccessor accessor, String name) {
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        return attributes != null ? attributes.get(name) : null;
+    }
+
+    private static boolean isOrderEventDestination(String destination) {
+        return destination.equals(OrderNotificationService.ALL_STORES_TOPIC)
+                || destination.equals("/user" + OrderNotificationService.USER_QUEUE)
+                || storeIdOf(destination) != null;
+    }
+
+    private UserRole role(Principal principal) {
+        return userRepository.findByEmail(principal.getName()).map(User::getRole).orElse(null);
+    }
+
+    private void deny(Principal principal, String destination) {
+        logger.warn("User {} may not subscribe to {}", principal.getName(), destination);
+        throw new AccessDeniedException("Not allowed to subscribe to " + destination);
+    }
+
+    // "/topic/stores/{storeId}/orders" -> storeId, anything else -> null
+    static Long storeIdOf(String destination) {
+        return storeIdOf(destination, OrderNotificationService.STORE_TOPIC_PREFIX,
+                OrderNotificationService.STORE_TOPIC_SUFFIX);
+    }
+
+    private static Long storeIdOf(String destination, String prefix, String suffix) {
+        if (!destination.startsWith(prefix) || !destination.endsWith(suffix)
+                || destination.length() <= prefix.length() + suffix.length()) {
+            return null;
+        }
+        String id = destination.substring(prefix.length(), destination.length() - suffix.length());
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.coffeeshop.backend.service;
+
+import com.coffeeshop.backend.dto.order.CheckoutStatusResponse;
+import com.coffeeshop.backend.dto.order.CreateOrderRequest;
+import com.coffeeshop.backend.dto.order.OrderAcceptedResponse;
+
+/**
+ * Checkout that answers as soon as the cart is validated. The order itself is created on a
+ * bounded worker pool and the outcome is sent to the STOMP destination in the accepted response.
+ */
+public interface AsyncCheckoutService {
+
+    /**
+     * Validates the cart and queues the order.
+     *
+     * @throws com.coffeeshop.backend.exception.ServiceBusyException if the checkout queue is full
+     */
+    OrderAcceptedResponse accept(CreateOrderRequest request, String userEmail);
+
+    /**
+     * Current state of a checkout, for clients that subscribed after it finished.
+     */
+    CheckoutStatusResponse getStatus(String token, String userEmail);
+}
@@ -0,0 +1,59 @@
+package com.coffeeshop.backend.service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Messaging, counters and sets shared by every backend node. Each node only holds the STOMP sessions
+ * connected to it, so whatever is sent on one node has to be relayed to the others.
+ * <p>
+ * With {@code websocket.cluster.mode=local} (the default) this node is the whole cluster.
+ */
+public interface ClusterMessagingService {
+
+    /**
+     * Sends to the subscribers of the destination on every node, like
+     * {@link org.springframework.messaging.simp.SimpMessagingTemplate#convertAndSend(Object, Object)}.
+     */
+    void convertAndSend(String destination, Object payload);
+
+    /**
+     * Runs the handlers of the channel on every node, this one included, as the message arrives.
+     * Every node handles the messages of all nodes in the same order, each at most once; on a single
+     * node that is before this returns.
+     */
+    void publish(String channel, Object payload);
+
+    /**
+     * Registers a handler for the messages of the channel; on other nodes the payload is read back as {@code type}.
+     */
+    <T> void subscribe(String channel, Class<T> type, Consumer<T> handler);
+
+    /**
+     * Increments the counter shared by all nodes under the key and returns its new value, starting at 1.
+     */
+    long increment(String key);
+
+    /**
+     * The value of the counter shared by all nodes under the key, 0 until it is first incremented.
+     */
+    long getCounter(String key);
+
+    /**
+     * The value shared by all nodes under the key; the first node to ask stores {@code candidate}.
+     */
+    String share(String key, String candidate);
+
+    /**
+     * Adds the member to each of the sets shared by all nodes under the keys. A set is dropped once
+     * {@code ttl} has passed since it was last added to.
+     */
+    void addToSets(Collection<String> keys, String member, Duration ttl);
+
+    /**
+     * Removes up to {@code limit} members from each of the shared sets and returns them all.
+     */
+    Set<String> popSets(Collection<String> keys, int limit);
+}
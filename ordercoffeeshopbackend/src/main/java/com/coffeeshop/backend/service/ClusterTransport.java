@@ -0,0 +1,49 @@
+package com.coffeeshop.backend.service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * What {@link ClusterMessagingService} needs from the infrastructure connecting the nodes.
+ * Picked with {@code websocket.cluster.mode}.
+ */
+public interface ClusterTransport {
+
+    /**
+     * False when this node is the whole cluster, so nothing has to be published.
+     */
+    boolean isDistributed();
+
+    /**
+     * Delivers the message to the listeners of every node, this one included.
+     */
+    void publish(String message);
+
+    void subscribe(Consumer<String> listener);
+
+    long increment(String key);
+
+    /**
+     * The counter's value, 0 if it was never incremented.
+     */
+    long get(String key);
+
+    /**
+     * Stores the value unless the key already has one.
+     *
+     * @return the value stored under the key afterwards
+     */
+    String putIfAbsent(String key, String value);
+
+    /**
+     * Adds the member to each of the sets; a set expires once {@code ttl} has passed since it was last added to.
+     */
+    void addToSets(Collection<String> keys, String member, Duration ttl);
+
+    /**
+     * Removes and returns up to {@code limit} members of each of the sets, atomically for each set.
+     */
+    Set<String> popSets(Collection<String> keys, int limit);
+}
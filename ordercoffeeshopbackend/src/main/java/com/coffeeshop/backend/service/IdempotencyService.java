@@ -0,0 +1,27 @@
+package com.coffeeshop.backend.service;
+
+import java.util.function.Supplier;
+
+/**
+ * Runs a request at most once per {@code Idempotency-Key}. The first result is kept in Redis,
+ * so retries and double submits get that result back instead of running the action again.
+ */
+public interface IdempotencyService {
+
+    /**
+     * Runs {@code action} unless a request with the same scope and key already ran, in which
+     * case its stored result is returned. While the first request is still in flight, duplicates
+     * wait for its result. If the action fails with a client error or a 503, which write nothing,
+     * the key is freed for a retry; after any other failure retries get an
+     * {@link com.coffeeshop.backend.exception.OutcomeUnknownException} instead of running it again.
+     * A blank key runs the action without any idempotency handling.
+     *
+     * @param scope separates keys of different endpoints and users
+     * @param request the request body; the key can only be used again with the same one
+     * @throws com.coffeeshop.backend.exception.RequestInProgressException if the first request
+     *         does not finish within the wait timeout
+     * @throws com.coffeeshop.backend.exception.IdempotencyKeyReusedException if the key was used
+     *         with a different request body
+     */
+    <T> T execute(String scope, String idempotencyKey, Object request, Class<T> resultType, Supplier<T> action);
+}
@@ -0,0 +1,27 @@
+package com.coffeeshop.backend.service;
+
+import com.coffeeshop.backend.dto.order.OrderBoardSnapshot;
+
+/**
+ * Keeps the active orders of every store (PENDING through DELIVERING) in memory, kept current by
+ * the order events, so a staff board gets its starting state on subscribe without a query.
+ * <p>
+ * Boards are loaded from the database at startup, or on first use for a store that was not there
+ * yet, and hold at most {@code order.board.max-orders} orders each.
+ */
+public interface OrderBoardService {
+
+    // Subscribing here answers with the snapshot once; the live events come from the store topic
+    String BOARD_DESTINATION_PREFIX = "/app/stores/";
+    String BOARD_DESTINATION_SUFFIX = "/board";
+
+    /**
+     * The board of the store as of the latest event this node has applied to it.
+     */
+    OrderBoardSnapshot snapshot(Long storeId);
+
+    /**
+     * Loads the board of every store that has none yet.
+     */
+    void load();
+}
@@ -0,0 +1,33 @@
+package com.coffeeshop.backend.service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Cancels orders that were not paid before their {@code expiresAt} and gives their stock back.
+ * An in-memory timing wheel fires close to the deadline; a periodic database sweep catches
+ * everything the wheel does not know about (orders from other nodes, or from before a restart).
+ */
+public interface OrderExpiryService {
+
+    String REASON = "RESERVATION_EXPIRED";
+
+    /**
+     * Arms the timer for a new unpaid order. Inside a transaction it is armed after commit.
+     */
+    void schedule(Long orderId, LocalDateTime expiresAt);
+
+    /**
+     * Expires those of the given orders that are still unpaid and past their deadline.
+     *
+     * @return the number of orders cancelled
+     */
+    int expire(Collection<Long> orderIds);
+
+    /**
+     * Expires one batch of overdue orders found in the database.
+     *
+     * @return the number of orders cancelled
+     */
+    int expireOverdue();
+}
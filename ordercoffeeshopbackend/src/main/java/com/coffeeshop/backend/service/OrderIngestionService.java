@@ -0,0 +1,13 @@
+package com.coffeeshop.backend.service;
+
+import com.coffeeshop.backend.dto.order.CreateOrderRequest;
+import com.coffeeshop.backend.dto.order.OrderResponse;
+
+/**
+ * Entry point for new orders coming from the API. Selected with {@code order.ingestion.mode}:
+ * {@code direct} creates each order in its own transaction, {@code batched} group-commits
+ * orders of the same store.
+ */
+public interface OrderIngestionService {
+    OrderResponse placeOrder(CreateOrderRequest request, String userEmail);
+}
@@ -0,0 +1,46 @@
+package com.coffeeshop.backend.service;
+
+import com.coffeeshop.backend.dto.order.OrderStreamResponse;
+import com.coffeeshop.backend.entity.OrderOutboxEvent;
+
+/**
+ * Pushes order changes over STOMP to the clients that care about that order only:
+ * the staff of its store, its customer, and admins.
+ * <p>
+ * Changes go out as compact {@link com.coffeeshop.backend.dto.order.OrderEvent}s numbered per store.
+ * The latest events of every store are kept in a bounded ring buffer so a client that reconnects
+ * can catch up on what it missed.
+ */
+public interface OrderNotificationService {
+
+    // Staff boards of one store; subscribing is limited to that store's staff and admins
+    String STORE_TOPIC_PREFIX = "/topic/stores/";
+    String STORE_TOPIC_SUFFIX = "/orders";
+    // Every store, for admins only
+    String ALL_STORES_TOPIC = "/topic/orders";
+    // Resolved per session by the user destination prefix, so customers only ever get their own orders
+    String USER_QUEUE = "/queue/orders";
+    // Appended to each of the above for the same events encoded as CBOR, in binary frames
+    String CBOR_SUFFIX = ".cbor";
+
+    static String storeTopic(Long storeId) {
+        return STORE_TOPIC_PREFIX + storeId + STORE_TOPIC_SUFFIX;
+    }
+
+    /**
+     * Changes whenever sequences start over; positions from another epoch are meaningless.
+     */
+    String epoch();
+
+    /**
+     * Numbers the event in the stream of its store and sends it to the subscribers on every node. Called by the outbox relay once
+     * the change is committed; callers record changes with {@link OrderOutboxService#record}.
+     */
+    void publish(OrderOutboxEvent change);
+
+    /**
+     * Events of the store after {@code afterSeq}. {@code events} is null when they cannot all be replayed:
+     * too many to still be buffered, or numbered in another epoch; the caller then sends a snapshot.
+     */
+    OrderStreamResponse replay(Long storeId, String epoch, long afterSeq);
+}
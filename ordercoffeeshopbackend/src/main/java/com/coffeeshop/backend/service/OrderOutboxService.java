@@ -0,0 +1,24 @@
+package com.coffeeshop.backend.service;
+
+import com.coffeeshop.backend.entity.Order;
+
+/**
+ * Transactional outbox for order events. Changes are recorded in the transaction that makes them
+ * and pushed to clients by a relay once that transaction has committed, at least once and in
+ * recording order.
+ */
+public interface OrderOutboxService {
+
+    /**
+     * Records the current state of the order for the clients watching it. Must be called inside
+     * the transaction that changed the order; nothing is sent if it rolls back.
+     */
+    void record(Order order);
+
+    /**
+     * Sends one batch of recorded events and deletes them.
+     *
+     * @return the number of events sent
+     */
+    int relay();
+}
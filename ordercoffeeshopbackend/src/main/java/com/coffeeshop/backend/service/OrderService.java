@@ -1,7 +1,9 @@
 package com.coffeeshop.backend.service;
 
 import com.coffeeshop.backend.dto.order.CreateOrderRequest;
+import com.coffeeshop.backend.dto.order.OrderFeedResponse;
 import com.coffeeshop.backend.dto.order.OrderResponse;
+import com.coffeeshop.backend.dto.order.OrderStreamResponse;
 import com.coffeeshop.backend.enums.OrderStatus;
 import java.util.List;
 
@@ -14,8 +16,19 @@ import com.coffeeshop.backend.dto.voucher.VoucherValidationResponse;
 public interface OrderService {
     OrderResponse createOrder(CreateOrderRequest request, String userEmail);
 
+    /**
+     * Creates several orders for one store in a single transaction, with one stock update per variant.
+     * All or nothing: any failure rolls back the whole batch.
+     */
+    List<OrderResponse> createOrders(Long storeId, List<CreateOrderRequest> requests, List<String> userEmails);
+
     VoucherValidationResponse validateVoucher(VoucherValidationRequest request);
 
+    /**
+     * Moves the order to the status if the transition table allows it from its current one.
+     *
+     * @return the order after the change, without its items
+     */
     OrderResponse updateOrderStatus(Long orderId, OrderStatus status);
 
 
@@ -27,6 +40,19 @@ public interface OrderService {
 
     Page<OrderResponse> getAllOrders(org.springframework.security.core.userdetails.UserDetails userDetails, Pageable pageable);
 
+    /**
+     * Keyset-paged feed for admins (all stores) and staff (their store), newest first.
+     *
+     * @param cursor {@code nextCursor} of the previous slice, or null for the first one
+     */
+    OrderFeedResponse getOrderFeed(org.springframework.security.core.userdetails.UserDetails userDetails, String cursor, int size);
+
+    /**
+     * Catch-up for a client reconnecting to the STOMP stream of a store: the events it missed after
+     * {@code afterSeq}, or a snapshot of the latest orders when they can no longer be replayed.
+     */
+    OrderStreamResponse getOrderStream(org.springframework.security.core.userdetails.UserDetails userDetails, Long storeId, String epoch, long afterSeq);
+
     void cancelOrder(Long orderId, String username);
 
     void processMockPayment(Long orderId);
@@ -0,0 +1,32 @@
+package com.coffeeshop.backend.service;
+
+import com.coffeeshop.backend.dto.order.OrderResponse;
+import com.coffeeshop.backend.entity.OrderView;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Maintains the order_view read model: one denormalized row per order, rewritten whenever
+ * an {@link com.coffeeshop.backend.event.OrderChangedEvent} is published for it.
+ */
+public interface OrderViewService {
+
+    /**
+     * Rewrites the rows of the given orders from the orders table, in the caller's transaction.
+     * Rows already built from a later version of their order are left as they are.
+     */
+    void refresh(Collection<Long> orderIds);
+
+    /**
+     * Rebuilds the row of every order, in batches with a transaction each. Used to backfill
+     * orders placed before the read model existed; safe to run while orders are being placed.
+     *
+     * @return the number of orders projected
+     */
+    int rebuild();
+
+    OrderResponse toResponse(OrderView view);
+
+    List<OrderResponse> toResponses(List<OrderView> views);
+}
@@ -0,0 +1,46 @@
+package com.coffeeshop.backend.service;
+
+import com.coffeeshop.backend.dto.product.ProductDTO;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collection;
+import java.util.function.Supplier;
+
+/**
+ * Menu pages cached in {@value #CACHE}, each tagged with the listing it was read from and the products on it,
+ * so an edit only evicts the pages it can change.
+ * <p>
+ * Keys also carry a catalog version shared by all nodes. Moving to a new version leaves every page cached so
+ * far behind at once; it is the fallback when tagged eviction would touch too many pages or fails.
+ */
+public interface ProductCacheService {
+
+    String CACHE = "products";
+    // The listing of every active product, as opposed to the listing of one category
+    String ALL_PRODUCTS = "*";
+    // The ranking of active products by items sold
+    String BEST_SELLING = "best-selling";
+
+    /**
+     * The cached page of the listing (a category name, {@link #ALL_PRODUCTS} or {@link #BEST_SELLING}) narrowed
+     * by {@code search}, or the page {@code loader} reads, which is then cached.
+     */
+    Page<ProductDTO> getPage(String listing, String search, Pageable pageable, Supplier<Page<ProductDTO>> loader);
+
+    /**
+     * Evicts the pages showing any of the products and every page of the listings, then again on every node once
+     * the transaction commits (or straight away outside one), so a page read while it ran is not kept after it.
+     * A node that misses that message, e.g. while disconnected from Redis, can keep such a page until it expires.
+     */
+    void evict(Collection<Long> productIds, Collection<String> listings);
+
+    /**
+     * Moves every node to a new catalog version.
+     *
+     * @return the new version
+     */
+    long bumpVersion();
+
+    long getVersion();
+}
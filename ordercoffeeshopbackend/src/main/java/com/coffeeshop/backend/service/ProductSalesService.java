@@ -0,0 +1,42 @@
+package com.coffeeshop.backend.service;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collection;
+
+/**
+ * Items sold per product, store and day, for the best-selling ranking. Orders are counted the day they are placed
+ * and taken back from that day when they are cancelled.
+ * <p>
+ * Checkout only appends a change in its own transaction; a background job adds the changes to the totals
+ * in the order they were recorded, so the ranking trails the orders by one rollup interval.
+ */
+public interface ProductSalesService {
+
+    /**
+     * Counts the items of newly placed orders. Must be called inside the transaction that saved them.
+     */
+    void recordSold(Collection<Long> orderIds);
+
+    /**
+     * Takes back the items of orders that have just been cancelled. Must be called inside the transaction
+     * that cancelled them, and only once per order.
+     */
+    void recordCancelled(Collection<Long> orderIds);
+
+    /**
+     * Adds one batch of recorded changes to the totals and deletes them.
+     *
+     * @return the number of changes applied
+     */
+    int rollUp();
+
+    /**
+     * Ids of the active products that sold most, best first.
+     *
+     * @param storeId only count this store's orders; every store if null
+     * @param days    only count the last this many days, today included; all time if null or not positive
+     */
+    Page<Long> getBestSelling(Long storeId, Integer days, Pageable pageable);
+}
@@ -0,0 +1,30 @@
+package com.coffeeshop.backend.service;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * Read-through in-memory index of the active product names, searched without regard to case or Vietnamese
+ * tone marks ("ca phe sua" finds "Cà Phê Sữa"). Query words also match the start of a name word and, from four
+ * letters on, tolerate a typo.
+ */
+public interface ProductSearchService {
+
+    /**
+     * Ids of the active products matching every word of the query, best match first.
+     *
+     * @param categoryName only products of this category; every category if null
+     */
+    Page<Long> search(String query, String categoryName, Pageable pageable);
+
+    /**
+     * Version of the current index; it changes every time the index is invalidated.
+     */
+    long getVersion();
+
+    /**
+     * Drops the index on every node. When called inside a transaction it is dropped again after commit,
+     * so a rebuild that raced with the transaction cannot keep old names.
+     */
+    void invalidate();
+}
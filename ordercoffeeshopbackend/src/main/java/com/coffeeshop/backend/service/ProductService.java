@@ -17,6 +17,8 @@ public interface ProductService {
 
     Page<ProductDTO> getProductsByCategory(String categoryName, String search, Pageable pageable);
 
+    Page<ProductDTO> getBestSellingProducts(Long storeId, Integer days, Pageable pageable);
+
     ProductDTO getProductById(Long productId);
 
     ProductDTO createProduct(ProductRequest productRequest);
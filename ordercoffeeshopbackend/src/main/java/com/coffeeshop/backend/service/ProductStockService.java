@@ -6,4 +6,6 @@ import java.util.List;
 public interface ProductStockService {
     List<ProductStockDTO> getStockByProductVariantId(Long productVariantId);
     ProductStockDTO updateStock(Long stockId, int quantity);
+    void updateSharding(Long productVariantId, int shards);
+    void rebalanceShards(Long productVariantId);
 }
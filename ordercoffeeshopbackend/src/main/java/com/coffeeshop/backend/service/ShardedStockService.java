@@ -0,0 +1,52 @@
+package com.coffeeshop.backend.service;
+
+import com.coffeeshop.backend.entity.ProductStock;
+
+import java.util.Map;
+
+/**
+ * Stock counters for hot variants, split into several sub-buckets per store so that
+ * concurrent sales of the same variant do not all queue on one product_stocks row.
+ */
+public interface ShardedStockService {
+
+    /**
+     * Same contract as {@link StockReservationService#reserve}, for variants whose stock is sharded.
+     */
+    void reserve(Long storeId, Map<Long, Integer> quantitiesByVariantId, Long userId);
+
+    /**
+     * Same contract as {@link StockReservationService#reserveAll}, for variants whose stock is sharded.
+     */
+    void reserveAll(Long storeId, Map<Long, Map<Long, Integer>> quantitiesByUserId);
+
+    /**
+     * Puts stock back for sharded variants, for example when a reservation expires.
+     * Each quantity goes to one random shard, or to the main row if the locked row says the variant
+     * is no longer sharded; the history rows get the given reason.
+     */
+    void release(Long storeId, Map<Long, Integer> quantitiesByVariantId, String reason);
+
+    /**
+     * Turns sharding on (shards > 0), changes the shard count, or turns it off (shards = 0)
+     * for a variant at every store. Quantities are moved between the main row and the shards.
+     */
+    void setSharding(Long productVariantId, int shards);
+
+    /**
+     * Spreads the stock of a sharded variant evenly over its shards again at every store.
+     */
+    void rebalance(Long productVariantId);
+
+    /**
+     * Replaces the total quantity of a sharded stock row, spread evenly over its shards.
+     *
+     * @return the total quantity before the change
+     */
+    int setTotal(ProductStock productStock, int newTotal);
+
+    /**
+     * Total quantity per store id for a sharded variant.
+     */
+    Map<Long, Integer> getTotalsByStore(Long productVariantId);
+}
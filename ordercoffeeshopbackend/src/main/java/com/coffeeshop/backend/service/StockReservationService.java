@@ -0,0 +1,25 @@
+package com.coffeeshop.backend.service;
+
+import java.util.Map;
+
+public interface StockReservationService {
+
+    /**
+     * Reserves stock for every line of a cart at one store as a single unit.
+     * Either all quantities are decremented (and a SALE history row is written per variant)
+     * or nothing changes and an {@link com.coffeeshop.backend.exception.InsufficientStockException} is thrown.
+     *
+     * @param storeId                the store the order is placed at
+     * @param quantitiesByVariantId  requested quantity per product variant id
+     * @param userId                 the user placing the order, recorded in the stock history
+     */
+    void reserve(Long storeId, Map<Long, Integer> quantitiesByVariantId, Long userId);
+
+    /**
+     * Reserves the carts of several users at one store as a single unit: one stock update per variant for the
+     * combined quantity, and a SALE history row per user and variant.
+     *
+     * @param quantitiesByUserId requested quantity per product variant id, per user id
+     */
+    void reserveAll(Long storeId, Map<Long, Map<Long, Integer>> quantitiesByUserId);
+}
@@ -0,0 +1,29 @@
+package com.coffeeshop.backend.service;
+
+import com.coffeeshop.backend.dto.product.VariantCatalogEntry;
+
+/**
+ * Read-through, versioned in-memory copy of the variant data checkout needs
+ * (price, size, product name, active flag, stock shards), so carts can be priced
+ * without a database round trip per item. Prices are checked against the database
+ * before an order is saved.
+ */
+public interface VariantCatalogService {
+
+    /**
+     * @return the entry for the variant, or {@code null} if no such variant exists
+     */
+    VariantCatalogEntry get(long productVariantId);
+
+    /**
+     * Version of the current snapshot; it changes every time the catalog is invalidated.
+     */
+    long getVersion();
+
+    /**
+     * Drops the current snapshot on every node. When called inside a transaction the snapshot is
+     * dropped again after commit, and only then on the other nodes, so a reload that raced with the
+     * transaction cannot keep old data.
+     */
+    void invalidate();
+}
@@ -2,27 +2,34 @@ package com.coffeeshop.backend.service;
 
 import com.coffeeshop.backend.dto.payment.PaymentInitiationRequest;
 import com.coffeeshop.backend.entity.Order;
-import com.coffeeshop.backend.entity.Payment;
+import com.coffeeshop.backend.entity.OrderView;
 import com.coffeeshop.backend.enums.OrderStatus;
 import com.coffeeshop.backend.enums.PaymentStatus;
+import com.coffeeshop.backend.event.OrderChangedEvent;
 import com.coffeeshop.backend.repository.OrderRepository;
+import com.coffeeshop.backend.repository.OrderViewRepository;
 import com.coffeeshop.backend.repository.PaymentRepository;
 import com.coffeeshop.backend.utils.VnpayUtils;
-import com.coffeeshop.backend.mapper.OrderMapper;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import io.swagger.v3.oas.annotations.parameters.RequestBody;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.http.ResponseEntity;
 import com.coffeeshop.backend.exception.PaymentExceptionHanlder;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
@@ -42,8 +49,14 @@ public class VnpayService {
     private final VnpayUtils vnpayUtils;
     private final OrderRepository orderRepository;
     private final PaymentRepository paymentRepository;
-    private final SimpMessagingTemplate simpMessagingTemplate;
-    private final OrderMapper orderMapper;
+    private final OrderOutboxService orderOutboxService;
+    private final ProductSalesService productSalesService;
+    private final OrderViewRepository orderViewRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${order.view.read-enabled:false}")
+    private boolean viewReadEnabled;
 
     
     public ResponseEntity<String> createVnpayPaymentUrl(@RequestBody
@@ -91,8 +104,9 @@ public class VnpayService {
             return result;
         }
 
-        // 3. Check if the order has already been processed
-        if (order.getStatus() == OrderStatus.PAID || order.getStatus() == OrderStatus.CANCELLED) {
+        // 3. Check if the order has already been processed. Money taken for a cancelled order is still recorded below
+        boolean charged = VNP_SUCCESS_CODE.equals(vnpayParams.get("vnp_ResponseCode"));
+        if (order.getStatus() == OrderStatus.PAID || (order.getStatus() == OrderStatus.CANCELLED && !charged)) {
             logger.info("VNPAY callback: Order {} already processed with status {}", orderId, order.getStatus());
             result.put("RspCode", VNP_ORDER_ALREADY_CONFIRMED_CODE);
             result.put("Message", "Order already confirmed");
@@ -114,8 +128,19 @@ public class VnpayService {
         }
 
         // 5. Check transaction status from VNPAY
-        if (VNP_SUCCESS_CODE.equals(vnpayParams.get("vnp_ResponseCode"))) {
-            handleSuccessfulTransaction(order);
+        if (charged) {
+            if (!handleSuccessfulTransaction(order)) {
+                // Cancelled or expired before the money arrived, or already paid
+                if (!handleChargeAfterCancellation(order)) {
+                    logger.info("VNPAY callback: Order {} changed status before it could be marked paid", orderId);
+                    result.put("RspCode", VNP_ORDER_ALREADY_CONFIRMED_CODE);
+                    result.put("Message", "Order already confirmed");
+                    return result;
+                }
+                result.put("RspCode", VNP_SUCCESS_CODE);
+                result.put("Message", CONFIRM_SUCCESS_MESSAGE);
+                return result;
+            }
             logger.info("VNPAY payment successful for order {}", orderId);
             result.put("RspCode", VNP_SUCCESS_CODE);
             result.put("Message", CONFIRM_SUCCESS_MESSAGE);
@@ -133,25 +158,52 @@ public class VnpayService {
         return result;
     }
 
-    private void handleSuccessfulTransaction(Order order) {
-        order.setStatus(OrderStatus.PAID);
-        Payment payment = order.getPayment();
-        if (payment != null) {
-            payment.setStatus(PaymentStatus.SUCCESS);
-            paymentRepository.save(payment);
+    /**
+     * Marks the order paid with a conditional update, so a late IPN can never revive an order
+     * that was cancelled or expired in the meantime.
+     *
+     * @return false if the order was no longer pending
+     */
+    private boolean handleSuccessfulTransaction(Order order) {
+        if (!orderRepository.transitionStatus(order.getId(), OrderStatus.PAID)) {
+            return false;
         }
-        Order updatedOrder = orderRepository.save(order);
-        simpMessagingTemplate.convertAndSend("/topic/orders", orderMapper.toOrderDTO(updatedOrder));
+        paymentRepository.updateStatusByOrderId(order.getId(), PaymentStatus.SUCCESS, LocalDateTime.now());
+        Order updatedOrder = orderRepository.findWithItemsById(order.getId()).orElseThrow();
+        eventPublisher.publishEvent(OrderChangedEvent.of(order.getId()));
+        orderOutboxService.record(updatedOrder);
+        return true;
+    }
+
+    /**
+     * Keeps the money of a payment that went through after its order was cancelled, so it can be refunded.
+     *
+     * @return false if the payment was already recorded, by an earlier delivery of the same callback for example
+     */
+    private boolean handleChargeAfterCancellation(Order order) {
+        if (orderRepository.findStatusById(order.getId()).orElse(null) != OrderStatus.CANCELLED
+                || paymentRepository.updateStatusByOrderIdIfIn(order.getId(), PaymentStatus.REFUND_REQUIRED,
+                EnumSet.of(PaymentStatus.PENDING, PaymentStatus.FAILED), LocalDateTime.now()) == 0) {
+            return false;
+        }
+        logger.error("VNPAY charged {} for order {} after it was cancelled; the payment needs a refund",
+                order.getTotalPrice(), order.getId());
+        meterRegistry.counter("payments.refunds.required").increment();
+        eventPublisher.publishEvent(OrderChangedEvent.of(order.getId()));
+        return true;
     }
 
     private void handleFailedTransaction(Order order, String reason) {
-        order.setStatus(OrderStatus.CANCELLED); // Or keep it PENDING based on business logic
-        Payment payment = order.getPayment();
-        if (payment != null) {
-            payment.setStatus(PaymentStatus.FAILED);
-            paymentRepository.save(payment);
+        // Only a pending order can fail its payment; anything else has moved on already
+        if (orderRepository.updateStatusIfIn(order.getId(), OrderStatus.CANCELLED,
+                EnumSet.of(OrderStatus.PENDING), LocalDateTime.now()) == 1) {
+            productSalesService.recordCancelled(List.of(order.getId()));
+            paymentRepository.updateStatusByOrderId(order.getId(), PaymentStatus.FAILED, LocalDateTime.now());
+            eventPublisher.publishEvent(OrderChangedEvent.of(order.getId()));
+            // Takes the order off the store board it joined when it was placed
+            orderOutboxService.record(orderRepository.findWithItemsById(order.getId()).orElseThrow());
+            logger.info("Order {} cancelled: {}", order.getId(), reason);
         }
-        orderRepository.save(order);
     }
 
     /**
@@ -165,18 +217,23 @@ public class VnpayService {
             // Sanitize the orderId to remove any non-numeric characters before parsing.
             String sanitizedOrderId = orderId.replaceAll("[^0-9]", "");
             Long id = Long.parseLong(sanitizedOrderId);
-            Order order = orderRepository.findById(id).orElse(null);
-
-            if (order == null) {
+            // A primary key read on the read model once it is enabled; orders not projected yet fall back
+            // to the orders table
+            Optional<OrderStatus> projected = viewReadEnabled
+                    ? orderViewRepository.findById(id).map(OrderView::getStatus)
+                    : Optional.empty();
+            OrderStatus status = projected.or(() -> orderRepository.findStatusById(id)).orElse(null);
+
+            if (status == null) {
                 result.put("success", false);
                 result.put("message", "Order not found.");
                 return result;
             }
 
             result.put("success", true);
-            result.put("orderId", order.getId());
-            result.put("status", order.getStatus()); // e.g., PAID, PENDING, CANCELLED
-            logger.info("Returning payment status for Order ID {}: {}", id, order.getStatus());
+            result.put("orderId", id);
+            result.put("status", status); // e.g., PAID, PENDING, CANCELLED
+            logger.info("Returning payment status for Order ID {}: {}", id, status);
             return result;
         } catch (NumberFormatException e) {
             logger.error("Invalid Order ID format for: {}", orderId, e);
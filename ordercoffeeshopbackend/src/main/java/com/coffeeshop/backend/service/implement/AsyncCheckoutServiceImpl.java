@@ -0,0 +1,222 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.order.CheckoutStatusResponse;
+import com.coffeeshop.backend.dto.order.CreateOrderRequest;
+import com.coffeeshop.backend.dto.order.OrderAcceptedResponse;
+import com.coffeeshop.backend.dto.order.OrderItemRequest;
+import com.coffeeshop.backend.dto.order.OrderResponse;
+import com.coffeeshop.backend.dto.product.VariantCatalogEntry;
+import com.coffeeshop.backend.enums.CheckoutStatus;
+import com.coffeeshop.backend.exception.InvalidOrderException;
+import com.coffeeshop.backend.exception.OutcomeUnknownException;
+import com.coffeeshop.backend.exception.ResourceNotFoundException;
+import com.coffeeshop.backend.exception.ServiceBusyException;
+import com.coffeeshop.backend.service.AsyncCheckoutService;
+import com.coffeeshop.backend.service.ClusterMessagingService;
+import com.coffeeshop.backend.service.OrderIngestionService;
+import com.coffeeshop.backend.service.VariantCatalogService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs checkouts on a fixed pool with a bounded queue. When the queue is full new checkouts
+ * get 503 straight away, which is the backpressure signal for clients. Each outcome is stored
+ * in Redis for a while (so it can be fetched after a missed message) and sent to
+ * {@code /topic/checkout/{token}}.
+ */
+@Slf4j
+@Service
+public class AsyncCheckoutServiceImpl implements AsyncCheckoutService {
+
+    private static final String KEY_PREFIX = "checkout:";
+    private static final String DESTINATION_PREFIX = "/topic/checkout/";
+
+    private final OrderIngestionService orderIngestionService;
+    private final VariantCatalogService variantCatalogService;
+    private final ClusterMessagingService clusterMessagingService;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Timer completionTime;
+
+    private ThreadPoolExecutor executor;
+
+    @Value("${order.checkout.async.threads:8}")
+    private int threads;
+
+    @Value("${order.checkout.async.queue-capacity:500}")
+    private int queueCapacity;
+
+    @Value("${order.checkout.async.result-ttl-minutes:60}")
+    private long resultTtlMinutes;
+
+    public AsyncCheckoutServiceImpl(OrderIngestionService orderIngestionService,
+            VariantCatalogService variantCatalogService, ClusterMessagingService clusterMessagingService,
+            StringRedisTemplate redisTemplate, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.orderIngestionService = orderIngestionService;
+        this.variantCatalogService = variantCatalogService;
+        this.clusterMessagingService = clusterMessagingService;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.completionTime = Timer.builder("orders.checkout.async.completion")
+                .description("Time from accepting a checkout to its final result")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "checkout-worker-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        meterRegistry.gauge("orders.checkout.async.queue.depth", executor.getQueue(), Collection::size);
+    }
+
+    @Override
+    public OrderAcceptedResponse accept(CreateOrderRequest request, String userEmail) {
+        validate(request);
+
+        String token = UUID.randomUUID().toString();
+        CheckoutStatusResponse pending = new CheckoutStatusResponse();
+        pending.setToken(token);
+        pending.setStatus(CheckoutStatus.PENDING);
+        save(userEmail, pending);
+
+        long acceptedAt = System.nanoTime();
+        try {
+            executor.execute(() -> complete(token, request, userEmail, acceptedAt));
+        } catch (RejectedExecutionException e) {
+            redisTemplate.delete(key(userEmail, token));
+            meterRegistry.counter("orders.checkout.async.results", "result", "rejected").increment();
+            throw new ServiceBusyException("Too many checkouts in progress - please try again later");
+        }
+        return new OrderAcceptedResponse(token, CheckoutStatus.PENDING, DESTINATION_PREFIX + token);
+    }
+
+    @Override
+    public CheckoutStatusResponse getStatus(String token, String userEmail) {
+        // Keys are per user, so a token of someone else is simply not found
+        String stored = redisTemplate.opsForValue().get(key(userEmail, token));
+        if (stored == null) {
+            throw new ResourceNotFoundException("Checkout not found with token: " + token);
+        }
+        try {
+            return objectMapper.readValue(stored, CheckoutStatusResponse.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored checkout status cannot be read", e);
+        }
+    }
+
+    /**
+     * Checks that need no locks, so obviously bad carts are rejected before they take a queue slot.
+     * Stock, voucher and shipping are checked by the worker.
+     */
+    private void validate(CreateOrderRequest request) {
+        if (request.getStoreId() == null) {
+            throw new InvalidOrderException("Store is required");
+        }
+        if (request.getItems() == null || request.getItems().isEmpty()) {
+            throw new InvalidOrderException("Order must contain at least one item");
+        }
+        for (OrderItemRequest item : request.getItems()) {
+            if (item.getQuantity() <= 0) {
+                throw new InvalidOrderException("Quantity must be positive");
+            }
+            VariantCatalogEntry variant = item.getProductVariantId() == null ? null
+                    : variantCatalogService.get(item.getProductVariantId());
+            if (variant == null) {
+                throw new ResourceNotFoundException("ProductVariant not found with id: " + item.getProductVariantId());
+            }
+            if (!variant.isActive()) {
+                throw new ResourceNotFoundException(
+                        "Product is no longer available: " + variant.getProductName() + " - " + variant.getSize());
+            }
+        }
+        if ("delivery".equalsIgnoreCase(request.getDeliveryMethod()) && request.getAddressId() == null) {
+            throw new InvalidOrderException("Address is required for delivery");
+        }
+    }
+
+    private void complete(String token, CreateOrderRequest request, String userEmail, long acceptedAt) {
+        CheckoutStatusResponse result = new CheckoutStatusResponse();
+        result.setToken(token);
+        try {
+            OrderResponse order = orderIngestionService.placeOrder(request, userEmail);
+            result.setStatus(CheckoutStatus.COMPLETED);
+            result.setOrder(order);
+        } catch (OutcomeUnknownException e) {
+            // Not a failure: the order may still have committed, so the client must not simply retry
+            result.setStatus(CheckoutStatus.UNKNOWN);
+            result.setErrorStatus(HttpStatus.GATEWAY_TIMEOUT.value());
+            result.setErrorMessage(e.getMessage());
+        } catch (RuntimeException e) {
+            ResponseStatus responseStatus = AnnotatedElementUtils.findMergedAnnotation(e.getClass(), ResponseStatus.class);
+            result.setStatus(CheckoutStatus.FAILED);
+            if (responseStatus != null) {
+                result.setErrorStatus(responseStatus.code().value());
+                result.setErrorMessage(e.getMessage());
+            } else {
+                log.error("Async checkout {} failed", token, e);
+                result.setErrorStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+                result.setErrorMessage("An unexpected error occurred");
+            }
+        }
+        completionTime.record(System.nanoTime() - acceptedAt, TimeUnit.NANOSECONDS);
+        meterRegistry.counter("orders.checkout.async.results", "result", result.getStatus().name().toLowerCase())
+                .increment();
+
+        try {
+            save(userEmail, result);
+        } catch (RuntimeException e) {
+            log.warn("Could not store result of checkout {}: {}", token, e.getMessage());
+        }
+        // The client may be connected to another node than the one that ran its checkout
+        clusterMessagingService.convertAndSend(DESTINATION_PREFIX + token, result);
+    }
+
+    private void save(String userEmail, CheckoutStatusResponse status) {
+        try {
+            redisTemplate.opsForValue().set(key(userEmail, status.getToken()), objectMapper.writeValueAsString(status),
+                    Duration.ofMinutes(resultTtlMinutes));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Checkout status cannot be serialized", e);
+        }
+    }
+
+    private String key(String userEmail, String token) {
+        return KEY_PREFIX + userEmail + ":" + token;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Let accepted checkouts finish, they already answered 202
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("{} accepted checkouts did not finish before shutdown", executor.getQueue().size());
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.order.CreateOrderRequest;
+import com.coffeeshop.backend.dto.order.OrderResponse;
+import com.coffeeshop.backend.exception.OutcomeUnknownException;
+import com.coffeeshop.backend.exception.ServiceBusyException;
+import com.coffeeshop.backend.repository.StoreRepository;
+import com.coffeeshop.backend.service.OrderIngestionService;
+import com.coffeeshop.backend.service.OrderService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Group-commit ingestion: orders are queued per store and a single writer thread per store
+ * drains its queue in micro-batches. Each batch is one transaction with one stock update per
+ * variant (see {@link OrderService#createOrders}). If the batch fails, for example because the
+ * combined quantity is more than the stock, its orders are retried one by one so that only the
+ * orders that really fail get an error.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "order.ingestion.mode", havingValue = "batched")
+public class BatchingOrderIngestionServiceImpl implements OrderIngestionService {
+
+    private final OrderService orderService;
+    private final StoreRepository storeRepository;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary batchSizes;
+    private final Counter committedBatches;
+    private final Counter fallbackBatches;
+    private final Timer queueWait;
+
+    private final Map<Long, StoreQueue> queues = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    @Value("${order.ingestion.batch-size:32}")
+    private int batchSize;
+
+    @Value("${order.ingestion.linger-ms:5}")
+    private long lingerMs;
+
+    @Value("${order.ingestion.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${order.ingestion.result-timeout-ms:30000}")
+    private long resultTimeoutMs;
+
+    @Value("${order.ingestion.commit-wait-ms:60000}")
+    private long commitWaitMs;
+
+    public BatchingOrderIngestionServiceImpl(OrderService orderService, StoreRepository storeRepository,
+            MeterRegistry meterRegistry) {
+        this.orderService = orderService;
+        this.storeRepository = storeRepository;
+        this.meterRegistry = meterRegistry;
+        this.batchSizes = DistributionSummary.builder("orders.ingestion.batch.size")
+                .description("Orders written per group commit")
+                .register(meterRegistry);
+        this.committedBatches = meterRegistry.counter("orders.ingestion.batches", "result", "committed");
+        this.fallbackBatches = meterRegistry.counter("orders.ingestion.batches", "result", "fallback");
+        this.queueWait = Timer.builder("orders.ingestion.queue.wait")
+                .description("Time an order waits in the store queue before its batch starts")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public OrderResponse placeOrder(CreateOrderRequest request, String userEmail) {
+        if (request.getStoreId() == null) {
+            // Nothing to group on, let the normal path report the error
+            return orderService.createOrder(request, userEmail);
+        }
+
+        // A writer thread and a gauge per store live as long as the application, so only real stores get one
+        Long storeId = request.getStoreId();
+        if (!queues.containsKey(storeId) && !storeRepository.existsById(storeId)) {
+            return orderService.createOrder(request, userEmail);
+        }
+        if (!running) {
+            throw new ServiceBusyException("Server is shutting down");
+        }
+
+        PendingOrder pending = new PendingOrder(request, userEmail, System.nanoTime(), new CompletableFuture<>());
+        StoreQueue storeQueue = queues.computeIfAbsent(storeId, this::startWriter);
+        if (!storeQueue.queue.offer(pending)) {
+            throw new ServiceBusyException("Too many orders in progress for this store - please try again later");
+        }
+        // Shutdown stops the writers and then fails what is queued; an order queued in between is taken back here
+        if (!running && storeQueue.queue.remove(pending)) {
+            throw new ServiceBusyException("Server is shutting down");
+        }
+
+        boolean interrupted = false;
+        try {
+            return await(pending, resultTimeoutMs);
+        } catch (TimeoutException | InterruptedException e) {
+            interrupted = e instanceof InterruptedException;
+            // Still queued: it is taken back and never written
+            if (storeQueue.queue.remove(pending)) {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new ServiceBusyException("Order submission was interrupted");
+                }
+                throw new ServiceBusyException("Too many orders in progress for this store - please try again later");
+            }
+        }
+
+        // Its batch is being written and may yet commit: wait for the outcome, as long as a batch may run
+        if (!interrupted) {
+            try {
+                return await(pending, commitWaitMs);
+            } catch (TimeoutException e) {
+                log.warn("Order batch for store {} still running after {} ms", storeId, resultTimeoutMs + commitWaitMs);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        throw new OutcomeUnknownException("Your order is taking longer than expected - check your orders before trying again");
+    }
+
+    private static OrderResponse await(PendingOrder pending, long timeoutMs)
+            throws TimeoutException, InterruptedException {
+        try {
+            return pending.result.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private StoreQueue startWriter(Long storeId) {
+        StoreQueue storeQueue = new StoreQueue(new LinkedBlockingQueue<>(queueCapacity),
+                Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "order-writer-store-" + storeId);
+                    thread.setDaemon(true);
+                    return thread;
+                }));
+        meterRegistry.gauge("orders.ingestion.queue.depth",
+                List.of(Tag.of("store", String.valueOf(storeId))),
+                storeQueue.queue, BlockingQueue::size);
+        storeQueue.writer.execute(() -> drain(storeId, storeQueue.queue));
+        log.info("Started order writer for store {}", storeId);
+        return storeQueue;
+    }
+
+    private void drain(Long storeId, BlockingQueue<PendingOrder> queue) {
+        while (running) {
+            List<PendingOrder> batch = new ArrayList<>(batchSize);
+            try {
+                PendingOrder first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Linger a little to let concurrent checkouts join this batch
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingOrder next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(storeId, batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failAll(batch, new ServiceBusyException("Server is shutting down"));
+                return;
+            } catch (Throwable e) {
+                // Errors included: the writer keeps going and nobody is left waiting on this batch
+                log.error("Order writer for store {} failed", storeId, e);
+                failAll(batch, e);
+            }
+        }
+    }
+
+    private static void failAll(List<PendingOrder> batch, Throwable cause) {
+        batch.forEach(pending -> pending.result.completeExceptionally(cause));
+    }
+
+    private void write(Long storeId, List<PendingOrder> batch) {
+        long now = System.nanoTime();
+        batch.forEach(pending -> queueWait.record(now - pending.enqueuedAt, TimeUnit.NANOSECONDS));
+        batchSizes.record(batch.size());
+
+        try {
+            List<OrderResponse> responses = orderService.createOrders(storeId,
+                    batch.stream().map(PendingOrder::request).collect(Collectors.toList()),
+                    batch.stream().map(PendingOrder::userEmail).collect(Collectors.toList()));
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(responses.get(i));
+            }
+            committedBatches.increment();
+        } catch (RuntimeException batchFailure) {
+            fallbackBatches.increment();
+            log.debug("Batch of {} orders for store {} failed, retrying one by one: {}",
+                    batch.size(), storeId, batchFailure.getMessage());
+            for (PendingOrder pending : batch) {
+                try {
+                    pending.result.complete(orderService.createOrder(pending.request, pending.userEmail));
+                } catch (RuntimeException e) {
+                    pending.result.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        queues.values().forEach(storeQueue -> {
+            storeQueue.writer.shutdown();
+            PendingOrder pending;
+            while ((pending = storeQueue.queue.poll()) != null) {
+                pending.result.completeExceptionally(new ServiceBusyException("Server is shutting down"));
+            }
+        });
+    }
+
+    private record PendingOrder(CreateOrderRequest request, String userEmail, long enqueuedAt,
+            CompletableFuture<OrderResponse> result) {
+    }
+
+    private record StoreQueue(BlockingQueue<PendingOrder> queue, ExecutorService writer) {
+    }
+}
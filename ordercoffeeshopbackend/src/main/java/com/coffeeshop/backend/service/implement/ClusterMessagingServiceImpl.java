@@ -0,0 +1,197 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.service.ClusterMessagingService;
+import com.coffeeshop.backend.service.ClusterTransport;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Messages are wrapped with a unique id and the id of this node and handed to the {@link ClusterTransport},
+ * and receiving nodes skip any id they have seen recently.
+ * <p>
+ * STOMP sends go to this node's sessions straight away, and the node skips them when they come back.
+ * Published messages are handled when they come back instead, on this node as on every other one, so that
+ * all nodes handle them in the one order the transport delivered them in, whichever node published each.
+ * On a single node they are handled straight away.
+ */
+@Slf4j
+@Service
+public class ClusterMessagingServiceImpl implements ClusterMessagingService {
+
+    // Internal channel carrying plain STOMP sends
+    static final String STOMP_CHANNEL = "stomp";
+
+    private final ClusterTransport transport;
+    private final SimpMessagingTemplate simpMessagingTemplate;
+    private final ObjectMapper objectMapper;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, List<Handler<?>>> handlers = new ConcurrentHashMap<>();
+    private final Counter publishedMessages;
+    private final Counter receivedMessages;
+    private final Counter duplicateMessages;
+    private Map<String, Boolean> recentIds;
+
+    @Value("${websocket.cluster.dedupe-window:10000}")
+    private int dedupeWindow;
+
+    public ClusterMessagingServiceImpl(ClusterTransport transport, SimpMessagingTemplate simpMessagingTemplate,
+            ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.transport = transport;
+        this.simpMessagingTemplate = simpMessagingTemplate;
+        this.objectMapper = objectMapper;
+        this.publishedMessages = meterRegistry.counter("cluster.messages", "direction", "published");
+        this.receivedMessages = meterRegistry.counter("cluster.messages", "direction", "received");
+        this.duplicateMessages = meterRegistry.counter("cluster.messages", "direction", "duplicate");
+        subscribe(STOMP_CHANNEL, StompSend.class,
+                send -> simpMessagingTemplate.convertAndSend(send.getDestination(), send.getPayload()));
+        transport.subscribe(this::receive);
+    }
+
+    @Override
+    public void convertAndSend(String destination, Object payload) {
+        simpMessagingTemplate.convertAndSend(destination, payload);
+        broadcast(STOMP_CHANNEL, () -> new StompSend(destination, objectMapper.valueToTree(payload)));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void publish(String channel, Object payload) {
+        if (transport.isDistributed()) {
+            broadcast(channel, () -> payload);
+            return;
+        }
+        for (Handler<?> handler : handlers.getOrDefault(channel, List.of())) {
+            ((Handler<Object>) handler).consumer().accept(payload);
+        }
+    }
+
+    @Override
+    public <T> void subscribe(String channel, Class<T> type, Consumer<T> handler) {
+        handlers.computeIfAbsent(channel, c -> new CopyOnWriteArrayList<>()).add(new Handler<>(type, handler));
+    }
+
+    @Override
+    public long increment(String key) {
+        return transport.increment(key);
+    }
+
+    @Override
+    public long getCounter(String key) {
+        return transport.get(key);
+    }
+
+    @Override
+    public String share(String key, String candidate) {
+        return transport.putIfAbsent(key, candidate);
+    }
+
+    @Override
+    public void addToSets(Collection<String> keys, String member, Duration ttl) {
+        transport.addToSets(keys, member, ttl);
+    }
+
+    @Override
+    public Set<String> popSets(Collection<String> keys, int limit) {
+        return transport.popSets(keys, limit);
+    }
+
+    private void broadcast(String channel, Supplier<Object> payload) {
+        // A single node skips the serialization altogether
+        if (!transport.isDistributed()) {
+            return;
+        }
+        ClusterMessage message = new ClusterMessage(UUID.randomUUID().toString(), nodeId, channel,
+                objectMapper.valueToTree(payload.get()));
+        try {
+            transport.publish(objectMapper.writeValueAsString(message));
+            publishedMessages.increment();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cluster message cannot be serialized", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    void receive(String raw) {
+        ClusterMessage message;
+        try {
+            message = objectMapper.readValue(raw, ClusterMessage.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Dropping unreadable cluster message: {}", e.getMessage());
+            return;
+        }
+        // Our own sends come back from the transport, and were delivered when they were made
+        if (nodeId.equals(message.getOrigin()) && STOMP_CHANNEL.equals(message.getChannel())) {
+            return;
+        }
+        if (!firstSeen(message.getId())) {
+            duplicateMessages.increment();
+            return;
+        }
+        receivedMessages.increment();
+        for (Handler<?> handler : handlers.getOrDefault(message.getChannel(), List.of())) {
+            try {
+                Object payload = objectMapper.treeToValue(message.getPayload(), handler.type());
+                ((Handler<Object>) handler).consumer().accept(payload);
+            } catch (JsonProcessingException | RuntimeException e) {
+                log.warn("Cluster message {} on {} failed: {}", message.getId(), message.getChannel(), e.getMessage());
+            }
+        }
+    }
+
+    private synchronized boolean firstSeen(String id) {
+        if (recentIds == null) {
+            int window = Math.max(1, dedupeWindow);
+            recentIds = new LinkedHashMap<>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > window;
+                }
+            };
+        }
+        return recentIds.put(id, Boolean.TRUE) == null;
+    }
+
+    private record Handler<T>(Class<T> type, Consumer<T> consumer) {
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class ClusterMessage {
+        private String id;
+        private String origin;
+        private String channel;
+        private JsonNode payload;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class StompSend {
+        private String destination;
+        // Sent on as is, so it reaches clients as the same JSON the publishing node produced
+        private JsonNode payload;
+    }
+}
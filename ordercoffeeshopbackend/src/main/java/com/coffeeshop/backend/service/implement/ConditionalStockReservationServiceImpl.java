@@ -0,0 +1,102 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.entity.ProductStock;
+import com.coffeeshop.backend.entity.ProductVariant;
+import com.coffeeshop.backend.exception.InsufficientStockException;
+import com.coffeeshop.backend.repository.ProductStockRepository;
+import com.coffeeshop.backend.repository.ProductVariantRepository;
+import com.coffeeshop.backend.repository.StockHistoryRepository;
+import com.coffeeshop.backend.service.ShardedStockService;
+import com.coffeeshop.backend.service.StockReservationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reservation mode that skips the locking read: each line is a single
+ * {@code UPDATE ... SET quantity = quantity - n WHERE ... AND quantity >= n}
+ * and the affected-row count tells whether there was enough stock.
+ * Enabled with {@code stock.reservation.mode=conditional}.
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stock.reservation.mode", havingValue = "conditional")
+public class ConditionalStockReservationServiceImpl implements StockReservationService {
+
+    private final ProductStockRepository productStockRepository;
+    private final ProductVariantRepository productVariantRepository;
+    private final StockHistoryRepository stockHistoryRepository;
+    private final ShardedStockService shardedStockService;
+
+    @Override
+    @Transactional
+    public void reserve(Long storeId, Map<Long, Integer> quantitiesByVariantId, Long userId) {
+        reserveAll(storeId, Collections.singletonMap(userId, quantitiesByVariantId));
+    }
+
+    @Override
+    @Transactional
+    public void reserveAll(Long storeId, Map<Long, Map<Long, Integer>> quantitiesByUserId) {
+        // Updates still take row locks until commit, so keep the same ascending order as the locking mode
+        Map<Long, Integer> sorted = SaleHistories.combine(quantitiesByUserId);
+        if (sorted.isEmpty()) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Set<Long> sharded = new HashSet<>();
+        for (Map.Entry<Long, Integer> line : sorted.entrySet()) {
+            int updated = productStockRepository.decrementIfAvailable(storeId, line.getKey(), line.getValue(), now);
+            if (updated == 0) {
+                // The catalog that routed the line here can lag a sharding change; the locked row cannot
+                ProductStock locked = productStockRepository
+                        .findAndLockByProductVariantIdAndStoreId(line.getKey(), storeId).orElse(null);
+                if (locked != null && locked.getProductVariant().getStockShards() > 0) {
+                    sharded.add(line.getKey());
+                    continue;
+                }
+                // Throwing rolls back the lines already decremented in this transaction
+                throw shortage(storeId, line.getKey());
+            }
+        }
+
+        if (sharded.size() < sorted.size()) {
+            // One read for the post-update quantities recorded in the history
+            List<ProductStock> stocks = productStockRepository.findAllByStoreIdAndProductVariantIds(storeId, sorted.keySet());
+            Map<Long, ProductVariant> variants = new HashMap<>();
+            Map<Long, Integer> quantityAfter = new HashMap<>();
+            for (ProductStock stock : stocks) {
+                variants.put(stock.getProductVariant().getId(), stock.getProductVariant());
+                quantityAfter.put(stock.getProductVariant().getId(), stock.getQuantity());
+            }
+            stockHistoryRepository.saveAll(SaleHistories.of(
+                    SaleHistories.select(quantitiesByUserId, id -> !sharded.contains(id)), quantityAfter, variants::get,
+                    stocks.get(0).getStore()));
+        }
+        // After the plain rows, like checkout, so the lock order stays the same
+        if (!sharded.isEmpty()) {
+            shardedStockService.reserveAll(storeId, SaleHistories.select(quantitiesByUserId, sharded::contains));
+        }
+    }
+
+    private InsufficientStockException shortage(Long storeId, Long productVariantId) {
+        if (productStockRepository.findByProductVariantIdAndStoreId(productVariantId, storeId).isEmpty()) {
+            return new InsufficientStockException("Product not available at this store");
+        }
+        ProductVariant variant = productVariantRepository.findById(productVariantId).orElse(null);
+        if (variant == null) {
+            return new InsufficientStockException("Product not available at this store");
+        }
+        return new InsufficientStockException(
+                "Not enough stock for product: " + variant.getProduct().getName() + " - " + variant.getSize());
+    }
+}
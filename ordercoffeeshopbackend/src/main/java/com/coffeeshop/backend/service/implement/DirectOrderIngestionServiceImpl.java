@@ -0,0 +1,22 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.order.CreateOrderRequest;
+import com.coffeeshop.backend.dto.order.OrderResponse;
+import com.coffeeshop.backend.service.OrderIngestionService;
+import com.coffeeshop.backend.service.OrderService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "order.ingestion.mode", havingValue = "direct", matchIfMissing = true)
+public class DirectOrderIngestionServiceImpl implements OrderIngestionService {
+
+    private final OrderService orderService;
+
+    @Override
+    public OrderResponse placeOrder(CreateOrderRequest request, String userEmail) {
+        return orderService.createOrder(request, userEmail);
+    }
+}
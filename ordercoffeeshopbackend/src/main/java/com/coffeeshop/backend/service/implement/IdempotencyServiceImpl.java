@@ -0,0 +1,253 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.exception.IdempotencyKeyReusedException;
+import com.coffeeshop.backend.exception.OutcomeUnknownException;
+import com.coffeeshop.backend.exception.RequestInProgressException;
+import com.coffeeshop.backend.service.IdempotencyService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Each key holds an {@link Entry}: in flight while the first request runs, then its result, or a note that its
+ * outcome is unknown. The entry carries a SHA-256 of the request body, so a key reused for another body is refused.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IdempotencyServiceImpl implements IdempotencyService {
+
+    private static final String KEY_PREFIX = "idempotency:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+
+    // Requests running on this node, so local duplicates wait on the stored entry instead of polling Redis.
+    // A future completed with null means "nothing was stored, check again".
+    private final ConcurrentMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    @Value("${idempotency.result-ttl-hours:24}")
+    private long resultTtlHours;
+
+    @Value("${idempotency.in-flight-ttl-seconds:60}")
+    private long inFlightTtlSeconds;
+
+    @Value("${idempotency.wait-timeout-ms:10000}")
+    private long waitTimeoutMs;
+
+    @Value("${idempotency.poll-interval-ms:50}")
+    private long pollIntervalMs;
+
+    @Override
+    public <T> T execute(String scope, String idempotencyKey, Object request, Class<T> resultType, Supplier<T> action) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return action.get();
+        }
+        String redisKey = KEY_PREFIX + scope + ":" + idempotencyKey;
+        String fingerprint = fingerprint(request);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitTimeoutMs);
+
+        while (true) {
+            CompletableFuture<String> mine = new CompletableFuture<>();
+            CompletableFuture<String> running = inFlight.putIfAbsent(redisKey, mine);
+            if (running != null) {
+                String stored = awaitLocal(running, deadline);
+                if (stored != null) {
+                    return replay(parse(stored), fingerprint, resultType);
+                }
+                continue;
+            }
+
+            boolean claimed;
+            String stored = null;
+            try {
+                claimed = Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(redisKey,
+                        write(new Entry(Entry.IN_FLIGHT, fingerprint, null)), Duration.ofSeconds(inFlightTtlSeconds)));
+                if (!claimed) {
+                    stored = redisTemplate.opsForValue().get(redisKey);
+                }
+            } catch (RuntimeException e) {
+                release(redisKey, mine, null);
+                throw e;
+            }
+            if (claimed) {
+                return runAndStore(redisKey, fingerprint, action, mine);
+            }
+            release(redisKey, mine, null);
+
+            if (stored != null) {
+                Entry entry = parse(stored);
+                if (!Entry.IN_FLIGHT.equals(entry.state())) {
+                    return replay(entry, fingerprint, resultType);
+                }
+                checkFingerprint(entry, fingerprint);
+            }
+            // Running on another node, or the key expired between the two calls
+            sleepUntilNextPoll(deadline);
+        }
+    }
+
+    private <T> T runAndStore(String redisKey, String fingerprint, Supplier<T> action, CompletableFuture<String> mine) {
+        T result;
+        try {
+            result = action.get();
+        } catch (RuntimeException e) {
+            if (nothingWritten(e)) {
+                try {
+                    redisTemplate.delete(redisKey);
+                } finally {
+                    release(redisKey, mine, null);
+                }
+                throw e;
+            }
+            // It may still have committed: a retry is told to check rather than run it a second time
+            String message = e instanceof OutcomeUnknownException ? e.getMessage()
+                    : "The first request with this Idempotency-Key did not finish cleanly - check its outcome before trying again";
+            store(redisKey, new Entry(Entry.UNKNOWN, fingerprint, message), mine);
+            throw e;
+        }
+
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(result);
+        } catch (JsonProcessingException e) {
+            // The action already committed; failing the request now would only invite a duplicate retry
+            log.warn("Could not store idempotent result for {}: {}", redisKey, e.getMessage());
+            release(redisKey, mine, null);
+            return result;
+        }
+        store(redisKey, new Entry(Entry.DONE, fingerprint, json), mine);
+        return result;
+    }
+
+    /**
+     * Refusals and client errors, which are raised before anything is written or roll it back, and 503s,
+     * which are only raised for requests turned away or taken back before they ran. Anything else, a failed
+     * commit for instance, may have written what a retry would write again.
+     */
+    private static boolean nothingWritten(RuntimeException e) {
+        ResponseStatus responseStatus = AnnotatedElementUtils.findMergedAnnotation(e.getClass(), ResponseStatus.class);
+        return responseStatus != null && (responseStatus.code().is4xxClientError()
+                || responseStatus.code() == HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    private void store(String redisKey, Entry entry, CompletableFuture<String> mine) {
+        String json;
+        try {
+            json = write(entry);
+            redisTemplate.opsForValue().set(redisKey, json, Duration.ofHours(resultTtlHours));
+        } catch (RuntimeException e) {
+            // The in-flight entry stays until it expires, so retries get 409 meanwhile
+            log.warn("Could not store idempotent result for {}: {}", redisKey, e.getMessage());
+            release(redisKey, mine, null);
+            return;
+        }
+        release(redisKey, mine, json);
+    }
+
+    private <T> T replay(Entry entry, String fingerprint, Class<T> resultType) {
+        checkFingerprint(entry, fingerprint);
+        if (Entry.UNKNOWN.equals(entry.state())) {
+            throw new OutcomeUnknownException(entry.value());
+        }
+        try {
+            return objectMapper.readValue(entry.value(), resultType);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored idempotent result cannot be read as " + resultType.getSimpleName(), e);
+        }
+    }
+
+    private static void checkFingerprint(Entry entry, String fingerprint) {
+        if (!fingerprint.equals(entry.fingerprint())) {
+            throw new IdempotencyKeyReusedException("This Idempotency-Key was already used for a different request");
+        }
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(request);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Request cannot be fingerprinted", e);
+        }
+    }
+
+    private void release(String redisKey, CompletableFuture<String> mine, String stored) {
+        inFlight.remove(redisKey, mine);
+        mine.complete(stored);
+    }
+
+    private String awaitLocal(CompletableFuture<String> running, long deadline) {
+        try {
+            return running.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw stillInProgress();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw stillInProgress();
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    private void sleepUntilNextPoll(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            throw stillInProgress();
+        }
+        try {
+            Thread.sleep(Math.min(pollIntervalMs, TimeUnit.NANOSECONDS.toMillis(remaining) + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw stillInProgress();
+        }
+    }
+
+    private String write(Entry entry) {
+        try {
+            return objectMapper.writeValueAsString(entry);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Idempotency entry cannot be serialized", e);
+        }
+    }
+
+    private Entry parse(String stored) {
+        try {
+            return objectMapper.readValue(stored, Entry.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored idempotency entry cannot be read", e);
+        }
+    }
+
+    private RequestInProgressException stillInProgress() {
+        return new RequestInProgressException("A request with the same Idempotency-Key is still being processed");
+    }
+
+    /**
+     * @param value the result as JSON once {@link #DONE}, the message for retries once {@link #UNKNOWN}
+     */
+    record Entry(String state, String fingerprint, String value) {
+        static final String IN_FLIGHT = "IN_FLIGHT";
+        static final String DONE = "DONE";
+        static final String UNKNOWN = "UNKNOWN";
+    }
+}
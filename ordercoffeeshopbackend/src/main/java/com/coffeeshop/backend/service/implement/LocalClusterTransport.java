@@ -0,0 +1,100 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.service.ClusterTransport;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A single node: messages never leave it and counters and sets live in memory.
+ */
+@Component
+@ConditionalOnProperty(name = "websocket.cluster.mode", havingValue = "local", matchIfMissing = true)
+public class LocalClusterTransport implements ClusterTransport {
+
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+    private final Map<String, ExpiringSet> sets = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean isDistributed() {
+        return false;
+    }
+
+    @Override
+    public void publish(String message) {
+        // Nobody else to tell
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        // Nothing ever arrives
+    }
+
+    @Override
+    public long increment(String key) {
+        return counters.computeIfAbsent(key, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    @Override
+    public long get(String key) {
+        AtomicLong counter = counters.get(key);
+        return counter != null ? counter.get() : 0;
+    }
+
+    @Override
+    public String putIfAbsent(String key, String value) {
+        return values.computeIfAbsent(key, k -> value);
+    }
+
+    @Override
+    public void addToSets(Collection<String> keys, String member, Duration ttl) {
+        long now = System.nanoTime();
+        for (String key : keys) {
+            sets.compute(key, (k, set) -> {
+                ExpiringSet live = set != null && !set.expired(now) ? set : new ExpiringSet();
+                live.members.add(member);
+                live.expiresAt = now + ttl.toNanos();
+                return live;
+            });
+        }
+    }
+
+    @Override
+    public Set<String> popSets(Collection<String> keys, int limit) {
+        long now = System.nanoTime();
+        Set<String> popped = new HashSet<>();
+        for (String key : keys) {
+            sets.computeIfPresent(key, (k, set) -> {
+                if (set.expired(now)) {
+                    return null;
+                }
+                Iterator<String> members = set.members.iterator();
+                for (int i = 0; i < limit && members.hasNext(); i++) {
+                    popped.add(members.next());
+                    members.remove();
+                }
+                return set.members.isEmpty() ? null : set;
+            });
+        }
+        return popped;
+    }
+
+    private static final class ExpiringSet {
+        private final Set<String> members = new HashSet<>();
+        private long expiresAt;
+
+        boolean expired(long now) {
+            return now - expiresAt > 0;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.entity.ProductStock;
+import com.coffeeshop.backend.entity.ProductVariant;
+import com.coffeeshop.backend.exception.InsufficientStockException;
+import com.coffeeshop.backend.repository.ProductStockRepository;
+import com.coffeeshop.backend.repository.StockHistoryRepository;
+import com.coffeeshop.backend.service.ShardedStockService;
+import com.coffeeshop.backend.service.StockReservationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Default reservation mode: SELECT ... FOR UPDATE on all rows of the cart, then check and save.
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stock.reservation.mode", havingValue = "locking", matchIfMissing = true)
+public class LockingStockReservationServiceImpl implements StockReservationService {
+
+    private final ProductStockRepository productStockRepository;
+    private final StockHistoryRepository stockHistoryRepository;
+    private final ShardedStockService shardedStockService;
+
+    @Override
+    @Transactional
+    public void reserve(Long storeId, Map<Long, Integer> quantitiesByVariantId, Long userId) {
+        reserveAll(storeId, Collections.singletonMap(userId, quantitiesByVariantId));
+    }
+
+    @Override
+    @Transactional
+    public void reserveAll(Long storeId, Map<Long, Map<Long, Integer>> quantitiesByUserId) {
+        Map<Long, Integer> quantitiesByVariantId = SaleHistories.combine(quantitiesByUserId);
+        if (quantitiesByVariantId.isEmpty()) {
+            return;
+        }
+
+        // One query, rows locked in ascending variant id order
+        List<ProductStock> stocks = productStockRepository.findAndLockAllByStoreIdAndProductVariantIds(
+                storeId, new TreeSet<>(quantitiesByVariantId.keySet()));
+
+        if (stocks.size() != quantitiesByVariantId.size()) {
+            throw new InsufficientStockException("Product not available at this store");
+        }
+
+        // Lines were routed here by a catalog that can lag a sharding change; the locked row cannot
+        Set<Long> sharded = new HashSet<>();
+        for (ProductStock stock : stocks) {
+            if (stock.getProductVariant().getStockShards() > 0) {
+                sharded.add(stock.getProductVariant().getId());
+            }
+        }
+        if (!sharded.isEmpty()) {
+            stocks = stocks.stream().filter(stock -> !sharded.contains(stock.getProductVariant().getId())).toList();
+        }
+
+        // Check every line before touching any of them
+        for (ProductStock stock : stocks) {
+            int requested = quantitiesByVariantId.get(stock.getProductVariant().getId());
+            if (stock.getQuantity() < requested) {
+                ProductVariant variant = stock.getProductVariant();
+                throw new InsufficientStockException(
+                        "Not enough stock for product: " + variant.getProduct().getName() + " - " + variant.getSize());
+            }
+        }
+
+        Map<Long, ProductVariant> variants = new HashMap<>();
+        Map<Long, Integer> quantityAfter = new HashMap<>();
+        for (ProductStock stock : stocks) {
+            Long variantId = stock.getProductVariant().getId();
+            stock.setQuantity(stock.getQuantity() - quantitiesByVariantId.get(variantId));
+            variants.put(variantId, stock.getProductVariant());
+            quantityAfter.put(variantId, stock.getQuantity());
+        }
+
+        if (!stocks.isEmpty()) {
+            productStockRepository.saveAll(stocks);
+            stockHistoryRepository.saveAll(SaleHistories.of(
+                    SaleHistories.select(quantitiesByUserId, id -> !sharded.contains(id)), quantityAfter, variants::get,
+                    stocks.get(0).getStore()));
+        }
+        // After the plain rows, like checkout, so the lock order stays the same
+        if (!sharded.isEmpty()) {
+            shardedStockService.reserveAll(storeId, SaleHistories.select(quantitiesByUserId, sharded::contains));
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.order.OrderBoardSnapshot;
+import com.coffeeshop.backend.dto.order.OrderEvent;
+import com.coffeeshop.backend.dto.order.OrderEventMessage;
+import com.coffeeshop.backend.dto.order.OrderResponse;
+import com.coffeeshop.backend.entity.Order;
+import com.coffeeshop.backend.entity.Store;
+import com.coffeeshop.backend.enums.OrderStatus;
+import com.coffeeshop.backend.mapper.OrderMapper;
+import com.coffeeshop.backend.repository.OrderRepository;
+import com.coffeeshop.backend.repository.StoreRepository;
+import com.coffeeshop.backend.service.ClusterMessagingService;
+import com.coffeeshop.backend.service.OrderBoardService;
+import com.coffeeshop.backend.service.OrderNotificationService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+public class OrderBoardServiceImpl implements OrderBoardService {
+
+    static final Set<OrderStatus> ACTIVE = Collections.unmodifiableSet(EnumSet.of(OrderStatus.PENDING,
+            OrderStatus.PAID, OrderStatus.PREPARING, OrderStatus.FINISHED_PREPARING, OrderStatus.DELIVERING));
+
+    private final OrderRepository orderRepository;
+    private final StoreRepository storeRepository;
+    private final OrderMapper orderMapper;
+    private final OrderNotificationService orderNotificationService;
+    private final TransactionTemplate readTransaction;
+    private final Map<Long, Board> boards = new ConcurrentHashMap<>();
+    // Events are applied here rather than on the thread that delivers them, which may be the outbox relay
+    // inside its transaction or the only listener of the cluster channel; one store's events at a time, in order
+    private Executor appliers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "order-board");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger heldOrders = new AtomicInteger();
+    private final Counter evictedOrders;
+    private final Counter loadedOrders;
+
+    @Value("${order.board.max-orders:300}")
+    private int maxOrders;
+
+    public OrderBoardServiceImpl(OrderRepository orderRepository, StoreRepository storeRepository,
+            OrderMapper orderMapper, OrderNotificationService orderNotificationService,
+            ClusterMessagingService clusterMessagingService, PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry) {
+        this.orderRepository = orderRepository;
+        this.storeRepository = storeRepository;
+        this.orderMapper = orderMapper;
+        this.orderNotificationService = orderNotificationService;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        meterRegistry.gauge("orders.board.orders", heldOrders);
+        this.evictedOrders = meterRegistry.counter("orders.board.evictions");
+        this.loadedOrders = meterRegistry.counter("orders.board.loads");
+        // The same numbered events the store topics get, in the same order
+        clusterMessagingService.subscribe(OrderNotificationServiceImpl.CHANNEL, OrderEventMessage.class,
+                message -> apply(message.getEvent()));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Override
+    public void load() {
+        long started = System.currentTimeMillis();
+        for (Store store : storeRepository.findAll()) {
+            Board board = board(store.getId());
+            synchronized (board) {
+                if (!board.loaded) {
+                    load(board, store.getId());
+                }
+            }
+        }
+        log.info("Loaded {} active orders onto the store boards in {} ms", heldOrders.get(),
+                System.currentTimeMillis() - started);
+    }
+
+    @Override
+    public OrderBoardSnapshot snapshot(Long storeId) {
+        Board board = board(storeId);
+        synchronized (board) {
+            if (!board.loaded) {
+                // A store created after startup; only its first subscriber waits for this
+                load(board, storeId);
+            }
+            List<OrderResponse> orders = new ArrayList<>(board.orders.values());
+            Collections.reverse(orders);
+            return new OrderBoardSnapshot(orderNotificationService.epoch(), board.seq, board.truncated, orders);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (appliers instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+    }
+
+    void apply(OrderEvent event) {
+        Board board = board(event.getStoreId());
+        synchronized (board) {
+            board.queued.add(event);
+            if (board.draining) {
+                return;
+            }
+            board.draining = true;
+        }
+        appliers.execute(() -> drain(board));
+    }
+
+    private void drain(Board board) {
+        while (true) {
+            OrderEvent event;
+            boolean known;
+            synchronized (board) {
+                event = board.queued.poll();
+                if (event == null) {
+                    board.draining = false;
+                    return;
+                }
+                known = !board.loaded || board.orders.containsKey(event.getOrderId());
+            }
+            // An order the board does not have yet, usually a new one; read outside the lock, and before
+            // the board moves on to this event's number, so no snapshot has the number without the order
+            OrderResponse added = null;
+            if (ACTIVE.contains(event.getStatus()) && !known) {
+                try {
+                    added = readTransaction.execute(status -> orderRepository.findWithItemsById(event.getOrderId())
+                            .map(orderMapper::toOrderResponse)
+                            .orElse(null));
+                    loadedOrders.increment();
+                } catch (RuntimeException e) {
+                    log.error("Could not read order {} for the board of store {}", event.getOrderId(),
+                            event.getStoreId(), e);
+                }
+            }
+            synchronized (board) {
+                board.apply(event, added);
+            }
+        }
+    }
+
+    // Called holding the board lock, so events of the store wait until it is loaded
+    private void load(Board board, Long storeId) {
+        readTransaction.executeWithoutResult(status -> {
+            List<Long> ids = orderRepository.findIdsByStoreIdAndStatusIn(storeId, ACTIVE,
+                    PageRequest.of(0, board.capacity + 1));
+            board.truncated = ids.size() > board.capacity;
+            List<Long> newest = board.truncated ? ids.subList(0, board.capacity) : ids;
+            Map<Long, Order> byId = orderRepository.findAllWithItemsByIdIn(newest).stream()
+                    .collect(Collectors.toMap(Order::getId, Function.identity()));
+            heldOrders.addAndGet(-board.orders.size());
+            board.orders.clear();
+            // Oldest first, like the orders that are added later on
+            for (int i = newest.size() - 1; i >= 0; i--) {
+                board.add(orderMapper.toOrderResponse(byId.get(newest.get(i))));
+            }
+        });
+        board.loaded = true;
+    }
+
+    private Board board(Long storeId) {
+        return boards.computeIfAbsent(storeId, id -> new Board(Math.max(1, maxOrders)));
+    }
+
+    /**
+     * Active orders of one store, oldest first. Callers synchronize on the instance.
+     * <p>
+     * Events are applied in stream order, and the database is read only once a change is committed,
+     * so a freshly loaded order may already reflect events that arrive after it; versions tell.
+     */
+    final class Board {
+        private final int capacity;
+        private final LinkedHashMap<Long, OrderResponse> orders = new LinkedHashMap<>();
+        // Events received and not applied yet, and whether an applier is working through them
+        private final ArrayDeque<OrderEvent> queued = new ArrayDeque<>();
+        private boolean draining;
+        private long seq;
+        private boolean loaded;
+        private boolean truncated;
+
+        Board(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void apply(OrderEvent event, OrderResponse added) {
+            seq = Math.max(seq, event.getSeq());
+            if (!loaded) {
+                // Loading reads the database, which has every change up to this event already
+                return;
+            }
+            OrderResponse current = orders.get(event.getOrderId());
+            if (current != null && isNotNewer(event, current)) {
+                return;
+            }
+            if (!ACTIVE.contains(event.getStatus())) {
+                if (orders.remove(event.getOrderId()) != null) {
+                    heldOrders.decrementAndGet();
+                }
+            } else if (current != null) {
+                // Replaced rather than changed, as snapshots already handed out may still be serializing it
+                orders.put(event.getOrderId(), withStatus(current, event.getStatus(), event.getVersion()));
+            } else if (added != null && ACTIVE.contains(added.getStatus())) {
+                add(added);
+            }
+        }
+
+        void add(OrderResponse order) {
+            orders.put(order.getId(), order);
+            heldOrders.incrementAndGet();
+            if (orders.size() > capacity) {
+                Long eldest = orders.keySet().iterator().next();
+                orders.remove(eldest);
+                heldOrders.decrementAndGet();
+                evictedOrders.increment();
+                truncated = true;
+            }
+        }
+
+        private boolean isNotNewer(OrderEvent event, OrderResponse current) {
+            return current.getVersion() != null && event.getVersion() != null
+                    && event.getVersion() <= current.getVersion();
+        }
+    }
+
+    private static OrderResponse withStatus(OrderResponse order, OrderStatus status, Long version) {
+        OrderResponse copy = new OrderResponse();
+        copy.setId(order.getId());
+        copy.setOrderDate(order.getOrderDate());
+        copy.setStatus(status);
+        copy.setTotalAmount(order.getTotalAmount());
+        copy.setItems(order.getItems());
+        copy.setDeliveryMethod(order.getDeliveryMethod());
+        copy.setUser(order.getUser());
+        copy.setVersion(version);
+        return copy;
+    }
+}
@@ -0,0 +1,314 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.entity.Order;
+import com.coffeeshop.backend.entity.ProductStock;
+import com.coffeeshop.backend.entity.StockHistory;
+import com.coffeeshop.backend.entity.Store;
+import com.coffeeshop.backend.enums.OrderStatus;
+import com.coffeeshop.backend.event.OrderChangedEvent;
+import com.coffeeshop.backend.repository.OrderDetailRepository;
+import com.coffeeshop.backend.repository.OrderRepository;
+import com.coffeeshop.backend.repository.ProductStockRepository;
+import com.coffeeshop.backend.repository.StockHistoryRepository;
+import com.coffeeshop.backend.repository.StoreRepository;
+import com.coffeeshop.backend.service.OrderExpiryService;
+import com.coffeeshop.backend.service.OrderOutboxService;
+import com.coffeeshop.backend.service.ProductSalesService;
+import com.coffeeshop.backend.service.ShardedStockService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+public class OrderExpiryServiceImpl implements OrderExpiryService {
+
+    private final OrderRepository orderRepository;
+    private final OrderDetailRepository orderDetailRepository;
+    private final ProductStockRepository productStockRepository;
+    private final StockHistoryRepository stockHistoryRepository;
+    private final StoreRepository storeRepository;
+    private final ShardedStockService shardedStockService;
+    private final OrderOutboxService orderOutboxService;
+    private final ProductSalesService productSalesService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter expiredOrders;
+
+    private TimingWheel wheel;
+    private ScheduledExecutorService ticker;
+
+    @Value("${order.expiry.tick-ms:1000}")
+    private long tickMs;
+
+    @Value("${order.expiry.wheel-size:512}")
+    private int wheelSize;
+
+    @Value("${order.expiry.batch-size:100}")
+    private int batchSize;
+
+    @Value("${order.expiry.sweep-interval-ms:60000}")
+    private long sweepIntervalMs;
+
+    public OrderExpiryServiceImpl(OrderRepository orderRepository, OrderDetailRepository orderDetailRepository,
+            ProductStockRepository productStockRepository, StockHistoryRepository stockHistoryRepository,
+            StoreRepository storeRepository, ShardedStockService shardedStockService, OrderOutboxService orderOutboxService, ProductSalesService productSalesService,
+            ApplicationEventPublisher eventPublisher,
+            PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.orderRepository = orderRepository;
+        this.orderDetailRepository = orderDetailRepository;
+        this.productStockRepository = productStockRepository;
+        this.stockHistoryRepository = stockHistoryRepository;
+        this.storeRepository = storeRepository;
+        this.shardedStockService = shardedStockService;
+        this.orderOutboxService = orderOutboxService;
+        this.productSalesService = productSalesService;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.expiredOrders = meterRegistry.counter("orders.expired");
+    }
+
+    @PostConstruct
+    void init() {
+        wheel = new TimingWheel(tickMs, wheelSize, System.currentTimeMillis());
+    }
+
+    // Only start once the application is up, so the first sweep does not race the rest of startup
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "order-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // One thread for both jobs, so a tick and a sweep never work on the same orders at once
+        ticker.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        ticker.scheduleWithFixedDelay(this::sweep, 0, sweepIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    @Override
+    public void schedule(Long orderId, LocalDateTime expiresAt) {
+        if (orderId == null || expiresAt == null) {
+            return;
+        }
+        long deadlineMs = expiresAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wheel.add(orderId, deadlineMs);
+                }
+            });
+        } else {
+            wheel.add(orderId, deadlineMs);
+        }
+    }
+
+    @Override
+    public int expire(Collection<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return 0;
+        }
+        Integer expired = transactionTemplate.execute(status ->
+                expireLocked(orderRepository.findAndLockExpiredByIds(orderIds, LocalDateTime.now())));
+        return expired != null ? expired : 0;
+    }
+
+    @Override
+    public int expireOverdue() {
+        Integer expired = transactionTemplate.execute(status ->
+                expireLocked(orderRepository.findAndLockExpired(LocalDateTime.now(), PageRequest.of(0, batchSize))));
+        return expired != null ? expired : 0;
+    }
+
+    private void tick() {
+        try {
+            List<Long> due = wheel.advance(System.currentTimeMillis());
+            for (int from = 0; from < due.size(); from += batchSize) {
+                expire(due.subList(from, Math.min(from + batchSize, due.size())));
+            }
+        } catch (RuntimeException e) {
+            // The orders stay overdue in the database, the next sweep picks them up
+            log.error("Order expiry tick failed", e);
+        }
+    }
+
+    private void sweep() {
+        try {
+            int total = 0;
+            int expired;
+            do {
+                expired = expireOverdue();
+                total += expired;
+            } while (expired == batchSize);
+            if (total > 0) {
+                log.info("Expired {} overdue unpaid orders", total);
+            }
+        } catch (RuntimeException e) {
+            log.error("Order expiry sweep failed", e);
+        }
+    }
+
+    /**
+     * Cancels the locked orders and returns their stock in one go: one increment per
+     * (store, variant), plain rows first and sharded rows after, like checkout.
+     */
+    private int expireLocked(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return 0;
+        }
+        List<Long> orderIds = orders.stream().map(Order::getId).collect(Collectors.toList());
+
+        Map<Long, Map<Long, Integer>> quantitiesByStore = new TreeMap<>();
+        for (Object[] row : orderDetailRepository.sumQuantitiesByStoreAndVariant(orderIds)) {
+            quantitiesByStore.computeIfAbsent((Long) row[0], id -> new TreeMap<>())
+                    .put((Long) row[1], ((Number) row[2]).intValue());
+        }
+        quantitiesByStore.forEach(this::restore);
+
+        for (Order order : orders) {
+            order.setStatus(OrderStatus.CANCELLED);
+        }
+        // Flushed so the outbox records the version the cancellation gave each order
+        orderRepository.saveAllAndFlush(orders);
+        productSalesService.recordCancelled(orderIds);
+        eventPublisher.publishEvent(new OrderChangedEvent(orderIds));
+        expiredOrders.increment(orders.size());
+
+        // Notify clients via WebSocket once this commits
+        orders.forEach(orderOutboxService::record);
+        return orders.size();
+    }
+
+    private void restore(Long storeId, Map<Long, Integer> quantitiesByVariantId) {
+        // Routed by the locked rows: the catalog can lag a sharding change, the locked row cannot
+        List<ProductStock> plain = new ArrayList<>(quantitiesByVariantId.size());
+        Map<Long, Integer> sharded = new TreeMap<>();
+        for (ProductStock stock : productStockRepository.findAndLockAllByStoreIdAndProductVariantIds(
+                storeId, quantitiesByVariantId.keySet())) {
+            Long variantId = stock.getProductVariant().getId();
+            if (stock.getProductVariant().getStockShards() > 0) {
+                sharded.put(variantId, quantitiesByVariantId.get(variantId));
+            } else {
+                plain.add(stock);
+            }
+        }
+        restorePlain(storeId, plain, quantitiesByVariantId);
+        if (!sharded.isEmpty()) {
+            shardedStockService.release(storeId, sharded, REASON);
+        }
+    }
+
+    private void restorePlain(Long storeId, List<ProductStock> stocks, Map<Long, Integer> quantitiesByVariantId) {
+        if (stocks.isEmpty()) {
+            return;
+        }
+        Store store = storeRepository.getReferenceById(storeId);
+        List<StockHistory> histories = new ArrayList<>(stocks.size());
+        for (ProductStock stock : stocks) {
+            int quantity = quantitiesByVariantId.get(stock.getProductVariant().getId());
+            stock.setQuantity(stock.getQuantity() + quantity);
+
+            StockHistory history = new StockHistory();
+            history.setProductVariant(stock.getProductVariant());
+            history.setStore(store);
+            history.setQuantityChanged(quantity);
+            history.setCurrentQuantity(stock.getQuantity());
+            history.setReason(REASON);
+            histories.add(history);
+        }
+        productStockRepository.saveAll(stocks);
+        stockHistoryRepository.saveAll(histories);
+    }
+
+    /**
+     * Hashed timing wheel: one bucket per tick, and a deadline more than one turn away simply
+     * stays in its bucket until its round comes. Adding and firing are O(1) per order.
+     * {@link #advance} is only ever called from the ticker thread.
+     */
+    static final class TimingWheel {
+        private final long tickMs;
+        private final long startMs;
+        private final int mask;
+        private final Queue<Timeout>[] buckets;
+        private volatile long currentTick;
+
+        @SuppressWarnings("unchecked")
+        TimingWheel(long tickMs, int size, long startMs) {
+            int buckets = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+            this.tickMs = tickMs;
+            this.startMs = startMs;
+            this.mask = buckets - 1;
+            this.buckets = new Queue[buckets];
+            for (int i = 0; i < buckets; i++) {
+                this.buckets[i] = new ConcurrentLinkedQueue<>();
+            }
+        }
+
+        void add(long orderId, long deadlineMs) {
+            long deadlineTick = Math.max(Math.floorDiv(deadlineMs - startMs + tickMs - 1, tickMs), currentTick + 1);
+            buckets[(int) (deadlineTick & mask)].add(new Timeout(orderId, deadlineTick));
+        }
+
+        /**
+         * Moves the wheel up to the given time and returns the orders that became due.
+         */
+        List<Long> advance(long nowMs) {
+            long targetTick = Math.floorDiv(nowMs - startMs, tickMs);
+            List<Long> due = new ArrayList<>();
+            while (currentTick < targetTick) {
+                long tick = currentTick + 1;
+                currentTick = tick;
+                Queue<Timeout> bucket = buckets[(int) (tick & mask)];
+                for (int pending = bucket.size(); pending > 0; pending--) {
+                    Timeout timeout = bucket.poll();
+                    if (timeout == null) {
+                        break;
+                    }
+                    if (timeout.deadlineTick() <= tick) {
+                        due.add(timeout.orderId());
+                    } else {
+                        bucket.add(timeout);
+                    }
+                }
+            }
+            return due;
+        }
+
+        private record Timeout(long orderId, long deadlineTick) {
+        }
+    }
+}
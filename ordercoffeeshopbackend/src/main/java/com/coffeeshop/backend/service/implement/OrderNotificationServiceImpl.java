@@ -0,0 +1,177 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.order.OrderEvent;
+import com.coffeeshop.backend.dto.order.OrderEventMessage;
+import com.coffeeshop.backend.dto.order.OrderStreamResponse;
+import com.coffeeshop.backend.entity.OrderOutboxEvent;
+import com.coffeeshop.backend.service.ClusterMessagingService;
+import com.coffeeshop.backend.service.OrderNotificationService;
+import com.coffeeshop.backend.websocket.LocalSubscriptions;
+import com.coffeeshop.backend.websocket.OrderEventCborEncoder;
+import com.coffeeshop.backend.websocket.OutboundBackpressure;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+public class OrderNotificationServiceImpl implements OrderNotificationService {
+
+    // Numbered events go to every node, each of which buffers them and sends them to its own sessions
+    static final String CHANNEL = "order-events";
+    private static final String SEQ_KEY_PREFIX = "orders:stream:seq:";
+    private static final String EPOCH_KEY = "orders:stream:epoch";
+
+    private final SimpMessagingTemplate simpMessagingTemplate;
+    private final ClusterMessagingService clusterMessagingService;
+    private final LocalSubscriptions localSubscriptions;
+    private final Map<Long, StoreStream> streams = new ConcurrentHashMap<>();
+    private final OrderEventCborEncoder cborEncoder = new OrderEventCborEncoder();
+    // Sequences are only meaningful as long as their counters live: in memory on a single node, in Redis
+    // in a cluster. Losing them starts a new epoch, and positions from the old one are no longer trusted.
+    private final String epoch;
+    private final Counter replayedStreams;
+    private final Counter snapshotStreams;
+
+    @Value("${order.stream.buffer-size:1024}")
+    private int bufferSize;
+
+    public OrderNotificationServiceImpl(SimpMessagingTemplate simpMessagingTemplate,
+            ClusterMessagingService clusterMessagingService, LocalSubscriptions localSubscriptions,
+            MeterRegistry meterRegistry) {
+        this.simpMessagingTemplate = simpMessagingTemplate;
+        this.clusterMessagingService = clusterMessagingService;
+        this.localSubscriptions = localSubscriptions;
+        this.epoch = clusterMessagingService.share(EPOCH_KEY, UUID.randomUUID().toString().substring(0, 8));
+        this.replayedStreams = meterRegistry.counter("orders.stream.resumes", "outcome", "replay");
+        this.snapshotStreams = meterRegistry.counter("orders.stream.resumes", "outcome", "snapshot");
+        clusterMessagingService.subscribe(CHANNEL, OrderEventMessage.class, this::deliver);
+    }
+
+    @Override
+    public String epoch() {
+        return epoch;
+    }
+
+    @Override
+    public void publish(OrderOutboxEvent change) {
+        Long storeId = change.getStoreId();
+        // Numbering and publishing under one lock, so events leave this node in sequence order. Nodes never
+        // number the same store at once either: the outbox relay holds its batch locked while it publishes.
+        synchronized (stream(storeId)) {
+            long seq = clusterMessagingService.increment(SEQ_KEY_PREFIX + storeId);
+            OrderEvent event = new OrderEvent(seq, change.getOrderId(), storeId, change.getStatus(),
+                    change.getOrderVersion(), change.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            clusterMessagingService.publish(CHANNEL, new OrderEventMessage(event, change.getUserEmail()));
+        }
+    }
+
+    // Runs on every node for every event, including the node that numbered it
+    private void deliver(OrderEventMessage message) {
+        OrderEvent event = message.getEvent();
+        StoreStream stream = stream(event.getStoreId());
+        synchronized (stream) {
+            stream.put(event);
+            // A slow client only gets the latest of the events of an order still waiting to be written to it
+            Map<String, Object> headers = Map.of(OutboundBackpressure.COALESCE_HEADER, "order-" + event.getOrderId());
+            String storeTopic = OrderNotificationService.storeTopic(event.getStoreId());
+            String user = message.getUserEmail();
+            // Destinations nobody on this node subscribes to are skipped, the CBOR ones before encoding
+            boolean storeJson = localSubscriptions.hasSubscribers(storeTopic);
+            boolean userJson = localSubscriptions.hasUserSubscribers(user, USER_QUEUE);
+            boolean allJson = localSubscriptions.hasSubscribers(ALL_STORES_TOPIC);
+            boolean storeCbor = localSubscriptions.hasSubscribers(storeTopic + CBOR_SUFFIX);
+            boolean userCbor = localSubscriptions.hasUserSubscribers(user, USER_QUEUE + CBOR_SUFFIX);
+            boolean allCbor = localSubscriptions.hasSubscribers(ALL_STORES_TOPIC + CBOR_SUFFIX);
+            // The broker only delivers each send to the subscriptions of its destination,
+            // so a status change reaches one store and one customer rather than every open connection
+            if (storeJson) {
+                simpMessagingTemplate.convertAndSend(storeTopic, event, headers);
+            }
+            if (userJson) {
+                simpMessagingTemplate.convertAndSendToUser(user, USER_QUEUE, event, headers);
+            }
+            if (allJson) {
+                simpMessagingTemplate.convertAndSend(ALL_STORES_TOPIC, event, headers);
+            }
+            if (!storeCbor && !userCbor && !allCbor) {
+                return;
+            }
+            // Encoded once here rather than per subscriber; byte[] payloads go out as application/octet-stream,
+            // which native WebSocket sessions receive as binary frames
+            byte[] cbor = cborEncoder.encode(event);
+            if (storeCbor) {
+                simpMessagingTemplate.convertAndSend(storeTopic + CBOR_SUFFIX, cbor, headers);
+            }
+            if (userCbor) {
+                simpMessagingTemplate.convertAndSendToUser(user, USER_QUEUE + CBOR_SUFFIX, cbor, headers);
+            }
+            if (allCbor) {
+                simpMessagingTemplate.convertAndSend(ALL_STORES_TOPIC + CBOR_SUFFIX, cbor, headers);
+            }
+        }
+    }
+
+    @Override
+    public OrderStreamResponse replay(Long storeId, String epoch, long afterSeq) {
+        StoreStream stream = stream(storeId);
+        synchronized (stream) {
+            List<OrderEvent> events = this.epoch.equals(epoch) ? stream.since(afterSeq) : null;
+            (events != null ? replayedStreams : snapshotStreams).increment();
+            return new OrderStreamResponse(this.epoch, stream.seq(), events, null);
+        }
+    }
+
+    private StoreStream stream(Long storeId) {
+        return streams.computeIfAbsent(storeId, id -> new StoreStream(bufferSize));
+    }
+
+    /**
+     * The last {@code capacity} events of one store this node received, by sequence. Callers synchronize
+     * on the instance.
+     */
+    static final class StoreStream {
+        private final OrderEvent[] ring;
+        private long seq;
+
+        StoreStream(int capacity) {
+            this.ring = new OrderEvent[Math.max(1, capacity)];
+        }
+
+        void put(OrderEvent event) {
+            ring[(int) (event.getSeq() % ring.length)] = event;
+            seq = Math.max(seq, event.getSeq());
+        }
+
+        long seq() {
+            return seq;
+        }
+
+        /**
+         * @return the events after {@code afterSeq} in order, or null if some of them were overwritten
+         *         already, never reached this node, or {@code afterSeq} is ahead of the stream
+         */
+        List<OrderEvent> since(long afterSeq) {
+            if (afterSeq < 0 || afterSeq > seq || afterSeq < seq - ring.length) {
+                return null;
+            }
+            List<OrderEvent> events = new ArrayList<>((int) (seq - afterSeq));
+            for (long s = afterSeq + 1; s <= seq; s++) {
+                OrderEvent event = ring[(int) (s % ring.length)];
+                if (event == null || event.getSeq() != s) {
+                    return null;
+                }
+                events.add(event);
+            }
+            return events;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.entity.Order;
+import com.coffeeshop.backend.entity.OrderOutboxEvent;
+import com.coffeeshop.backend.repository.OrderOutboxRepository;
+import com.coffeeshop.backend.service.OrderNotificationService;
+import com.coffeeshop.backend.service.OrderOutboxService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Service
+public class OrderOutboxServiceImpl implements OrderOutboxService {
+
+    private final OrderOutboxRepository orderOutboxRepository;
+    private final OrderNotificationService orderNotificationService;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter publishedEvents;
+    private final Counter failedBatches;
+    private final Timer deliveryLag;
+    // Released after every commit that recorded events, so the relay does not wait for its next poll
+    private final Semaphore wakeUp = new Semaphore(0);
+
+    private volatile boolean running;
+    private Thread relayThread;
+
+    @Value("${order.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${order.outbox.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    public OrderOutboxServiceImpl(OrderOutboxRepository orderOutboxRepository,
+            OrderNotificationService orderNotificationService, PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry) {
+        this.orderOutboxRepository = orderOutboxRepository;
+        this.orderNotificationService = orderNotificationService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.publishedEvents = meterRegistry.counter("orders.outbox.published");
+        this.failedBatches = meterRegistry.counter("orders.outbox.failures");
+        this.deliveryLag = meterRegistry.timer("orders.outbox.lag");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        relayThread = new Thread(this::run, "order-outbox");
+        relayThread.setDaemon(true);
+        relayThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (relayThread != null) {
+            relayThread.interrupt();
+        }
+    }
+
+    @Override
+    public void record(Order order) {
+        OrderOutboxEvent event = new OrderOutboxEvent();
+        event.setOrderId(order.getId());
+        event.setStoreId(order.getStore().getId());
+        event.setUserEmail(order.getUser().getEmail());
+        event.setStatus(order.getStatus());
+        event.setOrderVersion(order.getVersion());
+        event.setCreatedAt(LocalDateTime.now());
+        orderOutboxRepository.save(event);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wakeUp.release();
+                }
+            });
+        } else {
+            wakeUp.release();
+        }
+    }
+
+    @Override
+    public int relay() {
+        Integer sent = transactionTemplate.execute(status -> {
+            List<OrderOutboxEvent> events = orderOutboxRepository.findAndLockOldest(PageRequest.of(0, batchSize));
+            if (events.isEmpty()) {
+                return 0;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            for (OrderOutboxEvent event : events) {
+                orderNotificationService.publish(event);
+                deliveryLag.record(Duration.between(event.getCreatedAt(), now));
+            }
+            // If this delete does not commit, the batch is sent again: clients drop events
+            // whose order version they have already seen
+            orderOutboxRepository.deleteAllInBatch(events);
+            return events.size();
+        });
+        int count = sent != null ? sent : 0;
+        publishedEvents.increment(count);
+        return count;
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                wakeUp.tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS);
+                wakeUp.drainPermits();
+                int sent;
+                do {
+                    sent = relay();
+                } while (running && sent == batchSize);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // The events stay in the outbox and are sent on the next round
+                failedBatches.increment();
+                log.error("Order outbox relay failed", e);
+            }
+        }
+    }
+}
@@ -1,32 +1,58 @@
 package com.coffeeshop.backend.service.implement;
 
 import com.coffeeshop.backend.dto.order.CreateOrderRequest;
+import com.coffeeshop.backend.dto.order.OrderCursor;
+import com.coffeeshop.backend.dto.order.OrderFeedResponse;
 import com.coffeeshop.backend.dto.order.OrderItemRequest;
+import com.coffeeshop.backend.dto.order.OrderItemResponse;
+import com.coffeeshop.backend.dto.product.VariantCatalogEntry;
 import com.coffeeshop.backend.dto.order.OrderResponse;
+import com.coffeeshop.backend.dto.order.OrderStreamResponse;
 import com.coffeeshop.backend.entity.*;
 import com.coffeeshop.backend.enums.DiscountType;
 import com.coffeeshop.backend.enums.OrderStatus;
 import com.coffeeshop.backend.enums.PaymentMethod;
 import com.coffeeshop.backend.enums.PaymentStatus;
+import com.coffeeshop.backend.event.OrderChangedEvent;
+import com.coffeeshop.backend.exception.OrderStatusConflictException;
+import com.coffeeshop.backend.exception.PriceChangedException;
 import com.coffeeshop.backend.exception.ResourceNotFoundException;
 import com.coffeeshop.backend.mapper.OrderMapper;
 import com.coffeeshop.backend.repository.*;
 import com.coffeeshop.backend.dto.voucher.VoucherValidationRequest;
 import com.coffeeshop.backend.dto.voucher.VoucherValidationResponse;
 import com.coffeeshop.backend.service.OrderService;
+import com.coffeeshop.backend.service.OrderExpiryService;
+import com.coffeeshop.backend.service.OrderNotificationService;
+import com.coffeeshop.backend.service.OrderOutboxService;
+import com.coffeeshop.backend.service.ProductSalesService;
+import com.coffeeshop.backend.service.OrderViewService;
+import com.coffeeshop.backend.service.ShardedStockService;
+import com.coffeeshop.backend.service.VariantCatalogService;
+import com.coffeeshop.backend.service.StockReservationService;
 
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import com.coffeeshop.backend.service.ShippingService;
@@ -41,33 +67,43 @@ public class OrderServiceImpl implements OrderService {
     private final VoucherRepository voucherRepository;
     private final AddressRepository addressRepository;
     private final StoreRepository storeRepository;
-    private final ProductStockRepository productStockRepository;
-    private final StockHistoryRepository stockHistoryRepository;
+    private final StockReservationService stockReservationService;
+    private final ShardedStockService shardedStockService;
+    private final VariantCatalogService variantCatalogService;
     private final ShippingService shippingService;
     private final OrderMapper orderMapper;
-    private final SimpMessagingTemplate simpMessagingTemplate;
+    private final OrderOutboxService orderOutboxService;
+    private final OrderNotificationService orderNotificationService;
+    private final OrderExpiryService orderExpiryService;
+    private final ProductSalesService productSalesService;
+    private final OrderViewRepository orderViewRepository;
+    private final OrderViewService orderViewService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private static final int MAX_FEED_SIZE = 100;
+
+    @Value("${order.expiry.pending-minutes:15}")
+    private long pendingMinutes;
+
+    // Serve listings from the order_view read model; turn on once it has been rebuilt
+    @Value("${order.view.read-enabled:false}")
+    private boolean viewReadEnabled;
     private final PaymentRepository paymentRepository;
 
     @Override
     @Transactional
     public void processMockPayment(Long orderId) {
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new ResourceNotFoundException("Order not found with id: " + orderId));
-        
-        order.setStatus(OrderStatus.PAID);
-        
-        Payment payment = order.getPayment();
-        if (payment == null) {
+        transitionOrThrow(orderId, OrderStatus.PAID);
+        if (paymentRepository.updateStatusByOrderId(orderId, PaymentStatus.SUCCESS, LocalDateTime.now()) == 0) {
             throw new ResourceNotFoundException("Payment not found for order id: " + orderId);
         }
-        payment.setStatus(PaymentStatus.SUCCESS);
-        payment.setPaymentDate(LocalDateTime.now());
-        
-        paymentRepository.save(payment);
-        orderRepository.save(order);
+
+        Order order = orderRepository.findWithUserById(orderId)
+                .orElseThrow(() -> new ResourceNotFoundException("Order not found with id: " + orderId));
+        eventPublisher.publishEvent(OrderChangedEvent.of(orderId));
 
         // Notify clients via WebSocket
-        simpMessagingTemplate.convertAndSend("/topic/orders", orderMapper.toOrderDTO(order));
+        orderOutboxService.record(order);
     }
 
     @Override
@@ -81,52 +117,160 @@ public class OrderServiceImpl implements OrderService {
         Store store = storeRepository.findById(request.getStoreId())
                 .orElseThrow(() -> new ResourceNotFoundException("Store not found with id: " + request.getStoreId()));
 
+        // 2-7. Build the order, its details and payment
+        Map<Long, Integer> quantitiesByVariantId = new LinkedHashMap<>();
+        Map<Long, Integer> shardedQuantitiesByVariantId = new LinkedHashMap<>();
+        Order order = buildOrder(request, user, store, quantitiesByVariantId, shardedQuantitiesByVariantId);
+
+        // 7.5. Never sell at a stale catalog price
+        verifyPrices(List.of(order));
+
+        // 8. Reserve stock for the whole cart at once. Done as late as possible so the
+        // stock rows stay locked only for the final writes, not for voucher and shipping lookups.
+        // Plain rows are always reserved before sharded ones, which keeps a single global lock order.
+        stockReservationService.reserve(store.getId(), quantitiesByVariantId, user.getId());
+        shardedStockService.reserve(store.getId(), shardedQuantitiesByVariantId, user.getId());
+
+        // 9. Save the order; the stock is held until it is paid or expires
+        Order savedOrder = orderRepository.save(order);
+        orderExpiryService.schedule(savedOrder.getId(), savedOrder.getExpiresAt());
+        productSalesService.recordSold(List.of(savedOrder.getId()));
+        eventPublisher.publishEvent(OrderChangedEvent.of(savedOrder.getId()));
+        // The store board shows orders from the moment they are placed
+        orderOutboxService.record(savedOrder);
+
+        // 10. Map to response DTO
+        return toCheckoutResponse(savedOrder);
+    }
+
+    @Override
+    @Transactional
+    public List<OrderResponse> createOrders(Long storeId, List<CreateOrderRequest> requests, List<String> userEmails) {
+        Store store = storeRepository.findById(storeId)
+                .orElseThrow(() -> new ResourceNotFoundException("Store not found with id: " + storeId));
+
+        Map<String, User> usersByEmail = new HashMap<>();
+        Map<Long, Map<Long, Integer>> quantitiesByUserId = new LinkedHashMap<>();
+        Map<Long, Map<Long, Integer>> shardedQuantitiesByUserId = new LinkedHashMap<>();
+        List<Order> orders = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            String userEmail = userEmails.get(i);
+            User user = usersByEmail.computeIfAbsent(userEmail, email -> userRepository.findByEmail(email)
+                    .orElseThrow(() -> new ResourceNotFoundException("User not found with email: " + email)));
+            orders.add(buildOrder(requests.get(i), user, store,
+                    quantitiesByUserId.computeIfAbsent(user.getId(), id -> new LinkedHashMap<>()),
+                    shardedQuantitiesByUserId.computeIfAbsent(user.getId(), id -> new LinkedHashMap<>())));
+        }
+
+        verifyPrices(orders);
+
+        // One stock update per variant for the whole batch; the history still has a row per user and variant
+        stockReservationService.reserveAll(storeId, quantitiesByUserId);
+        shardedStockService.reserveAll(storeId, shardedQuantitiesByUserId);
+
+        List<Order> savedOrders = orderRepository.saveAll(orders);
+        savedOrders.forEach(order -> orderExpiryService.schedule(order.getId(), order.getExpiresAt()));
+        List<Long> orderIds = savedOrders.stream().map(Order::getId).collect(Collectors.toList());
+        productSalesService.recordSold(orderIds);
+        eventPublisher.publishEvent(new OrderChangedEvent(orderIds));
+        savedOrders.forEach(orderOutboxService::record);
+        return savedOrders.stream()
+                .map(this::toCheckoutResponse)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Compares the catalog prices charged in the given orders with the database in one query.
+     * A mismatch, or a variant that is gone or off sale, means the catalog is stale: it is dropped
+     * and the checkout is rejected.
+     */
+    private void verifyPrices(List<Order> orders) {
+        Map<Long, BigDecimal> chargedPrices = new HashMap<>();
+        for (Order order : orders) {
+            for (OrderDetail detail : order.getOrderDetails()) {
+                chargedPrices.put(detail.getProductVariant().getId(), detail.getUnitPrice());
+            }
+        }
+        if (chargedPrices.isEmpty()) {
+            return;
+        }
+        Set<Long> missing = new HashSet<>(chargedPrices.keySet());
+        for (Object[] row : productVariantRepository.findActivePricesByIds(chargedPrices.keySet())) {
+            missing.remove((Long) row[0]);
+            BigDecimal currentPrice = (BigDecimal) row[1];
+            if (currentPrice.compareTo(chargedPrices.get((Long) row[0])) != 0) {
+                variantCatalogService.invalidate();
+                throw new PriceChangedException("The price of an item in your cart has changed. Please review your order.");
+            }
+        }
+        if (!missing.isEmpty()) {
+            variantCatalogService.invalidate();
+            throw new ResourceNotFoundException("Product is no longer available: variant " + missing.iterator().next());
+        }
+    }
+
+    // Items come from the catalog so the response does not lazy-load every variant and product
+    private OrderResponse toCheckoutResponse(Order order) {
+        OrderResponse response = orderMapper.toOrderSummary(order);
+        List<OrderItemResponse> items = new ArrayList<>(order.getOrderDetails().size());
+        for (OrderDetail detail : order.getOrderDetails()) {
+            VariantCatalogEntry variant = variantCatalogService.get(detail.getProductVariant().getId());
+            OrderItemResponse item = new OrderItemResponse();
+            item.setProductVariantId(detail.getProductVariant().getId());
+            item.setProductName(variant != null ? variant.getProductName() : null);
+            item.setSize(variant != null ? variant.getSize() : null);
+            item.setQuantity(detail.getQuantity());
+            item.setUnitPrice(detail.getUnitPrice());
+            items.add(item);
+        }
+        response.setItems(items);
+        return response;
+    }
+
+    /**
+     * Builds an unsaved order with its details and payment, and adds the cart quantities
+     * to the given maps (sharded variants go to their own map).
+     */
+    private Order buildOrder(CreateOrderRequest request, User user, Store store,
+            Map<Long, Integer> quantitiesByVariantId, Map<Long, Integer> shardedQuantitiesByVariantId) {
         // 2. Create a new Order
         Order order = new Order();
         order.setUser(user);
         order.setStore(store);
         order.setOrderDate(LocalDateTime.now());
+        order.setExpiresAt(order.getOrderDate().plusMinutes(pendingMinutes));
         order.setStatus(OrderStatus.PENDING);
         order.setOrderDetails(new ArrayList<>());
 
         // 3. Process order items and calculate subtotal
         BigDecimal subtotal = BigDecimal.ZERO;
         for (OrderItemRequest itemRequest : request.getItems()) {
-            ProductVariant variant = productVariantRepository.findById(itemRequest.getProductVariantId())
-                    .orElseThrow(() -> new ResourceNotFoundException(
-                            "ProductVariant not found with id: " + itemRequest.getProductVariantId()));
-
-            ProductStock productStock = productStockRepository.findAndLockByProductVariantIdAndStoreId(variant.getId(), store.getId())
-                    .orElseThrow(() -> new RuntimeException("Product not available at this store"));
-
-            if (productStock.getQuantity() < itemRequest.getQuantity()) {
-                throw new RuntimeException(
-                        "Not enough stock for product: " + variant.getProduct().getName() + " - " + variant.getSize());
+            // Priced from the in-memory catalog; verifyPrices checks against the database before saving
+            VariantCatalogEntry variant = itemRequest.getProductVariantId() == null ? null
+                    : variantCatalogService.get(itemRequest.getProductVariantId());
+            if (variant == null) {
+                throw new ResourceNotFoundException(
+                        "ProductVariant not found with id: " + itemRequest.getProductVariantId());
+            }
+            if (!variant.isActive()) {
+                throw new ResourceNotFoundException(
+                        "Product is no longer available: " + variant.getProductName() + " - " + variant.getSize());
             }
 
             OrderDetail detail = new OrderDetail();
             detail.setOrder(order);
-            detail.setProductVariant(variant);
+            detail.setProductVariant(productVariantRepository.getReferenceById(variant.getId()));
             detail.setQuantity(itemRequest.getQuantity());
-            detail.setUnitPrice(variant.getPrice()); // Use price from the database
+            detail.setUnitPrice(variant.getPrice());
 
             order.getOrderDetails().add(detail);
 
             subtotal = subtotal.add(variant.getPrice().multiply(new BigDecimal(itemRequest.getQuantity())));
 
-            // Decrease stock and create history
-            int newQuantity = productStock.getQuantity() - itemRequest.getQuantity();
-            productStock.setQuantity(newQuantity);
-            productStockRepository.save(productStock);
-
-            StockHistory history = new StockHistory();
-            history.setProductVariant(variant);
-            history.setStore(store);
-            history.setQuantityChanged(-itemRequest.getQuantity());
-            history.setCurrentQuantity(newQuantity);
-            history.setReason("SALE");
-            history.setCreatedBy(user.getId());
-            stockHistoryRepository.save(history);
+            // The same variant may appear on several cart lines. The catalog's sharding only routes the line;
+            // the reservation services move it if the locked stock row says otherwise
+            (variant.getStockShards() > 0 ? shardedQuantitiesByVariantId : quantitiesByVariantId)
+                    .merge(variant.getId(), itemRequest.getQuantity(), Integer::sum);
         }
 
         // 4. Handle voucher (if any)
@@ -173,11 +317,7 @@ public class OrderServiceImpl implements OrderService {
         payment.setStatus(PaymentStatus.PENDING);
         order.setPayment(payment);
 
-        // 8. Save the order
-        Order savedOrder = orderRepository.save(order);
-
-        // 9. Map to response DTO
-        return orderMapper.toOrderResponse(savedOrder);
+        return order;
     }
 
     @Override
@@ -195,17 +335,33 @@ public class OrderServiceImpl implements OrderService {
     @Override
     @Transactional
     public OrderResponse updateOrderStatus(Long orderId, OrderStatus status) {
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new ResourceNotFoundException("Order not found with id: " + orderId));
+        transitionOrThrow(orderId, status);
+        if (status == OrderStatus.CANCELLED) {
+            productSalesService.recordCancelled(List.of(orderId));
+        }
 
-        order.setStatus(status);
-        Order updatedOrder = orderRepository.save(order);
+        // Staff click through statuses all day: the items are not needed for that, nor loaded
+        Order updatedOrder = orderRepository.findWithUserById(orderId)
+                .orElseThrow(() -> new ResourceNotFoundException("Order not found with id: " + orderId));
+        eventPublisher.publishEvent(OrderChangedEvent.of(orderId));
 
         if (status != OrderStatus.DELIVERED) {
-            simpMessagingTemplate.convertAndSend("/topic/orders", orderMapper.toOrderDTO(updatedOrder));
+            orderOutboxService.record(updatedOrder);
         }
 
-        return orderMapper.toOrderResponse(updatedOrder);
+        return orderMapper.toOrderSummary(updatedOrder);
+    }
+
+    /**
+     * Applies a status change with a single conditional update and reports a conflict when the
+     * order is not in a status the transition table allows, e.g. because someone else changed it first.
+     */
+    private void transitionOrThrow(Long orderId, OrderStatus target) {
+        if (!orderRepository.transitionStatus(orderId, target)) {
+            OrderStatus current = orderRepository.findStatusById(orderId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Order not found with id: " + orderId));
+            throw new OrderStatusConflictException("Order " + orderId + " cannot move from " + current + " to " + target);
+        }
     }
 
     public boolean isOwnerOfOrder(Long orderId, String username) {
@@ -219,29 +375,133 @@ public class OrderServiceImpl implements OrderService {
         User user = userRepository.findByEmail(username)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found with email: " + username));
 
-        Page<Order> orders = orderRepository.findAllByUserId(user.getId(), pageable);
-
-        return orders.map(orderMapper::toOrderResponse);
+        if (viewReadEnabled) {
+            return orderViewRepository.findByUserId(user.getId(), pageable).map(orderViewService::toResponse);
+        }
+        return toResponsePage(orderRepository.findIdsByUserId(user.getId(), pageable));
     }
 
     @Override
     public Page<OrderResponse> getAllOrders(org.springframework.security.core.userdetails.UserDetails userDetails, Pageable pageable) {
+        Long storeId = visibleStoreId(userDetails);
+        if (viewReadEnabled) {
+            Page<OrderView> views = storeId == null
+                    ? orderViewRepository.findAll(pageable)
+                    : orderViewRepository.findByStoreId(storeId, pageable);
+            return views.map(orderViewService::toResponse);
+        }
+        Page<Long> orderIds = storeId == null
+                ? orderRepository.findAllIds(pageable)
+                : orderRepository.findIdsByStoreId(storeId, pageable);
+        return toResponsePage(orderIds);
+    }
+
+    @Override
+    public OrderFeedResponse getOrderFeed(org.springframework.security.core.userdetails.UserDetails userDetails, String cursor, int size) {
+        Long storeId = visibleStoreId(userDetails);
+        int limit = Math.max(1, Math.min(size, MAX_FEED_SIZE));
+        OrderCursor after = cursor == null || cursor.isEmpty() ? null : OrderCursor.decode(cursor);
+        return feedSlice(storeId, after, limit);
+    }
+
+    @Override
+    public OrderStreamResponse getOrderStream(org.springframework.security.core.userdetails.UserDetails userDetails, Long storeId, String epoch, long afterSeq) {
+        Long visibleStoreId = visibleStoreId(userDetails);
+        if (visibleStoreId != null && !visibleStoreId.equals(storeId)) {
+            throw new AccessDeniedException("You do not have permission to view the orders of this store.");
+        }
+        OrderStreamResponse response = orderNotificationService.replay(storeId, epoch, afterSeq);
+        if (response.getEvents() == null) {
+            // Read after the sequence was taken: the snapshot is at least as new as seq, and events
+            // the client then gets again are recognised by their version
+            response.setSnapshot(feedSlice(storeId, null, MAX_FEED_SIZE).getContent());
+        }
+        return response;
+    }
+
+    /**
+     * @param storeId null for every store
+     * @param after   null for the newest orders
+     */
+    private OrderFeedResponse feedSlice(Long storeId, OrderCursor after, int limit) {
+        // One extra row tells whether there is a next slice without counting
+        Pageable fetch = PageRequest.of(0, limit + 1);
+
+        if (viewReadEnabled) {
+            List<OrderView> views;
+            if (after == null) {
+                views = storeId == null
+                        ? orderViewRepository.findFeedStart(fetch)
+                        : orderViewRepository.findStoreFeedStart(storeId, fetch);
+            } else {
+                views = storeId == null
+                        ? orderViewRepository.findFeedAfter(after.orderDate(), after.id(), fetch)
+                        : orderViewRepository.findStoreFeedAfter(storeId, after.orderDate(), after.id(), fetch);
+            }
+            return toFeed(views, limit, OrderView::getOrderId, OrderView::getOrderDate, orderViewService::toResponses);
+        }
+
+        List<Object[]> rows;
+        if (after == null) {
+            rows = storeId == null
+                    ? orderRepository.findFeedStart(fetch)
+                    : orderRepository.findStoreFeedStart(storeId, fetch);
+        } else {
+            rows = storeId == null
+                    ? orderRepository.findFeedAfter(after.orderDate(), after.id(), fetch)
+                    : orderRepository.findStoreFeedAfter(storeId, after.orderDate(), after.id(), fetch);
+        }
+        return toFeed(rows, limit, row -> (Long) row[0], row -> (LocalDateTime) row[1],
+                slice -> toResponses(slice.stream().map(row -> (Long) row[0]).collect(Collectors.toList())));
+    }
+
+    // Rows come with one extra past the limit, which only tells whether there is a next slice
+    private <T> OrderFeedResponse toFeed(List<T> rows, int limit, Function<T, Long> id,
+            Function<T, LocalDateTime> orderDate, Function<List<T>, List<OrderResponse>> toResponses) {
+        boolean hasNext = rows.size() > limit;
+        List<T> slice = hasNext ? rows.subList(0, limit) : rows;
+        String nextCursor = null;
+        if (hasNext) {
+            T last = slice.get(slice.size() - 1);
+            nextCursor = new OrderCursor(orderDate.apply(last), id.apply(last)).encode();
+        }
+        return new OrderFeedResponse(toResponses.apply(slice), limit, hasNext, nextCursor);
+    }
+
+    /**
+     * @return null for admins, who see every store, or the store of a staff member
+     */
+    private Long visibleStoreId(org.springframework.security.core.userdetails.UserDetails userDetails) {
         User user = userRepository.findByEmail(userDetails.getUsername())
                 .orElseThrow(() -> new ResourceNotFoundException("User not found with email: " + userDetails.getUsername()));
 
-        Page<Order> orders;
         if (user.getRole() == com.coffeeshop.backend.enums.UserRole.ADMIN) {
-            orders = orderRepository.findAll(pageable);
+            return null;
         } else if (user.getRole() == com.coffeeshop.backend.enums.UserRole.STAFF) {
             if (user.getStore() == null) {
                 throw new AccessDeniedException("Staff user is not assigned to any store.");
             }
-            orders = orderRepository.findByStoreId(user.getStore().getId(), pageable);
+            return user.getStore().getId();
         } else {
              throw new AccessDeniedException("You do not have permission to view all orders.");
         }
+    }
+
+    // Second step of a listing: load the orders of the page in one query, keeping the page order
+    private Page<OrderResponse> toResponsePage(Page<Long> orderIds) {
+        List<OrderResponse> responses = toResponses(orderIds.getContent());
+        return new PageImpl<>(responses, orderIds.getPageable(), orderIds.getTotalElements());
+    }
 
-        return orders.map(orderMapper::toOrderResponse);
+    private List<OrderResponse> toResponses(List<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Order> ordersById = orderRepository.findAllWithItemsByIdIn(orderIds).stream()
+                .collect(Collectors.toMap(Order::getId, Function.identity()));
+        return orderIds.stream()
+                .map(id -> orderMapper.toOrderResponse(ordersById.get(id)))
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -255,15 +515,17 @@ public class OrderServiceImpl implements OrderService {
             throw new AccessDeniedException("You are not authorized to cancel this order.");
         }
 
-        // Check if order is in a cancellable state
-        if (order.getStatus() != OrderStatus.PENDING && order.getStatus() != OrderStatus.PAID) {
-            throw new IllegalStateException("Order cannot be cancelled once it is being prepared.");
+        // Customers may only cancel before preparation starts; checked in the update itself
+        if (orderRepository.updateStatusIfIn(orderId, OrderStatus.CANCELLED,
+                EnumSet.of(OrderStatus.PENDING, OrderStatus.PAID), LocalDateTime.now()) == 0) {
+            throw new OrderStatusConflictException("Order cannot be cancelled once it is being prepared.");
         }
-
-        order.setStatus(OrderStatus.CANCELLED);
-        orderRepository.save(order);
+        productSalesService.recordCancelled(List.of(orderId));
+        order = orderRepository.findWithUserById(orderId)
+                .orElseThrow(() -> new ResourceNotFoundException("Order not found with id: " + orderId));
+        eventPublisher.publishEvent(OrderChangedEvent.of(orderId));
 
         // Broadcast the status update
-        simpMessagingTemplate.convertAndSend("/topic/orders", orderMapper.toOrderDTO(order));
+        orderOutboxService.record(order);
     }
 }
\ No newline at end of file
@@ -0,0 +1,151 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.order.OrderResponse;
+import com.coffeeshop.backend.entity.Order;
+import com.coffeeshop.backend.entity.OrderView;
+import com.coffeeshop.backend.event.OrderChangedEvent;
+import com.coffeeshop.backend.mapper.OrderMapper;
+import com.coffeeshop.backend.repository.OrderRepository;
+import com.coffeeshop.backend.repository.OrderViewRepository;
+import com.coffeeshop.backend.service.OrderViewService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+public class OrderViewServiceImpl implements OrderViewService {
+
+    private final OrderRepository orderRepository;
+    private final OrderViewRepository orderViewRepository;
+    private final OrderMapper orderMapper;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate newTransaction;
+    private final Timer refreshTimer;
+
+    @Value("${order.view.rebuild-batch-size:500}")
+    private int rebuildBatchSize;
+
+    public OrderViewServiceImpl(OrderRepository orderRepository, OrderViewRepository orderViewRepository,
+            OrderMapper orderMapper, ObjectMapper objectMapper, PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry) {
+        this.orderRepository = orderRepository;
+        this.orderViewRepository = orderViewRepository;
+        this.orderMapper = orderMapper;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.refreshTimer = meterRegistry.timer("orders.view.refresh");
+    }
+
+    // Once the order transaction has committed, in a transaction of its own: loading and serializing the
+    // order no longer holds the stock and order locks of the change, and a rolled back change is never shown.
+    // A refresh that fails leaves the row behind until the next change to the order or a rebuild
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onOrderChanged(OrderChangedEvent event) {
+        try {
+            newTransaction.executeWithoutResult(status -> refresh(event.orderIds()));
+        } catch (RuntimeException e) {
+            log.warn("Order view of orders {} could not be refreshed: {}", event.orderIds(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void refresh(Collection<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        refreshTimer.record(() -> {
+            Map<Long, OrderView> existing = orderViewRepository.findAndLockAllById(orderIds).stream()
+                    .collect(Collectors.toMap(OrderView::getOrderId, Function.identity()));
+            List<OrderView> views = new ArrayList<>(orderIds.size());
+            LocalDateTime now = LocalDateTime.now();
+            for (Order order : orderRepository.findAllWithItemsByIdIn(orderIds)) {
+                long version = order.getVersion() != null ? order.getVersion() : 0L;
+                OrderView view = existing.computeIfAbsent(order.getId(), id -> new OrderView());
+                if (view.getOrderVersion() != null && view.getOrderVersion() > version) {
+                    // Built from a later change already; this event arrived out of order
+                    continue;
+                }
+                view.setOrderId(order.getId());
+                view.setUserId(order.getUser().getId());
+                view.setStoreId(order.getStore().getId());
+                view.setOrderDate(order.getOrderDate());
+                view.setStatus(order.getStatus());
+                view.setPaymentStatus(order.getPayment() != null ? order.getPayment().getStatus() : null);
+                view.setOrderVersion(version);
+                view.setDocument(write(orderMapper.toOrderResponse(order)));
+                view.setUpdatedAt(now);
+                views.add(view);
+            }
+            orderViewRepository.saveAll(views);
+        });
+    }
+
+    @Override
+    public int rebuild() {
+        long afterId = 0;
+        int total = 0;
+        while (true) {
+            long from = afterId;
+            // Locking the batch makes status changes to these orders wait until their rows are written,
+            // so the rebuild cannot overwrite a newer row with the state it read before the change
+            List<Long> ids = transactionTemplate.execute(status -> {
+                List<Long> batch = orderRepository.findAndLockAfter(from, PageRequest.of(0, rebuildBatchSize)).stream()
+                        .map(Order::getId)
+                        .collect(Collectors.toList());
+                refresh(batch);
+                return batch;
+            });
+            if (ids == null || ids.isEmpty()) {
+                break;
+            }
+            total += ids.size();
+            afterId = ids.get(ids.size() - 1);
+            log.info("Order view rebuild: {} orders projected, up to id {}", total, afterId);
+        }
+        return total;
+    }
+
+    @Override
+    public OrderResponse toResponse(OrderView view) {
+        try {
+            return objectMapper.readValue(view.getDocument(), OrderResponse.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Order view of order " + view.getOrderId() + " cannot be read", e);
+        }
+    }
+
+    @Override
+    public List<OrderResponse> toResponses(List<OrderView> views) {
+        return views.stream().map(this::toResponse).collect(Collectors.toList());
+    }
+
+    private String write(OrderResponse response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Order " + response.getId() + " cannot be serialized", e);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.config.RedisConfig;
+import com.coffeeshop.backend.dto.product.CachedProductPage;
+import com.coffeeshop.backend.dto.product.ProductDTO;
+import com.coffeeshop.backend.service.ClusterMessagingService;
+import com.coffeeshop.backend.service.ProductCacheService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Tags live next to the pages as shared sets of page keys, one per product and one per listing, and are added
+ * before the page is cached so an eviction can never miss it. Evicting a tag pops its set and evicts what was in it.
+ * <p>
+ * Keys start with an epoch shared by the nodes (new whenever the shared state is, e.g. a restart in local mode),
+ * the {@link #SCHEMA_VERSION} of the cached pages and the catalog version. A node joins the catalog version the
+ * others are on when it comes up, so restarts and deploys keep the cache; only an edit touching too many pages
+ * moves everyone to a new one. Nodes briefly on different versions are still kept right by the tags.
+ * <p>
+ * An edit evicts its tags again on every node once it commits. A node that was reading one of those pages meanwhile
+ * does not cache it, and if it cached it already, the second eviction finds it under the tags.
+ * <p>
+ * A miss is loaded once per key on each node while the other requests for it wait for that load, up to
+ * {@code cache.catalog.load-wait-ms}, after which they read the page themselves. A page read in
+ * the last {@code cache.catalog.refresh-ahead-seconds} of its TTL is reloaded in the background, so pages that
+ * keep being read never expire in front of their readers.
+ */
+@Slf4j
+@Service
+public class ProductCacheServiceImpl implements ProductCacheService {
+
+    static final String VERSION_CHANNEL = "catalog-version";
+    static final String EVICT_CHANNEL = "catalog-evict";
+    private static final String VERSION_KEY = "products:catalog-version";
+    private static final String EPOCH_KEY = "products:catalog-epoch";
+    private static final String TAG_PREFIX = "products:tag:";
+    // Raise whenever CachedProductPage or ProductDTO change shape, so pages cached by an older build are never read back
+    static final int SCHEMA_VERSION = 1;
+
+    private final Cache cache;
+    private final ClusterMessagingService clusterMessagingService;
+    private final String epoch;
+    private final AtomicLong version = new AtomicLong();
+    private final TransactionTemplate readTransaction;
+    // Pages being read on this node, so concurrent misses of a key share one load
+    private final ConcurrentMap<String, CompletableFuture<Page<ProductDTO>>> loading = new ConcurrentHashMap<>();
+    // Bumped by every eviction on any node, so a page read before one is not cached after it
+    private final AtomicLong evictions = new AtomicLong();
+    private final ThreadPoolExecutor refresher;
+    private final Counter evictedPages;
+    private final Counter versionBumps;
+    private final Counter coalescedMisses;
+    private final Counter directLoads;
+    private final Counter refreshes;
+
+    @Value("${cache.catalog.max-evicted-pages:500}")
+    private int maxEvictedPages;
+
+    @Value("${cache.catalog.refresh-ahead-seconds:300}")
+    private long refreshAheadSeconds;
+
+    @Value("${cache.catalog.load-wait-ms:5000}")
+    private long loadWaitMs;
+
+    public ProductCacheServiceImpl(CacheManager cacheManager, ClusterMessagingService clusterMessagingService,
+            PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+            @Value("${cache.catalog.refresh-threads:2}") int refreshThreads) {
+        this.cache = cacheManager.getCache(CACHE);
+        this.clusterMessagingService = clusterMessagingService;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        AtomicInteger threads = new AtomicInteger();
+        // A full queue drops the refresh; the page is still served until it expires
+        this.refresher = new ThreadPoolExecutor(refreshThreads, refreshThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(100), runnable -> {
+                    Thread thread = new Thread(runnable, "catalog-refresh-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.coalescedMisses = meterRegistry.counter("cache.catalog.loads", "kind", "coalesced");
+        this.refreshes = meterRegistry.counter("cache.catalog.loads", "kind", "refresh");
+        this.directLoads = meterRegistry.counter("cache.catalog.loads", "kind", "direct");
+        this.evictedPages = meterRegistry.counter("cache.catalog.evictions", "kind", "page");
+        this.versionBumps = meterRegistry.counter("cache.catalog.evictions", "kind", "version");
+        this.epoch = clusterMessagingService.share(EPOCH_KEY, UUID.randomUUID().toString());
+        clusterMessagingService.subscribe(VERSION_CHANNEL, Long.class, this::advance);
+        clusterMessagingService.subscribe(EVICT_CHANNEL, String[].class, tags -> evictTagged(List.of(tags)));
+        advance(clusterMessagingService.getCounter(VERSION_KEY));
+    }
+
+    @PreDestroy
+    void stop() {
+        refresher.shutdownNow();
+    }
+
+    @Override
+    public Page<ProductDTO> getPage(String listing, String search, Pageable pageable,
+            Supplier<Page<ProductDTO>> loader) {
+        String key = key(listing, search, pageable);
+        CachedProductPage cached = cache.get(key, CachedProductPage.class);
+        if (cached != null) {
+            long refreshAt = cached.getLoadedAt() + RedisConfig.ENTRY_TTL.toMillis()
+                    - TimeUnit.SECONDS.toMillis(refreshAheadSeconds);
+            if (System.currentTimeMillis() >= refreshAt) {
+                refresh(key, listing, loader, cached.getPage());
+            }
+            return cached.getPage();
+        }
+        CompletableFuture<Page<ProductDTO>> mine = new CompletableFuture<>();
+        CompletableFuture<Page<ProductDTO>> running = loading.putIfAbsent(key, mine);
+        if (running != null) {
+            coalescedMisses.increment();
+            try {
+                return running.get(loadWaitMs, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+            } catch (TimeoutException e) {
+                // A load stuck on a slow query does not hold up every reader of the page; this read is not cached
+                directLoads.increment();
+                return readTransaction.execute(status -> loader.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for product page " + key, e);
+            }
+        }
+        return load(key, listing, loader, mine);
+    }
+
+    @Override
+    public void evict(Collection<Long> productIds, Collection<String> listings) {
+        List<String> tags = new ArrayList<>();
+        productIds.forEach(productId -> tags.add(productTag(productId)));
+        listings.forEach(listing -> tags.add(listingTag(listing)));
+        if (tags.isEmpty()) {
+            return;
+        }
+        evictTagged(tags);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    clusterMessagingService.publish(EVICT_CHANNEL, tags.toArray(String[]::new));
+                }
+            });
+        } else {
+            clusterMessagingService.publish(EVICT_CHANNEL, tags.toArray(String[]::new));
+        }
+    }
+
+    @Override
+    public long bumpVersion() {
+        long next = clusterMessagingService.increment(VERSION_KEY);
+        // Other nodes follow when the message reaches them; one that misses it is still kept right by the tags
+        advance(next);
+        clusterMessagingService.publish(VERSION_CHANNEL, next);
+        versionBumps.increment();
+        return next;
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    private void refresh(String key, String listing, Supplier<Page<ProductDTO>> loader, Page<ProductDTO> current) {
+        CompletableFuture<Page<ProductDTO>> mine = new CompletableFuture<>();
+        if (loading.putIfAbsent(key, mine) != null) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    load(key, listing, loader, mine);
+                    refreshes.increment();
+                } catch (RuntimeException e) {
+                    log.warn("Refreshing cached product page {} failed: {}", key, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Anyone who started waiting meanwhile gets the page that is still cached
+            loading.remove(key, mine);
+            mine.complete(current);
+        }
+    }
+
+    private Page<ProductDTO> load(String key, String listing, Supplier<Page<ProductDTO>> loader,
+            CompletableFuture<Page<ProductDTO>> mine) {
+        try {
+            long seen = evictions.get();
+            long loadedAt = System.currentTimeMillis();
+            // In a transaction of its own, so the lazy associations can be mapped off the request thread too
+            Page<ProductDTO> page = readTransaction.execute(status -> loader.get());
+            List<String> tags = new ArrayList<>();
+            tags.add(listingTag(listing));
+            for (ProductDTO product : page.getContent()) {
+                tags.add(productTag(product.getId()));
+            }
+            if (evictions.get() == seen) {
+                clusterMessagingService.addToSets(tags, key, RedisConfig.ENTRY_TTL);
+                cache.put(key, new CachedProductPage(page, loadedAt));
+                // An eviction that popped the tags between the check and the put would have missed the page
+                if (evictions.get() != seen) {
+                    cache.evict(key);
+                }
+            }
+            mine.complete(page);
+            return page;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    private void evictTagged(List<String> tags) {
+        evictions.incrementAndGet();
+        Set<String> keys = clusterMessagingService.popSets(tags, maxEvictedPages + 1);
+        if (keys.size() > maxEvictedPages) {
+            log.info("Edit touches more than {} cached product pages, moving to a new catalog version", maxEvictedPages);
+            bumpVersion();
+            return;
+        }
+        keys.forEach(cache::evict);
+        evictedPages.increment(keys.size());
+    }
+
+    private void advance(Long next) {
+        version.accumulateAndGet(next, Math::max);
+    }
+
+    private String key(String listing, String search, Pageable pageable) {
+        String page = pageable.isPaged()
+                ? pageable.getPageNumber() + ":" + pageable.getPageSize() + ":" + encode(pageable.getSort().toString())
+                : "unpaged";
+        // Client input is encoded so it cannot run into the separators
+        return epoch + ":" + SCHEMA_VERSION + ":" + version.get() + ":" + encode(listing) + ":" + page + ":"
+                + encode(search == null ? "" : search);
+    }
+
+    private static String listingTag(String listing) {
+        return TAG_PREFIX + "listing:" + normalize(listing);
+    }
+
+    private static String productTag(Long productId) {
+        return TAG_PREFIX + "product:" + productId;
+    }
+
+    // Tags are coarser than the category lookup, which only costs an occasional extra eviction
+    private static String normalize(String listing) {
+        return listing.toLowerCase(Locale.ROOT);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
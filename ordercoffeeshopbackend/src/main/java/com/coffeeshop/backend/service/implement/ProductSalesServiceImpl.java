@@ -0,0 +1,188 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.entity.ProductSales;
+import com.coffeeshop.backend.entity.ProductSalesChange;
+import com.coffeeshop.backend.entity.ProductSalesId;
+import com.coffeeshop.backend.repository.ProductSalesChangeRepository;
+import com.coffeeshop.backend.repository.ProductSalesRepository;
+import com.coffeeshop.backend.service.ProductCacheService;
+import com.coffeeshop.backend.service.ProductSalesService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Changes go through product_sales_changes rather than straight into the totals: every checkout of a popular
+ * product would otherwise queue on the same total row until its transaction commits.
+ */
+@Slf4j
+@Service
+public class ProductSalesServiceImpl implements ProductSalesService {
+
+    private final ProductSalesRepository productSalesRepository;
+    private final ProductSalesChangeRepository productSalesChangeRepository;
+    private final ProductCacheService productCacheService;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter appliedChanges;
+    private final Counter failedBatches;
+
+    private volatile boolean running;
+    private Thread rollupThread;
+    // When the cached best-selling pages were last dropped for newer totals
+    private long rankingEvictedAt;
+
+    @Value("${order.sales.batch-size:500}")
+    private int batchSize;
+
+    @Value("${order.sales.rollup-interval-ms:5000}")
+    private long rollupIntervalMs;
+
+    @Value("${order.sales.ranking-max-age-seconds:300}")
+    private long rankingMaxAgeSeconds;
+
+    public ProductSalesServiceImpl(ProductSalesRepository productSalesRepository,
+            ProductSalesChangeRepository productSalesChangeRepository, ProductCacheService productCacheService,
+            PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.productSalesRepository = productSalesRepository;
+        this.productSalesChangeRepository = productSalesChangeRepository;
+        this.productCacheService = productCacheService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.appliedChanges = meterRegistry.counter("products.sales.changes");
+        this.failedBatches = meterRegistry.counter("products.sales.failures");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        rollupThread = new Thread(this::run, "product-sales");
+        rollupThread.setDaemon(true);
+        rollupThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (rollupThread != null) {
+            rollupThread.interrupt();
+        }
+    }
+
+    @Override
+    public void recordSold(Collection<Long> orderIds) {
+        append(orderIds, 1);
+    }
+
+    @Override
+    public void recordCancelled(Collection<Long> orderIds) {
+        append(orderIds, -1);
+    }
+
+    @Override
+    public int rollUp() {
+        Integer applied = transactionTemplate.execute(status -> {
+            List<ProductSalesChange> changes = productSalesChangeRepository.findAndLockOldest(
+                    PageRequest.of(0, batchSize));
+            if (changes.isEmpty()) {
+                return 0;
+            }
+            Map<ProductSalesId, Long> deltas = new HashMap<>();
+            for (ProductSalesChange change : changes) {
+                ProductSalesId id = new ProductSalesId(change.getProductId(), change.getStoreId(),
+                        change.getSalesDate());
+                deltas.merge(id, change.getQuantity(), Long::sum);
+            }
+
+            List<ProductSales> changed = new ArrayList<>();
+            List<ProductSales> emptied = new ArrayList<>();
+            for (ProductSales sales : productSalesRepository.findAllById(deltas.keySet())) {
+                sales.setQuantity(sales.getQuantity() + deltas.remove(sales.getId()));
+                (sales.getQuantity() == 0 ? emptied : changed).add(sales);
+            }
+            // What is left has no total yet
+            deltas.forEach((id, delta) -> {
+                if (delta != 0) {
+                    ProductSales sales = new ProductSales();
+                    sales.setId(id);
+                    sales.setQuantity(delta);
+                    changed.add(sales);
+                }
+            });
+            productSalesRepository.saveAll(changed);
+            productSalesRepository.deleteAll(emptied);
+            productSalesChangeRepository.deleteAllInBatch(changes);
+            return changes.size();
+        });
+        int count = applied != null ? applied : 0;
+        appliedChanges.increment(count);
+        if (count > 0) {
+            evictRanking();
+        }
+        return count;
+    }
+
+    @Override
+    public Page<Long> getBestSelling(Long storeId, Integer days, Pageable pageable) {
+        LocalDate from = days != null && days > 0 ? LocalDate.now().minusDays(days - 1L) : null;
+        // The ranking is the order; a sort requested by the client has no column to apply to
+        Pageable unsorted = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize());
+        return productSalesRepository.findBestSellingProductIds(storeId, from, unsorted);
+    }
+
+    private void append(Collection<Long> orderIds, long sign) {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        // The insert reads the order lines, which may still be waiting in the persistence context
+        productSalesChangeRepository.flush();
+        productSalesChangeRepository.appendForOrders(orderIds, sign);
+    }
+
+    // The cached best-selling pages may lag the totals by up to ranking-max-age-seconds, so a busy shop
+    // does not empty them on every rollup
+    private void evictRanking() {
+        long now = System.currentTimeMillis();
+        if (now - rankingEvictedAt < TimeUnit.SECONDS.toMillis(rankingMaxAgeSeconds)) {
+            return;
+        }
+        rankingEvictedAt = now;
+        productCacheService.evict(List.of(), Set.of(ProductCacheService.BEST_SELLING));
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                Thread.sleep(rollupIntervalMs);
+                int applied;
+                do {
+                    applied = rollUp();
+                } while (running && applied == batchSize);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // The changes stay recorded and are applied on the next round
+                failedBatches.increment();
+                log.error("Product sales rollup failed", e);
+            }
+        }
+    }
+}
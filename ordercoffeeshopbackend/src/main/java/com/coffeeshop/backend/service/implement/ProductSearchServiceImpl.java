@@ -0,0 +1,307 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.product.ProductSearchEntry;
+import com.coffeeshop.backend.repository.ProductRepository;
+import com.coffeeshop.backend.service.ClusterMessagingService;
+import com.coffeeshop.backend.service.ProductSearchService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Names are folded (tone marks stripped, đ to d, lower case, punctuation to spaces) and split into words; the
+ * index is the sorted distinct words with the products using each. A query word scores most on an equal word,
+ * less on a word it starts, least on a word within {@link #maxTypos} edits, and a product must match every query
+ * word. Names holding the whole folded query get a bonus, and still match when the words do not, as "LIKE" did.
+ * <p>
+ * The menu is small enough that the typo pass can scan the whole dictionary; a search stays well under a
+ * millisecond and the index is rebuilt from one query after each catalog change.
+ */
+@Slf4j
+@Service
+public class ProductSearchServiceImpl implements ProductSearchService {
+
+    static final String CHANNEL = "product-search";
+
+    private static final int EXACT = 4;
+    private static final int PREFIX = 3;
+    private static final int TYPO = 1;
+
+    private final ProductRepository productRepository;
+    private final ClusterMessagingService clusterMessagingService;
+    private final Timer searchTimer;
+
+    private final AtomicLong version = new AtomicLong();
+    private volatile Snapshot snapshot;
+
+    public ProductSearchServiceImpl(ProductRepository productRepository,
+            ClusterMessagingService clusterMessagingService, MeterRegistry meterRegistry) {
+        this.productRepository = productRepository;
+        this.clusterMessagingService = clusterMessagingService;
+        this.searchTimer = meterRegistry.timer("products.search");
+        clusterMessagingService.subscribe(CHANNEL, Long.class, changed -> drop());
+    }
+
+    @Override
+    public Page<Long> search(String query, String categoryName, Pageable pageable) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = load();
+        }
+        Snapshot index = current;
+        return searchTimer.record(() -> index.search(query, categoryName, pageable));
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    public void invalidate() {
+        drop();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    broadcast();
+                }
+            });
+        } else {
+            broadcast();
+        }
+    }
+
+    private void broadcast() {
+        drop();
+        clusterMessagingService.publish(CHANNEL, version.get());
+    }
+
+    private void drop() {
+        synchronized (this) {
+            version.incrementAndGet();
+            snapshot = null;
+        }
+    }
+
+    private Snapshot load() {
+        long loadingVersion = version.get();
+        List<ProductSearchEntry> entries = productRepository.findAllSearchEntries();
+        Snapshot loaded = new Snapshot(entries);
+        synchronized (this) {
+            // Only publish if nothing was invalidated while we were reading
+            if (version.get() == loadingVersion && snapshot == null) {
+                snapshot = loaded;
+                log.info("Loaded product search index version {} with {} products and {} words",
+                        loadingVersion, entries.size(), loaded.words.length);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Lower case, without tone marks or punctuation, words separated by single spaces.
+     */
+    static String fold(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        boolean space = true;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            // The only Vietnamese letter that does not decompose
+            if (c == 'đ' || c == 'Đ') {
+                c = 'd';
+            }
+            if (Character.isLetterOrDigit(c)) {
+                folded.append(Character.toLowerCase(c));
+                space = false;
+            } else if (!space) {
+                folded.append(' ');
+                space = true;
+            }
+        }
+        int end = folded.length();
+        return space && end > 0 ? folded.substring(0, end - 1) : folded.toString();
+    }
+
+    // One typo from four letters on, two from eight
+    static int maxTypos(String word) {
+        return word.length() >= 8 ? 2 : word.length() >= 4 ? 1 : 0;
+    }
+
+    /**
+     * Edit distance (adjacent swaps counting as one edit), or {@code limit + 1} once it is known to exceed the limit.
+     */
+    static int distance(String a, String b, int limit) {
+        if (Math.abs(a.length() - b.length()) > limit) {
+            return limit + 1;
+        }
+        int[] previous2 = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] row = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            row[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int d = Math.min(Math.min(previous[j] + 1, row[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d = Math.min(d, previous2[j - 2] + 1);
+                }
+                row[j] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+            if (rowMin > limit) {
+                return limit + 1;
+            }
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = row;
+            row = recycled;
+        }
+        return Math.min(previous[b.length()], limit + 1);
+    }
+
+    /**
+     * Folded names in a parallel array to the entries, and the sorted words with the entry indexes using each.
+     */
+    private static final class Snapshot {
+        private final ProductSearchEntry[] entries;
+        private final String[] names;
+        private final String[] words;
+        private final int[][] postings;
+
+        Snapshot(List<ProductSearchEntry> source) {
+            this.entries = source.toArray(ProductSearchEntry[]::new);
+            this.names = new String[entries.length];
+            Map<String, List<Integer>> byWord = new HashMap<>();
+            for (int i = 0; i < entries.length; i++) {
+                names[i] = fold(entries[i].getName());
+                for (String word : split(names[i])) {
+                    List<Integer> posting = byWord.computeIfAbsent(word, w -> new ArrayList<>());
+                    if (posting.isEmpty() || posting.get(posting.size() - 1) != i) {
+                        posting.add(i);
+                    }
+                }
+            }
+            this.words = byWord.keySet().stream().sorted().toArray(String[]::new);
+            this.postings = new int[words.length][];
+            for (int w = 0; w < words.length; w++) {
+                postings[w] = byWord.get(words[w]).stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+
+        Page<Long> search(String query, String categoryName, Pageable pageable) {
+            String folded = fold(query);
+            if (folded.isEmpty()) {
+                return new PageImpl<>(List.of(), pageable, 0);
+            }
+            String[] queryWords = split(folded);
+            int[] scores = new int[entries.length];
+            boolean[] missed = new boolean[entries.length];
+            for (String queryWord : queryWords) {
+                int[] best = score(queryWord);
+                for (int i = 0; i < entries.length; i++) {
+                    if (best[i] == 0) {
+                        missed[i] = true;
+                    }
+                    scores[i] += best[i];
+                }
+            }
+
+            List<Integer> matches = new ArrayList<>();
+            for (int i = 0; i < entries.length; i++) {
+                if (categoryName != null && !categoryName.equals(entries[i].getCategoryName())) {
+                    continue;
+                }
+                int score = missed[i] ? 0 : scores[i];
+                if (names[i].startsWith(folded)) {
+                    score += 2;
+                } else if (names[i].contains(folded)) {
+                    score += 1;
+                }
+                if (score > 0) {
+                    scores[i] = score;
+                    matches.add(i);
+                }
+            }
+            matches.sort(Comparator.<Integer>comparingInt(i -> -scores[i])
+                    .thenComparing(i -> names[i])
+                    .thenComparingLong(i -> entries[i].getId()));
+
+            int from = (int) Math.min(pageable.isPaged() ? pageable.getOffset() : 0, matches.size());
+            int to = pageable.isPaged() ? Math.min(from + pageable.getPageSize(), matches.size()) : matches.size();
+            List<Long> ids = matches.subList(from, to).stream().map(i -> entries[i].getId()).toList();
+            return new PageImpl<>(ids, pageable, matches.size());
+        }
+
+        // The best score the query word gets from each entry's words
+        private int[] score(String queryWord) {
+            int[] best = new int[entries.length];
+            int start = Arrays.binarySearch(words, queryWord);
+            if (start >= 0) {
+                credit(best, start, EXACT);
+                start++;
+            } else {
+                start = -start - 1;
+            }
+            for (int w = start; w < words.length && words[w].startsWith(queryWord); w++) {
+                credit(best, w, PREFIX);
+            }
+            int limit = maxTypos(queryWord);
+            if (limit > 0) {
+                for (int w = 0; w < words.length; w++) {
+                    if (typo(queryWord, words[w], limit)) {
+                        credit(best, w, TYPO);
+                    }
+                }
+            }
+            return best;
+        }
+
+        private void credit(int[] best, int word, int score) {
+            for (int entry : postings[word]) {
+                best[entry] = Math.max(best[entry], score);
+            }
+        }
+
+        // Close to the whole word, or to its start for a query still being typed
+        private static boolean typo(String queryWord, String word, int limit) {
+            if (distance(queryWord, word, limit) <= limit) {
+                return true;
+            }
+            for (int length = queryWord.length() - 1; length <= queryWord.length() + 1; length++) {
+                if (length > 0 && length < word.length()
+                        && distance(queryWord, word.substring(0, length), limit) <= limit) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static String[] split(String folded) {
+            return folded.isEmpty() ? new String[0] : folded.split(" ");
+        }
+    }
+}
@@ -7,20 +7,27 @@ import com.coffeeshop.backend.entity.*;
 import com.coffeeshop.backend.exception.ResourceNotFoundException;
 import com.coffeeshop.backend.mapper.ProductMapper;
 import com.coffeeshop.backend.repository.*;
+import com.coffeeshop.backend.service.ProductCacheService;
+import com.coffeeshop.backend.service.ProductSalesService;
+import com.coffeeshop.backend.service.ProductSearchService;
 import com.coffeeshop.backend.service.R2Service;
 import com.coffeeshop.backend.service.ProductService;
+import com.coffeeshop.backend.service.VariantCatalogService;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -34,20 +41,23 @@ public class ProductServiceImpl implements ProductService {
     private final StockHistoryRepository stockHistoryRepository;
     private final StoreRepository storeRepository;
     private final ProductMapper productMapper;
-    private final OrderDetailRepository orderDetailRepository;
     private final R2Service r2Service;
+    private final VariantCatalogService variantCatalogService;
+    private final ProductCacheService productCacheService;
+    private final ProductSalesService productSalesService;
+    private final ProductSearchService productSearchService;
+
+    private static final int MAX_BEST_SELLING_SIZE = 100;
 
     @Override
-    @Cacheable("products")
     public Page<ProductDTO> getAllProducts(String search, Pageable pageable) {
-        log.info("Fetching products from DB with search: {}, pageable: {}", search, pageable);
-        Page<Product> products;
-        if (search != null && !search.isEmpty()) {
-            products = productRepository.findByNameContainingIgnoreCaseAndIsActive(search, true, pageable);
-        } else {
-            products = productRepository.findByIsActive(true, pageable);
-        }
-        return products.map(productMapper::toProductDTO);
+        return productCacheService.getPage(ProductCacheService.ALL_PRODUCTS, search, pageable, () -> {
+            log.info("Fetching products from DB with search: {}, pageable: {}", search, pageable);
+            if (search != null && !search.isEmpty()) {
+                return toProductPage(productSearchService.search(search, null, pageable), null);
+            }
+            return productRepository.findByIsActive(true, pageable).map(productMapper::toProductDTO);
+        });
     }
 
     @Override
@@ -65,32 +75,30 @@ public class ProductServiceImpl implements ProductService {
     }
 
     @Override
-    @Cacheable("products")
     public Page<ProductDTO> getProductsByCategory(String categoryName, String search, Pageable pageable) {
-        log.info("Fetching products by category from DB: {}, search: {}, pageable: {}", categoryName, search, pageable);
-        Page<Product> products;
-        if ("best-selling".equalsIgnoreCase(categoryName)) {
-            // Note: Pagination for this custom logic might require more complex queries.
-            // For now, we return it as a single page.
-            List<Product> bestSellingProducts = orderDetailRepository.findAll().stream()
-                .collect(Collectors.groupingBy(od -> od.getProductVariant().getProduct(),
-                    Collectors.summingInt(OrderDetail::getQuantity)))
-                .entrySet().stream()
-                .sorted(Map.Entry.<Product, Integer>comparingByValue().reversed())
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
-
-            List<ProductDTO> bestSellingProductDTOs = bestSellingProducts.stream()
-                .map(productMapper::toProductDTO)
-                .collect(Collectors.toList());
-            
-            return new org.springframework.data.domain.PageImpl<>(bestSellingProductDTOs, pageable, bestSellingProductDTOs.size());
-        } else if (search != null && !search.isEmpty()) {
-            products = productRepository.findByCategory_NameAndNameContainingIgnoreCaseAndIsActive(categoryName, search, true, pageable);
-        } else {
-            products = productRepository.findByCategory_NameAndIsActive(categoryName, true, pageable);
+        if (ProductCacheService.BEST_SELLING.equalsIgnoreCase(categoryName)) {
+            return getBestSellingProducts(null, null, pageable);
         }
-        return products.map(productMapper::toProductDTO);
+        return productCacheService.getPage(categoryName, search, pageable, () -> {
+            log.info("Fetching products by category from DB: {}, search: {}, pageable: {}", categoryName, search, pageable);
+            if (search != null && !search.isEmpty()) {
+                return toProductPage(productSearchService.search(search, categoryName, pageable), categoryName);
+            }
+            return productRepository.findByCategory_NameAndIsActive(categoryName, true, pageable)
+                    .map(productMapper::toProductDTO);
+        });
+    }
+
+    @Override
+    public Page<ProductDTO> getBestSellingProducts(Long storeId, Integer days, Pageable requested) {
+        Pageable pageable = requested.isPaged()
+                ? PageRequest.of(requested.getPageNumber(), Math.max(1, Math.min(requested.getPageSize(), MAX_BEST_SELLING_SIZE)))
+                : PageRequest.of(0, MAX_BEST_SELLING_SIZE);
+        String filter = "store=" + (storeId != null ? storeId : "") + ";days=" + (days != null && days > 0 ? days : "");
+        return productCacheService.getPage(ProductCacheService.BEST_SELLING, filter, pageable, () -> {
+            log.info("Fetching best-selling products from DB: storeId: {}, days: {}, pageable: {}", storeId, days, pageable);
+            return toProductPage(productSalesService.getBestSelling(storeId, days, pageable), null);
+        });
     }
 
     @Override
@@ -102,7 +110,6 @@ public class ProductServiceImpl implements ProductService {
 
     @Override
     @Transactional
-    @CacheEvict(value = "products", allEntries = true)
     public ProductDTO createProduct(ProductRequest productRequest) {
         Category category = categoryRepository.findById(productRequest.getCategoryId())
                 .orElseThrow(() -> new ResourceNotFoundException("Category not found with id: " + productRequest.getCategoryId()));
@@ -129,8 +136,17 @@ public class ProductServiceImpl implements ProductService {
         });
 
         Product savedProduct = productRepository.save(product);
+        variantCatalogService.invalidate();
+        productSearchService.invalidate();
+        // Not on any page yet, but it pushes the others along in the listings it joins
+        if (Boolean.TRUE.equals(savedProduct.getIsActive())) {
+            productCacheService.evict(List.of(), listings(category.getName()));
+        }
 
-        // After saving the product and variants, create the stock records
+        // After saving the product and variants, create the stock records.
+        // Saved together so the inserts go out as JDBC batches.
+        List<ProductStock> stocks = new ArrayList<>();
+        List<StockHistory> histories = new ArrayList<>();
         savedProduct.getVariants().forEach(variant -> {
             Integer initialStock = 0; // Default to 0 as stockQuantity is removed from request
 
@@ -138,7 +154,7 @@ public class ProductServiceImpl implements ProductService {
             productStock.setProductVariant(variant);
             productStock.setStore(defaultStore);
             productStock.setQuantity(initialStock);
-            productStockRepository.save(productStock);
+            stocks.add(productStock);
 
             StockHistory history = new StockHistory();
             history.setProductVariant(variant);
@@ -147,8 +163,10 @@ public class ProductServiceImpl implements ProductService {
             history.setCurrentQuantity(initialStock);
             history.setReason("INITIAL_STOCK");
             // history.setCreatedBy(adminUserId); // Optional: Need to get current admin user
-            stockHistoryRepository.save(history);
+            histories.add(history);
         });
+        productStockRepository.saveAll(stocks);
+        stockHistoryRepository.saveAll(histories);
 
 
         return productMapper.toProductDTO(savedProduct);
@@ -156,7 +174,6 @@ public class ProductServiceImpl implements ProductService {
 
     @Override
     @Transactional
-    @CacheEvict(value = "products", allEntries = true)
     public ProductDTO updateProduct(Long productId, ProductRequest productRequest) {
         log.info("Updating product with id: {}", productId);
         log.info("Request body: {}", productRequest);
@@ -164,6 +181,9 @@ public class ProductServiceImpl implements ProductService {
         Product existingProduct = productRepository.findById(productId)
                 .orElseThrow(() -> new ResourceNotFoundException("Product not found with id: " + productId));
         log.info("Product before update: {}", existingProduct);
+        String oldName = existingProduct.getName();
+        String oldCategoryName = categoryName(existingProduct);
+        Boolean wasActive = existingProduct.getIsActive();
 
         Category category = categoryRepository.findById(productRequest.getCategoryId())
                 .orElseThrow(() -> new ResourceNotFoundException("Category not found with id: " + productRequest.getCategoryId()));
@@ -207,13 +227,21 @@ public class ProductServiceImpl implements ProductService {
         // --- END REVISED VARIANT MANAGEMENT ---
 
         Product updatedProduct = productRepository.save(existingProduct);
+        variantCatalogService.invalidate();
+        productSearchService.invalidate();
+        // Renaming, moving or (de)activating a product also changes which listing pages it is on
+        boolean listed = Boolean.TRUE.equals(wasActive) || Boolean.TRUE.equals(updatedProduct.getIsActive());
+        boolean moved = !Objects.equals(wasActive, updatedProduct.getIsActive())
+                || !Objects.equals(oldName, updatedProduct.getName())
+                || !Objects.equals(oldCategoryName, category.getName());
+        productCacheService.evict(List.of(productId),
+                listed && moved ? listings(oldCategoryName, category.getName()) : Set.of());
         log.info("Product after update: {}", updatedProduct);
         return productMapper.toProductDTO(updatedProduct);
     }
 
     @Override
     @Transactional
-    @CacheEvict(value = "products", allEntries = true)
     public void deleteProduct(Long productId) {
         Product existingProduct = productRepository.findById(productId)
                 .orElseThrow(() -> new ResourceNotFoundException("Product not found with id: " + productId));
@@ -237,16 +265,56 @@ public class ProductServiceImpl implements ProductService {
         }
 
         productRepository.delete(existingProduct);
+        variantCatalogService.invalidate();
+        productSearchService.invalidate();
+        productCacheService.evict(List.of(productId), Boolean.TRUE.equals(existingProduct.getIsActive())
+                ? listings(categoryName(existingProduct)) : Set.of());
     }
 
     @Override
     @Transactional
-    @CacheEvict(value = "products", allEntries = true)
     public ProductDTO updateProductStatus(Long productId, Boolean isActive) {
         Product product = productRepository.findById(productId)
                 .orElseThrow(() -> new ResourceNotFoundException("Product not found with id: " + productId));
+        boolean changed = !Objects.equals(product.getIsActive(), isActive);
         product.setIsActive(isActive);
         Product updatedProduct = productRepository.save(product);
+        variantCatalogService.invalidate();
+        productSearchService.invalidate();
+        productCacheService.evict(List.of(productId), changed ? listings(categoryName(product)) : Set.of());
         return productMapper.toProductDTO(updatedProduct);
     }
+
+    /**
+     * The products of a page of ids, in the same order. Products deleted, deactivated or moved out of the category
+     * since the ids were read are left out; another node's search index may briefly trail a catalog change.
+     */
+    private Page<ProductDTO> toProductPage(Page<Long> productIds, String categoryName) {
+        Map<Long, Product> productsById = productRepository.findAllById(productIds.getContent()).stream()
+                .collect(Collectors.toMap(Product::getId, product -> product));
+        List<ProductDTO> products = productIds.getContent().stream()
+                .map(productsById::get)
+                .filter(product -> product != null && Boolean.TRUE.equals(product.getIsActive()))
+                .filter(product -> categoryName == null || categoryName.equals(categoryName(product)))
+                .map(productMapper::toProductDTO)
+                .collect(Collectors.toList());
+        return new PageImpl<>(products, productIds.getPageable(), productIds.getTotalElements());
+    }
+
+    // The cached listings an active product of these categories appears on
+    private static Set<String> listings(String... categoryNames) {
+        Set<String> listings = new HashSet<>();
+        listings.add(ProductCacheService.ALL_PRODUCTS);
+        listings.add(ProductCacheService.BEST_SELLING);
+        for (String categoryName : categoryNames) {
+            if (categoryName != null) {
+                listings.add(categoryName);
+            }
+        }
+        return listings;
+    }
+
+    private static String categoryName(Product product) {
+        return product.getCategory() != null ? product.getCategory().getName() : null;
+    }
 }
@@ -2,16 +2,19 @@ package com.coffeeshop.backend.service.implement;
 
 import com.coffeeshop.backend.dto.product.ProductStockDTO;
 import com.coffeeshop.backend.entity.ProductStock;
+import com.coffeeshop.backend.entity.ProductVariant;
 import com.coffeeshop.backend.entity.StockHistory;
 import com.coffeeshop.backend.entity.Store;
 import com.coffeeshop.backend.entity.User;
 import com.coffeeshop.backend.exception.ResourceNotFoundException;
 import com.coffeeshop.backend.mapper.ProductStockMapper;
 import com.coffeeshop.backend.repository.ProductStockRepository;
+import com.coffeeshop.backend.repository.ProductVariantRepository;
 import com.coffeeshop.backend.repository.StockHistoryRepository;
 import com.coffeeshop.backend.repository.StoreRepository;
 import com.coffeeshop.backend.repository.UserRepository;
 import com.coffeeshop.backend.service.ProductStockService;
+import com.coffeeshop.backend.service.ShardedStockService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
@@ -31,6 +34,8 @@ public class ProductStockServiceImpl implements ProductStockService {
     private final UserRepository userRepository;
     private final StoreRepository storeRepository;
     private final ProductStockMapper productStockMapper;
+    private final ProductVariantRepository productVariantRepository;
+    private final ShardedStockService shardedStockService;
 
     @Override
     public List<ProductStockDTO> getStockByProductVariantId(Long productVariantId) {
@@ -40,12 +45,22 @@ public class ProductStockServiceImpl implements ProductStockService {
         Map<Long, ProductStock> existingStocksMap = existingStocks.stream()
                 .collect(Collectors.toMap(stock -> stock.getStore().getId(), stock -> stock));
 
+        // Sharded variants keep their quantity in the shards, report the sum per store
+        ProductVariant variant = productVariantRepository.findById(productVariantId).orElse(null);
+        Map<Long, Integer> shardTotals = variant != null && variant.getStockShards() > 0
+                ? shardedStockService.getTotalsByStore(productVariantId)
+                : Map.of();
+
         List<ProductStockDTO> fullStockList = new ArrayList<>();
 
         for (Store store : allActiveStores) {
             ProductStock existingStock = existingStocksMap.get(store.getId());
             if (existingStock != null) {
-                fullStockList.add(productStockMapper.toProductStockDTO(existingStock));
+                ProductStockDTO stockDto = productStockMapper.toProductStockDTO(existingStock);
+                if (shardTotals.containsKey(store.getId())) {
+                    stockDto.setQuantity(existingStock.getQuantity() + shardTotals.get(store.getId()));
+                }
+                fullStockList.add(stockDto);
             } else {
                 // Create a 'virtual' stock DTO for stores with no stock record yet
                 ProductStockDTO newStockDto = new ProductStockDTO();
@@ -72,12 +87,18 @@ public class ProductStockServiceImpl implements ProductStockService {
         ProductStock productStock = productStockRepository.findById(stockId)
                 .orElseThrow(() -> new ResourceNotFoundException("ProductStock not found with id: " + stockId));
 
-        int oldQuantity = productStock.getQuantity();
+        int oldQuantity;
+        ProductStock updatedStock;
+        if (productStock.getProductVariant().getStockShards() > 0) {
+            oldQuantity = shardedStockService.setTotal(productStock, newQuantity);
+            updatedStock = productStock;
+        } else {
+            oldQuantity = productStock.getQuantity();
+            productStock.setQuantity(newQuantity);
+            updatedStock = productStockRepository.save(productStock);
+        }
         int quantityChanged = newQuantity - oldQuantity;
 
-        productStock.setQuantity(newQuantity);
-        ProductStock updatedStock = productStockRepository.save(productStock);
-
         // Get current user's ID for logging
         String username = SecurityContextHolder.getContext().getAuthentication().getName();
         User user = userRepository.findByEmail(username).orElse(null);
@@ -93,7 +114,19 @@ public class ProductStockServiceImpl implements ProductStockService {
         }
         stockHistoryRepository.save(history);
 
-        return productStockMapper.toProductStockDTO(updatedStock);
+        ProductStockDTO stockDto = productStockMapper.toProductStockDTO(updatedStock);
+        stockDto.setQuantity(newQuantity);
+        return stockDto;
+    }
+
+    @Override
+    public void updateSharding(Long productVariantId, int shards) {
+        shardedStockService.setSharding(productVariantId, shards);
+    }
+
+    @Override
+    public void rebalanceShards(Long productVariantId) {
+        shardedStockService.rebalance(productVariantId);
     }
 }
 
@@ -0,0 +1,143 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.service.ClusterTransport;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Nodes sharing one Redis: messages go over pub/sub on {@value #CHANNEL}, counters and sets are Redis keys.
+ * <p>
+ * Pub/sub delivers every message to every subscribed node, the publisher included, in the order Redis
+ * received them. Listeners run on one thread so that order survives on this side too. A node that is
+ * disconnected from Redis misses what is published meanwhile; order boards then catch up through a snapshot.
+ */
+@Component
+@ConditionalOnProperty(name = "websocket.cluster.mode", havingValue = "redis")
+public class RedisClusterTransport implements ClusterTransport {
+
+    static final String CHANNEL = "cluster:messages";
+    private static final String KEY_PREFIX = "cluster:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    // A single listener thread, so messages are handled one after the other and off the Redis client threads
+    private final ExecutorService listenerExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cluster-listener");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RedisClusterTransport(StringRedisTemplate redisTemplate, RedisConnectionFactory connectionFactory) {
+        this.redisTemplate = redisTemplate;
+        container.setConnectionFactory(connectionFactory);
+        container.setTaskExecutor(listenerExecutor);
+    }
+
+    @PostConstruct
+    void start() {
+        container.afterPropertiesSet();
+        container.start();
+    }
+
+    @PreDestroy
+    void stop() throws Exception {
+        container.destroy();
+        listenerExecutor.shutdown();
+    }
+
+    @Override
+    public boolean isDistributed() {
+        return true;
+    }
+
+    @Override
+    public void publish(String message) {
+        redisTemplate.convertAndSend(CHANNEL, message);
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        container.addMessageListener((message, pattern) ->
+                listener.accept(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(CHANNEL));
+    }
+
+    @Override
+    public long increment(String key) {
+        Long value = redisTemplate.opsForValue().increment(KEY_PREFIX + key);
+        if (value == null) {
+            throw new IllegalStateException("Redis did not return counter " + key);
+        }
+        return value;
+    }
+
+    @Override
+    public long get(String key) {
+        String value = redisTemplate.opsForValue().get(KEY_PREFIX + key);
+        return value != null ? Long.parseLong(value) : 0;
+    }
+
+    @Override
+    public String putIfAbsent(String key, String value) {
+        redisTemplate.opsForValue().setIfAbsent(KEY_PREFIX + key, value);
+        String stored = redisTemplate.opsForValue().get(KEY_PREFIX + key);
+        return stored != null ? stored : value;
+    }
+
+    @Override
+    public void addToSets(Collection<String> keys, String member, Duration ttl) {
+        // One round trip for all of them
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> redis = (RedisOperations<String, String>) operations;
+                for (String key : keys) {
+                    redis.opsForSet().add(KEY_PREFIX + key, member);
+                    redis.expire(KEY_PREFIX + key, ttl);
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> popSets(Collection<String> keys, int limit) {
+        // SPOP with a count takes the members out in one step, so nothing added meanwhile is lost
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> redis = (RedisOperations<String, String>) operations;
+                for (String key : keys) {
+                    redis.opsForSet().pop(KEY_PREFIX + key, limit);
+                }
+                return null;
+            }
+        });
+        Set<String> popped = new HashSet<>();
+        for (Object result : results) {
+            if (result != null) {
+                popped.addAll((Collection<String>) result);
+            }
+        }
+        return popped;
+    }
+}
@@ -0,0 +1,76 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.entity.ProductVariant;
+import com.coffeeshop.backend.entity.StockHistory;
+import com.coffeeshop.backend.entity.Store;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Helpers for carts of several users reserved as one unit: the stock is updated once per variant for the combined
+ * quantity, but the history still gets a SALE row per user and variant.
+ */
+final class SaleHistories {
+
+    private SaleHistories() {
+    }
+
+    /**
+     * Combined quantity per variant, in ascending variant id order (the lock order).
+     */
+    static Map<Long, Integer> combine(Map<Long, Map<Long, Integer>> quantitiesByUserId) {
+        Map<Long, Integer> totals = new TreeMap<>();
+        quantitiesByUserId.values().forEach(quantities -> quantities.forEach(
+                (variantId, quantity) -> totals.merge(variantId, quantity, Integer::sum)));
+        return totals;
+    }
+
+    /**
+     * The lines of each user whose variant matches, leaving out users with none.
+     */
+    static Map<Long, Map<Long, Integer>> select(Map<Long, Map<Long, Integer>> quantitiesByUserId,
+            Predicate<Long> variantIds) {
+        Map<Long, Map<Long, Integer>> selected = new LinkedHashMap<>();
+        quantitiesByUserId.forEach((userId, quantities) -> quantities.forEach((variantId, quantity) -> {
+            if (variantIds.test(variantId)) {
+                selected.computeIfAbsent(userId, id -> new LinkedHashMap<>()).put(variantId, quantity);
+            }
+        }));
+        return selected;
+    }
+
+    /**
+     * One SALE row per user and variant. Each records the quantity left once that user's share was taken,
+     * as if the carts had been reserved one after the other.
+     *
+     * @param quantityAfter the quantity per variant once every cart was taken
+     */
+    static List<StockHistory> of(Map<Long, Map<Long, Integer>> quantitiesByUserId, Map<Long, Integer> quantityAfter,
+            Function<Long, ProductVariant> variants, Store store) {
+        Map<Long, Integer> running = new HashMap<>();
+        combine(quantitiesByUserId).forEach((variantId, total) ->
+                running.put(variantId, quantityAfter.getOrDefault(variantId, 0) + total));
+
+        List<StockHistory> histories = new ArrayList<>();
+        quantitiesByUserId.forEach((userId, quantities) -> quantities.forEach((variantId, quantity) -> {
+            int left = running.merge(variantId, -quantity, Integer::sum);
+
+            StockHistory history = new StockHistory();
+            history.setProductVariant(variants.apply(variantId));
+            history.setStore(store);
+            history.setQuantityChanged(-quantity);
+            history.setCurrentQuantity(left);
+            history.setReason("SALE");
+            history.setCreatedBy(userId);
+            histories.add(history);
+        }));
+        return histories;
+    }
+}
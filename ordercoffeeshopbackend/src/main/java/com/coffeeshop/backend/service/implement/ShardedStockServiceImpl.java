@@ -0,0 +1,282 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.product.VariantCatalogEntry;
+import com.coffeeshop.backend.entity.ProductStock;
+import com.coffeeshop.backend.entity.ProductStockShard;
+import com.coffeeshop.backend.entity.ProductVariant;
+import com.coffeeshop.backend.entity.StockHistory;
+import com.coffeeshop.backend.entity.Store;
+import com.coffeeshop.backend.exception.InsufficientStockException;
+import com.coffeeshop.backend.exception.ResourceNotFoundException;
+import com.coffeeshop.backend.repository.ProductStockRepository;
+import com.coffeeshop.backend.repository.ProductStockShardRepository;
+import com.coffeeshop.backend.repository.ProductVariantRepository;
+import com.coffeeshop.backend.repository.StockHistoryRepository;
+import com.coffeeshop.backend.repository.StoreRepository;
+import com.coffeeshop.backend.service.ShardedStockService;
+import com.coffeeshop.backend.service.VariantCatalogService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ShardedStockServiceImpl implements ShardedStockService {
+
+    public static final int MAX_SHARDS = 16;
+
+    private final ProductStockRepository productStockRepository;
+    private final ProductStockShardRepository productStockShardRepository;
+    private final ProductVariantRepository productVariantRepository;
+    private final StockHistoryRepository stockHistoryRepository;
+    private final StoreRepository storeRepository;
+    private final VariantCatalogService variantCatalogService;
+
+    @Override
+    @Transactional
+    public void reserve(Long storeId, Map<Long, Integer> quantitiesByVariantId, Long userId) {
+        reserveAll(storeId, Collections.singletonMap(userId, quantitiesByVariantId));
+    }
+
+    @Override
+    @Transactional
+    public void reserveAll(Long storeId, Map<Long, Map<Long, Integer>> quantitiesByUserId) {
+        Map<Long, Integer> sorted = SaleHistories.combine(quantitiesByUserId);
+        if (sorted.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Integer> mainRowsAfter = new HashMap<>();
+        for (Map.Entry<Long, Integer> line : sorted.entrySet()) {
+            VariantCatalogEntry variant = variantCatalogService.get(line.getKey());
+            if (variant == null) {
+                throw new ResourceNotFoundException("ProductVariant not found with id: " + line.getKey());
+            }
+            decrement(storeId, variant, line.getValue(), mainRowsAfter);
+        }
+        Map<Long, Integer> quantityAfter = shardTotals(storeId, sorted.keySet());
+        quantityAfter.putAll(mainRowsAfter);
+        stockHistoryRepository.saveAll(SaleHistories.of(quantitiesByUserId, quantityAfter,
+                productVariantRepository::getReferenceById, storeRepository.getReferenceById(storeId)));
+    }
+
+    @Override
+    @Transactional
+    public void release(Long storeId, Map<Long, Integer> quantitiesByVariantId, String reason) {
+        if (quantitiesByVariantId.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Integer> sorted = new TreeMap<>(quantitiesByVariantId);
+        // Routed by the locked main rows, which a sharding change locks too, rather than by the catalog
+        List<ProductStock> mainRows = new ArrayList<>();
+        Map<Long, Integer> mainRowsAfter = new HashMap<>();
+        for (ProductStock stock : productStockRepository.findAndLockAllByStoreIdAndProductVariantIds(storeId, sorted.keySet())) {
+            Long variantId = stock.getProductVariant().getId();
+            int quantity = sorted.get(variantId);
+            int shards = stock.getProductVariant().getStockShards();
+            boolean placed = shards > 0 && productStockShardRepository.increment(storeId, variantId,
+                    ThreadLocalRandom.current().nextInt(shards), quantity) == 1;
+            if (!placed) {
+                // Sharding was turned off in the meantime: the stock lives in the main row again
+                stock.setQuantity(stock.getQuantity() + quantity);
+                mainRows.add(stock);
+                mainRowsAfter.put(variantId, stock.getQuantity());
+            }
+        }
+        productStockRepository.saveAll(mainRows);
+        writeHistory(storeId, sorted, mainRowsAfter, reason);
+    }
+
+    private Map<Long, Integer> shardTotals(Long storeId, Collection<Long> productVariantIds) {
+        Map<Long, Integer> totals = new HashMap<>();
+        for (Object[] row : productStockShardRepository.sumByStoreIdAndProductVariantIds(storeId, productVariantIds)) {
+            totals.put((Long) row[0], ((Number) row[1]).intValue());
+        }
+        return totals;
+    }
+
+    // Lines put back into the main row are recorded with its quantity, the others with their shard total
+    private void writeHistory(Long storeId, Map<Long, Integer> quantitiesByVariantId, Map<Long, Integer> mainRowsAfter,
+            String reason) {
+        Map<Long, Integer> totals = shardTotals(storeId, quantitiesByVariantId.keySet());
+        totals.putAll(mainRowsAfter);
+        Store store = storeRepository.getReferenceById(storeId);
+        List<StockHistory> histories = new ArrayList<>(quantitiesByVariantId.size());
+        for (Map.Entry<Long, Integer> line : quantitiesByVariantId.entrySet()) {
+            StockHistory history = new StockHistory();
+            history.setProductVariant(productVariantRepository.getReferenceById(line.getKey()));
+            history.setStore(store);
+            history.setQuantityChanged(line.getValue());
+            history.setCurrentQuantity(totals.getOrDefault(line.getKey(), 0));
+            history.setReason(reason);
+            histories.add(history);
+        }
+        stockHistoryRepository.saveAll(histories);
+    }
+
+    // Lines taken from the main row, because sharding was turned off after the catalog was read, go into mainRowsAfter
+    private void decrement(Long storeId, VariantCatalogEntry variant, int quantity, Map<Long, Integer> mainRowsAfter) {
+        // Fast path: one guarded update on a random bucket, then on each sibling in turn. The catalog's
+        // shard count only picks the buckets to try; the locked path below goes by what is in the database
+        int shards = variant.getStockShards();
+        int start = shards > 0 ? ThreadLocalRandom.current().nextInt(shards) : 0;
+        for (int i = 0; i < shards; i++) {
+            int shardIndex = (start + i) % shards;
+            if (productStockShardRepository.decrementIfAvailable(storeId, variant.getId(), shardIndex, quantity) == 1) {
+                return;
+            }
+        }
+
+        // No single bucket holds enough: lock all buckets of this row and drain them in index order
+        List<ProductStockShard> buckets = productStockShardRepository.findAndLockAllByStoreIdAndProductVariantId(storeId, variant.getId());
+        if (buckets.isEmpty()) {
+            decrementMainRow(storeId, variant, quantity, mainRowsAfter);
+            return;
+        }
+        int available = buckets.stream().mapToInt(ProductStockShard::getQuantity).sum();
+        if (available < quantity) {
+            throw new InsufficientStockException(
+                    "Not enough stock for product: " + variant.getProductName() + " - " + variant.getSize());
+        }
+        int remaining = quantity;
+        for (ProductStockShard bucket : buckets) {
+            int taken = Math.min(bucket.getQuantity(), remaining);
+            bucket.setQuantity(bucket.getQuantity() - taken);
+            remaining -= taken;
+            if (remaining == 0) {
+                break;
+            }
+        }
+        productStockShardRepository.saveAll(buckets);
+    }
+
+    private void decrementMainRow(Long storeId, VariantCatalogEntry variant, int quantity,
+            Map<Long, Integer> mainRowsAfter) {
+        ProductStock locked = productStockRepository.findAndLockByProductVariantIdAndStoreId(variant.getId(), storeId)
+                .orElseThrow(() -> new InsufficientStockException("Product not available at this store"));
+        if (locked.getProductVariant().getStockShards() > 0) {
+            // Sharded, but never stocked at this store
+            throw new InsufficientStockException("Product not available at this store");
+        }
+        if (locked.getQuantity() < quantity) {
+            throw new InsufficientStockException(
+                    "Not enough stock for product: " + variant.getProductName() + " - " + variant.getSize());
+        }
+        locked.setQuantity(locked.getQuantity() - quantity);
+        productStockRepository.save(locked);
+        mainRowsAfter.put(variant.getId(), locked.getQuantity());
+    }
+
+    @Override
+    @Transactional
+    public void setSharding(Long productVariantId, int shards) {
+        if (shards < 0 || shards > MAX_SHARDS) {
+            throw new IllegalArgumentException("Shard count must be between 0 and " + MAX_SHARDS);
+        }
+        ProductVariant variant = productVariantRepository.findById(productVariantId)
+                .orElseThrow(() -> new ResourceNotFoundException("ProductVariant not found with id: " + productVariantId));
+
+        for (ProductStock stock : productStockRepository.findAllByProductVariantId(productVariantId)) {
+            Long storeId = stock.getStore().getId();
+            ProductStock locked = productStockRepository.findAndLockByProductVariantIdAndStoreId(productVariantId, storeId)
+                    .orElseThrow(() -> new ResourceNotFoundException("ProductStock not found"));
+
+            // Fold existing shards back into the main row first
+            int total = locked.getQuantity();
+            if (variant.getStockShards() > 0) {
+                total += productStockShardRepository.findAndLockAllByStoreIdAndProductVariantId(storeId, productVariantId)
+                        .stream().mapToInt(ProductStockShard::getQuantity).sum();
+                productStockShardRepository.deleteAllByStoreIdAndProductVariantId(storeId, productVariantId);
+            }
+
+            if (shards == 0) {
+                locked.setQuantity(total);
+            } else {
+                locked.setQuantity(0);
+                productStockShardRepository.saveAll(split(variant, locked.getStore(), total, shards));
+            }
+            productStockRepository.save(locked);
+        }
+
+        variant.setStockShards(shards);
+        productVariantRepository.save(variant);
+        variantCatalogService.invalidate();
+        log.info("Stock sharding for variant {} set to {} shards", productVariantId, shards);
+    }
+
+    @Override
+    @Transactional
+    public void rebalance(Long productVariantId) {
+        ProductVariant variant = productVariantRepository.findById(productVariantId)
+                .orElseThrow(() -> new ResourceNotFoundException("ProductVariant not found with id: " + productVariantId));
+        if (variant.getStockShards() == 0) {
+            return;
+        }
+        for (ProductStock stock : productStockRepository.findAllByProductVariantId(productVariantId)) {
+            List<ProductStockShard> buckets = productStockShardRepository
+                    .findAndLockAllByStoreIdAndProductVariantId(stock.getStore().getId(), productVariantId);
+            redistribute(buckets, buckets.stream().mapToInt(ProductStockShard::getQuantity).sum());
+        }
+    }
+
+    @Override
+    @Transactional
+    public int setTotal(ProductStock productStock, int newTotal) {
+        List<ProductStockShard> buckets = productStockShardRepository.findAndLockAllByStoreIdAndProductVariantId(
+                productStock.getStore().getId(), productStock.getProductVariant().getId());
+        if (buckets.isEmpty()) {
+            throw new IllegalStateException("Stock " + productStock.getId() + " has no shards");
+        }
+        int oldTotal = buckets.stream().mapToInt(ProductStockShard::getQuantity).sum();
+        redistribute(buckets, newTotal);
+        return oldTotal;
+    }
+
+    @Override
+    public Map<Long, Integer> getTotalsByStore(Long productVariantId) {
+        Map<Long, Integer> totals = new HashMap<>();
+        for (Object[] row : productStockShardRepository.sumByStoreForProductVariantId(productVariantId)) {
+            totals.put((Long) row[0], ((Number) row[1]).intValue());
+        }
+        return totals;
+    }
+
+    private void redistribute(List<ProductStockShard> buckets, int total) {
+        int shards = buckets.size();
+        for (ProductStockShard bucket : buckets) {
+            bucket.setQuantity(shareOf(total, shards, bucket.getShardIndex()));
+        }
+        productStockShardRepository.saveAll(buckets);
+    }
+
+    private List<ProductStockShard> split(ProductVariant variant, Store store, int total, int shards) {
+        List<ProductStockShard> buckets = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            ProductStockShard bucket = new ProductStockShard();
+            bucket.setProductVariant(variant);
+            bucket.setStore(store);
+            bucket.setShardIndex(i);
+            bucket.setQuantity(shareOf(total, shards, i));
+            buckets.add(bucket);
+        }
+        return buckets;
+    }
+
+    // Even split, the first (total % shards) buckets get one extra unit
+    private static int shareOf(int total, int shards, int shardIndex) {
+        return total / shards + (shardIndex < total % shards ? 1 : 0);
+    }
+}
@@ -0,0 +1,146 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.product.VariantCatalogEntry;
+import com.coffeeshop.backend.repository.ProductVariantRepository;
+import com.coffeeshop.backend.service.ClusterMessagingService;
+import com.coffeeshop.backend.service.VariantCatalogService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * One load of all variants at a time per node; concurrent misses wait for it. A snapshot is dropped when the
+ * catalog changes on any node, and reloaded at the latest {@link #ttlSeconds} after it was read, in case a
+ * change was missed.
+ */
+@Slf4j
+@Service
+public class VariantCatalogServiceImpl implements VariantCatalogService {
+
+    static final String CHANNEL = "variant-catalog";
+
+    private final ProductVariantRepository productVariantRepository;
+    private final ClusterMessagingService clusterMessagingService;
+
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicReference<CompletableFuture<Snapshot>> loading = new AtomicReference<>();
+    private volatile Snapshot snapshot;
+
+    @Value("${cache.variants.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    public VariantCatalogServiceImpl(ProductVariantRepository productVariantRepository,
+            ClusterMessagingService clusterMessagingService) {
+        this.productVariantRepository = productVariantRepository;
+        this.clusterMessagingService = clusterMessagingService;
+        clusterMessagingService.subscribe(CHANNEL, Long.class, changed -> drop());
+    }
+
+    @Override
+    public VariantCatalogEntry get(long productVariantId) {
+        Snapshot current = snapshot;
+        if (current == null || System.currentTimeMillis() - current.loadedAt > TimeUnit.SECONDS.toMillis(ttlSeconds)) {
+            current = load();
+        }
+        return current.get(productVariantId);
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    public void invalidate() {
+        drop();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    broadcast();
+                }
+            });
+        } else {
+            broadcast();
+        }
+    }
+
+    private void broadcast() {
+        drop();
+        clusterMessagingService.publish(CHANNEL, version.get());
+    }
+
+    private void drop() {
+        synchronized (this) {
+            version.incrementAndGet();
+            snapshot = null;
+            // A load already running may have read the old data; the next miss starts a new one
+            loading.set(null);
+        }
+    }
+
+    private Snapshot load() {
+        CompletableFuture<Snapshot> mine = new CompletableFuture<>();
+        CompletableFuture<Snapshot> running = loading.compareAndExchange(null, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            long loadingVersion = version.get();
+            List<VariantCatalogEntry> entries = productVariantRepository.findAllCatalogEntries();
+            Snapshot loaded = new Snapshot(entries, System.currentTimeMillis());
+            synchronized (this) {
+                // Only publish if nothing was invalidated while we were reading
+                if (version.get() == loadingVersion) {
+                    snapshot = loaded;
+                    log.info("Loaded variant catalog version {} with {} variants", loadingVersion, entries.size());
+                }
+            }
+            mine.complete(loaded);
+            return loaded;
+        } catch (Throwable e) {
+            // Errors included, so nobody is left waiting on this load
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.compareAndSet(mine, null);
+        }
+    }
+
+    /**
+     * Sorted primitive id keys with the entries in a parallel array, looked up by binary search.
+     */
+    private static final class Snapshot {
+        private final long[] ids;
+        private final VariantCatalogEntry[] entries;
+        private final long loadedAt;
+
+        Snapshot(List<VariantCatalogEntry> source, long loadedAt) {
+            this.loadedAt = loadedAt;
+            this.entries = source.stream()
+                    .sorted(Comparator.comparingLong(VariantCatalogEntry::getId))
+                    .toArray(VariantCatalogEntry[]::new);
+            this.ids = Arrays.stream(entries).mapToLong(VariantCatalogEntry::getId).toArray();
+        }
+
+        VariantCatalogEntry get(long id) {
+            int index = Arrays.binarySearch(ids, id);
+            return index >= 0 ? entries[index] : null;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.coffeeshop.backend.websocket;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static com.coffeeshop.backend.websocket.OutboundBackpressure.COALESCE_HEADER;
+
+/**
+ * A {@link ConcurrentWebSocketSessionDecorator} whose frames first wait in a queue of their own, where a frame
+ * carrying a {@value OutboundBackpressure#COALESCE_HEADER} header replaces a frame with the same key that is still
+ * queued for the same subscription, and goes to the end of the queue so frames keep their publish order.
+ * <p>
+ * {@link #sendMessage} only queues, so the broker's outbound channel never waits on a client. The queue is written
+ * through Spring's decorator by a writer thread of this session alone, so a slow client holds up nobody else. The
+ * decorator's send time and buffer size limits apply: a session whose queue grows past the buffer limit, or whose
+ * current write takes longer than the time limit, is evicted. Its queue is dropped and
+ * {@link SessionLimitExceededException} lets Spring close it, or {@link #evictIfStalled} closes it when no frame
+ * is sent to notice, which also aborts the stalled write.
+ */
+class CoalescingWebSocketSession extends ConcurrentWebSocketSessionDecorator {
+
+    private final OutboundBackpressure backpressure;
+    private final Executor writer;
+    // Coalesce key, or a fresh object for frames that cannot be coalesced, to frame; in send order
+    private final Map<Object, WebSocketMessage<?>> queue = new LinkedHashMap<>();
+    private int queuedBytes;
+    private boolean writing;
+    private boolean evicted;
+
+    CoalescingWebSocketSession(WebSocketSession delegate, OutboundBackpressure backpressure, Executor writer) {
+        super(delegate, (int) backpressure.getSendTimeLimitMs(), backpressure.getSendBufferSizeLimit());
+        this.backpressure = backpressure;
+        this.writer = writer;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        boolean startWriter;
+        synchronized (queue) {
+            if (evicted) {
+                backpressure.dropped(1);
+                return;
+            }
+            if (getTimeSinceSendStarted() > getSendTimeLimit()) {
+                backpressure.dropped(1);
+                throw evict("time", "Message write has not finished for " + getTimeSinceSendStarted() + " ms");
+            }
+            String key = coalesceKey(message);
+            WebSocketMessage<?> replaced = key != null ? queue.remove(key) : null;
+            if (replaced != null) {
+                queuedBytes -= replaced.getPayloadLength();
+                backpressure.coalesced();
+            } else {
+                backpressure.queued(1);
+            }
+            queue.put(key != null ? key : new Object(), message);
+            queuedBytes += message.getPayloadLength();
+            if (queuedBytes > getBufferSizeLimit()) {
+                throw evict("buffer", queuedBytes + " bytes queued");
+            }
+            startWriter = !writing;
+            writing = true;
+        }
+        if (startWriter) {
+            writer.execute(this::write);
+        }
+    }
+
+    /**
+     * Evicts and closes the session if its current write has taken longer than the send time limit.
+     */
+    void evictIfStalled() {
+        synchronized (queue) {
+            if (evicted || getTimeSinceSendStarted() <= getSendTimeLimit()) {
+                return;
+            }
+            evict("time", "Message write has not finished for " + getTimeSinceSendStarted() + " ms");
+        }
+        closeQuietly();
+    }
+
+    private void write() {
+        while (true) {
+            WebSocketMessage<?> message;
+            synchronized (queue) {
+                Iterator<WebSocketMessage<?>> next = queue.values().iterator();
+                if (evicted || !next.hasNext()) {
+                    writing = false;
+                    return;
+                }
+                message = next.next();
+                next.remove();
+                queuedBytes -= message.getPayloadLength();
+                backpressure.queued(-1);
+            }
+            try {
+                // Only this thread sends through the decorator, so it writes right away
+                super.sendMessage(message);
+                backpressure.sent();
+            } catch (IOException | RuntimeException e) {
+                synchronized (queue) {
+                    discard();
+                    writing = false;
+                }
+                closeQuietly();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        synchronized (queue) {
+            discard();
+        }
+        super.close(status);
+    }
+
+    // Called holding the queue lock
+    private SessionLimitExceededException evict(String reason, String detail) {
+        discard();
+        backpressure.evicted(reason);
+        return new SessionLimitExceededException(detail + " on session " + getId(), CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    // Called holding the queue lock
+    private void discard() {
+        if (!evicted) {
+            evicted = true;
+            backpressure.queued(-queue.size());
+            backpressure.dropped(queue.size());
+            queue.clear();
+            queuedBytes = 0;
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException ignored) {
+            // Already gone
+        }
+    }
+
+    /**
+     * {@code subscription/coalesce-key} of a STOMP MESSAGE frame that has both headers, otherwise null.
+     */
+    static String coalesceKey(WebSocketMessage<?> message) {
+        ByteBuffer payload;
+        if (message.getPayload() instanceof String text) {
+            // Only the headers are looked at, and they come first
+            payload = StandardCharsets.UTF_8.encode(text.substring(0, Math.min(text.length(), 1024)));
+        } else if (message.getPayload() instanceof ByteBuffer bytes) {
+            payload = bytes.duplicate();
+        } else {
+            return null;
+        }
+        String subscription = null;
+        String key = null;
+        StringBuilder line = new StringBuilder();
+        boolean command = true;
+        while (payload.hasRemaining()) {
+            char c = (char) (payload.get() & 0xFF);
+            if (c == '\r') {
+                continue;
+            }
+            if (c != '\n') {
+                line.append(c);
+                continue;
+            }
+            if (command) {
+                if (!"MESSAGE".contentEquals(line)) {
+                    return null;
+                }
+                command = false;
+            } else if (line.length() == 0) {
+                // End of the headers
+                break;
+            } else if (subscription == null && startsWith(line, "subscription:")) {
+                subscription = line.substring("subscription:".length());
+            } else if (key == null && startsWith(line, COALESCE_HEADER + ":")) {
+                key = line.substring(COALESCE_HEADER.length() + 1);
+            }
+            line.setLength(0);
+        }
+        return subscription != null && key != null ? subscription + "/" + key : null;
+    }
+
+    private static boolean startsWith(StringBuilder line, String prefix) {
+        return line.length() >= prefix.length() && line.substring(0, prefix.length()).equals(prefix);
+    }
+}
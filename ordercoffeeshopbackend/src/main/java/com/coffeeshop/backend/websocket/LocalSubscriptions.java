@@ -0,0 +1,56 @@
+package com.coffeeshop.backend.websocket;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.user.UserDestinationResolver;
+import org.springframework.messaging.simp.user.UserDestinationResult;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Whether a session of this node subscribes to a destination, answered by the simple broker's own
+ * subscription registry. Every node sends events to its own sessions only, so a destination nobody here
+ * subscribes to need not be encoded or sent at all.
+ */
+@Component
+public class LocalSubscriptions {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final AbstractBrokerMessageHandler broker;
+    private final UserDestinationResolver userDestinationResolver;
+
+    public LocalSubscriptions(@Qualifier("simpleBrokerMessageHandler") AbstractBrokerMessageHandler broker,
+            UserDestinationResolver userDestinationResolver) {
+        this.broker = broker;
+        this.userDestinationResolver = userDestinationResolver;
+    }
+
+    public boolean hasSubscribers(String destination) {
+        if (!(broker instanceof SimpleBrokerMessageHandler simpleBroker)) {
+            // Only the simple broker keeps its subscriptions in this process
+            return true;
+        }
+        return !simpleBroker.getSubscriptionRegistry().findSubscriptions(message(destination)).isEmpty();
+    }
+
+    /**
+     * Whether a session of the user subscribes to the user destination, such as {@code /queue/orders}.
+     */
+    public boolean hasUserSubscribers(String user, String destination) {
+        // Resolved as a send to the user is: to one destination per session of the user
+        UserDestinationResult result = userDestinationResolver.resolveDestination(
+                message("/user/" + user.replace("/", "%2F") + destination));
+        return result != null && result.getTargetDestinations().stream().anyMatch(this::hasSubscribers);
+    }
+
+    private static Message<byte[]> message(String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(EMPTY, accessor.getMessageHeaders());
+    }
+}
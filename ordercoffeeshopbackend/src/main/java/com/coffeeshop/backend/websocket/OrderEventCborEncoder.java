@@ -0,0 +1,31 @@
+package com.coffeeshop.backend.websocket;
+
+import com.coffeeshop.backend.dto.order.OrderEvent;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+
+/**
+ * Encodes order events for binary subscribers as a CBOR array rather than a map, so field names are
+ * not repeated in every frame: {@code [seq, orderId, storeId, status, version, timestamp]}.
+ */
+public final class OrderEventCborEncoder {
+
+    private final CBORMapper cborMapper = CBORMapper.builder()
+            .addMixIn(OrderEvent.class, ArrayShape.class)
+            .build();
+
+    public byte[] encode(OrderEvent event) {
+        try {
+            return cborMapper.writeValueAsBytes(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Order event cannot be encoded", e);
+        }
+    }
+
+    @JsonFormat(shape = JsonFormat.Shape.ARRAY)
+    @JsonPropertyOrder({"seq", "orderId", "storeId", "status", "version", "timestamp"})
+    private abstract static class ArrayShape {
+    }
+}
@@ -0,0 +1,127 @@
+package com.coffeeshop.backend.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Puts a {@link CoalescingWebSocketSession} under every STOMP session, keeps the meters they share and closes
+ * sessions whose write has stalled past the send time limit.
+ */
+@Component
+public class OutboundBackpressure {
+
+    // STOMP header of frames that only matter until a newer frame with the same value is sent
+    public static final String COALESCE_HEADER = "coalesce-key";
+
+    private final MeterRegistry meterRegistry;
+    private final AtomicLong queuedFrames = new AtomicLong();
+    private final Counter sentFrames;
+    private final Counter coalescedFrames;
+    private final Counter droppedFrames;
+    private final Map<String, CoalescingWebSocketSession> sessions = new ConcurrentHashMap<>();
+    private ExecutorService writers;
+    private ScheduledExecutorService watchdog;
+
+    @Getter
+    @Value("${websocket.outbound.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Getter
+    @Value("${websocket.outbound.send-time-limit-ms:10000}")
+    private long sendTimeLimitMs;
+
+    public OutboundBackpressure(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        meterRegistry.gauge("websocket.outbound.queued", queuedFrames);
+        this.sentFrames = meterRegistry.counter("websocket.outbound.frames", "outcome", "sent");
+        this.coalescedFrames = meterRegistry.counter("websocket.outbound.frames", "outcome", "coalesced");
+        this.droppedFrames = meterRegistry.counter("websocket.outbound.frames", "outcome", "dropped");
+    }
+
+    @PostConstruct
+    void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        // Not a fixed pool: a writer is busy for as long as its client takes to accept a frame, so every
+        // session with frames to write has a thread of its own, and the watchdog bounds how long it is held
+        writers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "ws-writer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ws-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(100, sendTimeLimitMs / 10);
+        watchdog.scheduleWithFixedDelay(this::evictStalled, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        watchdog.shutdownNow();
+        writers.shutdownNow();
+    }
+
+    void evictStalled() {
+        sessions.values().forEach(CoalescingWebSocketSession::evictIfStalled);
+    }
+
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                CoalescingWebSocketSession coalescing = new CoalescingWebSocketSession(session,
+                        OutboundBackpressure.this, writers);
+                sessions.put(session.getId(), coalescing);
+                super.afterConnectionEstablished(coalescing);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                sessions.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    void queued(int frames) {
+        queuedFrames.addAndGet(frames);
+    }
+
+    void sent() {
+        sentFrames.increment();
+    }
+
+    void coalesced() {
+        coalescedFrames.increment();
+    }
+
+    void dropped(int frames) {
+        if (frames > 0) {
+            droppedFrames.increment(frames);
+        }
+    }
+
+    void evicted(String reason) {
+        meterRegistry.counter("websocket.outbound.evictions", "reason", reason).increment();
+    }
+}
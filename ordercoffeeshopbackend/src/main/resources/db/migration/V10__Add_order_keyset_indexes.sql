@@ -0,0 +1,5 @@
+-- Keyset pagination of the order feeds: (order_date, id) is the cursor, newest first.
+-- One index for the admin feed over all stores and one for the staff feed of a single store.
+-- --------------------------------------------------------------------------
+CREATE INDEX idx_orders_order_date_id ON public.orders (order_date DESC, id DESC);
+CREATE INDEX idx_orders_store_order_date_id ON public.orders (store_id, order_date DESC, id DESC);
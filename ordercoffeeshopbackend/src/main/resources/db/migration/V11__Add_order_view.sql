@@ -0,0 +1,23 @@
+-- Read model of orders: one row per order holding the OrderResponse as served, so order history,
+-- the staff board and payment status are read from a single table instead of six joined ones.
+-- Rows are written in the same transaction as the order change; existing orders are backfilled
+-- with POST /api/v1/orders/views/rebuild.
+-- --------------------------------------------------------------------------
+CREATE TABLE public.order_view (
+    order_id bigint NOT NULL,
+    user_id bigint NOT NULL,
+    store_id bigint NOT NULL,
+    order_date timestamp(6) without time zone NOT NULL,
+    status character varying(255) NOT NULL,
+    payment_status character varying(255),
+    order_version bigint NOT NULL,
+    document jsonb NOT NULL,
+    updated_at timestamp(6) without time zone,
+    CONSTRAINT order_view_pkey PRIMARY KEY (order_id),
+    CONSTRAINT fk_order_view_order FOREIGN KEY (order_id) REFERENCES public.orders (id) ON DELETE CASCADE
+);
+
+-- Same keyset shape as the V10 indexes on orders: history per user, board per store, admin feed
+CREATE INDEX idx_order_view_user_order_date ON public.order_view (user_id, order_date DESC, order_id DESC);
+CREATE INDEX idx_order_view_store_order_date ON public.order_view (store_id, order_date DESC, order_id DESC);
+CREATE INDEX idx_order_view_order_date ON public.order_view (order_date DESC, order_id DESC);
@@ -0,0 +1,13 @@
+-- Outbox of order events: written in the transaction that changes the order and pushed over STOMP
+-- by a relay after commit, so clients never see a change that rolled back. Rows are deleted once sent.
+-- --------------------------------------------------------------------------
+CREATE TABLE public.order_outbox (
+    id bigserial NOT NULL,
+    order_id bigint NOT NULL,
+    store_id bigint NOT NULL,
+    user_email character varying(255) NOT NULL,
+    status character varying(255) NOT NULL,
+    order_version bigint NOT NULL,
+    created_at timestamp(6) without time zone NOT NULL,
+    CONSTRAINT order_outbox_pkey PRIMARY KEY (id)
+);
@@ -0,0 +1,4 @@
+-- Order boards load the active orders of each store at startup, newest first
+-- --------------------------------------------------------------------------
+CREATE INDEX idx_orders_active_store_order_date_id ON public.orders (store_id, order_date DESC, id DESC)
+    WHERE status IN ('PENDING', 'PAID', 'PREPARING', 'FINISHED_PREPARING', 'DELIVERING');
@@ -0,0 +1,35 @@
+-- Best-selling ranking: items sold per product, store and day, kept up to date instead of
+-- summing every order line on each request.
+-- Checkout and cancellations append to product_sales_changes in their own transaction (a plain insert,
+-- so hot products do not queue on one counter row); a background job folds the changes into
+-- product_sales and deletes them. Cancelled items are taken back from the day the order was placed.
+-- --------------------------------------------------------------------------
+CREATE TABLE public.product_sales (
+    product_id bigint NOT NULL,
+    store_id bigint NOT NULL,
+    sales_date date NOT NULL,
+    quantity bigint NOT NULL,
+    CONSTRAINT product_sales_pkey PRIMARY KEY (product_id, store_id, sales_date)
+);
+
+-- The ranking filters on the window and optionally the store, then sums per product
+CREATE INDEX idx_product_sales_date ON public.product_sales (sales_date, product_id);
+CREATE INDEX idx_product_sales_store_date ON public.product_sales (store_id, sales_date, product_id);
+
+CREATE TABLE public.product_sales_changes (
+    id bigserial NOT NULL,
+    product_id bigint NOT NULL,
+    store_id bigint NOT NULL,
+    sales_date date NOT NULL,
+    quantity bigint NOT NULL,
+    CONSTRAINT product_sales_changes_pkey PRIMARY KEY (id)
+);
+
+-- Orders placed so far, less the cancelled ones
+INSERT INTO public.product_sales (product_id, store_id, sales_date, quantity)
+SELECT v.product_id, o.store_id, CAST(o.order_date AS date), SUM(d.quantity)
+FROM public.order_details d
+JOIN public.orders o ON o.id = d.order_id
+JOIN public.product_variants v ON v.id = d.product_variant_id
+WHERE o.status <> 'CANCELLED'
+GROUP BY v.product_id, o.store_id, CAST(o.order_date AS date);
@@ -0,0 +1,5 @@
+-- Payments that succeed at VNPAY after their order was cancelled or expired: the customer was charged
+-- for an order that will not be made, so the payment is kept as REFUND_REQUIRED for staff to refund.
+-- --------------------------------------------------------------------------
+ALTER TABLE public.payments DROP CONSTRAINT payments_status_check;
+ALTER TABLE public.payments ADD CONSTRAINT payments_status_check CHECK (((status)::text = ANY ((ARRAY['PENDING'::character varying, 'SUCCESS'::character varying, 'FAILED'::character varying, 'REFUND_REQUIRED'::character varying])::text[])));
@@ -0,0 +1,17 @@
+-- Sharded stock counters for hot SKUs.
+-- When product_variants.stock_shards > 0, the quantity of each (variant, store) row
+-- is spread over that many rows in product_stock_shards and product_stocks.quantity stays 0.
+-- --------------------------------------------------------------------------
+ALTER TABLE public.product_variants ADD COLUMN stock_shards integer NOT NULL DEFAULT 0;
+
+CREATE TABLE public.product_stock_shards (
+    id bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    product_variant_id bigint NOT NULL,
+    store_id bigint NOT NULL,
+    shard_index integer NOT NULL,
+    quantity integer NOT NULL DEFAULT 0 CHECK (quantity >= 0),
+
+    CONSTRAINT fk_shard_variant FOREIGN KEY (product_variant_id) REFERENCES public.product_variants(id),
+    CONSTRAINT fk_shard_store FOREIGN KEY (store_id) REFERENCES public.stores(id),
+    CONSTRAINT uk_shard_variant_store_index UNIQUE (product_variant_id, store_id, shard_index)
+);
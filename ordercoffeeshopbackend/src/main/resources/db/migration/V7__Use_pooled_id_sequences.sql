@@ -0,0 +1,66 @@
+-- Pooled sequences for every entity id.
+-- IDENTITY ids force Hibernate to send one INSERT per row to read the generated key,
+-- which disables JDBC batching. The entities now use GenerationType.SEQUENCE with
+-- Hibernate's default <table>_seq naming and an allocation size of 50, so one
+-- nextval() covers 50 inserts and the inserts themselves can be batched.
+-- Each sequence starts past the current max id; the column defaults are moved to the
+-- new sequences so manual inserts cannot collide with ids handed out by Hibernate.
+-- --------------------------------------------------------------------------
+CREATE SEQUENCE public.addresses_seq INCREMENT BY 50;
+SELECT setval('public.addresses_seq', COALESCE((SELECT MAX(id) FROM public.addresses), 0) + 50, false);
+CREATE SEQUENCE public.categories_seq INCREMENT BY 50;
+SELECT setval('public.categories_seq', COALESCE((SELECT MAX(id) FROM public.categories), 0) + 50, false);
+CREATE SEQUENCE public.order_details_seq INCREMENT BY 50;
+SELECT setval('public.order_details_seq', COALESCE((SELECT MAX(id) FROM public.order_details), 0) + 50, false);
+CREATE SEQUENCE public.orders_seq INCREMENT BY 50;
+SELECT setval('public.orders_seq', COALESCE((SELECT MAX(id) FROM public.orders), 0) + 50, false);
+CREATE SEQUENCE public.payments_seq INCREMENT BY 50;
+SELECT setval('public.payments_seq', COALESCE((SELECT MAX(id) FROM public.payments), 0) + 50, false);
+CREATE SEQUENCE public.product_variants_seq INCREMENT BY 50;
+SELECT setval('public.product_variants_seq', COALESCE((SELECT MAX(id) FROM public.product_variants), 0) + 50, false);
+CREATE SEQUENCE public.products_seq INCREMENT BY 50;
+SELECT setval('public.products_seq', COALESCE((SELECT MAX(id) FROM public.products), 0) + 50, false);
+CREATE SEQUENCE public.users_seq INCREMENT BY 50;
+SELECT setval('public.users_seq', COALESCE((SELECT MAX(id) FROM public.users), 0) + 50, false);
+CREATE SEQUENCE public.vouchers_seq INCREMENT BY 50;
+SELECT setval('public.vouchers_seq', COALESCE((SELECT MAX(id) FROM public.vouchers), 0) + 50, false);
+CREATE SEQUENCE public.stores_seq INCREMENT BY 50;
+SELECT setval('public.stores_seq', COALESCE((SELECT MAX(id) FROM public.stores), 0) + 50, false);
+CREATE SEQUENCE public.product_stocks_seq INCREMENT BY 50;
+SELECT setval('public.product_stocks_seq', COALESCE((SELECT MAX(id) FROM public.product_stocks), 0) + 50, false);
+CREATE SEQUENCE public.stock_history_seq INCREMENT BY 50;
+SELECT setval('public.stock_history_seq', COALESCE((SELECT MAX(id) FROM public.stock_history), 0) + 50, false);
+CREATE SEQUENCE public.product_stock_shards_seq INCREMENT BY 50;
+SELECT setval('public.product_stock_shards_seq', COALESCE((SELECT MAX(id) FROM public.product_stock_shards), 0) + 50, false);
+
+-- Tables from V1: point the default at the new sequence and drop the old one
+-- --------------------------------------------------------------------------
+ALTER TABLE public.addresses ALTER COLUMN id SET DEFAULT nextval('public.addresses_seq');
+DROP SEQUENCE public.addresses_id_seq;
+ALTER TABLE public.categories ALTER COLUMN id SET DEFAULT nextval('public.categories_seq');
+DROP SEQUENCE public.categories_id_seq;
+ALTER TABLE public.order_details ALTER COLUMN id SET DEFAULT nextval('public.order_details_seq');
+DROP SEQUENCE public.order_details_id_seq;
+ALTER TABLE public.orders ALTER COLUMN id SET DEFAULT nextval('public.orders_seq');
+DROP SEQUENCE public.orders_id_seq;
+ALTER TABLE public.payments ALTER COLUMN id SET DEFAULT nextval('public.payments_seq');
+DROP SEQUENCE public.payments_id_seq;
+ALTER TABLE public.product_variants ALTER COLUMN id SET DEFAULT nextval('public.product_variants_seq');
+DROP SEQUENCE public.product_variants_id_seq;
+ALTER TABLE public.products ALTER COLUMN id SET DEFAULT nextval('public.products_seq');
+DROP SEQUENCE public.products_id_seq;
+ALTER TABLE public.users ALTER COLUMN id SET DEFAULT nextval('public.users_seq');
+DROP SEQUENCE public.users_id_seq;
+ALTER TABLE public.vouchers ALTER COLUMN id SET DEFAULT nextval('public.vouchers_seq');
+DROP SEQUENCE public.vouchers_id_seq;
+
+-- Tables created with GENERATED BY DEFAULT AS IDENTITY
+-- --------------------------------------------------------------------------
+ALTER TABLE public.stores ALTER COLUMN id DROP IDENTITY;
+ALTER TABLE public.stores ALTER COLUMN id SET DEFAULT nextval('public.stores_seq');
+ALTER TABLE public.product_stocks ALTER COLUMN id DROP IDENTITY;
+ALTER TABLE public.product_stocks ALTER COLUMN id SET DEFAULT nextval('public.product_stocks_seq');
+ALTER TABLE public.stock_history ALTER COLUMN id DROP IDENTITY;
+ALTER TABLE public.stock_history ALTER COLUMN id SET DEFAULT nextval('public.stock_history_seq');
+ALTER TABLE public.product_stock_shards ALTER COLUMN id DROP IDENTITY;
+ALTER TABLE public.product_stock_shards ALTER COLUMN id SET DEFAULT nextval('public.product_stock_shards_seq');
@@ -0,0 +1,10 @@
+-- Unpaid orders hold their stock only until expires_at; after that they are cancelled
+-- and the stock is returned (reason RESERVATION_EXPIRED in stock_history).
+-- --------------------------------------------------------------------------
+ALTER TABLE public.orders ADD COLUMN expires_at timestamp(6);
+
+-- Orders abandoned before this migration expire on the first sweep after startup
+UPDATE public.orders SET expires_at = order_date + INTERVAL '15 minutes' WHERE status = 'PENDING';
+
+-- The sweep only ever looks at pending orders, so keep the index small
+CREATE INDEX idx_orders_pending_expires_at ON public.orders (expires_at) WHERE status = 'PENDING';
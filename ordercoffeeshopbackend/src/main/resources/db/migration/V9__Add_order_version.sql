@@ -0,0 +1,4 @@
+-- Optimistic locking for orders: every status change bumps the version, so concurrent
+-- staff actions and payment callbacks can no longer overwrite each other.
+-- --------------------------------------------------------------------------
+ALTER TABLE public.orders ADD COLUMN version bigint NOT NULL DEFAULT 0;
@@ -0,0 +1,115 @@
+package com.coffeeshop.backend.cache;
+
+import com.coffeeshop.backend.service.ClusterMessagingService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.interceptor.SimpleKey;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TieredCacheManagerTest {
+
+    // Stands in for Redis, shared by both nodes
+    private final ConcurrentMapCacheManager shared = new ConcurrentMapCacheManager("products");
+    private final Cluster cluster = new Cluster();
+    private final SimpleMeterRegistry registryA = new SimpleMeterRegistry();
+    private final Cache nodeA = new TieredCacheManager(shared, cluster, registryA, 100, Duration.ofMinutes(1))
+            .getCache("products");
+    private final Cache nodeB = new TieredCacheManager(shared, cluster, new SimpleMeterRegistry(), 100,
+            Duration.ofMinutes(1)).getCache("products");
+
+    @Test
+    void hitsAreServedFromTheNearestTierThatHasTheValue() {
+        SimpleKey key = new SimpleKey("latte", 0);
+        assertNull(nodeA.get(key));
+        nodeA.put(key, "page 1");
+
+        assertEquals("page 1", nodeA.get(key, String.class));
+        assertEquals("page 1", nodeB.get(key, String.class));
+        // Node B copied it from the shared tier, which is no longer asked
+        shared.getCache("products").put(key, "changed behind the cache");
+        assertEquals("page 1", nodeB.get(key, String.class));
+
+        assertEquals(1.0, registryA.get("cache.tiered.gets").tags("tier", "l1", "result", "hit").counter().count());
+        assertEquals(1.0, registryA.get("cache.tiered.gets").tags("tier", "l2", "result", "miss").counter().count());
+        assertEquals(0.5, registryA.get("cache.tiered.hit.ratio").tags("tier", "l1").gauge().value());
+    }
+
+    @Test
+    void evictionsOnOneNodeDropTheCopiesOfEveryNode() {
+        SimpleKey latte = new SimpleKey("latte", 0);
+        SimpleKey mocha = new SimpleKey("mocha", 0);
+        nodeA.put(latte, "latte page");
+        nodeA.put(mocha, "mocha page");
+        nodeB.get(latte);
+        nodeB.get(mocha);
+
+        nodeA.evict(latte);
+        assertNull(nodeB.get(latte));
+        shared.getCache("products").put(mocha, "new mocha page");
+        assertEquals("mocha page", nodeB.get(mocha, String.class));
+
+        nodeA.clear();
+        assertNull(nodeB.get(mocha));
+        assertEquals(List.of(latte.toString(), "*"), cluster.sent);
+    }
+
+    /**
+     * Hands every published message to every subscriber, the publisher included.
+     */
+    private static class Cluster implements ClusterMessagingService {
+        final List<String> sent = new CopyOnWriteArrayList<>();
+        private final List<Consumer<TieredCacheManager.Invalidation>> listeners = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void convertAndSend(String destination, Object payload) {
+        }
+
+        @Override
+        public void publish(String channel, Object payload) {
+            TieredCacheManager.Invalidation invalidation = (TieredCacheManager.Invalidation) payload;
+            sent.add(invalidation.getKey() == null ? "*" : invalidation.getKey());
+            listeners.forEach(listener -> listener.accept(invalidation));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> void subscribe(String channel, Class<T> type, Consumer<T> handler) {
+            listeners.add((Consumer<TieredCacheManager.Invalidation>) handler);
+        }
+
+        @Override
+        public long increment(String key) {
+            return 0;
+        }
+
+        @Override
+        public long getCounter(String key) {
+            return 0;
+        }
+
+        @Override
+        public String share(String key, String candidate) {
+            return candidate;
+        }
+
+        @Override
+        public void addToSets(Collection<String> keys, String member, Duration ttl) {
+        }
+
+        @Override
+        public Set<String> popSets(Collection<String> keys, int limit) {
+            return Set.of();
+        }
+    }
+}
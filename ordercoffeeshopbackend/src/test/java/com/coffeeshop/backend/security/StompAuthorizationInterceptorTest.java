@@ -0,0 +1,120 @@
+package com.coffeeshop.backend.security;
+
+import com.coffeeshop.backend.entity.Store;
+import com.coffeeshop.backend.entity.User;
+import com.coffeeshop.backend.enums.UserRole;
+import com.coffeeshop.backend.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StompAuthorizationInterceptorTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final StompAuthorizationInterceptor interceptor = new StompAuthorizationInterceptor(userRepository);
+    private final MessageChannel channel = mock(MessageChannel.class);
+
+    @BeforeEach
+    void setUp() {
+        when(userRepository.findByEmail(anyString())).thenReturn(Optional.empty());
+        user("staff@test.com", UserRole.STAFF, 1L);
+        user("admin@test.com", UserRole.ADMIN, null);
+        user("customer@test.com", UserRole.CUSTOMER, null);
+    }
+
+    @Test
+    void staffOnlySeeTheirOwnStore() {
+        assertDoesNotThrow(() -> send(StompCommand.SUBSCRIBE, "staff@test.com", "/topic/stores/1/orders"));
+        assertThrows(AccessDeniedException.class, () -> send(StompCommand.SUBSCRIBE, "staff@test.com", "/topic/stores/2/orders"));
+        assertThrows(AccessDeniedException.class, () -> send(StompCommand.SUBSCRIBE, "staff@test.com", "/topic/orders"));
+        assertThrows(AccessDeniedException.class, () -> send(StompCommand.SUBSCRIBE, "customer@test.com", "/topic/stores/1/orders"));
+    }
+
+    @Test
+    void adminsSeeEveryStore() {
+        assertDoesNotThrow(() -> send(StompCommand.SUBSCRIBE, "admin@test.com", "/topic/stores/2/orders"));
+        assertDoesNotThrow(() -> send(StompCommand.SUBSCRIBE, "admin@test.com", "/topic/orders"));
+    }
+
+    @Test
+    void customersGetTheirOwnQueueAndCannotPublish() {
+        assertDoesNotThrow(() -> send(StompCommand.SUBSCRIBE, "customer@test.com", "/user/queue/orders"));
+        assertThrows(AccessDeniedException.class, () -> send(StompCommand.SUBSCRIBE, null, "/user/queue/orders"));
+        assertThrows(AccessDeniedException.class, () -> send(StompCommand.SUBSCRIBE, "customer@test.com", "/topic/anything"));
+        assertThrows(AccessDeniedException.class, () -> send(StompCommand.SEND, "customer@test.com", "/topic/stores/1/orders"));
+    }
+
+    @Test
+    void nativeSessionsThatAskForCborAreMovedToTheCborDestinations() {
+        Map<String, Object> nativeSession = new HashMap<>(Map.of(StompAuthorizationInterceptor.NATIVE_TRANSPORT_ATTRIBUTE, true));
+        Map<String, Object> sockJsSession = new HashMap<>();
+        for (Map<String, Object> session : List.of(nativeSession, sockJsSession)) {
+            StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+            connect.setNativeHeader(StompAuthorizationInterceptor.EVENT_FORMAT_HEADER, "cbor");
+            connect.setSessionAttributes(session);
+            interceptor.preSend(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()), channel);
+        }
+
+        assertEquals("/topic/stores/1/orders.cbor", subscribe("staff@test.com", "/topic/stores/1/orders", nativeSession));
+        assertEquals("/user/queue/orders.cbor", subscribe("customer@test.com", "/user/queue/orders", nativeSession));
+        assertEquals("/topic/checkout/abc", subscribe("customer@test.com", "/topic/checkout/abc", nativeSession));
+        // SockJS only carries text, so it stays on JSON
+        assertEquals("/topic/stores/1/orders", subscribe("staff@test.com", "/topic/stores/1/orders", sockJsSession));
+        assertThrows(AccessDeniedException.class,
+                () -> subscribe("staff@test.com", "/topic/stores/1/orders.cbor", sockJsSession));
+        // The CBOR variant is authorized like the JSON one
+        assertThrows(AccessDeniedException.class,
+                () -> subscribe("staff@test.com", "/topic/stores/2/orders.cbor", nativeSession));
+    }
+
+    private String subscribe(String email, String destination, Map<String, Object> session) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        accessor.setDestination(destination);
+        accessor.setSubscriptionId("sub-0");
+        accessor.setUser(new UsernamePasswordAuthenticationToken(email, null));
+        accessor.setSessionAttributes(session);
+        Message<?> message = interceptor.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), channel);
+        return StompHeaderAccessor.wrap(message).getDestination();
+    }
+
+    private void user(String email, UserRole role, Long storeId) {
+        User user = new User();
+        user.setEmail(email);
+        user.setRole(role);
+        if (storeId != null) {
+            Store store = new Store();
+            store.setId(storeId);
+            user.setStore(store);
+        }
+        when(userRepository.findByEmail(email)).thenReturn(Optional.of(user));
+    }
+
+    private void send(StompCommand command, String email, String destination) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setDestination(destination);
+        accessor.setSubscriptionId("sub-0");
+        if (email != null) {
+            accessor.setUser(new UsernamePasswordAuthenticationToken(email, null));
+        }
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+        interceptor.preSend(message, channel);
+    }
+}
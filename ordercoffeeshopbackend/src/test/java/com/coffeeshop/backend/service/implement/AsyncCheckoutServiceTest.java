@@ -0,0 +1,186 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.order.CheckoutStatusResponse;
+import com.coffeeshop.backend.dto.order.CreateOrderRequest;
+import com.coffeeshop.backend.dto.order.OrderAcceptedResponse;
+import com.coffeeshop.backend.dto.order.OrderItemRequest;
+import com.coffeeshop.backend.dto.order.OrderResponse;
+import com.coffeeshop.backend.dto.product.VariantCatalogEntry;
+import com.coffeeshop.backend.enums.CheckoutStatus;
+import com.coffeeshop.backend.exception.InsufficientStockException;
+import com.coffeeshop.backend.exception.OutcomeUnknownException;
+import com.coffeeshop.backend.exception.ResourceNotFoundException;
+import com.coffeeshop.backend.exception.ServiceBusyException;
+import com.coffeeshop.backend.service.ClusterMessagingService;
+import com.coffeeshop.backend.service.OrderIngestionService;
+import com.coffeeshop.backend.service.VariantCatalogService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AsyncCheckoutServiceTest {
+
+    private static final String CUSTOMER = "customer@test.com";
+
+    private final Map<String, String> redis = new ConcurrentHashMap<>();
+    private final OrderIngestionService orderIngestionService = mock(OrderIngestionService.class);
+    private final ClusterMessagingService clusterMessagingService = mock(ClusterMessagingService.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private AsyncCheckoutServiceImpl asyncCheckoutService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> values = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        when(values.get(anyString())).thenAnswer(invocation -> redis.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> redis.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(values).set(anyString(), anyString(), any());
+        when(redisTemplate.delete(anyString())).thenAnswer(invocation -> redis.remove(invocation.<String>getArgument(0)) != null);
+
+        VariantCatalogService variantCatalogService = mock(VariantCatalogService.class);
+        when(variantCatalogService.get(1L)).thenReturn(
+                new VariantCatalogEntry(1L, new BigDecimal("35000"), "M", "Latte", true, true, 0));
+        when(orderIngestionService.placeOrder(any(), eq(CUSTOMER))).thenAnswer(invocation -> order(7L));
+
+        ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        asyncCheckoutService = new AsyncCheckoutServiceImpl(orderIngestionService, variantCatalogService,
+                clusterMessagingService, redisTemplate, objectMapper, registry);
+        ReflectionTestUtils.setField(asyncCheckoutService, "threads", 1);
+        ReflectionTestUtils.setField(asyncCheckoutService, "queueCapacity", 1);
+        ReflectionTestUtils.setField(asyncCheckoutService, "resultTtlMinutes", 60L);
+        asyncCheckoutService.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        asyncCheckoutService.shutdown();
+    }
+
+    @Test
+    void aFullQueueTurnsCheckoutsAwayAndForgetsThem() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(orderIngestionService.placeOrder(any(), eq(CUSTOMER))).thenAnswer(invocation -> {
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return order(7L);
+        });
+
+        OrderAcceptedResponse running = asyncCheckoutService.accept(cart(), CUSTOMER);
+        verify(orderIngestionService, timeout(5000)).placeOrder(any(), eq(CUSTOMER));
+        OrderAcceptedResponse queued = asyncCheckoutService.accept(cart(), CUSTOMER);
+
+        assertThrows(ServiceBusyException.class, () -> asyncCheckoutService.accept(cart(), CUSTOMER));
+        // Only the two accepted checkouts are left to look up
+        assertEquals(2, redis.size());
+        assertEquals(1.0, registry.get("orders.checkout.async.results").tag("result", "rejected").counter().count());
+
+        release.countDown();
+        assertEquals(CheckoutStatus.COMPLETED, awaitResult(running.getToken()).getStatus());
+        assertEquals(CheckoutStatus.COMPLETED, awaitResult(queued.getToken()).getStatus());
+    }
+
+    @Test
+    void resultsAreStoredForTheCustomerAndSentToTheirTopic() throws Exception {
+        OrderAcceptedResponse accepted = asyncCheckoutService.accept(cart(), CUSTOMER);
+        assertEquals(CheckoutStatus.PENDING, accepted.getStatus());
+        assertEquals("/topic/checkout/" + accepted.getToken(), accepted.getDestination());
+
+        CheckoutStatusResponse sent = awaitResult(accepted.getToken());
+        assertEquals(CheckoutStatus.COMPLETED, sent.getStatus());
+        assertEquals(7L, sent.getOrder().getId());
+        assertTrue(redis.containsKey("checkout:" + CUSTOMER + ":" + accepted.getToken()));
+        CheckoutStatusResponse stored = asyncCheckoutService.getStatus(accepted.getToken(), CUSTOMER);
+        assertEquals(CheckoutStatus.COMPLETED, stored.getStatus());
+        assertEquals(7L, stored.getOrder().getId());
+    }
+
+    @Test
+    void failuresCarryTheStatusASynchronousCheckoutWouldHaveReturned() throws Exception {
+        doThrow(new InsufficientStockException("Not enough stock for product: Latte - M"))
+                .when(orderIngestionService).placeOrder(any(), eq(CUSTOMER));
+        OrderAcceptedResponse accepted = asyncCheckoutService.accept(cart(), CUSTOMER);
+
+        CheckoutStatusResponse sent = awaitResult(accepted.getToken());
+        assertEquals(CheckoutStatus.FAILED, sent.getStatus());
+        assertEquals(409, sent.getErrorStatus());
+        assertEquals("Not enough stock for product: Latte - M", sent.getErrorMessage());
+        assertEquals(CheckoutStatus.FAILED, asyncCheckoutService.getStatus(accepted.getToken(), CUSTOMER).getStatus());
+    }
+
+    @Test
+    void anOrderThatMayStillCommitIsNotReportedAsFailed() throws Exception {
+        doThrow(new OutcomeUnknownException("Your order is taking longer than expected"))
+                .when(orderIngestionService).placeOrder(any(), eq(CUSTOMER));
+        OrderAcceptedResponse accepted = asyncCheckoutService.accept(cart(), CUSTOMER);
+
+        CheckoutStatusResponse sent = awaitResult(accepted.getToken());
+        assertEquals(CheckoutStatus.UNKNOWN, sent.getStatus());
+        assertEquals(504, sent.getErrorStatus());
+    }
+
+    @Test
+    void aTokenOfAnotherCustomerIsNotFound() throws Exception {
+        OrderAcceptedResponse accepted = asyncCheckoutService.accept(cart(), CUSTOMER);
+        awaitResult(accepted.getToken());
+
+        assertThrows(ResourceNotFoundException.class,
+                () -> asyncCheckoutService.getStatus(accepted.getToken(), "someone-else@test.com"));
+    }
+
+    // The result sent to the checkout's topic once its worker is done
+    private CheckoutStatusResponse awaitResult(String token) {
+        ArgumentCaptor<CheckoutStatusResponse> sent = ArgumentCaptor.forClass(CheckoutStatusResponse.class);
+        verify(clusterMessagingService, timeout(5000).times(1))
+                .convertAndSend(eq("/topic/checkout/" + token), sent.capture());
+        return sent.getValue();
+    }
+
+    private static CreateOrderRequest cart() {
+        OrderItemRequest item = new OrderItemRequest();
+        item.setProductVariantId(1L);
+        item.setQuantity(2);
+        item.setPrice(new BigDecimal("35000"));
+        CreateOrderRequest request = new CreateOrderRequest();
+        request.setStoreId(1L);
+        request.setDeliveryMethod("pickup");
+        request.setItems(List.of(item));
+        return request;
+    }
+
+    private static OrderResponse order(long id) {
+        OrderResponse response = new OrderResponse();
+        response.setId(id);
+        return response;
+    }
+}
@@ -0,0 +1,237 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.order.CreateOrderRequest;
+import com.coffeeshop.backend.dto.order.OrderResponse;
+import com.coffeeshop.backend.exception.InsufficientStockException;
+import com.coffeeshop.backend.exception.OutcomeUnknownException;
+import com.coffeeshop.backend.exception.ResourceNotFoundException;
+import com.coffeeshop.backend.exception.ServiceBusyException;
+import com.coffeeshop.backend.repository.StoreRepository;
+import com.coffeeshop.backend.service.OrderService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BatchingOrderIngestionServiceTest {
+
+    private static final long STORE_ID = 1L;
+
+    private final OrderService orderService = mock(OrderService.class);
+    private final StoreRepository storeRepository = mock(StoreRepository.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ExecutorService callers = Executors.newFixedThreadPool(4);
+    private BatchingOrderIngestionServiceImpl ingestion;
+
+    @BeforeEach
+    void setUp() {
+        when(storeRepository.existsById(STORE_ID)).thenReturn(true);
+        when(orderService.createOrders(eq(STORE_ID), anyList(), anyList())).thenAnswer(invocation -> {
+            List<CreateOrderRequest> requests = invocation.getArgument(1);
+            return requests.stream().map(BatchingOrderIngestionServiceTest::response).toList();
+        });
+        when(orderService.createOrder(any(), anyString()))
+                .thenAnswer(invocation -> response(invocation.getArgument(0)));
+
+        ingestion = new BatchingOrderIngestionServiceImpl(orderService, storeRepository, registry);
+        ReflectionTestUtils.setField(ingestion, "batchSize", 32);
+        ReflectionTestUtils.setField(ingestion, "lingerMs", 300L);
+        ReflectionTestUtils.setField(ingestion, "queueCapacity", 100);
+        ReflectionTestUtils.setField(ingestion, "resultTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(ingestion, "commitWaitMs", 5000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ingestion.shutdown();
+        callers.shutdownNow();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ordersPlacedTogetherAreWrittenInOneBatch() throws Exception {
+        List<Future<OrderResponse>> results = new ArrayList<>();
+        for (long tag = 1; tag <= 4; tag++) {
+            results.add(place(tag, "customer" + tag + "@test.com"));
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i + 1L, results.get(i).get(5, TimeUnit.SECONDS).getId());
+        }
+        ArgumentCaptor<List<String>> emails = ArgumentCaptor.forClass(List.class);
+        verify(orderService, times(1)).createOrders(eq(STORE_ID), anyList(), emails.capture());
+        assertEquals(4, emails.getValue().size());
+        verify(orderService, never()).createOrder(any(), anyString());
+    }
+
+    @Test
+    void aFailingOrderOnlyFailsItself() throws Exception {
+        when(orderService.createOrders(eq(STORE_ID), anyList(), anyList()))
+                .thenThrow(new InsufficientStockException("Not enough stock"));
+        doThrow(new InsufficientStockException("Not enough stock"))
+                .when(orderService).createOrder(any(), eq("short@test.com"));
+
+        Future<OrderResponse> first = place(1L, "customer@test.com");
+        Future<OrderResponse> failing = place(2L, "short@test.com");
+        Future<OrderResponse> third = place(3L, "customer@test.com");
+
+        assertEquals(1L, first.get(5, TimeUnit.SECONDS).getId());
+        assertEquals(3L, third.get(5, TimeUnit.SECONDS).getId());
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> failing.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(InsufficientStockException.class, failure.getCause());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void anErrorFailsItsBatchAndTheWriterCarriesOn() throws Exception {
+        when(orderService.createOrders(eq(STORE_ID), anyList(), anyList()))
+                .thenThrow(new StackOverflowError())
+                .thenAnswer(invocation -> List.of(response(((List<CreateOrderRequest>) invocation.getArgument(1)).get(0))));
+
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> place(1L, "customer@test.com").get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+        assertEquals(2L, place(2L, "customer@test.com").get(5, TimeUnit.SECONDS).getId());
+    }
+
+    @Test
+    void unknownStoresGetNoWriter() {
+        doThrow(new ResourceNotFoundException("Store not found with id: 9"))
+                .when(orderService).createOrder(any(), anyString());
+        CreateOrderRequest request = request(1L);
+        request.setStoreId(9L);
+
+        assertThrows(ResourceNotFoundException.class, () -> ingestion.placeOrder(request, "customer@test.com"));
+        assertNull(registry.find("orders.ingestion.queue.depth").gauge());
+    }
+
+    @Test
+    void ordersWaitingTooLongAreWithdrawn() throws Exception {
+        CountDownLatch release = blockWriter();
+        Future<OrderResponse> first = place(1L, "customer@test.com");
+        verify(orderService, timeout(5000)).createOrders(eq(STORE_ID), anyList(), anyList());
+        ReflectionTestUtils.setField(ingestion, "resultTimeoutMs", 200L);
+
+        assertThrows(ServiceBusyException.class, () -> ingestion.placeOrder(request(2L), "customer@test.com"));
+        assertEquals(0.0, queueDepth());
+
+        release.countDown();
+        assertEquals(1L, first.get(5, TimeUnit.SECONDS).getId());
+        verify(orderService, times(1)).createOrders(eq(STORE_ID), anyList(), anyList());
+    }
+
+    @Test
+    void ordersAlreadyBeingWrittenWaitForTheirBatch() throws Exception {
+        CountDownLatch release = blockWriter();
+        ReflectionTestUtils.setField(ingestion, "resultTimeoutMs", 200L);
+        Future<OrderResponse> writing = place(1L, "customer@test.com");
+        verify(orderService, timeout(5000)).createOrders(eq(STORE_ID), anyList(), anyList());
+
+        // Past the result timeout, but the batch commits within the commit wait
+        Thread.sleep(400);
+        release.countDown();
+        assertEquals(1L, writing.get(5, TimeUnit.SECONDS).getId());
+    }
+
+    @Test
+    void ordersWhoseBatchOutlastsTheCommitWaitHaveAnUnknownOutcome() throws Exception {
+        CountDownLatch release = blockWriter();
+        ReflectionTestUtils.setField(ingestion, "resultTimeoutMs", 100L);
+        ReflectionTestUtils.setField(ingestion, "commitWaitMs", 100L);
+        Future<OrderResponse> writing = place(1L, "customer@test.com");
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> writing.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(OutcomeUnknownException.class, failure.getCause());
+        release.countDown();
+    }
+
+    @Test
+    void shutdownFailsQueuedOrdersAndRejectsNewOnes() throws Exception {
+        CountDownLatch release = blockWriter();
+        Future<OrderResponse> writing = place(1L, "customer@test.com");
+        verify(orderService, timeout(5000)).createOrders(eq(STORE_ID), anyList(), anyList());
+        Future<OrderResponse> queued = place(2L, "customer@test.com");
+        awaitQueueDepth(1);
+
+        ingestion.shutdown();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ServiceBusyException.class, failure.getCause());
+        assertThrows(ServiceBusyException.class, () -> ingestion.placeOrder(request(3L), "customer@test.com"));
+        // The batch already being written still completes
+        release.countDown();
+        assertEquals(1L, writing.get(5, TimeUnit.SECONDS).getId());
+    }
+
+    // The next batch waits until the returned latch is released
+    private CountDownLatch blockWriter() {
+        CountDownLatch release = new CountDownLatch(1);
+        ReflectionTestUtils.setField(ingestion, "lingerMs", 0L);
+        when(orderService.createOrders(eq(STORE_ID), anyList(), anyList())).thenAnswer(invocation -> {
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            List<CreateOrderRequest> requests = invocation.getArgument(1);
+            return requests.stream().map(BatchingOrderIngestionServiceTest::response).toList();
+        });
+        return release;
+    }
+
+    private void awaitQueueDepth(double depth) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((registry.find("orders.ingestion.queue.depth").gauge() == null || queueDepth() != depth)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(depth, queueDepth());
+    }
+
+    private double queueDepth() {
+        return registry.get("orders.ingestion.queue.depth").tag("store", String.valueOf(STORE_ID)).gauge().value();
+    }
+
+    private Future<OrderResponse> place(long tag, String userEmail) {
+        return callers.submit(() -> ingestion.placeOrder(request(tag), userEmail));
+    }
+
+    // The address id doubles as a tag, echoed back as the order id
+    private static CreateOrderRequest request(long tag) {
+        CreateOrderRequest request = new CreateOrderRequest();
+        request.setStoreId(STORE_ID);
+        request.setAddressId(tag);
+        request.setItems(List.of());
+        return request;
+    }
+
+    private static OrderResponse response(CreateOrderRequest request) {
+        OrderResponse response = new OrderResponse();
+        response.setId(request.getAddressId());
+        return response;
+    }
+}
@@ -0,0 +1,168 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.order.OrderEvent;
+import com.coffeeshop.backend.entity.OrderOutboxEvent;
+import com.coffeeshop.backend.enums.OrderStatus;
+import com.coffeeshop.backend.service.ClusterTransport;
+import com.coffeeshop.backend.websocket.LocalSubscriptions;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ClusterMessagingServiceTest {
+
+    private final InMemoryCluster cluster = new InMemoryCluster();
+    private final SimpMessagingTemplate templateA = mock(SimpMessagingTemplate.class);
+    private final SimpMessagingTemplate templateB = mock(SimpMessagingTemplate.class);
+    private final ClusterMessagingServiceImpl nodeA = node(templateA);
+    private final ClusterMessagingServiceImpl nodeB = node(templateB);
+
+    @Test
+    void sendsReachTheSessionsOfEveryNodeExactlyOnce() {
+        nodeA.convertAndSend("/topic/checkout/abc", Map.of("status", "COMPLETED"));
+
+        verify(templateA).convertAndSend(eq("/topic/checkout/abc"), any(Object.class));
+        ArgumentCaptor<Object> relayed = ArgumentCaptor.forClass(Object.class);
+        verify(templateB).convertAndSend(eq("/topic/checkout/abc"), relayed.capture());
+        assertEquals("COMPLETED", ((JsonNode) relayed.getValue()).get("status").asText());
+
+        // The transport hands a message over again: it is only delivered once
+        nodeB.receive(cluster.published.get(0));
+        verify(templateB, times(1)).convertAndSend(eq("/topic/checkout/abc"), any(Object.class));
+        // and the publisher, which gets its own messages back, never delivers them twice
+        verify(templateA, times(1)).convertAndSend(eq("/topic/checkout/abc"), any(Object.class));
+    }
+
+    @Test
+    void storeStreamsAreNumberedOnceForTheWholeCluster() {
+        LocalSubscriptions subscribed = mock(LocalSubscriptions.class);
+        when(subscribed.hasSubscribers(anyString())).thenReturn(true);
+        when(subscribed.hasUserSubscribers(anyString(), anyString())).thenReturn(true);
+        OrderNotificationServiceImpl notificationsA = new OrderNotificationServiceImpl(templateA, nodeA, subscribed,
+                new SimpleMeterRegistry());
+        OrderNotificationServiceImpl notificationsB = new OrderNotificationServiceImpl(templateB, nodeB, subscribed,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(notificationsA, "bufferSize", 16);
+        ReflectionTestUtils.setField(notificationsB, "bufferSize", 16);
+
+        // The outbox relay runs on whichever node got the batch
+        notificationsA.publish(change(1L, 10L));
+        notificationsB.publish(change(1L, 11L));
+        notificationsA.publish(change(1L, 12L));
+
+        for (SimpMessagingTemplate template : List.of(templateA, templateB)) {
+            ArgumentCaptor<Object> sent = ArgumentCaptor.forClass(Object.class);
+            verify(template, times(3)).convertAndSend(eq("/topic/stores/1/orders"), sent.capture(), anyMap());
+            assertEquals(List.of(1L, 2L, 3L), sent.getAllValues().stream()
+                    .map(event -> ((OrderEvent) event).getSeq()).collect(Collectors.toList()));
+            verify(template, times(3)).convertAndSendToUser(eq("customer@test.com"), eq("/queue/orders"), any(), anyMap());
+        }
+
+        // A board reconnecting to the other node resumes where it was
+        String epoch = notificationsA.replay(1L, null, 0).getEpoch();
+        assertEquals(epoch, notificationsB.replay(1L, null, 0).getEpoch());
+        assertEquals(List.of(11L, 12L), notificationsB.replay(1L, epoch, 1).getEvents().stream()
+                .map(OrderEvent::getOrderId).collect(Collectors.toList()));
+    }
+
+    private ClusterMessagingServiceImpl node(SimpMessagingTemplate template) {
+        ClusterMessagingServiceImpl node = new ClusterMessagingServiceImpl(cluster.transport(), template,
+                new ObjectMapper(), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(node, "dedupeWindow", 100);
+        return node;
+    }
+
+    private OrderOutboxEvent change(Long storeId, Long orderId) {
+        OrderOutboxEvent change = new OrderOutboxEvent();
+        change.setOrderId(orderId);
+        change.setStoreId(storeId);
+        change.setUserEmail("customer@test.com");
+        change.setStatus(OrderStatus.PAID);
+        change.setOrderVersion(1L);
+        change.setCreatedAt(LocalDateTime.now());
+        return change;
+    }
+
+    /**
+     * Stands in for Redis: every message goes to every node, the publisher included, synchronously and in order.
+     */
+    static class InMemoryCluster {
+        final List<String> published = new CopyOnWriteArrayList<>();
+        private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+        private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+        private final Map<String, String> values = new ConcurrentHashMap<>();
+        private final LocalClusterTransport sets = new LocalClusterTransport();
+
+        ClusterTransport transport() {
+            return new ClusterTransport() {
+                @Override
+                public boolean isDistributed() {
+                    return true;
+                }
+
+                @Override
+                public void publish(String message) {
+                    published.add(message);
+                    listeners.forEach(listener -> listener.accept(message));
+                }
+
+                @Override
+                public void subscribe(Consumer<String> listener) {
+                    listeners.add(listener);
+                }
+
+                @Override
+                public long increment(String key) {
+                    return counters.computeIfAbsent(key, k -> new AtomicLong()).incrementAndGet();
+                }
+
+                @Override
+                public long get(String key) {
+                    AtomicLong counter = counters.get(key);
+                    return counter != null ? counter.get() : 0;
+                }
+
+                @Override
+                public String putIfAbsent(String key, String value) {
+                    return values.computeIfAbsent(key, k -> value);
+                }
+
+                @Override
+                public void addToSets(Collection<String> keys, String member, Duration ttl) {
+                    sets.addToSets(keys, member, ttl);
+                }
+
+                @Override
+                public Set<String> popSets(Collection<String> keys, int limit) {
+                    return sets.popSets(keys, limit);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.exception.IdempotencyKeyReusedException;
+import com.coffeeshop.backend.exception.InsufficientStockException;
+import com.coffeeshop.backend.exception.OutcomeUnknownException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionSystemException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IdempotencyServiceTest {
+
+    private final Map<String, String> redis = new ConcurrentHashMap<>();
+    private final AtomicInteger runs = new AtomicInteger();
+    private IdempotencyServiceImpl idempotencyService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> values = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        when(values.setIfAbsent(anyString(), anyString(), any())).thenAnswer(invocation ->
+                redis.putIfAbsent(invocation.getArgument(0), invocation.getArgument(1)) == null);
+        when(values.get(anyString())).thenAnswer(invocation -> redis.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> redis.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(values).set(anyString(), anyString(), any());
+        when(redisTemplate.delete(anyString())).thenAnswer(invocation -> redis.remove(invocation.<String>getArgument(0)) != null);
+
+        idempotencyService = new IdempotencyServiceImpl(redisTemplate, new ObjectMapper());
+        ReflectionTestUtils.setField(idempotencyService, "resultTtlHours", 24L);
+        ReflectionTestUtils.setField(idempotencyService, "inFlightTtlSeconds", 60L);
+        ReflectionTestUtils.setField(idempotencyService, "waitTimeoutMs", 200L);
+        ReflectionTestUtils.setField(idempotencyService, "pollIntervalMs", 10L);
+    }
+
+    @Test
+    void retriesGetTheFirstResult() {
+        assertEquals("order-1", place("cart-a", () -> "order-1"));
+        assertEquals("order-1", place("cart-a", () -> "order-2"));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void aKeyUsedForAnotherBodyIsRefused() {
+        place("cart-a", () -> "order-1");
+        assertThrows(IdempotencyKeyReusedException.class, () -> place("key-1", "cart-b", () -> "order-2"));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void refusedRequestsFreeTheKey() {
+        assertThrows(InsufficientStockException.class,
+                () -> place("cart-a", () -> { throw new InsufficientStockException("Not enough stock"); }));
+        assertEquals("order-1", place("cart-a", () -> "order-1"));
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void requestsThatMayHaveCommittedAreNotRunAgain() {
+        assertThrows(OutcomeUnknownException.class, () -> place("cart-a", () -> {
+            throw new OutcomeUnknownException("Your order is taking longer than expected");
+        }));
+        OutcomeUnknownException replayed = assertThrows(OutcomeUnknownException.class,
+                () -> place("cart-a", () -> "order-1"));
+        assertEquals("Your order is taking longer than expected", replayed.getMessage());
+
+        // A failed commit is just as uncertain
+        assertThrows(TransactionSystemException.class, () -> place("key-2", "cart-b", () -> {
+            throw new TransactionSystemException("Could not commit");
+        }));
+        assertThrows(OutcomeUnknownException.class, () -> place("key-2", "cart-b", () -> "order-2"));
+        assertEquals(2, runs.get());
+    }
+
+    private String place(String cart, Supplier<String> action) {
+        return place("key-1", cart, action);
+    }
+
+    private String place(String key, String cart, Supplier<String> action) {
+        return idempotencyService.execute("orders:customer@test.com", key, Map.of("cart", cart), String.class,
+                () -> {
+                    runs.incrementAndGet();
+                    return action.get();
+                });
+    }
+}
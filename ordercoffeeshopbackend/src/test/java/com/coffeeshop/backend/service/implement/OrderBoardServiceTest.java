@@ -0,0 +1,227 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.order.OrderBoardSnapshot;
+import com.coffeeshop.backend.dto.order.OrderEvent;
+import com.coffeeshop.backend.dto.order.OrderEventMessage;
+import com.coffeeshop.backend.dto.order.OrderResponse;
+import com.coffeeshop.backend.entity.Order;
+import com.coffeeshop.backend.entity.OrderDetail;
+import com.coffeeshop.backend.entity.Product;
+import com.coffeeshop.backend.entity.ProductVariant;
+import com.coffeeshop.backend.entity.Store;
+import com.coffeeshop.backend.entity.User;
+import com.coffeeshop.backend.enums.OrderStatus;
+import com.coffeeshop.backend.enums.UserRole;
+import com.coffeeshop.backend.mapper.OrderMapperImpl;
+import com.coffeeshop.backend.repository.OrderRepository;
+import com.coffeeshop.backend.repository.StoreRepository;
+import com.coffeeshop.backend.service.OrderNotificationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import(OrderMapperImpl.class)
+class OrderBoardServiceTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private StoreRepository storeRepository;
+    @Autowired
+    private OrderMapperImpl orderMapper;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ClusterMessagingServiceImpl clusterMessagingService;
+    private OrderBoardServiceImpl orderBoardService;
+    private User customer;
+    private Store store;
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @BeforeEach
+    void setUp() {
+        store = store("Test Store");
+        customer = new User();
+        customer.setEmail("customer@test.com");
+        customer.setPassword("secret");
+        customer.setFullname("Test Customer");
+        customer.setPhone("0900000000");
+        customer.setRole(UserRole.CUSTOMER);
+        entityManager.persist(customer);
+
+        OrderNotificationService orderNotificationService = mock(OrderNotificationService.class);
+        when(orderNotificationService.epoch()).thenReturn("epoch-1");
+        clusterMessagingService = new ClusterMessagingServiceImpl(new LocalClusterTransport(),
+                mock(SimpMessagingTemplate.class), new ObjectMapper(), new SimpleMeterRegistry());
+        orderBoardService = new OrderBoardServiceImpl(orderRepository, storeRepository, orderMapper,
+                orderNotificationService, clusterMessagingService, transactionManager, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(orderBoardService, "maxOrders", 3);
+        // Applied on the delivering thread here, which can see the orders this test has not committed
+        ReflectionTestUtils.setField(orderBoardService, "appliers", (Executor) Runnable::run);
+    }
+
+    @Test
+    void boardStartsFromTheDatabaseAndFollowsTheEvents() {
+        Long older = order(store, OrderStatus.PAID, 10);
+        Long newer = order(store, OrderStatus.PREPARING, 5);
+        order(store, OrderStatus.DELIVERED, 4);
+        order(store, OrderStatus.CANCELLED, 3);
+        order(store("Other Store"), OrderStatus.PAID, 2);
+        orderBoardService.load();
+
+        OrderBoardSnapshot snapshot = orderBoardService.snapshot(store.getId());
+        assertEquals("epoch-1", snapshot.getEpoch());
+        assertEquals(0, snapshot.getSeq());
+        assertEquals(List.of(newer, older), ids(snapshot));
+        assertFalse(snapshot.isTruncated());
+
+        event(1, older, OrderStatus.PREPARING, 1L);
+        // Stale: already superseded by version 1
+        event(2, older, OrderStatus.PAID, 0L);
+        Long placed = order(store, OrderStatus.PENDING, 0);
+        event(3, placed, OrderStatus.PENDING, 0L);
+        event(4, newer, OrderStatus.DELIVERED, 1L);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        snapshot = orderBoardService.snapshot(store.getId());
+        assertEquals(0, statistics.getPrepareStatementCount());
+        assertEquals(4, snapshot.getSeq());
+        assertEquals(List.of(placed, older), ids(snapshot));
+        OrderResponse changed = snapshot.getOrders().get(1);
+        assertEquals(OrderStatus.PREPARING, changed.getStatus());
+        assertEquals(1L, changed.getVersion());
+        assertEquals(1, changed.getItems().size());
+
+        // A failed payment cancels the pending order, which leaves the board
+        event(5, placed, OrderStatus.CANCELLED, 1L);
+        assertEquals(List.of(older), ids(orderBoardService.snapshot(store.getId())));
+    }
+
+    @Test
+    void boardsKeepTheNewestOrdersUpToTheirLimit() {
+        for (int i = 4; i > 0; i--) {
+            order(store, OrderStatus.PAID, i);
+        }
+        orderBoardService.load();
+        assertTrue(orderBoardService.snapshot(store.getId()).isTruncated());
+        assertEquals(3, orderBoardService.snapshot(store.getId()).getOrders().size());
+
+        Long placed = order(store, OrderStatus.PENDING, 0);
+        event(1, placed, OrderStatus.PENDING, 0L);
+        List<Long> ids = ids(orderBoardService.snapshot(store.getId()));
+        assertEquals(3, ids.size());
+        assertEquals(placed, ids.get(0));
+
+        // A store opened after startup is loaded by its first subscriber
+        Store opened = store("New Store");
+        Long first = order(opened, OrderStatus.PAID, 1);
+        assertEquals(List.of(first), ids(orderBoardService.snapshot(opened.getId())));
+    }
+
+    @Test
+    void eventsAreAppliedOffTheThreadThatDeliversThem() {
+        orderBoardService.load();
+        List<Runnable> appliers = new ArrayList<>();
+        ReflectionTestUtils.setField(orderBoardService, "appliers", (Executor) appliers::add);
+
+        Long placed = order(store, OrderStatus.PENDING, 0);
+        Long paid = order(store, OrderStatus.PAID, 0);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        event(1, placed, OrderStatus.PENDING, 0L);
+        event(2, paid, OrderStatus.PAID, 0L);
+
+        // Delivering did not read the new orders, and the board does not claim the events yet
+        assertEquals(0, statistics.getPrepareStatementCount());
+        assertEquals(0, orderBoardService.snapshot(store.getId()).getSeq());
+        // One applier works through the store's events in order
+        assertEquals(1, appliers.size());
+        appliers.get(0).run();
+
+        OrderBoardSnapshot snapshot = orderBoardService.snapshot(store.getId());
+        assertEquals(2, snapshot.getSeq());
+        assertEquals(List.of(paid, placed), ids(snapshot));
+    }
+
+    private void event(long seq, Long orderId, OrderStatus status, Long version) {
+        OrderEvent event = new OrderEvent(seq, orderId, store.getId(), status, version, System.currentTimeMillis());
+        clusterMessagingService.publish(OrderNotificationServiceImpl.CHANNEL,
+                new OrderEventMessage(event, customer.getEmail()));
+    }
+
+    private Store store(String name) {
+        Store created = new Store();
+        created.setName(name);
+        created.setAddress("1 Test Street");
+        return entityManager.persist(created);
+    }
+
+    private Long order(Store in, OrderStatus status, int minutesAgo) {
+        Product product = new Product();
+        product.setName("Latte " + minutesAgo + status);
+        product.setIsActive(true);
+        ProductVariant variant = new ProductVariant();
+        variant.setSku("LATTE-" + minutesAgo + status + in.getName().hashCode());
+        variant.setSize("M");
+        variant.setPrice(new BigDecimal("35000"));
+        variant.setIsActive(true);
+        variant.setProduct(product);
+        product.getVariants().add(variant);
+        entityManager.persist(product);
+
+        Order order = new Order();
+        order.setUser(customer);
+        order.setStore(in);
+        order.setStatus(status);
+        order.setOrderDate(now.minusMinutes(minutesAgo));
+        order.setTotalPrice(new BigDecimal("35000"));
+        OrderDetail detail = new OrderDetail();
+        detail.setOrder(order);
+        detail.setProductVariant(variant);
+        detail.setQuantity(1);
+        detail.setUnitPrice(variant.getPrice());
+        order.getOrderDetails().add(detail);
+        entityManager.persist(order);
+        entityManager.flush();
+        entityManager.clear();
+        return order.getId();
+    }
+
+    private static List<Long> ids(OrderBoardSnapshot snapshot) {
+        return snapshot.getOrders().stream().map(OrderResponse::getId).collect(Collectors.toList());
+    }
+}
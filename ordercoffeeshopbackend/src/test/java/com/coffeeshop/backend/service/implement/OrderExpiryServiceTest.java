@@ -0,0 +1,238 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.entity.Order;
+import com.coffeeshop.backend.entity.OrderDetail;
+import com.coffeeshop.backend.entity.Product;
+import com.coffeeshop.backend.entity.ProductStock;
+import com.coffeeshop.backend.entity.ProductStockShard;
+import com.coffeeshop.backend.entity.ProductVariant;
+import com.coffeeshop.backend.entity.StockHistory;
+import com.coffeeshop.backend.entity.Store;
+import com.coffeeshop.backend.entity.User;
+import com.coffeeshop.backend.enums.OrderStatus;
+import com.coffeeshop.backend.enums.UserRole;
+import com.coffeeshop.backend.repository.OrderDetailRepository;
+import com.coffeeshop.backend.repository.OrderRepository;
+import com.coffeeshop.backend.repository.ProductRepository;
+import com.coffeeshop.backend.repository.ProductStockRepository;
+import com.coffeeshop.backend.repository.ProductStockShardRepository;
+import com.coffeeshop.backend.repository.ProductVariantRepository;
+import com.coffeeshop.backend.repository.StockHistoryRepository;
+import com.coffeeshop.backend.repository.StoreRepository;
+import com.coffeeshop.backend.repository.UserRepository;
+import com.coffeeshop.backend.service.ClusterMessagingService;
+import com.coffeeshop.backend.service.OrderExpiryService;
+import com.coffeeshop.backend.service.OrderOutboxService;
+import com.coffeeshop.backend.service.ProductSalesService;
+import com.coffeeshop.backend.service.VariantCatalogService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.datasource.url=jdbc:h2:mem:order_expiry;LOCK_TIMEOUT=10000"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OrderExpiryServiceTest {
+
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private OrderDetailRepository orderDetailRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private ProductStockRepository productStockRepository;
+    @Autowired
+    private ProductStockShardRepository productStockShardRepository;
+    @Autowired
+    private ProductVariantRepository productVariantRepository;
+    @Autowired
+    private StockHistoryRepository stockHistoryRepository;
+    @Autowired
+    private StoreRepository storeRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private OrderExpiryServiceImpl orderExpiryService;
+    private VariantCatalogServiceImpl variantCatalogService;
+    private Store store;
+    private User user;
+    private Long plainVariantId;
+    private Long shardedVariantId;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository.deleteAll();
+        userRepository.deleteAll();
+        stockHistoryRepository.deleteAll();
+        productStockShardRepository.deleteAll();
+        productStockRepository.deleteAll();
+        productRepository.deleteAll();
+        storeRepository.deleteAll();
+
+        store = new Store();
+        store.setName("Test Store");
+        store.setAddress("1 Test Street");
+        store = storeRepository.save(store);
+
+        user = new User();
+        user.setEmail("customer@test.com");
+        user.setPassword("secret");
+        user.setFullname("Test Customer");
+        user.setPhone("0900000000");
+        user.setRole(UserRole.CUSTOMER);
+        user = userRepository.save(user);
+
+        Product product = new Product();
+        product.setName("Latte");
+        product.setIsActive(true);
+        for (int i = 0; i < 2; i++) {
+            ProductVariant variant = new ProductVariant();
+            variant.setSku("LATTE-" + i);
+            variant.setSize("S" + i);
+            variant.setPrice(new BigDecimal("35000"));
+            variant.setIsActive(true);
+            variant.setProduct(product);
+            product.getVariants().add(variant);
+        }
+        product = productRepository.save(product);
+        for (ProductVariant variant : product.getVariants()) {
+            ProductStock stock = new ProductStock();
+            stock.setProductVariant(variant);
+            stock.setStore(store);
+            stock.setQuantity(10);
+            productStockRepository.save(stock);
+        }
+        plainVariantId = product.getVariants().get(0).getId();
+        shardedVariantId = product.getVariants().get(1).getId();
+
+        variantCatalogService = new VariantCatalogServiceImpl(productVariantRepository,
+                mock(ClusterMessagingService.class));
+        ShardedStockServiceImpl shardedStockService = new ShardedStockServiceImpl(productStockRepository,
+                productStockShardRepository, productVariantRepository, stockHistoryRepository, storeRepository,
+                variantCatalogService);
+        new TransactionTemplate(transactionManager)
+                .executeWithoutResult(status -> shardedStockService.setSharding(shardedVariantId, 2));
+
+        orderExpiryService = new OrderExpiryServiceImpl(orderRepository, orderDetailRepository,
+                productStockRepository, stockHistoryRepository, storeRepository, shardedStockService,
+                mock(OrderOutboxService.class),
+                mock(ProductSalesService.class), mock(ApplicationEventPublisher.class), transactionManager,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(orderExpiryService, "batchSize", 100);
+    }
+
+    @Test
+    void overdueOrdersAreCancelledAndTheirStockReturned() {
+        Long expiredId = saveOrder(LocalDateTime.now().minusMinutes(1), 3, 2);
+        Long liveId = saveOrder(LocalDateTime.now().plusMinutes(15), 4, 4);
+        stockHistoryRepository.deleteAll();
+
+        assertEquals(1, orderExpiryService.expireOverdue());
+
+        assertEquals(OrderStatus.CANCELLED, orderRepository.findById(expiredId).orElseThrow().getStatus());
+        assertEquals(OrderStatus.PENDING, orderRepository.findById(liveId).orElseThrow().getStatus());
+        assertEquals(13, productStockRepository.findByProductVariantIdAndStoreId(plainVariantId, store.getId())
+                .orElseThrow().getQuantity());
+        assertEquals(12, productStockShardRepository.findAll().stream()
+                .filter(shard -> shard.getProductVariant().getId().equals(shardedVariantId))
+                .mapToInt(ProductStockShard::getQuantity)
+                .sum());
+        assertEquals(2, stockHistoryRepository.count());
+        assertTrue(stockHistoryRepository.findAll().stream()
+                .allMatch(history -> OrderExpiryService.REASON.equals(history.getReason())));
+
+        // Already cancelled or not yet due: nothing happens
+        assertEquals(0, orderExpiryService.expire(List.of(expiredId, liveId)));
+        assertEquals(0, orderExpiryService.expireOverdue());
+
+        // A payment callback arriving late cannot revive the expired order
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        assertEquals(Boolean.FALSE, tx.execute(status -> orderRepository.transitionStatus(expiredId, OrderStatus.PAID)));
+        assertEquals(Boolean.TRUE, tx.execute(status -> orderRepository.transitionStatus(liveId, OrderStatus.PAID)));
+        assertEquals(OrderStatus.CANCELLED, orderRepository.findById(expiredId).orElseThrow().getStatus());
+        assertEquals(1L, orderRepository.findById(liveId).orElseThrow().getVersion());
+    }
+
+    @Test
+    void stockGoesWhereTheLockedRowSaysEvenIfTheCatalogLags() {
+        ReflectionTestUtils.setField(variantCatalogService, "ttlSeconds", 3600L);
+        assertEquals(2, variantCatalogService.get(shardedVariantId).getStockShards());
+        // Sharding turned off on another node: this node's catalog still says two shards
+        ShardedStockServiceImpl otherNode = new ShardedStockServiceImpl(productStockRepository,
+                productStockShardRepository, productVariantRepository, stockHistoryRepository, storeRepository,
+                mock(VariantCatalogService.class));
+        new TransactionTemplate(transactionManager)
+                .executeWithoutResult(status -> otherNode.setSharding(shardedVariantId, 0));
+        assertEquals(2, variantCatalogService.get(shardedVariantId).getStockShards());
+
+        saveOrder(LocalDateTime.now().minusMinutes(1), 3, 2);
+        stockHistoryRepository.deleteAll();
+        assertEquals(1, orderExpiryService.expireOverdue());
+
+        assertEquals(12, productStockRepository.findByProductVariantIdAndStoreId(shardedVariantId, store.getId())
+                .orElseThrow().getQuantity());
+        assertEquals(0, productStockShardRepository.count());
+        StockHistory history = stockHistoryRepository.findAll().stream()
+                .filter(row -> row.getProductVariant().getId().equals(shardedVariantId))
+                .findFirst().orElseThrow();
+        assertEquals(12, history.getCurrentQuantity());
+    }
+
+    @Test
+    void timingWheelFiresOnlyOnceTheDeadlineHasPassed() {
+        OrderExpiryServiceImpl.TimingWheel wheel = new OrderExpiryServiceImpl.TimingWheel(100, 8, 0);
+        wheel.add(1L, 250);
+        // More than one turn of the wheel away, it has to wait for its round
+        wheel.add(2L, 1250);
+
+        assertTrue(wheel.advance(200).isEmpty());
+        assertEquals(List.of(1L), wheel.advance(300));
+        assertTrue(wheel.advance(1200).isEmpty());
+        assertEquals(List.of(2L), wheel.advance(1300));
+    }
+
+    // Two lines of the plain variant (the cart had it twice) and one sharded line
+    private Long saveOrder(LocalDateTime expiresAt, int plainQuantity, int shardedQuantity) {
+        Order order = new Order();
+        order.setUser(user);
+        order.setStore(store);
+        order.setOrderDate(LocalDateTime.now());
+        order.setExpiresAt(expiresAt);
+        order.setTotalPrice(new BigDecimal("100000"));
+        order.getOrderDetails().add(detail(order, plainVariantId, plainQuantity - 1));
+        order.getOrderDetails().add(detail(order, plainVariantId, 1));
+        order.getOrderDetails().add(detail(order, shardedVariantId, shardedQuantity));
+        return orderRepository.save(order).getId();
+    }
+
+    private OrderDetail detail(Order order, Long variantId, int quantity) {
+        OrderDetail detail = new OrderDetail();
+        detail.setOrder(order);
+        detail.setProductVariant(productVariantRepository.getReferenceById(variantId));
+        detail.setQuantity(quantity);
+        detail.setUnitPrice(new BigDecimal("35000"));
+        return detail;
+    }
+}
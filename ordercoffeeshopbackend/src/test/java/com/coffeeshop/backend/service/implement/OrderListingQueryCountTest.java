@@ -0,0 +1,199 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.order.OrderFeedResponse;
+import com.coffeeshop.backend.dto.order.OrderResponse;
+import com.coffeeshop.backend.entity.Order;
+import com.coffeeshop.backend.entity.OrderDetail;
+import com.coffeeshop.backend.entity.Payment;
+import com.coffeeshop.backend.entity.Product;
+import com.coffeeshop.backend.entity.ProductVariant;
+import com.coffeeshop.backend.entity.Store;
+import com.coffeeshop.backend.entity.User;
+import com.coffeeshop.backend.enums.PaymentMethod;
+import com.coffeeshop.backend.enums.UserRole;
+import com.coffeeshop.backend.mapper.OrderMapperImpl;
+import com.coffeeshop.backend.service.OrderExpiryService;
+import com.coffeeshop.backend.service.OrderNotificationService;
+import com.coffeeshop.backend.service.OrderOutboxService;
+import com.coffeeshop.backend.service.OrderViewService;
+import com.coffeeshop.backend.service.ProductSalesService;
+import com.coffeeshop.backend.service.ShardedStockService;
+import com.coffeeshop.backend.service.ShippingService;
+import com.coffeeshop.backend.service.StockReservationService;
+import com.coffeeshop.backend.service.VariantCatalogService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "order.view.read-enabled=false"
+})
+@Import({OrderServiceImpl.class, OrderMapperImpl.class})
+class OrderListingQueryCountTest {
+
+    private static final int ORDERS = 12;
+    private static final int ITEMS_PER_ORDER = 3;
+
+    @Autowired
+    private OrderServiceImpl orderService;
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockBean
+    private StockReservationService stockReservationService;
+    @MockBean
+    private ShardedStockService shardedStockService;
+    @MockBean
+    private VariantCatalogService variantCatalogService;
+    @MockBean
+    private ShippingService shippingService;
+    @MockBean
+    private OrderExpiryService orderExpiryService;
+    @MockBean
+    private OrderNotificationService orderNotificationService;
+    @MockBean
+    private OrderOutboxService orderOutboxService;
+    @MockBean
+    private OrderViewService orderViewService;
+    @MockBean
+    private ProductSalesService productSalesService;
+
+    private User customer;
+    private User admin;
+
+    @BeforeEach
+    void setUp() {
+        Store store = new Store();
+        store.setName("Test Store");
+        store.setAddress("1 Test Street");
+        entityManager.persist(store);
+
+        customer = new User();
+        customer.setEmail("customer@test.com");
+        customer.setPassword("secret");
+        customer.setFullname("Test Customer");
+        customer.setPhone("0900000000");
+        customer.setRole(UserRole.CUSTOMER);
+        entityManager.persist(customer);
+
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < ORDERS; i++) {
+            Order order = new Order();
+            order.setUser(customer);
+            order.setStore(store);
+            // Orders come in pairs with the same date, so cursors have to break ties on id
+            order.setOrderDate(now.minusMinutes(i / 2));
+            order.setTotalPrice(new BigDecimal("105000"));
+            for (int j = 0; j < ITEMS_PER_ORDER; j++) {
+                // A product per line so nothing is shared between lines through the first-level cache
+                Product product = new Product();
+                product.setName("Product " + i + "-" + j);
+                product.setIsActive(true);
+                ProductVariant variant = new ProductVariant();
+                variant.setSku("SKU-" + i + "-" + j);
+                variant.setSize("M");
+                variant.setPrice(new BigDecimal("35000"));
+                variant.setIsActive(true);
+                variant.setProduct(product);
+                product.getVariants().add(variant);
+                entityManager.persist(product);
+
+                OrderDetail detail = new OrderDetail();
+                detail.setOrder(order);
+                detail.setProductVariant(variant);
+                detail.setQuantity(1);
+                detail.setUnitPrice(variant.getPrice());
+                order.getOrderDetails().add(detail);
+            }
+            Payment payment = new Payment();
+            payment.setOrder(order);
+            payment.setAmount(order.getTotalPrice());
+            payment.setPaymentMethod(PaymentMethod.VNPAY);
+            order.setPayment(payment);
+            entityManager.persist(order);
+        }
+        admin = new User();
+        admin.setEmail("admin@test.com");
+        admin.setPassword("secret");
+        admin.setFullname("Test Admin");
+        admin.setPhone("0900000001");
+        admin.setRole(UserRole.ADMIN);
+        entityManager.persist(admin);
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 5, 10})
+    void pageOfOrdersCostsTheSameNumberOfQueriesWhateverItsSize(int pageSize) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        Page<OrderResponse> page = orderService.getOrdersByUserId(customer.getEmail(),
+                PageRequest.of(0, pageSize, Sort.by(Sort.Direction.DESC, "orderDate")));
+
+        assertEquals(pageSize, page.getNumberOfElements());
+        assertEquals(ORDERS, page.getTotalElements());
+        page.forEach(order -> {
+            assertEquals(ITEMS_PER_ORDER, order.getItems().size());
+            order.getItems().forEach(item -> assertEquals("M", item.getSize()));
+        });
+        // User lookup, page of ids, count, orders with their items
+        assertEquals(4, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void feedWalksEveryOrderOnceNewestFirstWithoutCounting() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        UserDetails adminDetails = org.springframework.security.core.userdetails.User.withUsername(admin.getEmail())
+                .password(admin.getPassword())
+                .roles("ADMIN")
+                .build();
+
+        List<OrderResponse> walked = new ArrayList<>();
+        String cursor = null;
+        int slices = 0;
+        do {
+            statistics.clear();
+            OrderFeedResponse slice = orderService.getOrderFeed(adminDetails, cursor, 5);
+            // User lookup, slice of ids, orders with their items
+            assertEquals(3, statistics.getPrepareStatementCount());
+            walked.addAll(slice.getContent());
+            cursor = slice.getNextCursor();
+            slices++;
+        } while (cursor != null);
+
+        assertEquals(3, slices);
+        assertEquals(ORDERS, walked.stream().map(OrderResponse::getId).distinct().count());
+        for (int i = 1; i < walked.size(); i++) {
+            assertTrue(!walked.get(i).getOrderDate().isAfter(walked.get(i - 1).getOrderDate()));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.order.OrderEvent;
+import com.coffeeshop.backend.dto.order.OrderStreamResponse;
+import com.coffeeshop.backend.entity.OrderOutboxEvent;
+import com.coffeeshop.backend.enums.OrderStatus;
+import com.coffeeshop.backend.websocket.LocalSubscriptions;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.user.UserDestinationResolver;
+import org.springframework.messaging.simp.user.UserDestinationResult;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderNotificationServiceTest {
+
+    private final SimpMessagingTemplate simpMessagingTemplate = mock(SimpMessagingTemplate.class);
+    private final SimpleBrokerMessageHandler broker = new SimpleBrokerMessageHandler(new ExecutorSubscribableChannel(),
+            new ExecutorSubscribableChannel(), new ExecutorSubscribableChannel(), List.of("/topic", "/queue"));
+    private OrderNotificationServiceImpl orderNotificationService;
+
+    @BeforeEach
+    void setUp() {
+        broker.start();
+        subscribe("/topic/stores/1/orders");
+        subscribe("/topic/stores/2/orders");
+        subscribe("/topic/stores/1/orders.cbor");
+        subscribe("/queue/orders-usersession-1");
+        // One session of the customer, as the user registry would have it
+        UserDestinationResolver userDestinationResolver = mock(UserDestinationResolver.class);
+        when(userDestinationResolver.resolveDestination(any())).thenAnswer(invocation -> {
+            String destination = SimpMessageHeaderAccessor.getDestination(
+                    ((Message<?>) invocation.getArgument(0)).getHeaders());
+            String queue = destination.substring(destination.indexOf("/queue/"));
+            return new UserDestinationResult(destination, Set.of(queue + "-usersession-1"), queue, "customer@test.com");
+        });
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ClusterMessagingServiceImpl clusterMessagingService = new ClusterMessagingServiceImpl(
+                new LocalClusterTransport(), simpMessagingTemplate, new ObjectMapper(), meterRegistry);
+        orderNotificationService = new OrderNotificationServiceImpl(simpMessagingTemplate, clusterMessagingService,
+                new LocalSubscriptions(broker, userDestinationResolver), meterRegistry);
+        ReflectionTestUtils.setField(orderNotificationService, "bufferSize", 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        broker.stop();
+    }
+
+    @Test
+    void eventsAreNumberedPerStoreAndSentToThatStoreOnly() {
+        orderNotificationService.publish(change(1L, 10L, OrderStatus.PAID));
+        orderNotificationService.publish(change(2L, 20L, OrderStatus.PAID));
+        orderNotificationService.publish(change(1L, 11L, OrderStatus.PREPARING));
+
+        ArgumentCaptor<Object> sent = ArgumentCaptor.forClass(Object.class);
+        verify(simpMessagingTemplate, times(2)).convertAndSend(eq("/topic/stores/1/orders"), sent.capture(), anyMap());
+        List<Long> seqs = sent.getAllValues().stream().map(event -> ((OrderEvent) event).getSeq()).collect(Collectors.toList());
+        assertEquals(List.of(1L, 2L), seqs);
+        verify(simpMessagingTemplate).convertAndSend(eq("/topic/stores/2/orders"), sent.capture(), anyMap());
+        assertEquals(1L, ((OrderEvent) sent.getValue()).getSeq());
+        verify(simpMessagingTemplate, times(3)).convertAndSendToUser(eq("customer@test.com"), eq("/queue/orders"), sent.capture(), anyMap());
+
+        // Nobody subscribes to the other destinations, so nothing is encoded or sent for them
+        verify(simpMessagingTemplate, times(2)).convertAndSend(eq("/topic/stores/1/orders.cbor"), any(byte[].class), anyMap());
+        verify(simpMessagingTemplate, never()).convertAndSend(eq("/topic/stores/2/orders.cbor"), any(Object.class), anyMap());
+        verify(simpMessagingTemplate, never()).convertAndSend(eq("/topic/orders"), any(Object.class), anyMap());
+        verify(simpMessagingTemplate, never()).convertAndSend(eq("/topic/orders.cbor"), any(Object.class), anyMap());
+        verify(simpMessagingTemplate, never()).convertAndSendToUser(eq("customer@test.com"), eq("/queue/orders.cbor"),
+                any(Object.class), anyMap());
+    }
+
+    @Test
+    void reconnectingClientsGetWhatTheyMissedOrASnapshotOnceItIsGone() {
+        for (long i = 1; i <= 3; i++) {
+            orderNotificationService.publish(change(1L, i, OrderStatus.PAID));
+        }
+        String epoch = orderNotificationService.replay(1L, null, 0).getEpoch();
+
+        OrderStreamResponse caughtUp = orderNotificationService.replay(1L, epoch, 1);
+        assertEquals(3, caughtUp.getSeq());
+        assertEquals(List.of(2L, 3L), caughtUp.getEvents().stream().map(OrderEvent::getOrderId).collect(Collectors.toList()));
+        assertEquals(0, orderNotificationService.replay(1L, epoch, 3).getEvents().size());
+
+        // Three more and the buffer of four no longer holds seq 2
+        for (long i = 4; i <= 6; i++) {
+            orderNotificationService.publish(change(1L, i, OrderStatus.PAID));
+        }
+        assertNull(orderNotificationService.replay(1L, epoch, 1).getEvents());
+        assertEquals(4, orderNotificationService.replay(1L, epoch, 2).getEvents().size());
+        // Positions from before a restart, or from the future, cannot be trusted either
+        assertNull(orderNotificationService.replay(1L, "other", 5).getEvents());
+        assertNull(orderNotificationService.replay(1L, epoch, 7).getEvents());
+    }
+
+    private void subscribe(String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId("session-1");
+        accessor.setSubscriptionId(destination);
+        accessor.setDestination(destination);
+        broker.handleMessage(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    private OrderOutboxEvent change(Long storeId, Long orderId, OrderStatus status) {
+        OrderOutboxEvent change = new OrderOutboxEvent();
+        change.setOrderId(orderId);
+        change.setStoreId(storeId);
+        change.setUserEmail("customer@test.com");
+        change.setStatus(status);
+        change.setOrderVersion(1L);
+        change.setCreatedAt(LocalDateTime.now());
+        return change;
+    }
+}
@@ -0,0 +1,109 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.entity.Order;
+import com.coffeeshop.backend.entity.OrderOutboxEvent;
+import com.coffeeshop.backend.entity.Store;
+import com.coffeeshop.backend.entity.User;
+import com.coffeeshop.backend.enums.OrderStatus;
+import com.coffeeshop.backend.repository.OrderOutboxRepository;
+import com.coffeeshop.backend.service.OrderNotificationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OrderOutboxServiceTest {
+
+    @Autowired
+    private OrderOutboxRepository orderOutboxRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final OrderNotificationService orderNotificationService = mock(OrderNotificationService.class);
+    private OrderOutboxServiceImpl orderOutboxService;
+    private TransactionTemplate tx;
+
+    @BeforeEach
+    void setUp() {
+        orderOutboxRepository.deleteAll();
+        orderOutboxService = new OrderOutboxServiceImpl(orderOutboxRepository, orderNotificationService,
+                transactionManager, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(orderOutboxService, "batchSize", 2);
+        tx = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    void onlyCommittedChangesAreSentInTheOrderTheyWereRecorded() {
+        tx.executeWithoutResult(status -> {
+            orderOutboxService.record(order(1L, OrderStatus.PAID));
+            orderOutboxService.record(order(2L, OrderStatus.PAID));
+        });
+        tx.executeWithoutResult(status -> {
+            orderOutboxService.record(order(9L, OrderStatus.PAID));
+            status.setRollbackOnly();
+        });
+        tx.executeWithoutResult(status -> orderOutboxService.record(order(1L, OrderStatus.PREPARING)));
+
+        assertEquals(2, orderOutboxService.relay());
+        assertEquals(1, orderOutboxService.relay());
+        assertEquals(0, orderOutboxService.relay());
+
+        ArgumentCaptor<OrderOutboxEvent> sent = ArgumentCaptor.forClass(OrderOutboxEvent.class);
+        verify(orderNotificationService, times(3)).publish(sent.capture());
+        assertEquals(List.of(1L, 2L, 1L), sent.getAllValues().stream()
+                .map(OrderOutboxEvent::getOrderId).collect(Collectors.toList()));
+        assertEquals(OrderStatus.PREPARING, sent.getAllValues().get(2).getStatus());
+        assertEquals(0, orderOutboxRepository.count());
+    }
+
+    @Test
+    void aBatchThatFailsToSendStaysInTheOutbox() {
+        tx.executeWithoutResult(status -> orderOutboxService.record(order(1L, OrderStatus.PAID)));
+        doThrow(new IllegalStateException("broker down")).when(orderNotificationService).publish(any());
+
+        assertThrows(IllegalStateException.class, () -> orderOutboxService.relay());
+        assertEquals(1, orderOutboxRepository.count());
+
+        doNothing().when(orderNotificationService).publish(any());
+        assertEquals(1, orderOutboxService.relay());
+        assertEquals(0, orderOutboxRepository.count());
+    }
+
+    private Order order(Long orderId, OrderStatus status) {
+        Store store = new Store();
+        store.setId(1L);
+        User user = new User();
+        user.setEmail("customer@test.com");
+        Order order = new Order();
+        order.setId(orderId);
+        order.setStore(store);
+        order.setUser(user);
+        order.setStatus(status);
+        order.setVersion(1L);
+        return order;
+    }
+}
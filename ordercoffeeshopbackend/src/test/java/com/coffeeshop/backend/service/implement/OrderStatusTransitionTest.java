@@ -0,0 +1,210 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.order.OrderResponse;
+import com.coffeeshop.backend.entity.Order;
+import com.coffeeshop.backend.entity.OrderDetail;
+import com.coffeeshop.backend.entity.Payment;
+import com.coffeeshop.backend.entity.Product;
+import com.coffeeshop.backend.entity.ProductVariant;
+import com.coffeeshop.backend.entity.Store;
+import com.coffeeshop.backend.entity.User;
+import com.coffeeshop.backend.enums.OrderStatus;
+import com.coffeeshop.backend.enums.PaymentMethod;
+import com.coffeeshop.backend.enums.PaymentStatus;
+import com.coffeeshop.backend.enums.UserRole;
+import com.coffeeshop.backend.exception.OrderStatusConflictException;
+import com.coffeeshop.backend.mapper.OrderMapperImpl;
+import com.coffeeshop.backend.repository.OrderRepository;
+import com.coffeeshop.backend.service.OrderExpiryService;
+import com.coffeeshop.backend.service.OrderNotificationService;
+import com.coffeeshop.backend.service.OrderOutboxService;
+import com.coffeeshop.backend.service.OrderViewService;
+import com.coffeeshop.backend.service.ProductSalesService;
+import com.coffeeshop.backend.service.ShardedStockService;
+import com.coffeeshop.backend.service.ShippingService;
+import com.coffeeshop.backend.service.StockReservationService;
+import com.coffeeshop.backend.service.VariantCatalogService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import({OrderServiceImpl.class, OrderMapperImpl.class})
+class OrderStatusTransitionTest {
+
+    @Autowired
+    private OrderServiceImpl orderService;
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockBean
+    private StockReservationService stockReservationService;
+    @MockBean
+    private ShardedStockService shardedStockService;
+    @MockBean
+    private VariantCatalogService variantCatalogService;
+    @MockBean
+    private ShippingService shippingService;
+    @MockBean
+    private OrderExpiryService orderExpiryService;
+    @MockBean
+    private OrderNotificationService orderNotificationService;
+    @MockBean
+    private OrderOutboxService orderOutboxService;
+    @MockBean
+    private OrderViewService orderViewService;
+    @MockBean
+    private ProductSalesService productSalesService;
+
+    private User customer;
+    private Long orderId;
+
+    @BeforeEach
+    void setUp() {
+        Store store = new Store();
+        store.setName("Test Store");
+        store.setAddress("1 Test Street");
+        entityManager.persist(store);
+
+        customer = new User();
+        customer.setEmail("customer@test.com");
+        customer.setPassword("secret");
+        customer.setFullname("Test Customer");
+        customer.setPhone("0900000000");
+        customer.setRole(UserRole.CUSTOMER);
+        entityManager.persist(customer);
+
+        Product product = new Product();
+        product.setName("Latte");
+        product.setIsActive(true);
+        ProductVariant variant = new ProductVariant();
+        variant.setSku("LATTE-M");
+        variant.setSize("M");
+        variant.setPrice(new BigDecimal("35000"));
+        variant.setIsActive(true);
+        variant.setProduct(product);
+        product.getVariants().add(variant);
+        entityManager.persist(product);
+
+        Order order = new Order();
+        order.setUser(customer);
+        order.setStore(store);
+        order.setOrderDate(LocalDateTime.now());
+        order.setTotalPrice(new BigDecimal("70000"));
+        OrderDetail detail = new OrderDetail();
+        detail.setOrder(order);
+        detail.setProductVariant(variant);
+        detail.setQuantity(2);
+        detail.setUnitPrice(variant.getPrice());
+        order.getOrderDetails().add(detail);
+        Payment payment = new Payment();
+        payment.setOrder(order);
+        payment.setAmount(order.getTotalPrice());
+        payment.setPaymentMethod(PaymentMethod.VNPAY);
+        order.setPayment(payment);
+        orderId = entityManager.persist(order).getId();
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void ordersMoveThroughTheAllowedStatusesOneVersionAtATime() {
+        orderService.processMockPayment(orderId);
+        assertEquals(PaymentStatus.SUCCESS, orderRepository.findWithItemsById(orderId).orElseThrow()
+                .getPayment().getStatus());
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        OrderResponse preparing = orderService.updateOrderStatus(orderId, OrderStatus.PREPARING);
+        // The conditional update and the order with its customer and payment, nothing per item
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(OrderStatus.PREPARING, preparing.getStatus());
+        assertEquals(2L, preparing.getVersion());
+        assertNull(preparing.getItems());
+
+        assertEquals(3L, orderService.updateOrderStatus(orderId, OrderStatus.FINISHED_PREPARING).getVersion());
+        // Pickup orders skip delivering
+        OrderResponse delivered = orderService.updateOrderStatus(orderId, OrderStatus.DELIVERED);
+        assertEquals(OrderStatus.DELIVERED, delivered.getStatus());
+        assertEquals(4L, delivered.getVersion());
+        verify(orderOutboxService, times(3)).record(any(Order.class));
+    }
+
+    @Test
+    void movesTheTableDoesNotAllowAreConflicts() {
+        assertThrows(OrderStatusConflictException.class,
+                () -> orderService.updateOrderStatus(orderId, OrderStatus.PREPARING));
+        assertThrows(OrderStatusConflictException.class,
+                () -> orderService.updateOrderStatus(orderId, OrderStatus.PENDING));
+
+        orderService.updateOrderStatus(orderId, OrderStatus.CANCELLED);
+        // Final: nothing moves a cancelled order, a late payment included
+        assertThrows(OrderStatusConflictException.class,
+                () -> orderService.updateOrderStatus(orderId, OrderStatus.PAID));
+        assertThrows(OrderStatusConflictException.class, () -> orderService.processMockPayment(orderId));
+
+        Order order = orderRepository.findWithItemsById(orderId).orElseThrow();
+        assertEquals(OrderStatus.CANCELLED, order.getStatus());
+        assertEquals(1L, order.getVersion());
+        assertEquals(PaymentStatus.PENDING, order.getPayment().getStatus());
+        verify(productSalesService, times(1)).recordCancelled(List.of(orderId));
+    }
+
+    @Test
+    void theSecondOfTwoConcurrentChangesGetsAConflictInsteadOfOverwritingTheFirst() {
+        orderService.processMockPayment(orderId);
+
+        // Two staff members both saw the order as paid; the first click wins
+        orderService.updateOrderStatus(orderId, OrderStatus.PREPARING);
+        assertThrows(OrderStatusConflictException.class,
+                () -> orderService.updateOrderStatus(orderId, OrderStatus.PREPARING));
+        // The customer cancelling from a page that still shows it as paid is too late as well
+        assertThrows(OrderStatusConflictException.class,
+                () -> orderService.cancelOrder(orderId, customer.getEmail()));
+        // And so is a second payment callback
+        assertThrows(OrderStatusConflictException.class, () -> orderService.processMockPayment(orderId));
+
+        Order order = orderRepository.findById(orderId).orElseThrow();
+        assertEquals(OrderStatus.PREPARING, order.getStatus());
+        assertEquals(2L, order.getVersion());
+        verify(productSalesService, never()).recordCancelled(any());
+    }
+
+    @Test
+    void customersCanCancelUntilPreparationStarts() {
+        orderService.processMockPayment(orderId);
+
+        orderService.cancelOrder(orderId, customer.getEmail());
+
+        assertEquals(OrderStatus.CANCELLED, orderRepository.findById(orderId).orElseThrow().getStatus());
+        verify(productSalesService).recordCancelled(List.of(orderId));
+    }
+}
@@ -0,0 +1,223 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.order.OrderResponse;
+import com.coffeeshop.backend.entity.Order;
+import com.coffeeshop.backend.entity.OrderDetail;
+import com.coffeeshop.backend.entity.OrderView;
+import com.coffeeshop.backend.entity.Payment;
+import com.coffeeshop.backend.entity.Product;
+import com.coffeeshop.backend.entity.ProductVariant;
+import com.coffeeshop.backend.entity.Store;
+import com.coffeeshop.backend.entity.User;
+import com.coffeeshop.backend.enums.OrderStatus;
+import com.coffeeshop.backend.enums.PaymentMethod;
+import com.coffeeshop.backend.enums.PaymentStatus;
+import com.coffeeshop.backend.enums.UserRole;
+import com.coffeeshop.backend.event.OrderChangedEvent;
+import com.coffeeshop.backend.mapper.OrderMapperImpl;
+import com.coffeeshop.backend.repository.OrderRepository;
+import com.coffeeshop.backend.repository.OrderViewRepository;
+import com.coffeeshop.backend.repository.PaymentRepository;
+import com.coffeeshop.backend.repository.ProductRepository;
+import com.coffeeshop.backend.repository.StoreRepository;
+import com.coffeeshop.backend.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "order.view.rebuild-batch-size=2"
+})
+@Import({OrderViewServiceImpl.class, OrderMapperImpl.class, OrderViewServiceTest.Config.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OrderViewServiceTest {
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        ObjectMapper objectMapper() {
+            return JsonMapper.builder().findAndAddModules()
+                    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                    .build();
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    private OrderViewServiceImpl orderViewService;
+    @Autowired
+    private OrderViewRepository orderViewRepository;
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private PaymentRepository paymentRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private StoreRepository storeRepository;
+    @Autowired
+    private OrderMapperImpl orderMapper;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate tx;
+    private List<Long> orderIds;
+
+    @BeforeEach
+    void setUp() {
+        tx = new TransactionTemplate(transactionManager);
+        orderViewRepository.deleteAll();
+        orderRepository.deleteAll();
+        userRepository.deleteAll();
+        productRepository.deleteAll();
+        storeRepository.deleteAll();
+
+        Store store = new Store();
+        store.setName("Test Store");
+        store.setAddress("1 Test Street");
+        store = storeRepository.save(store);
+
+        User user = new User();
+        user.setEmail("customer@test.com");
+        user.setPassword("secret");
+        user.setFullname("Test Customer");
+        user.setPhone("0900000000");
+        user.setRole(UserRole.CUSTOMER);
+        user = userRepository.save(user);
+
+        Product product = new Product();
+        product.setName("Latte");
+        product.setIsActive(true);
+        ProductVariant variant = new ProductVariant();
+        variant.setSku("LATTE-M");
+        variant.setSize("M");
+        variant.setPrice(new BigDecimal("35000"));
+        variant.setIsActive(true);
+        variant.setProduct(product);
+        product.getVariants().add(variant);
+        product = productRepository.save(product);
+
+        // Saved without publishing anything, like orders placed before the read model existed
+        orderIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Order order = new Order();
+            order.setUser(user);
+            order.setStore(store);
+            order.setOrderDate(LocalDateTime.now().minusMinutes(i));
+            order.setTotalPrice(new BigDecimal("70000"));
+            OrderDetail detail = new OrderDetail();
+            detail.setOrder(order);
+            detail.setProductVariant(product.getVariants().get(0));
+            detail.setQuantity(2);
+            detail.setUnitPrice(new BigDecimal("35000"));
+            order.getOrderDetails().add(detail);
+            Payment payment = new Payment();
+            payment.setOrder(order);
+            payment.setAmount(order.getTotalPrice());
+            payment.setPaymentMethod(PaymentMethod.VNPAY);
+            order.setPayment(payment);
+            orderIds.add(orderRepository.save(order).getId());
+        }
+    }
+
+    @Test
+    void rebuildBackfillsEveryOrderWithTheResponseTheJoinsWouldBuild() {
+        assertEquals(0, orderViewRepository.count());
+
+        // Batches of two: three transactions for five orders
+        assertEquals(orderIds.size(), orderViewService.rebuild());
+
+        assertEquals(orderIds.size(), orderViewRepository.count());
+        tx.executeWithoutResult(status -> {
+            for (Long id : orderIds) {
+                OrderView view = orderViewRepository.findById(id).orElseThrow();
+                OrderResponse expected = orderMapper.toOrderResponse(orderRepository.findWithItemsById(id).orElseThrow());
+                assertEquals(expected, orderViewService.toResponse(view));
+                assertEquals(PaymentStatus.PENDING, view.getPaymentStatus());
+            }
+        });
+        // Running it again rewrites the rows in place
+        assertEquals(orderIds.size(), orderViewService.rebuild());
+        assertEquals(orderIds.size(), orderViewRepository.count());
+    }
+
+    @Test
+    void rowsAreRewrittenWithTheChangeAndOnlyIfItCommits() {
+        orderViewService.rebuild();
+        Long paidId = orderIds.get(0);
+        Long rolledBackId = orderIds.get(1);
+
+        tx.executeWithoutResult(status -> {
+            orderRepository.transitionStatus(paidId, OrderStatus.PAID);
+            paymentRepository.updateStatusByOrderId(paidId, PaymentStatus.SUCCESS, LocalDateTime.now());
+            eventPublisher.publishEvent(OrderChangedEvent.of(paidId));
+        });
+        tx.executeWithoutResult(status -> {
+            orderRepository.transitionStatus(rolledBackId, OrderStatus.PAID);
+            eventPublisher.publishEvent(OrderChangedEvent.of(rolledBackId));
+            status.setRollbackOnly();
+        });
+
+        OrderView paid = orderViewRepository.findById(paidId).orElseThrow();
+        assertEquals(OrderStatus.PAID, paid.getStatus());
+        assertEquals(PaymentStatus.SUCCESS, paid.getPaymentStatus());
+        assertEquals(1L, paid.getOrderVersion());
+        assertEquals(OrderStatus.PAID, orderViewService.toResponse(paid).getStatus());
+
+        OrderView untouched = orderViewRepository.findById(rolledBackId).orElseThrow();
+        assertEquals(OrderStatus.PENDING, untouched.getStatus());
+        assertTrue(untouched.getDocument().contains("\"PENDING\""));
+    }
+
+    @Test
+    void eventsArrivingAfterALaterChangeLeaveTheRowAlone() {
+        orderViewService.rebuild();
+        Long id = orderIds.get(0);
+        // As if the row had already been built from a later change of the order
+        OrderView ahead = orderViewRepository.findById(id).orElseThrow();
+        ahead.setOrderVersion(5L);
+        ahead.setStatus(OrderStatus.DELIVERED);
+        orderViewRepository.save(ahead);
+
+        tx.executeWithoutResult(status -> {
+            orderRepository.transitionStatus(id, OrderStatus.PAID);
+            eventPublisher.publishEvent(OrderChangedEvent.of(id));
+        });
+
+        OrderView view = orderViewRepository.findById(id).orElseThrow();
+        assertEquals(5L, view.getOrderVersion());
+        assertEquals(OrderStatus.DELIVERED, view.getStatus());
+    }
+}
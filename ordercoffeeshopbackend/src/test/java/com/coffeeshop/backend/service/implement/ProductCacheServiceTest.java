@@ -0,0 +1,258 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.product.ProductDTO;
+import com.coffeeshop.backend.service.ProductCacheService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class ProductCacheServiceTest {
+
+    private final List<String> loads = new CopyOnWriteArrayList<>();
+    private final ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<ProductCacheServiceImpl> nodes = new ArrayList<>();
+    private ClusterMessagingServiceImpl clusterMessagingService;
+    private ProductCacheServiceImpl productCacheService;
+
+    @BeforeEach
+    void setUp() {
+        clusterMessagingService = new ClusterMessagingServiceImpl(
+                new LocalClusterTransport(), mock(SimpMessagingTemplate.class), new ObjectMapper(), registry);
+        productCacheService = node();
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(ProductCacheServiceImpl::stop);
+    }
+
+    // Another node sharing the cache and the cluster messages
+    private ProductCacheServiceImpl node() {
+        ProductCacheServiceImpl node = new ProductCacheServiceImpl(cacheManager, clusterMessagingService,
+                mock(PlatformTransactionManager.class), registry, 1);
+        ReflectionTestUtils.setField(node, "maxEvictedPages", 3);
+        ReflectionTestUtils.setField(node, "refreshAheadSeconds", 300);
+        ReflectionTestUtils.setField(node, "loadWaitMs", 5000L);
+        nodes.add(node);
+        return node;
+    }
+
+    @Test
+    void editsEvictOnlyThePagesTheyCanChange() {
+        readAll();
+        assertEquals(List.of("Coffee", "Tea", "*", "*:latte"), loads);
+        readAll();
+        assertEquals(4, loads.size());
+
+        // A new price for a product only on the coffee page
+        productCacheService.evict(List.of(2L), Set.of());
+        loads.clear();
+        readAll();
+        assertEquals(List.of("Coffee"), loads);
+
+        // Deactivating a coffee: its category and the whole menu shift, the tea page stays
+        productCacheService.evict(List.of(1L), Set.of(ProductCacheService.ALL_PRODUCTS, "coffee"));
+        loads.clear();
+        readAll();
+        assertEquals(List.of("Coffee", "*", "*:latte"), loads);
+    }
+
+    @Test
+    void editsTouchingTooManyPagesMoveToANewCatalogVersion() {
+        long version = productCacheService.getVersion();
+        for (int page = 0; page < 4; page++) {
+            read("Coffee", null, page, 1L);
+        }
+        read("Tea", null, 0, 3L);
+        loads.clear();
+
+        productCacheService.evict(List.of(), Set.of("Coffee"));
+
+        assertEquals(version + 1, productCacheService.getVersion());
+        read("Coffee", null, 0, 1L);
+        read("Tea", null, 0, 3L);
+        assertEquals(List.of("Coffee", "Tea"), loads);
+    }
+
+    @Test
+    void aNodeComingUpJoinsTheCurrentVersionAndKeepsTheCache() {
+        productCacheService.bumpVersion();
+        readAll();
+        loads.clear();
+
+        // A restart or a deploy: the new node reads what the running one cached
+        productCacheService = node();
+        assertEquals(nodes.get(0).getVersion(), productCacheService.getVersion());
+        readAll();
+        assertTrue(loads.isEmpty());
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loaderCalls = new AtomicInteger();
+        Supplier<Page<ProductDTO>> slowLoader = () -> {
+            loaderCalls.incrementAndGet();
+            loadStarted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new PageImpl<>(List.of());
+        };
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Page<ProductDTO>>> pages = new ArrayList<>();
+            pages.add(readers.submit(() -> productCacheService.getPage("Coffee", null, PageRequest.of(0, 10), slowLoader)));
+            assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++) {
+                pages.add(readers.submit(() -> productCacheService.getPage("Coffee", null, PageRequest.of(0, 10), slowLoader)));
+            }
+            // Give the others time to reach the running load
+            Thread.sleep(100);
+            release.countDown();
+            Page<ProductDTO> first = pages.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<Page<ProductDTO>> page : pages) {
+                assertSame(first, page.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loaderCalls.get());
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+
+    @Test
+    void aPageReadOnAnotherNodeDuringAnEditIsNotCachedAfterIt() throws Exception {
+        ProductCacheServiceImpl other = node();
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            // The other node reads the page with the old price while the edit commits on this one
+            Future<Page<ProductDTO>> stale = reader.submit(() -> other.getPage("Coffee", null, PageRequest.of(0, 10),
+                    () -> {
+                        loadStarted.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return page(1L);
+                    }));
+            assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+            productCacheService.evict(List.of(1L), Set.of());
+            release.countDown();
+            stale.get(5, TimeUnit.SECONDS);
+        } finally {
+            reader.shutdownNow();
+        }
+
+        AtomicInteger loaderCalls = new AtomicInteger();
+        other.getPage("Coffee", null, PageRequest.of(0, 10), () -> {
+            loaderCalls.incrementAndGet();
+            return page(1L);
+        });
+        assertEquals(1, loaderCalls.get());
+    }
+
+    @Test
+    void readersGiveUpOnALoadThatTakesTooLong() throws Exception {
+        ReflectionTestUtils.setField(productCacheService, "loadWaitMs", 100L);
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            Future<Page<ProductDTO>> stuck = reader.submit(() -> productCacheService.getPage("Coffee", null,
+                    PageRequest.of(0, 10), () -> {
+                        loadStarted.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return page(1L);
+                    }));
+            assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+
+            assertEquals(2, read("Coffee", null, 0, 1L, 2L).getNumberOfElements());
+            assertEquals(1.0, registry.get("cache.catalog.loads").tag("kind", "direct").counter().count());
+            release.countDown();
+            stuck.get(5, TimeUnit.SECONDS);
+        } finally {
+            reader.shutdownNow();
+        }
+        // Only the load that was waited on is cached
+        assertEquals(1, read("Coffee", null, 0, 1L, 2L).getNumberOfElements());
+    }
+
+    @Test
+    void pagesReadNearTheirExpiryAreReloadedInTheBackground() throws Exception {
+        read("Coffee", null, 0, 1L);
+        read("Coffee", null, 0, 1L);
+        assertEquals(List.of("Coffee"), loads);
+
+        // Everything is due for a refresh now; the reader still gets the cached page straight away
+        ReflectionTestUtils.setField(productCacheService, "refreshAheadSeconds", 3600);
+        assertEquals(1, read("Coffee", null, 0, 1L, 2L).getNumberOfElements());
+
+        ReflectionTestUtils.setField(productCacheService, "refreshAheadSeconds", 300);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (read("Coffee", null, 0, 1L).getNumberOfElements() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, read("Coffee", null, 0, 1L).getNumberOfElements());
+        assertEquals(List.of("Coffee", "Coffee"), loads);
+    }
+
+    private void readAll() {
+        read("Coffee", null, 0, 1L, 2L);
+        read("Tea", null, 0, 3L);
+        read(ProductCacheService.ALL_PRODUCTS, null, 0, 1L, 3L);
+        read(ProductCacheService.ALL_PRODUCTS, "latte", 0, 1L);
+    }
+
+    private Page<ProductDTO> read(String listing, String search, int page, Long... productIds) {
+        return productCacheService.getPage(listing, search, PageRequest.of(page, 10), () -> {
+            loads.add(search == null ? listing : listing + ":" + search);
+            return page(productIds);
+        });
+    }
+
+    private static Page<ProductDTO> page(Long... productIds) {
+        return new PageImpl<>(Arrays.stream(productIds).map(id -> {
+            ProductDTO product = new ProductDTO();
+            product.setId(id);
+            return product;
+        }).toList());
+    }
+}
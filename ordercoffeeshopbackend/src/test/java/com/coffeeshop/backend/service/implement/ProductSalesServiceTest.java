@@ -0,0 +1,180 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.entity.Order;
+import com.coffeeshop.backend.entity.OrderDetail;
+import com.coffeeshop.backend.entity.Product;
+import com.coffeeshop.backend.entity.ProductVariant;
+import com.coffeeshop.backend.entity.Store;
+import com.coffeeshop.backend.entity.User;
+import com.coffeeshop.backend.enums.UserRole;
+import com.coffeeshop.backend.repository.OrderRepository;
+import com.coffeeshop.backend.repository.ProductRepository;
+import com.coffeeshop.backend.repository.ProductSalesChangeRepository;
+import com.coffeeshop.backend.repository.ProductSalesRepository;
+import com.coffeeshop.backend.repository.StoreRepository;
+import com.coffeeshop.backend.repository.UserRepository;
+import com.coffeeshop.backend.service.ProductCacheService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ProductSalesServiceTest {
+
+    @Autowired
+    private OrderRepository orderRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private StoreRepository storeRepository;
+    @Autowired
+    private ProductSalesRepository productSalesRepository;
+    @Autowired
+    private ProductSalesChangeRepository productSalesChangeRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ProductSalesServiceImpl productSalesService;
+    private TransactionTemplate tx;
+    private User user;
+    private Store storeA;
+    private Store storeB;
+    private ProductVariant latte;
+    private ProductVariant mocha;
+    private ProductVariant tea;
+
+    @BeforeEach
+    void setUp() {
+        productSalesChangeRepository.deleteAll();
+        productSalesRepository.deleteAll();
+        orderRepository.deleteAll();
+        userRepository.deleteAll();
+        productRepository.deleteAll();
+        storeRepository.deleteAll();
+
+        storeA = store("Store A");
+        storeB = store("Store B");
+        user = new User();
+        user.setEmail("customer@test.com");
+        user.setPassword("secret");
+        user.setFullname("Test Customer");
+        user.setPhone("0900000000");
+        user.setRole(UserRole.CUSTOMER);
+        user = userRepository.save(user);
+        latte = variant("Latte", true);
+        mocha = variant("Mocha", true);
+        tea = variant("Tea", false);
+
+        productSalesService = new ProductSalesServiceImpl(productSalesRepository, productSalesChangeRepository,
+                mock(ProductCacheService.class), transactionManager, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(productSalesService, "batchSize", 100);
+        tx = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    void rankingFollowsTheRolledUpSalesPerStoreAndWindow() {
+        LocalDateTime now = LocalDateTime.now();
+        Long todayA = saveOrder(storeA, now, latte, 3, mocha, 1);
+        Long todayB = saveOrder(storeB, now, mocha, 5, null, 0);
+        Long earlierA = saveOrder(storeA, now.minusDays(10), latte, 4, null, 0);
+        // Inactive products are never ranked
+        Long teaA = saveOrder(storeA, now, tea, 10, null, 0);
+        tx.executeWithoutResult(status -> productSalesService.recordSold(List.of(todayA, todayB, earlierA, teaA)));
+
+        // Nothing counts until it is rolled up
+        assertEquals(List.of(), bestSelling(null, null, 0, 10));
+        assertEquals(5, productSalesService.rollUp());
+        assertEquals(0, productSalesChangeRepository.count());
+
+        assertEquals(List.of(id(latte), id(mocha)), bestSelling(null, null, 0, 10));
+        assertEquals(List.of(id(latte), id(mocha)), bestSelling(storeA.getId(), null, 0, 10));
+        assertEquals(List.of(id(mocha)), bestSelling(storeB.getId(), null, 0, 10));
+        assertEquals(List.of(id(mocha), id(latte)), bestSelling(null, 7, 0, 10));
+
+        Page<Long> secondPage = productSalesService.getBestSelling(null, 7, PageRequest.of(1, 1));
+        assertEquals(List.of(id(latte)), secondPage.getContent());
+        assertEquals(2, secondPage.getTotalElements());
+
+        // Cancelling takes the items back from the day the order was placed
+        tx.executeWithoutResult(status -> productSalesService.recordCancelled(List.of(todayB)));
+        assertEquals(1, productSalesService.rollUp());
+        assertEquals(List.of(id(latte), id(mocha)), bestSelling(null, 7, 0, 10));
+        assertEquals(List.of(), bestSelling(storeB.getId(), null, 0, 10));
+        // The emptied total is gone rather than kept at zero
+        assertEquals(4, productSalesRepository.count());
+    }
+
+    private List<Long> bestSelling(Long storeId, Integer days, int page, int size) {
+        return productSalesService.getBestSelling(storeId, days, PageRequest.of(page, size)).getContent();
+    }
+
+    private Long saveOrder(Store store, LocalDateTime orderDate, ProductVariant first, int firstQuantity,
+            ProductVariant second, int secondQuantity) {
+        Order order = new Order();
+        order.setUser(user);
+        order.setStore(store);
+        order.setOrderDate(orderDate);
+        order.setTotalPrice(new BigDecimal("100000"));
+        order.getOrderDetails().add(detail(order, first, firstQuantity));
+        if (second != null) {
+            order.getOrderDetails().add(detail(order, second, secondQuantity));
+        }
+        return orderRepository.save(order).getId();
+    }
+
+    private OrderDetail detail(Order order, ProductVariant variant, int quantity) {
+        OrderDetail detail = new OrderDetail();
+        detail.setOrder(order);
+        detail.setProductVariant(variant);
+        detail.setQuantity(quantity);
+        detail.setUnitPrice(new BigDecimal("35000"));
+        return detail;
+    }
+
+    private Store store(String name) {
+        Store store = new Store();
+        store.setName(name);
+        store.setAddress("1 Test Street");
+        return storeRepository.save(store);
+    }
+
+    private ProductVariant variant(String name, boolean active) {
+        Product product = new Product();
+        product.setName(name);
+        product.setIsActive(active);
+        ProductVariant variant = new ProductVariant();
+        variant.setSku(name.toUpperCase() + "-M");
+        variant.setSize("M");
+        variant.setPrice(new BigDecimal("35000"));
+        variant.setIsActive(true);
+        variant.setProduct(product);
+        product.getVariants().add(variant);
+        return productRepository.save(product).getVariants().get(0);
+    }
+
+    private static Long id(ProductVariant variant) {
+        return variant.getProduct().getId();
+    }
+}
@@ -0,0 +1,94 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.product.ProductSearchEntry;
+import com.coffeeshop.backend.repository.ProductRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductSearchServiceTest {
+
+    private final List<ProductSearchEntry> menu = new ArrayList<>(List.of(
+            new ProductSearchEntry(1L, "Cà Phê Sữa Đá", "Coffee"),
+            new ProductSearchEntry(2L, "Cà phê đen nóng", "Coffee"),
+            new ProductSearchEntry(3L, "Bạc Xỉu", "Coffee"),
+            new ProductSearchEntry(4L, "Cappuccino", "Coffee"),
+            new ProductSearchEntry(5L, "Trà Đào Cam Sả", "Tea"),
+            new ProductSearchEntry(6L, "Trà sữa trân châu", "Tea"),
+            new ProductSearchEntry(7L, "Caramel Latte", "Coffee")));
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+    private ProductSearchServiceImpl productSearchService;
+
+    @BeforeEach
+    void setUp() {
+        when(productRepository.findAllSearchEntries()).thenAnswer(invocation -> List.copyOf(menu));
+        ClusterMessagingServiceImpl clusterMessagingService = new ClusterMessagingServiceImpl(
+                new LocalClusterTransport(), mock(SimpMessagingTemplate.class), new ObjectMapper(),
+                new SimpleMeterRegistry());
+        productSearchService = new ProductSearchServiceImpl(productRepository, clusterMessagingService,
+                new SimpleMeterRegistry());
+    }
+
+    @Test
+    void queriesMatchWithoutToneMarksAndRankWholeWordsFirst() {
+        assertEquals("ca phe sua da", ProductSearchServiceImpl.fold("  Cà Phê Sữa-Đá! "));
+
+        assertEquals(List.of(1L), search("ca phe sua", null));
+        assertEquals(List.of(3L), search("BAC XIU", null));
+        assertEquals(List.of(5L), search("tra dao", null));
+        // Whole words before the words the query only starts, then by name
+        assertEquals(List.of(2L, 1L, 4L, 7L, 5L), search("ca", null));
+        assertEquals(List.of(1L, 6L), search("sua", null));
+        assertEquals(List.of(6L), search("sua", "Tea"));
+        // Still found inside a word, as before
+        assertEquals(List.of(4L), search("ppucc", null));
+        assertEquals(List.of(), search("?!", null));
+    }
+
+    @Test
+    void prefixesAndTyposStillFindTheProduct() {
+        assertEquals(List.of(7L), search("lat", null));
+        assertEquals(List.of(4L), search("capuc", null));
+        assertEquals(List.of(4L), search("capucino", null));
+        assertEquals(List.of(7L), search("caramle", null));
+        // Three letters are too few to guess at
+        assertEquals(List.of(), search("lta", null));
+
+        Page<Long> secondPage = productSearchService.search("ca", null, PageRequest.of(1, 2));
+        assertEquals(List.of(4L, 7L), secondPage.getContent());
+        assertEquals(5, secondPage.getTotalElements());
+    }
+
+    @Test
+    void catalogChangesRebuildTheIndex() {
+        assertEquals(List.of(), search("mocha", null));
+        assertEquals(List.of(), search("ca cao", null));
+        verify(productRepository, times(1)).findAllSearchEntries();
+
+        long version = productSearchService.getVersion();
+        menu.add(new ProductSearchEntry(8L, "Mocha Ca Cao", "Coffee"));
+        productSearchService.invalidate();
+
+        assertEquals(List.of(8L), search("mocha", null));
+        assertTrue(productSearchService.getVersion() > version);
+        verify(productRepository, times(2)).findAllSearchEntries();
+    }
+
+    private List<Long> search(String query, String categoryName) {
+        return productSearchService.search(query, categoryName, PageRequest.of(0, 10)).getContent();
+    }
+}
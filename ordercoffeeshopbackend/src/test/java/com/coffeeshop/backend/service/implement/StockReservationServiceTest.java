@@ -0,0 +1,309 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.entity.Product;
+import com.coffeeshop.backend.entity.ProductStock;
+import com.coffeeshop.backend.entity.ProductStockShard;
+import com.coffeeshop.backend.entity.ProductVariant;
+import com.coffeeshop.backend.entity.Store;
+import com.coffeeshop.backend.exception.InsufficientStockException;
+import com.coffeeshop.backend.repository.ProductRepository;
+import com.coffeeshop.backend.repository.ProductStockRepository;
+import com.coffeeshop.backend.repository.ProductStockShardRepository;
+import com.coffeeshop.backend.repository.ProductVariantRepository;
+import com.coffeeshop.backend.repository.StockHistoryRepository;
+import com.coffeeshop.backend.repository.StoreRepository;
+import com.coffeeshop.backend.service.ClusterMessagingService;
+import com.coffeeshop.backend.service.StockReservationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.datasource.url=jdbc:h2:mem:stock_reservation;LOCK_TIMEOUT=10000",
+        "spring.datasource.hikari.maximum-pool-size=16"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StockReservationServiceTest {
+
+    private static final int VARIANTS = 6;
+    private static final int CARTS = 300;
+    private static final int INITIAL_STOCK = 200;
+
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private ProductStockRepository productStockRepository;
+    @Autowired
+    private StockHistoryRepository stockHistoryRepository;
+    @Autowired
+    private StoreRepository storeRepository;
+    @Autowired
+    private ProductVariantRepository productVariantRepository;
+    @Autowired
+    private ProductStockShardRepository productStockShardRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Store store;
+    private List<Long> variantIds;
+    private VariantCatalogServiceImpl catalog;
+
+    @BeforeEach
+    void setUp() {
+        stockHistoryRepository.deleteAll();
+        productStockShardRepository.deleteAll();
+        productStockRepository.deleteAll();
+        productRepository.deleteAll();
+        storeRepository.deleteAll();
+
+        store = new Store();
+        store.setName("Test Store");
+        store.setAddress("1 Test Street");
+        store = storeRepository.save(store);
+
+        Product product = new Product();
+        product.setName("Latte");
+        product.setIsActive(true);
+        for (int i = 0; i < VARIANTS; i++) {
+            ProductVariant variant = new ProductVariant();
+            variant.setSku("LATTE-" + i);
+            variant.setSize("S" + i);
+            variant.setPrice(new BigDecimal("35000"));
+            variant.setIsActive(true);
+            variant.setProduct(product);
+            product.getVariants().add(variant);
+        }
+        product = productRepository.save(product);
+
+        variantIds = new ArrayList<>();
+        for (ProductVariant variant : product.getVariants()) {
+            ProductStock stock = new ProductStock();
+            stock.setProductVariant(variant);
+            stock.setStore(store);
+            stock.setQuantity(INITIAL_STOCK);
+            productStockRepository.save(stock);
+            variantIds.add(variant.getId());
+        }
+        catalog = catalog();
+    }
+
+    // A catalog of its own, which like another node's is not dropped by the edits made through a different one
+    private VariantCatalogServiceImpl catalog() {
+        VariantCatalogServiceImpl created = new VariantCatalogServiceImpl(productVariantRepository,
+                mock(ClusterMessagingService.class));
+        ReflectionTestUtils.setField(created, "ttlSeconds", 300L);
+        return created;
+    }
+
+    private ShardedStockServiceImpl shardedStockService(VariantCatalogServiceImpl variantCatalog) {
+        return new ShardedStockServiceImpl(productStockRepository, productStockShardRepository,
+                productVariantRepository, stockHistoryRepository, storeRepository, variantCatalog);
+    }
+
+    private StockReservationService reservationService(String mode) {
+        if ("sharded".equals(mode)) {
+            ShardedStockServiceImpl sharded = shardedStockService(catalog);
+            TransactionTemplate tx = new TransactionTemplate(transactionManager);
+            variantIds.forEach(id -> tx.executeWithoutResult(status -> sharded.setSharding(id, 4)));
+            return new StockReservationService() {
+                @Override
+                public void reserve(Long storeId, Map<Long, Integer> quantitiesByVariantId, Long userId) {
+                    sharded.reserve(storeId, quantitiesByVariantId, userId);
+                }
+
+                @Override
+                public void reserveAll(Long storeId, Map<Long, Map<Long, Integer>> quantitiesByUserId) {
+                    sharded.reserveAll(storeId, quantitiesByUserId);
+                }
+            };
+        }
+        if ("conditional".equals(mode)) {
+            return new ConditionalStockReservationServiceImpl(productStockRepository, productVariantRepository,
+                    stockHistoryRepository, shardedStockService(catalog));
+        }
+        return new LockingStockReservationServiceImpl(productStockRepository, stockHistoryRepository,
+                shardedStockService(catalog));
+    }
+
+    // Sharded mode is left out here: H2 keeps the row lock of a guarded UPDATE that matched nothing,
+    // which Postgres does not, so the bucket fallback can deadlock on H2 only.
+    @ParameterizedTest
+    @ValueSource(strings = {"locking", "conditional"})
+    void conflictingCartsNeverDeadlockOrOversell(String mode) throws Exception {
+        StockReservationService stockReservationService = reservationService(mode);
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        ExecutorService pool = Executors.newFixedThreadPool(32);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        Map<Long, AtomicInteger> sold = new LinkedHashMap<>();
+        variantIds.forEach(id -> sold.put(id, new AtomicInteger()));
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < CARTS; i++) {
+            Random random = new Random(i);
+            // Every cart holds every variant, each in a different order, so unsorted locking would deadlock
+            List<Long> ids = new ArrayList<>(variantIds);
+            Collections.shuffle(ids, random);
+            Map<Long, Integer> cart = new LinkedHashMap<>();
+            ids.forEach(id -> cart.put(id, 1 + random.nextInt(2)));
+
+            futures.add(pool.submit(() -> {
+                start.await();
+                try {
+                    tx.executeWithoutResult(status -> stockReservationService.reserve(store.getId(), cart, 1L));
+                    accepted.incrementAndGet();
+                    cart.forEach((id, quantity) -> sold.get(id).addAndGet(quantity));
+                } catch (InsufficientStockException e) {
+                    rejected.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertEquals(CARTS, accepted.get() + rejected.get());
+        assertTrue(accepted.get() > 0);
+        for (Long variantId : variantIds) {
+            int remaining = remaining(variantId);
+            assertTrue(remaining >= 0);
+            assertEquals(INITIAL_STOCK - sold.get(variantId).get(), remaining);
+        }
+        assertEquals(accepted.get() * VARIANTS, stockHistoryRepository.count());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"locking", "conditional", "sharded"})
+    void rejectsWholeCartWhenOneLineIsShort(String mode) {
+        StockReservationService stockReservationService = reservationService(mode);
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Map<Long, Integer> cart = new LinkedHashMap<>();
+        cart.put(variantIds.get(0), 1);
+        cart.put(variantIds.get(1), INITIAL_STOCK + 1);
+
+        assertThrows(InsufficientStockException.class,
+                () -> tx.executeWithoutResult(status -> stockReservationService.reserve(store.getId(), cart, 1L)));
+
+        assertEquals(INITIAL_STOCK, remaining(variantIds.get(0)));
+        assertEquals(0, stockHistoryRepository.count());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"locking", "conditional", "sharded"})
+    void batchesWriteOneHistoryRowPerUserAndVariant(String mode) {
+        StockReservationService stockReservationService = reservationService(mode);
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long latte = variantIds.get(0);
+        Long mocha = variantIds.get(1);
+        Map<Long, Map<Long, Integer>> quantitiesByUserId = new LinkedHashMap<>();
+        quantitiesByUserId.put(7L, Map.of(latte, 2, mocha, 1));
+        quantitiesByUserId.put(8L, Map.of(latte, 3));
+
+        tx.executeWithoutResult(status -> stockReservationService.reserveAll(store.getId(), quantitiesByUserId));
+
+        assertEquals(INITIAL_STOCK - 5, remaining(latte));
+        assertEquals(INITIAL_STOCK - 1, remaining(mocha));
+        Map<String, Integer> changes = new HashMap<>();
+        stockHistoryRepository.findAll().forEach(history -> changes.put(
+                history.getCreatedBy() + ":" + history.getProductVariant().getId(), history.getQuantityChanged()));
+        assertEquals(Map.of("7:" + latte, -2, "7:" + mocha, -1, "8:" + latte, -3), changes);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"locking", "conditional"})
+    void linesOfAVariantShardedSinceTheCatalogWasReadGoToItsShards(String mode) {
+        StockReservationService stockReservationService = reservationService(mode);
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        Long latte = variantIds.get(0);
+        Long mocha = variantIds.get(1);
+        assertEquals(0, catalog.get(latte).getStockShards());
+        tx.executeWithoutResult(status -> shardedStockService(catalog()).setSharding(latte, 4));
+
+        tx.executeWithoutResult(status -> stockReservationService.reserve(store.getId(), Map.of(latte, 5, mocha, 1), 1L));
+
+        assertEquals(INITIAL_STOCK - 5, remaining(latte));
+        assertEquals(INITIAL_STOCK - 1, remaining(mocha));
+        assertEquals(2, stockHistoryRepository.count());
+    }
+
+    @Test
+    void shardedLinesUseTheMainRowOnceShardingIsTurnedOff() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        ShardedStockServiceImpl sharded = shardedStockService(catalog);
+        Long latte = variantIds.get(0);
+        tx.executeWithoutResult(status -> sharded.setSharding(latte, 4));
+        assertEquals(4, catalog.get(latte).getStockShards());
+        tx.executeWithoutResult(status -> shardedStockService(catalog()).setSharding(latte, 0));
+
+        tx.executeWithoutResult(status -> sharded.reserve(store.getId(), Map.of(latte, 5), 1L));
+
+        assertEquals(INITIAL_STOCK - 5, productStockRepository.findByProductVariantIdAndStoreId(latte, store.getId())
+                .orElseThrow().getQuantity());
+        assertEquals(INITIAL_STOCK - 5, stockHistoryRepository.findAll().get(0).getCurrentQuantity());
+    }
+
+    @Test
+    void shardedStockFallsBackAcrossBucketsAndFoldsBack() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        ShardedStockServiceImpl sharded = shardedStockService(catalog);
+        Long variantId = variantIds.get(0);
+        tx.executeWithoutResult(status -> sharded.setSharding(variantId, 4));
+
+        assertEquals(0, productStockRepository.findByProductVariantIdAndStoreId(variantId, store.getId())
+                .orElseThrow().getQuantity());
+        assertEquals(INITIAL_STOCK, remaining(variantId));
+
+        // More than one bucket holds, so the locked fallback has to drain several
+        tx.executeWithoutResult(status -> sharded.reserve(store.getId(), Map.of(variantId, 120), 1L));
+        assertEquals(INITIAL_STOCK - 120, remaining(variantId));
+
+        tx.executeWithoutResult(status -> sharded.setSharding(variantId, 0));
+        assertEquals(INITIAL_STOCK - 120, productStockRepository.findByProductVariantIdAndStoreId(variantId, store.getId())
+                .orElseThrow().getQuantity());
+        assertEquals(0, productStockShardRepository.count());
+    }
+
+    private int remaining(Long variantId) {
+        int quantity = productStockRepository.findByProductVariantIdAndStoreId(variantId, store.getId())
+                .orElseThrow().getQuantity();
+        return quantity + productStockShardRepository.findAll().stream()
+                .filter(shard -> shard.getProductVariant().getId().equals(variantId))
+                .mapToInt(ProductStockShard::getQuantity)
+                .sum();
+    }
+}
@@ -0,0 +1,110 @@
+package com.coffeeshop.backend.service.implement;
+
+import com.coffeeshop.backend.dto.product.VariantCatalogEntry;
+import com.coffeeshop.backend.repository.ProductVariantRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class VariantCatalogServiceTest {
+
+    private final ProductVariantRepository productVariantRepository = mock(ProductVariantRepository.class);
+    private final List<VariantCatalogEntry> variants = new ArrayList<>(List.of(entry(1L, "35000")));
+    private ClusterMessagingServiceImpl clusterMessagingService;
+
+    @BeforeEach
+    void setUp() {
+        when(productVariantRepository.findAllCatalogEntries()).thenAnswer(invocation -> List.copyOf(variants));
+        clusterMessagingService = new ClusterMessagingServiceImpl(new LocalClusterTransport(),
+                mock(SimpMessagingTemplate.class), new ObjectMapper(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(productVariantRepository.findAllCatalogEntries()).thenAnswer(invocation -> {
+            reading.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return List.copyOf(variants);
+        });
+        VariantCatalogServiceImpl catalog = catalog(300);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<VariantCatalogEntry>> results = new ArrayList<>();
+            results.add(pool.submit(() -> catalog.get(1L)));
+            assertTrue(reading.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 7; i++) {
+                results.add(pool.submit(() -> catalog.get(1L)));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<VariantCatalogEntry> result : results) {
+                assertEquals(1L, result.get(5, TimeUnit.SECONDS).getId());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        verify(productVariantRepository, times(1)).findAllCatalogEntries();
+    }
+
+    @Test
+    void anEditOnOneNodeDropsTheCatalogOfEveryNode() {
+        VariantCatalogServiceImpl editing = catalog(300);
+        VariantCatalogServiceImpl other = catalog(300);
+        assertEquals(0, new BigDecimal("35000").compareTo(other.get(1L).getPrice()));
+        assertNull(other.get(2L));
+
+        variants.set(0, entry(1L, "39000"));
+        variants.add(entry(2L, "45000"));
+        editing.invalidate();
+
+        assertEquals(0, new BigDecimal("39000").compareTo(other.get(1L).getPrice()));
+        assertEquals(2L, other.get(2L).getId());
+    }
+
+    @Test
+    void aCatalogIsReadAgainOnceItExpires() throws Exception {
+        VariantCatalogServiceImpl catalog = catalog(300);
+        catalog.get(1L);
+        catalog.get(1L);
+        verify(productVariantRepository, times(1)).findAllCatalogEntries();
+
+        // A missed drop is only kept until the copy expires
+        ReflectionTestUtils.setField(catalog, "ttlSeconds", 0L);
+        Thread.sleep(5);
+        catalog.get(1L);
+        verify(productVariantRepository, times(2)).findAllCatalogEntries();
+    }
+
+    private VariantCatalogServiceImpl catalog(long ttlSeconds) {
+        VariantCatalogServiceImpl catalog = new VariantCatalogServiceImpl(productVariantRepository,
+                clusterMessagingService);
+        ReflectionTestUtils.setField(catalog, "ttlSeconds", ttlSeconds);
+        return catalog;
+    }
+
+    private static VariantCatalogEntry entry(Long id, String price) {
+        return new VariantCatalogEntry(id, new BigDecimal(price), "M", "Latte", true, true, 0);
+    }
+}
@@ -0,0 +1,157 @@
+package com.coffeeshop.backend.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CoalescingWebSocketSessionTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OutboundBackpressure backpressure = new OutboundBackpressure(meterRegistry);
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final List<String> written = new CopyOnWriteArrayList<>();
+    // The client accepts nothing until released
+    private final CountDownLatch clientReady = new CountDownLatch(1);
+    private final CountDownLatch writing = new CountDownLatch(1);
+    private CoalescingWebSocketSession session;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(backpressure, "sendBufferSizeLimit", 1024);
+        ReflectionTestUtils.setField(backpressure, "sendTimeLimitMs", 60_000L);
+        WebSocketSession client = mock(WebSocketSession.class);
+        doAnswer(invocation -> {
+            writing.countDown();
+            clientReady.await(5, TimeUnit.SECONDS);
+            written.add(((WebSocketMessage<?>) invocation.getArgument(0)).getPayload().toString());
+            return null;
+        }).when(client).sendMessage(any());
+        session = new CoalescingWebSocketSession(client, backpressure, writer);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.shutdownNow();
+    }
+
+    @Test
+    void queuedUpdatesOfAnOrderAreMergedIntoTheLatest() throws Exception {
+        session.sendMessage(frame("sub-0", "order-1", "1"));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        session.sendMessage(frame("sub-0", "order-2", "2"));
+        session.sendMessage(frame("sub-0", "order-1", "3"));
+        // Same order on another subscription of the session is a different frame
+        session.sendMessage(frame("sub-1", "order-1", "4"));
+        session.sendMessage(frame("sub-0", "order-1", "5"));
+        session.sendMessage(new TextMessage("MESSAGE\nsubscription:sub-0\n\n6\0"));
+
+        clientReady.countDown();
+        writer.shutdown();
+        assertTrue(writer.awaitTermination(5, TimeUnit.SECONDS));
+
+        // The first frame was already being written; seq 3 was replaced by seq 5, which moved behind seq 4
+        assertEquals(List.of("1", "2", "4", "5", "6"), written.stream()
+                .map(frame -> frame.substring(frame.indexOf("\n\n") + 2, frame.length() - 1)).toList());
+        assertEquals(1.0, meterRegistry.get("websocket.outbound.frames").tag("outcome", "coalesced").counter().count());
+        assertEquals(5.0, meterRegistry.get("websocket.outbound.frames").tag("outcome", "sent").counter().count());
+        assertEquals(0.0, meterRegistry.get("websocket.outbound.queued").gauge().value());
+    }
+
+    @Test
+    void sessionsThatFallTooFarBehindAreEvicted() throws Exception {
+        session.sendMessage(frame("sub-0", "order-0", "0"));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        // Updates of the same order never pile up, other orders do
+        for (int i = 0; i < 50; i++) {
+            session.sendMessage(frame("sub-0", "order-1", String.valueOf(i)));
+        }
+        SessionLimitExceededException exceeded = assertThrows(SessionLimitExceededException.class, () -> {
+            for (int i = 2; i < 100; i++) {
+                session.sendMessage(frame("sub-0", "order-" + i, "x"));
+            }
+        });
+        assertTrue(exceeded.getMessage().contains("bytes queued"));
+        assertEquals(1.0, meterRegistry.get("websocket.outbound.evictions").tag("reason", "buffer").counter().count());
+
+        // Nothing more is queued for an evicted session
+        session.sendMessage(frame("sub-0", "order-1", "late"));
+        clientReady.countDown();
+        writer.shutdown();
+        assertTrue(writer.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(List.of("0"), written.stream()
+                .map(frame -> frame.substring(frame.indexOf("\n\n") + 2, frame.length() - 1)).toList());
+        assertEquals(0.0, meterRegistry.get("websocket.outbound.queued").gauge().value());
+    }
+
+    @Test
+    void aStalledClientHoldsUpNoOtherSessionAndIsClosed() throws Exception {
+        ReflectionTestUtils.setField(backpressure, "sendTimeLimitMs", 200L);
+        backpressure.start();
+        try {
+            List<WebSocketSession> decorated = new CopyOnWriteArrayList<>();
+            WebSocketHandler handler = mock(WebSocketHandler.class);
+            doAnswer(invocation -> decorated.add(invocation.getArgument(0)))
+                    .when(handler).afterConnectionEstablished(any());
+            WebSocketHandler decorator = backpressure.decorate(handler);
+
+            WebSocketSession stalled = mock(WebSocketSession.class);
+            when(stalled.getId()).thenReturn("stalled");
+            doAnswer(invocation -> clientReady.await(5, TimeUnit.SECONDS)).when(stalled).sendMessage(any());
+            WebSocketSession fast = mock(WebSocketSession.class);
+            when(fast.getId()).thenReturn("fast");
+            decorator.afterConnectionEstablished(stalled);
+            decorator.afterConnectionEstablished(fast);
+
+            decorated.get(0).sendMessage(frame("sub-0", "order-1", "1"));
+            decorated.get(1).sendMessage(frame("sub-0", "order-1", "1"));
+            verify(fast, timeout(1000)).sendMessage(any());
+
+            // The watchdog closes the stalled session without waiting for another frame to it
+            verify(stalled, timeout(2000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+            assertEquals(1.0, meterRegistry.get("websocket.outbound.evictions").tag("reason", "time").counter().count());
+            verify(fast, never()).close(any());
+        } finally {
+            clientReady.countDown();
+            backpressure.stop();
+        }
+    }
+
+    @Test
+    void onlyMessageFramesWithASubscriptionCanBeCoalesced() {
+        assertEquals("sub-0/order-7", CoalescingWebSocketSession.coalesceKey(frame("sub-0", "order-7", "{}")));
+        assertNull(CoalescingWebSocketSession.coalesceKey(new TextMessage("MESSAGE\ncoalesce-key:order-7\n\n{}\0")));
+        assertNull(CoalescingWebSocketSession.coalesceKey(new TextMessage("RECEIPT\nsubscription:sub-0\ncoalesce-key:order-7\n\n\0")));
+    }
+
+    private static TextMessage frame(String subscription, String key, String body) {
+        return new TextMessage("MESSAGE\ndestination:/topic/stores/1/orders\nsubscription:" + subscription
+                + "\n" + OutboundBackpressure.COALESCE_HEADER + ":" + key + "\n\n" + body + "\0");
+    }
+}
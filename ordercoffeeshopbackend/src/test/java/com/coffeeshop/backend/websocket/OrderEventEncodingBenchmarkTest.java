@@ -0,0 +1,187 @@
+package com.coffeeshop.backend.websocket;
+
+import com.coffeeshop.backend.dto.order.OrderEvent;
+import com.coffeeshop.backend.enums.OrderStatus;
+import com.coffeeshop.backend.service.OrderNotificationService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sends order events to 1000 subscribers of one store topic through the simple broker and the STOMP
+ * handler, as in production, and reports the size of each frame on the wire and the CPU time the
+ * node spends per event: SockJS with JSON, native WebSocket with JSON, native WebSocket with CBOR.
+ * <p>
+ * Left out of the default build; run it with {@code mvn test -Dgroups=benchmark -DexcludedGroups=}.
+ */
+@Slf4j
+@Tag("benchmark")
+class OrderEventEncodingBenchmarkTest {
+
+    private static final int SUBSCRIBERS = 1000;
+    private static final int WARMUP_EVENTS = 100;
+    private static final int EVENTS = 200;
+    private static final String TOPIC = OrderNotificationService.storeTopic(3L);
+
+    private final StompSubProtocolHandler stompHandler = new StompSubProtocolHandler();
+    private final Map<String, WebSocketSession> sessions = new HashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final OrderEventCborEncoder cborEncoder = new OrderEventCborEncoder();
+    private long frames;
+    private long frameBytes;
+    private long sockJsBytes;
+
+    @Test
+    void cborFramesAreSmallerThanJson() throws Exception {
+        MessageChannel clientOutbound = (message, timeout) -> {
+            try {
+                stompHandler.handleMessageToClient(sessions.get(SimpMessageHeaderAccessor.getSessionId(message.getHeaders())), message);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return true;
+        };
+        SimpleBrokerMessageHandler broker = new SimpleBrokerMessageHandler(new ExecutorSubscribableChannel(),
+                clientOutbound, new ExecutorSubscribableChannel(), List.of("/topic"));
+        broker.start();
+        SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> {
+            broker.handleMessage(message);
+            return true;
+        });
+        template.setMessageConverter(new CompositeMessageConverter(List.of(new StringMessageConverter(),
+                new ByteArrayMessageConverter(), new MappingJackson2MessageConverter())));
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            String sessionId = "session-" + i;
+            sessions.put(sessionId, session(sessionId));
+            connect(broker, sessionId);
+            subscribe(broker, sessionId, TOPIC);
+            subscribe(broker, sessionId, TOPIC + OrderNotificationService.CBOR_SUFFIX);
+        }
+
+        Result json = run(template, false);
+        Result cbor = run(template, true);
+
+        log.info("Order event to {} subscribers: bytes per frame / CPU per event", SUBSCRIBERS);
+        log.info("  SockJS, JSON  : {} B", json.sockJsBytesPerFrame());
+        log.info("  native, JSON  : {} B / {} ms", json.bytesPerFrame(), String.format("%.2f", json.cpuMsPerEvent()));
+        log.info("  native, CBOR  : {} B / {} ms", cbor.bytesPerFrame(), String.format("%.2f", cbor.cpuMsPerEvent()));
+        assertTrue(cbor.bytesPerFrame() < json.bytesPerFrame());
+        assertTrue(json.bytesPerFrame() < json.sockJsBytesPerFrame());
+
+        // Binary clients read the fields by position
+        JsonNode decoded = new CBORMapper().readTree(cborEncoder.encode(
+                new OrderEvent(7, 42L, 3L, OrderStatus.PAID, 2L, 1_700_000_000_000L)));
+        assertEquals(List.of("7", "42", "3", "PAID", "2", "1700000000000"),
+                List.of(decoded.get(0).asText(), decoded.get(1).asText(), decoded.get(2).asText(),
+                        decoded.get(3).asText(), decoded.get(4).asText(), decoded.get(5).asText()));
+        broker.stop();
+    }
+
+    private Result run(SimpMessagingTemplate template, boolean cbor) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < WARMUP_EVENTS; i++) {
+            publish(template, cbor, i);
+        }
+        frames = 0;
+        frameBytes = 0;
+        sockJsBytes = 0;
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < EVENTS; i++) {
+            publish(template, cbor, WARMUP_EVENTS + i);
+        }
+        long cpu = threads.getCurrentThreadCpuTime() - cpuStart;
+        assertEquals((long) EVENTS * SUBSCRIBERS, frames);
+        return new Result(frameBytes / frames, sockJsBytes / frames, cpu / 1e6 / EVENTS);
+    }
+
+    private void publish(SimpMessagingTemplate template, boolean cbor, int i) throws Exception {
+        OrderEvent event = new OrderEvent(120_000 + i, 98_765L + i, 3L, OrderStatus.FINISHED_PREPARING, 5L,
+                System.currentTimeMillis());
+        Map<String, Object> headers = Map.of(OutboundBackpressure.COALESCE_HEADER, "order-" + event.getOrderId());
+        if (cbor) {
+            template.convertAndSend(TOPIC + OrderNotificationService.CBOR_SUFFIX, cborEncoder.encode(event), headers);
+        } else {
+            template.convertAndSend(TOPIC, event, headers);
+        }
+    }
+
+    private void connect(SimpleBrokerMessageHandler broker, String sessionId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId(sessionId);
+        accessor.setAcceptVersion("1.2");
+        broker.handleMessage(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    private void subscribe(SimpleBrokerMessageHandler broker, String sessionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(destination.endsWith(OrderNotificationService.CBOR_SUFFIX) ? "sub-1" : "sub-0");
+        accessor.setDestination(destination);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+        broker.handleMessage(message);
+    }
+
+    // Only what the STOMP handler touches; writes are counted instead of sent
+    private WebSocketSession session(String id) {
+        Map<String, Object> attributes = new HashMap<>();
+        return (WebSocketSession) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{WebSocketSession.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getId" -> id;
+                    case "isOpen" -> true;
+                    case "getAttributes" -> attributes;
+                    case "sendMessage" -> {
+                        count((WebSocketMessage<?>) args[0]);
+                        yield null;
+                    }
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> null;
+                });
+    }
+
+    private void count(WebSocketMessage<?> message) throws Exception {
+        frames++;
+        frameBytes += message.getPayloadLength();
+        if (message instanceof TextMessage text) {
+            // SockJS wraps every frame in a JSON array of strings, prefixed with "a"
+            sockJsBytes += 1 + objectMapper.writeValueAsBytes(List.of(text.getPayload())).length;
+        } else if (!(message instanceof BinaryMessage)) {
+            throw new IllegalStateException("Unexpected frame " + message);
+        }
+    }
+
+    private record Result(long bytesPerFrame, long sockJsBytesPerFrame, double cpuMsPerEvent) {
+    }
+}
@@ -1,9 +1,10 @@
 import { formatVND } from '../utils/currency';
 import { useQuery, useMutation, useQueryClient } from '@tanstack/react-query';
 import { getAllOrders, updateOrderStatus } from '../services';
-import type { Order } from '../types/order';
+import type { Order, OrderEvent } from '../types/order';
 import { useEffect, useState, useMemo, useRef } from 'react';
-import { connect, disconnect } from '../services';
+import { connect, disconnect, orderTopicFor } from '../services';
+import { useAuth } from '../contexts/AuthContext';
 import { Clock, User, Hash, Package, Truck, CheckCircle, XCircle } from 'lucide-react';
 
 const KANBAN_COLUMNS: { title: string; statuses: Order['status'][]; icon: React.ReactNode }[] = [
@@ -86,6 +87,7 @@ const OrderCard = ({ order, onUpdateStatus, devMode }: { order: Order, onUpdateS
 
 const StaffDashboard = () => {
   const queryClient = useQueryClient();
+  const { user } = useAuth();
   const [notification, setNotification] = useState<string | null>(null);
   const [devMode, setDevMode] = useState(false);
   const newOrderAudioRef = useRef<HTMLAudioElement>(null);
@@ -107,24 +109,27 @@ const StaffDashboard = () => {
     },
   });
 
+  const orderTopic = orderTopicFor(user);
+
   useEffect(() => {
-    connect('/topic/orders', (newOrder: Order) => {
+    if (!orderTopic) return;
+    connect(orderTopic, (event: OrderEvent) => {
       queryClient.invalidateQueries({ queryKey: ['allOrders'] });
 
-      if (newOrder.status === 'PAID') {
+      if (event.status === 'PAID') {
         newOrderAudioRef.current?.play();
-        setNotification(`New Order #${newOrder.id}!`);
-      } else if (newOrder.status === 'CANCELLED') {
+        setNotification(`New Order #${event.orderId}!`);
+      } else if (event.status === 'CANCELLED') {
         cancelledOrderAudioRef.current?.play();
-        setNotification(`Order #${newOrder.id} has been cancelled.`);
-      } else if (newOrder.status !== 'DELIVERED') {
-        setNotification(`Order #${newOrder.id} has been updated.`);
+        setNotification(`Order #${event.orderId} has been cancelled.`);
+      } else if (event.status !== 'DELIVERED') {
+        setNotification(`Order #${event.orderId} has been updated.`);
       }
 
       setTimeout(() => setNotification(null), 5000);
     });
     return () => disconnect();
-  }, [queryClient]);
+  }, [queryClient, orderTopic]);
 
   const handleUpdateStatus = (orderId: number, status: string) => {
     updateStatusMutation.mutate({ orderId, status });
@@ -1,9 +1,10 @@
 import { useQuery, useMutation, useQueryClient } from '@tanstack/react-query';
-import type { Order } from '../../types/order';
+import type { Order, OrderEvent } from '../../types/order';
 import { getOrders, cancelOrder } from '../../services/orderService';
 import { getAllProductsList } from '../../services/productService';
 import { useState, useMemo, useEffect } from 'react';
-import { connect, disconnect } from '../../services/socketService';
+import { connect, disconnect, orderTopicFor } from '../../services/socketService';
+import { useAuth } from '../../contexts/AuthContext';
 import type { Product } from '../../types/product';
 import { useNavigate } from 'react-router-dom';
 import OrderList from './OrderList';
@@ -11,6 +12,7 @@ import OrderList from './OrderList';
 const Orders = () => {
   const navigate = useNavigate();
   const queryClient = useQueryClient();
+  const { user } = useAuth();
   const [currentPage, setCurrentPage] = useState(0);
 
   const handlePageChange = (page: number) => {
@@ -31,8 +33,11 @@ const Orders = () => {
     queryFn: getAllProductsList,
   });
 
+  const orderTopic = orderTopicFor(user);
+
   useEffect(() => {
-    connect('/topic/orders', (message: Order) => {
+    if (!orderTopic) return;
+    connect(orderTopic, (message: OrderEvent) => {
       console.log('Received message:', message);
       queryClient.invalidateQueries({ queryKey: ['orders'] });
     });
@@ -40,7 +45,7 @@ const Orders = () => {
     return () => {
       disconnect();
     };
-  }, [queryClient]);
+  }, [queryClient, orderTopic]);
 
   const variantIdToImageUrlMap = useMemo(() => {
     if (!products) return {};
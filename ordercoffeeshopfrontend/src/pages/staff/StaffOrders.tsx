@@ -1,14 +1,16 @@
 import { useQuery, useMutation, useQueryClient } from '@tanstack/react-query';
-import type { Order } from '../../types/order';
+import type { Order, OrderEvent } from '../../types/order';
 import { getAllOrders } from '../../services/orderService';
 import { getAllProductsList } from '../../services/productService';
 import { useState, useMemo, useEffect } from 'react';
-import { connect, disconnect } from '../../services/socketService';
+import { connect, disconnect, orderTopicFor } from '../../services/socketService';
+import { useAuth } from '../../contexts/AuthContext';
 import type { Product } from '../../types/product';
 import OrderList from '../orders/OrderList';
 
 const StaffOrders = () => {
   const queryClient = useQueryClient();
+  const { user } = useAuth();
   const [currentPage, setCurrentPage] = useState(0);
 
   const handlePageChange = (page: number) => {
@@ -30,8 +32,11 @@ const StaffOrders = () => {
     queryFn: getAllProductsList,
   });
 
+  const orderTopic = orderTopicFor(user);
+
   useEffect(() => {
-    connect('/topic/orders', (message: Order) => {
+    if (!orderTopic) return;
+    connect(orderTopic, (message: OrderEvent) => {
       console.log('Received message:', message);
       queryClient.invalidateQueries({ queryKey: ['allOrders'] });
     });
@@ -39,7 +44,7 @@ const StaffOrders = () => {
     return () => {
       disconnect();
     };
-  }, [queryClient]);
+  }, [queryClient, orderTopic]);
 
   const variantIdToImageUrlMap = useMemo(() => {
     if (!products) return {};
@@ -14,7 +14,7 @@ export { locationService } from './locationService';
 export { calculateShippingFee, calculateShippingFeeForStore } from './shippingService';
 export { createPayment, getPaymentStatus, verifyPayment } from './paymentService';
 export { getSalesReport } from './reportService';
-export { connect, disconnect } from './socketService';
+export { connect, disconnect, orderTopicFor } from './socketService';
 export { default as r2Service } from './cloudflareR2';
 
 /*
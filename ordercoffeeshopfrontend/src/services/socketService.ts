@@ -1,5 +1,6 @@
 import SockJS from 'sockjs-client';
 import { Stomp } from '@stomp/stompjs';
+import type { User } from '../types/user';
 
 // const SOCKET_URL = 'http://103.77.243.143/ws';
 // Dùng ws:// thay cho http://
@@ -16,6 +17,14 @@ export const connect = (topic: string, onMessageReceived: (message: any) => void
   });
 };
 
+// Order updates are sent per store and per customer; the server refuses subscriptions to other stores
+export const orderTopicFor = (user: User | null): string | null => {
+  if (!user) return null;
+  if (user.role === 'ADMIN') return '/topic/orders';
+  if (user.role === 'STAFF') return user.store ? `/topic/stores/${user.store.id}/orders` : null;
+  return '/user/queue/orders';
+};
+
 export const disconnect = () => {
   if (stompClient !== null) {
     stompClient.disconnect();
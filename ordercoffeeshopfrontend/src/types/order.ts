@@ -21,4 +21,14 @@ export interface Order {
   address?: string; // Or a more complex Address object
   createdAt: string; // ISO date string
   updatedAt: string; // ISO date string
-}
\ No newline at end of file
+}
+
+// Pushed over STOMP when an order changes; seq counts up per store
+export interface OrderEvent {
+  seq: number;
+  orderId: number;
+  storeId: number;
+  status: OrderStatus;
+  version: number;
+  timestamp: number;
+}